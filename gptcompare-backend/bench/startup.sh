@@ -0,0 +1,111 @@
+#!/usr/bin/env bash
+#
+# Démarrage à froid du backend selon le mode de build : temps jusqu'à /actuator/health UP,
+# temps jusqu'à la première réponse de /api/chat/send, et RSS du process à ce moment.
+#   jar     : fat jar Spring Boot classique
+#   aot-cds : jar éclaté + contexte AOT (-Paot) + archive CDS (démarrage d'entraînement)
+#   native  : image GraalVM (-Pnative), seulement si native-image est disponible
+#
+# Hors ligne : le modèle "stub:bench" est servi par le fournisseur local (aucun appel OpenAI),
+# l'URL OpenAI pointe vers un port fermé et l'historique H2 est en mémoire.
+#
+#   bench/startup.sh                  (tous les modes disponibles, 5 démarrages chacun)
+#   RUNS=10 MODES="jar aot-cds" bench/startup.sh
+#   SKIP_BUILD=1 bench/startup.sh     (réutilise target/startup/)
+#
+# Résultat : tableau des médianes + target/startup-report.json
+set -euo pipefail
+
+cd "$(dirname "$0")/.."
+RUNS=${RUNS:-5}
+PORT=${PORT:-18080}
+WORK=target/startup
+REPORT=target/startup-report.json
+MVN=${MVN:-sh mvnw}
+
+if [[ -z "${MODES:-}" ]]; then
+  MODES="jar aot-cds"
+  command -v native-image >/dev/null 2>&1 && MODES="$MODES native"
+fi
+
+export OPENAI_API_KEY=bench
+export GPTCOMPARE_DB_URL=jdbc:h2:mem:bench
+APP_ARGS=(--server.port="$PORT" --openai.api.url=http://127.0.0.1:9/v1/responses
+          --providers.stub.enabled=true --logging.level.root=WARN)
+
+now_ms() { echo $(( $(date +%s%N) / 1000000 )); }
+
+build() {
+  mkdir -p "$WORK"
+  for mode in $MODES; do
+    case $mode in
+      jar)
+        $MVN -B -q package -DskipTests
+        cp target/gpt-compare-*.jar "$WORK/app.jar"
+        ;;
+      aot-cds)
+        $MVN -B -q -Paot package -DskipTests
+        rm -rf "$WORK/aot"
+        cp target/gpt-compare-*.jar "$WORK/app-aot.jar"
+        java -Djarmode=tools -jar "$WORK/app-aot.jar" extract --destination "$WORK/aot"
+        (cd "$WORK/aot" \
+          && java -XX:ArchiveClassesAtExit=app.jsa -Dspring.aot.enabled=true -Dspring.context.exit=onRefresh \
+                  -jar app.jar "${APP_ARGS[@]}" >/dev/null)
+        ;;
+      native)
+        $MVN -B -q -Pnative native:compile -DskipTests
+        cp target/gpt-compare "$WORK/gpt-compare"
+        ;;
+      *) echo "mode inconnu : $mode" >&2; exit 1 ;;
+    esac
+  done
+}
+
+start() {
+  case $1 in
+    jar)     exec java -jar "$WORK/app.jar" "${APP_ARGS[@]}" ;;
+    aot-cds) exec java -XX:SharedArchiveFile="$WORK/aot/app.jsa" -Dspring.aot.enabled=true \
+                  -jar "$WORK/aot/app.jar" "${APP_ARGS[@]}" ;;
+    native)  exec "$WORK/gpt-compare" "${APP_ARGS[@]}" ;;
+  esac
+}
+
+# Un démarrage : "ready_ms first_response_ms rss_mb"
+run_once() {
+  local mode=$1 t0 pid ready first rss
+  t0=$(now_ms)
+  start "$mode" >"$WORK/$mode.log" 2>&1 &
+  pid=$!
+  until curl -sf "http://127.0.0.1:$PORT/actuator/health" >/dev/null 2>&1; do
+    kill -0 "$pid" 2>/dev/null || { echo "échec du démarrage ($mode), cf. $WORK/$mode.log" >&2; exit 1; }
+    sleep 0.01
+  done
+  ready=$(( $(now_ms) - t0 ))
+  curl -sf -H 'Content-Type: application/json' \
+       -d '{"message":"Bonjour","model":"stub:bench","maxOutputTokens":16}' \
+       "http://127.0.0.1:$PORT/api/chat/send" >/dev/null
+  first=$(( $(now_ms) - t0 ))
+  rss=$(awk '/VmRSS/ {printf "%.0f", $2 / 1024}' "/proc/$pid/status")
+  kill "$pid" && wait "$pid" 2>/dev/null || true
+  echo "$ready $first $rss"
+}
+
+median() { sort -n | awk '{a[NR]=$1} END {print (NR % 2) ? a[(NR+1)/2] : int((a[NR/2] + a[NR/2+1]) / 2)}'; }
+
+[[ -n "${SKIP_BUILD:-}" ]] || build
+
+printf '%-8s %12s %18s %8s\n' mode ready_ms first_response_ms rss_mb
+json="{\"runs\": $RUNS, \"modes\": {"
+sep=""
+for mode in $MODES; do
+  samples=()
+  for ((i = 0; i < RUNS; i++)); do samples+=("$(run_once "$mode")"); done
+  ready=$(printf '%s\n' "${samples[@]}" | cut -d' ' -f1 | median)
+  first=$(printf '%s\n' "${samples[@]}" | cut -d' ' -f2 | median)
+  rss=$(printf '%s\n' "${samples[@]}" | cut -d' ' -f3 | median)
+  printf '%-8s %12s %18s %8s\n' "$mode" "$ready" "$first" "$rss"
+  json+="$sep\"$mode\": {\"readyMs\": $ready, \"firstResponseMs\": $first, \"rssMb\": $rss}"
+  sep=", "
+done
+echo "$json}}" >"$REPORT"
+echo "rapport : $REPORT"
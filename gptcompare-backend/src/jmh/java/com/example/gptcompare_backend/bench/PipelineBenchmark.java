@@ -0,0 +1,102 @@
+package com.example.gptcompare_backend.bench;
+
+import com.example.gptcompare_backend.config.BackgroundProperties;
+import com.example.gptcompare_backend.config.DeadlineProperties;
+import com.example.gptcompare_backend.config.OpenAIHttpConfig;
+import com.example.gptcompare_backend.config.OpenAIHttpProperties;
+import com.example.gptcompare_backend.config.UpstreamPoolMetrics;
+import com.example.gptcompare_backend.controller.ChatController;
+import com.example.gptcompare_backend.dto.ChatRequest;
+import com.example.gptcompare_backend.dto.ChatResponse;
+import com.example.gptcompare_backend.service.*;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+import reactor.netty.resources.ConnectionProvider;
+import tools.jackson.databind.ObjectMapper;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Chemin complet d'un POST /api/chat/send contre un faux OpenAI local (reactor-netty, réponse immédiate) :
+ * construction du payload, appel HTTP via le pool partagé, décodage, mapping DTO et sérialisation JSON
+ * de la réponse comme le ferait l'encodeur WebFlux.
+ * Throughput + SampleTime (p50/p90/p99...) ; allocations avec -prof gc.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PipelineBenchmark {
+
+    @Param({"small", "reasoning"})
+    public String payload;
+
+    private final ObjectMapper mapper = JsonMapper.builder().build();
+
+    private DisposableServer upstream;
+    private ConnectionProvider provider;
+    private ChatController controller;
+    private ChatRequest request;
+    private final ServerHttpRequest httpRequest = MockServerHttpRequest.post("/api/chat/send").build();
+    private ChatResponse sample;
+
+    @Setup
+    public void setUp() {
+        byte[] body = "small".equals(payload) ? ResponsePayloads.small() : ResponsePayloads.reasoning(40);
+        upstream = HttpServer.create()
+                .port(0)
+                .handle((req, res) -> req.receive().then()
+                        .then(res.header("Content-Type", "application/json")
+                                .sendByteArray(Mono.just(body)).then()))
+                .bindNow();
+
+        OpenAIHttpProperties props = new OpenAIHttpProperties(50, 200, Duration.ofSeconds(5), Duration.ofSeconds(30),
+                Duration.ofMinutes(5), Duration.ofSeconds(30), Duration.ofSeconds(5), Duration.ofSeconds(10),
+                true, false);
+        UpstreamPoolMetrics metrics = new UpstreamPoolMetrics();
+        provider = OpenAIHttpConfig.connectionProvider(props, metrics);
+
+        OpenAIService service = new OpenAIService("bench-key", "http://localhost:" + upstream.port() + "/v1/responses",
+                "gpt-4.1-mini", OpenAIService.Dependencies.defaults()
+                        .httpClient(OpenAIHttpConfig.httpClient(provider, props, false))
+                        .singleFlight(false));
+        ProviderRegistry providers = new ProviderRegistry(service, Map.of());
+        controller = new ChatController(providers, new CompareService(service, Duration.ofSeconds(10), 6),
+                metrics, ResponseCache.disabled(), ModelRateLimiter.disabled(), ModelCircuitBreaker.disabled(),
+                ResultStore.disabled(), new SessionService(providers, 1000, Duration.ofMinutes(30), 20, 24000),
+                AdmissionLimiter.disabled(), new DeadlineProperties(Duration.ofSeconds(60), Duration.ofSeconds(60)),
+                UpstreamMetrics.noop(),
+                new BackgroundJobService(providers, ResultStore.disabled(), BackgroundProperties.disabled()));
+
+        request = new ChatRequest();
+        request.setMessage("Explique la différence entre latence et débit en deux phrases.");
+        request.setMaxOutputTokens(400);
+        sample = controller.sendMessage(request, null, httpRequest).block().getBody();
+    }
+
+    @TearDown
+    public void tearDown() {
+        provider.dispose();
+        upstream.disposeNow();
+    }
+
+    @Benchmark
+    public byte[] sendEndToEnd() {
+        ChatResponse resp = controller.sendMessage(request, null, httpRequest).block().getBody();
+        return mapper.writeValueAsBytes(resp);
+    }
+
+    @Benchmark
+    public byte[] serializeChatResponse() {
+        return mapper.writeValueAsBytes(sample);
+    }
+}
@@ -0,0 +1,83 @@
+package com.example.gptcompare_backend.bench;
+
+import com.example.gptcompare_backend.service.ResponsesDecoder;
+import org.openjdk.jmh.annotations.*;
+import tools.jackson.databind.ObjectMapper;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Décodage d'une réponse Responses API :
+ * - mapWalk : ancien chemin (Map Jackson complète puis deux parcours pour trouver le texte)
+ * - streaming : ResponsesDecoder, une passe sans Map intermédiaire
+ * À lancer avec -prof gc pour comparer aussi les allocations par opération.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ResponseDecodingBenchmark {
+
+    @Param({"small", "reasoning"})
+    public String payload;
+
+    private final ObjectMapper mapper = JsonMapper.builder().build();
+    private byte[] body;
+
+    @Setup
+    public void setUp() {
+        body = "small".equals(payload) ? ResponsePayloads.small() : ResponsePayloads.reasoning(40);
+    }
+
+    @Benchmark
+    public Object mapWalk() {
+        Map<?, ?> res = mapper.readValue(body, Map.class);
+        Integer outTok = null;
+        if (res.get("usage") instanceof Map<?, ?> usage && usage.get("output_tokens") instanceof Number n) {
+            outTok = n.intValue();
+        }
+        return new Object[]{extractTextFromMap(res), isTruncated(res), outTok};
+    }
+
+    @Benchmark
+    public Object streaming() {
+        ResponsesDecoder.Decoded d = ResponsesDecoder.decode(body);
+        return new Object[]{d.text(), d.truncated(), d.outputTokens()};
+    }
+
+    // --- ancien chemin, reproduit tel quel comme référence ---
+
+    private static boolean isTruncated(Map<?, ?> res) {
+        return "incomplete".equals(String.valueOf(res.get("status")))
+                && res.get("incomplete_details") instanceof Map<?, ?> details
+                && "max_output_tokens".equals(String.valueOf(details.get("reason")));
+    }
+
+    private static String extractTextFromMap(Map<?, ?> res) {
+        if (!(res.get("output") instanceof List<?> output)) return null;
+        for (Object itemObj : output) {
+            if (!(itemObj instanceof Map<?, ?> item) || !(item.get("content") instanceof List<?> content)) continue;
+            for (Object cObj : content) {
+                if (cObj instanceof Map<?, ?> c && "output_text".equals(c.get("type"))
+                        && c.get("text") instanceof String s && !s.isBlank()) {
+                    return s;
+                }
+            }
+        }
+        for (Object itemObj : output) {
+            if (!(itemObj instanceof Map<?, ?> item) || !(item.get("content") instanceof List<?> content)) continue;
+            for (Object cObj : content) {
+                if (cObj instanceof Map<?, ?> c && c.get("text") instanceof String s && !s.isBlank()) {
+                    return s;
+                }
+            }
+        }
+        isTruncated(res);
+        return null;
+    }
+}
@@ -0,0 +1,47 @@
+package com.example.gptcompare_backend.bench;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Corps de réponses Responses API réalistes pour les benchmarks.
+ * - small : réponse courte standard (un message, usage)
+ * - reasoning : modèle de raisonnement, nombreux items "reasoning" (résumés + contenu chiffré) avant le message
+ */
+final class ResponsePayloads {
+
+    private ResponsePayloads() {}
+
+    static byte[] small() {
+        return """
+            {"id":"resp_small","object":"response","created_at":1741476542,"status":"completed",
+             "model":"gpt-4.1-mini","incomplete_details":null,
+             "output":[{"type":"message","id":"msg_1","status":"completed","role":"assistant",
+               "content":[{"type":"output_text","annotations":[],
+                 "text":"Bonjour ! Voici une réponse courte à votre question."}]}],
+             "usage":{"input_tokens":36,"input_tokens_details":{"cached_tokens":0},
+               "output_tokens":12,"output_tokens_details":{"reasoning_tokens":0},"total_tokens":48}}
+            """.getBytes(StandardCharsets.UTF_8);
+    }
+
+    static byte[] reasoning(int reasoningItems) {
+        StringBuilder sb = new StringBuilder(reasoningItems * 1200 + 2048);
+        sb.append("{\"id\":\"resp_large\",\"object\":\"response\",\"created_at\":1741476542,")
+                .append("\"status\":\"completed\",\"model\":\"gpt-5\",\"incomplete_details\":null,\"output\":[");
+        for (int i = 0; i < reasoningItems; i++) {
+            sb.append("{\"type\":\"reasoning\",\"id\":\"rs_").append(i).append("\",\"summary\":[");
+            for (int j = 0; j < 3; j++) {
+                if (j > 0) sb.append(',');
+                sb.append("{\"type\":\"summary_text\",\"text\":\"Étape ").append(i).append('.').append(j)
+                        .append(" : analyse du problème et vérification des hypothèses intermédiaires.\"}");
+            }
+            sb.append("],\"encrypted_content\":\"").append("gAAAAABo".repeat(100)).append("\"},");
+        }
+        sb.append("{\"type\":\"message\",\"id\":\"msg_1\",\"status\":\"completed\",\"role\":\"assistant\",")
+                .append("\"content\":[{\"type\":\"output_text\",\"annotations\":[],\"text\":\"")
+                .append("Réponse finale détaillée. ".repeat(80))
+                .append("\"}]}],\"usage\":{\"input_tokens\":120,\"input_tokens_details\":{\"cached_tokens\":64},")
+                .append("\"output_tokens\":2400,\"output_tokens_details\":{\"reasoning_tokens\":1900},")
+                .append("\"total_tokens\":2520}}");
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,117 @@
+package com.example.gptcompare_backend.bench;
+
+import com.example.gptcompare_backend.service.BpeEncoder;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+
+/**
+ * Comptage local des tokens d'un gros prompt (BpeEncoder), résultat en tokens/s (compteur "tokens").
+ * - count : comptage seul (chemin du contrôle de fenêtre et de POST /api/chat/estimate)
+ * - encode : liste des rangs, pour comparaison
+ * Sans vocabulaire fourni, un vocabulaire synthétique est construit à partir du texte (sous-chaînes
+ * de 2 à 8 octets de chaque morceau) ; pour le vrai o200k :
+ *   mvn -Pjmh test-compile exec:exec -Djmh.args="Tokenizer -p vocab=/chemin/o200k_base.tiktoken -prof gc"
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TokenizerBenchmark {
+
+    /** Taille du prompt en caractères. */
+    @Param({"4000", "400000"})
+    public int chars;
+
+    /** Fichier .tiktoken (o200k_base) ; vide : vocabulaire synthétique. */
+    @Param({""})
+    public String vocab;
+
+    private BpeEncoder encoder;
+    private String prompt;
+
+    /** Tokens traités, rapportés par JMH en tokens/s. */
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Tokens {
+        public long tokens;
+    }
+
+    @Setup
+    public void setUp() throws IOException {
+        prompt = prompt(chars);
+        try (InputStream in = vocab.isEmpty()
+                ? new ByteArrayInputStream(syntheticVocabulary(prompt(4000)))
+                : Files.newInputStream(Path.of(vocab))) {
+            encoder = BpeEncoder.load("o200k_base", BpeEncoder.O200K_PATTERN, in);
+        }
+    }
+
+    @Benchmark
+    public int count(Tokens t) {
+        int n = encoder.count(prompt);
+        t.tokens += n;
+        return n;
+    }
+
+    @Benchmark
+    public int[] encode(Tokens t) {
+        int[] ids = encoder.encode(prompt);
+        t.tokens += ids.length;
+        return ids;
+    }
+
+    /** Prompt mêlant prose française, anglais, code et nombres, répété jusqu'à la taille voulue. */
+    static String prompt(int chars) {
+        String block = """
+                Compare les deux réponses suivantes et indique laquelle est la plus précise, en justifiant.
+                The service exposes /api/chat/send, /api/chat/compare and /api/chat/stream (SSE); latency p95 = 1234 ms.
+                public Mono<AiResult> generateReply(String userMessage, String model, Double temperature) {
+                    return route(resolveModel(model), payloadFor, usedMax, cacheKey); // 42 tokens/s
+                }
+                Réponse attendue : une synthèse claire, chiffrée (3,5 % d'erreurs en 2025), sans répétition.
+
+                """;
+        StringBuilder sb = new StringBuilder(chars + block.length());
+        while (sb.length() < chars) sb.append(block);
+        sb.setLength(chars);
+        return sb.toString();
+    }
+
+    /** 256 octets, puis les sous-chaînes de 2 à 8 octets des morceaux du texte, par longueur croissante. */
+    private static byte[] syntheticVocabulary(String text) {
+        Set<String> tokens = new LinkedHashSet<>();
+        Matcher m = BpeEncoder.O200K_PATTERN.matcher(text);
+        Set<String> pieces = new LinkedHashSet<>();
+        while (m.find()) pieces.add(m.group());
+        Base64.Encoder b64 = Base64.getEncoder();
+        StringBuilder out = new StringBuilder();
+        int rank = 0;
+        for (int i = 0; i < 256; i++) {
+            out.append(b64.encodeToString(new byte[]{(byte) i})).append(' ').append(rank++).append('\n');
+        }
+        for (int len = 2; len <= 8; len++) {
+            for (String piece : pieces) {
+                byte[] b = piece.getBytes(StandardCharsets.UTF_8);
+                for (int i = 0; i + len <= b.length; i++) {
+                    String token = b64.encodeToString(Arrays.copyOfRange(b, i, i + len));
+                    if (tokens.add(token)) out.append(token).append(' ').append(rank++).append('\n');
+                }
+            }
+        }
+        return out.toString().getBytes(StandardCharsets.US_ASCII);
+    }
+}
@@ -1,9 +1,14 @@
 package com.example.gptcompare_backend;
 
+import com.example.gptcompare_backend.config.NativeHints;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.context.properties.ConfigurationPropertiesScan;
+import org.springframework.context.annotation.ImportRuntimeHints;
 
 @SpringBootApplication
+@ConfigurationPropertiesScan
+@ImportRuntimeHints(NativeHints.class)
 public class GptCompareBackendApplication {
 
 	public static void main(String[] args) {
@@ -0,0 +1,55 @@
+package com.example.gptcompare_backend.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+import java.util.Map;
+
+/**
+ * Contrôle d'admission des requêtes /api/chat (bloc openai.admission.* de application.yml).
+ * - initialLimit / minLimit / maxLimit : requêtes traitées simultanément, limite ajustée en AIMD
+ * - queueSize / maxQueueWait : file d'attente courte ; pleine ou attente dépassée → HTTP 503
+ * - latencyTolerance : une latence au-delà de tolerance × latence de référence réduit la limite
+ * - backoffRatio : facteur de réduction (multiplicatif) ; la hausse est de +1 par limite d'appels réussis
+ * - retryAfter : valeur de l'en-tête Retry-After renvoyé avec le 503
+ * Classes de trafic (interactive / bulk) :
+ * - interactiveWeight / bulkWeight : part des places libérées quand les deux classes attendent
+ * - bulkMaxInflightRatio : part maximale de la limite occupée par le bulk (le reste reste libre pour l'interactif)
+ * - bulkQueueSize / bulkMaxQueueWait : file du bulk, plus longue (un script peut attendre)
+ * - starvationAge : bulk en attente sans être servi depuis ce délai → servi en priorité
+ * - clientWeights : poids par client (X-Client-Id) dans le partage équitable d'une classe, 1 par défaut
+ */
+@ConfigurationProperties(prefix = "openai.admission")
+public record AdmissionProperties(
+        @DefaultValue("true") boolean enabled,
+        @DefaultValue("64") int initialLimit,
+        @DefaultValue("8") int minLimit,
+        @DefaultValue("512") int maxLimit,
+        @DefaultValue("128") int queueSize,
+        @DefaultValue("1s") Duration maxQueueWait,
+        @DefaultValue("2.0") double latencyTolerance,
+        @DefaultValue("0.9") double backoffRatio,
+        @DefaultValue("1s") Duration retryAfter,
+        @DefaultValue("8") int interactiveWeight,
+        @DefaultValue("1") int bulkWeight,
+        @DefaultValue("0.5") double bulkMaxInflightRatio,
+        @DefaultValue("1024") int bulkQueueSize,
+        @DefaultValue("30s") Duration bulkMaxQueueWait,
+        @DefaultValue("2s") Duration starvationAge,
+        @DefaultValue Map<String, Integer> clientWeights
+) {
+
+    public AdmissionProperties {
+        clientWeights = clientWeights == null ? Map.of() : Map.copyOf(clientWeights);
+    }
+
+    public static AdmissionProperties disabled() {
+        return new AdmissionProperties(false, 1, 1, 1, 0, Duration.ZERO, 2.0, 0.9, Duration.ofSeconds(1),
+                1, 1, 1.0, 0, Duration.ZERO, Duration.ZERO, Map.of());
+    }
+
+    public int clientWeight(String client) {
+        return Math.max(1, clientWeights.getOrDefault(client, 1));
+    }
+}
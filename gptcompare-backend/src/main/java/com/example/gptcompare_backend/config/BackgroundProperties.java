@@ -0,0 +1,41 @@
+package com.example.gptcompare_backend.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Requêtes longues en mode job (bloc openai.background.* de application.yml) : POST /api/chat/jobs rend
+ * un id tout de suite, la réponse est lancée en mode background chez OpenAI puis interrogée périodiquement.
+ * - enabled : false → pas de mode background OpenAI, le job exécute l'appel habituel en arrière-plan
+ * - initialPollInterval / maxPollInterval / backoffMultiplier : intervalle entre deux interrogations,
+ *   multiplié à chaque réponse encore en cours, plafonné
+ * - maxConcurrentPolls : interrogations simultanées, tous jobs confondus
+ * - maxDuration : durée max d'un job (au-delà, annulé chez OpenAI, statut "expired")
+ * - maxJobs : jobs en cours au plus ; au-delà HTTP 503
+ * - retention : durée de conservation d'un job terminé (GET /api/chat/jobs/{id})
+ */
+@ConfigurationProperties(prefix = "openai.background")
+public record BackgroundProperties(
+        @DefaultValue("true") boolean enabled,
+        @DefaultValue("1s") Duration initialPollInterval,
+        @DefaultValue("15s") Duration maxPollInterval,
+        @DefaultValue("1.5") double backoffMultiplier,
+        @DefaultValue("32") int maxConcurrentPolls,
+        @DefaultValue("30m") Duration maxDuration,
+        @DefaultValue("10000") int maxJobs,
+        @DefaultValue("15m") Duration retention
+) {
+
+    public static BackgroundProperties disabled() {
+        return new BackgroundProperties(false, Duration.ofSeconds(1), Duration.ofSeconds(15), 1.5, 1,
+                Duration.ofSeconds(60), 1000, Duration.ofMinutes(15));
+    }
+
+    /** Intervalle suivant : précédent × backoffMultiplier, plafonné par maxPollInterval. */
+    public Duration nextPollInterval(Duration previous) {
+        Duration next = Duration.ofMillis((long) (previous.toMillis() * Math.max(1.0, backoffMultiplier)));
+        return next.compareTo(maxPollInterval) > 0 ? maxPollInterval : next;
+    }
+}
@@ -0,0 +1,36 @@
+package com.example.gptcompare_backend.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+import java.util.Map;
+
+/**
+ * Disjoncteur par modèle (bloc openai.circuit-breaker.* de application.yml).
+ * - windowSize / minimumCalls : fenêtre glissante des derniers appels, et minimum avant d'évaluer
+ * - failureRateThreshold : part d'échecs (5xx, 429, réseau, timeout) qui ouvre le circuit
+ * - slowCallDuration / slowCallRateThreshold : idem pour les appels lents
+ * - waitInOpen : durée d'ouverture avant les appels de test (half-open)
+ * - halfOpenCalls : appels de test ; tous réussis → fermé, un échec → rouvert
+ * - fallbacks : modèle de repli quand le circuit est ouvert (clé exacte ou préfixe)
+ * - maxModels : disjoncteurs gardés en mémoire (un circuit fermé est oublié en premier au-delà)
+ */
+@ConfigurationProperties(prefix = "openai.circuit-breaker")
+public record CircuitBreakerProperties(
+        @DefaultValue("true") boolean enabled,
+        @DefaultValue("20") int windowSize,
+        @DefaultValue("10") int minimumCalls,
+        @DefaultValue("0.5") double failureRateThreshold,
+        @DefaultValue("20s") Duration slowCallDuration,
+        @DefaultValue("0.8") double slowCallRateThreshold,
+        @DefaultValue("30s") Duration waitInOpen,
+        @DefaultValue("3") int halfOpenCalls,
+        Map<String, String> fallbacks,
+        @DefaultValue("1000") int maxModels
+) {
+
+    public static CircuitBreakerProperties disabled() {
+        return new CircuitBreakerProperties(false, 1, 1, 1, Duration.ZERO, 1, Duration.ZERO, 1, Map.of(), 1);
+    }
+}
@@ -0,0 +1,25 @@
+package com.example.gptcompare_backend.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Deadline d'une requête /api/chat (bloc openai.deadline.* de application.yml).
+ * Le client peut la raccourcir (champ timeoutMs ou en-tête X-Request-Timeout-Ms), jamais dépasser max.
+ * - defaultTimeout : deadline sans indication du client
+ * - max : plafond imposé par le serveur
+ */
+@ConfigurationProperties(prefix = "openai.deadline")
+public record DeadlineProperties(
+        @DefaultValue("60s") Duration defaultTimeout,
+        @DefaultValue("60s") Duration max
+) {
+
+    /** Durée accordée à une requête : demande du client (si > 0) plafonnée, sinon la valeur par défaut. */
+    public Duration resolve(Long requestedMs) {
+        Duration wanted = requestedMs == null || requestedMs <= 0 ? defaultTimeout : Duration.ofMillis(requestedMs);
+        return wanted.compareTo(max) > 0 ? max : wanted;
+    }
+}
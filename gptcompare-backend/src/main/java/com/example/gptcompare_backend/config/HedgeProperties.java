@@ -0,0 +1,34 @@
+package com.example.gptcompare_backend.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Requêtes "hedgées" (bloc openai.hedge.* de application.yml) : si un essai n'a pas répondu après
+ * le percentile de latence récent du modèle, un second essai identique est lancé ; le premier
+ * qui répond gagne, l'autre est annulé. Appels non-streaming uniquement.
+ * - percentile : seuil de déclenchement (ex: 0.95 → au plus ~5% d'appels doublés en régime normal)
+ * - minDelay / maxDelay : bornes du délai calculé
+ * - windowSize / minSamples : latences récentes conservées par modèle, et minimum avant de hedger
+ * - maxHedgeRate / burst : budget (seau à jetons) : chaque appel crédite maxHedgeRate, un hedge coûte 1
+ * - maxModels : fenêtres de latence gardées en mémoire (la moins récemment utilisée est oubliée au-delà)
+ */
+@ConfigurationProperties(prefix = "openai.hedge")
+public record HedgeProperties(
+        @DefaultValue("false") boolean enabled,
+        @DefaultValue("0.95") double percentile,
+        @DefaultValue("200ms") Duration minDelay,
+        @DefaultValue("30s") Duration maxDelay,
+        @DefaultValue("200") int windowSize,
+        @DefaultValue("20") int minSamples,
+        @DefaultValue("0.05") double maxHedgeRate,
+        @DefaultValue("5") int burst,
+        @DefaultValue("1000") int maxModels
+) {
+
+    public static HedgeProperties disabled() {
+        return new HedgeProperties(false, 0.95, Duration.ZERO, Duration.ZERO, 1, 1, 0, 0, 1);
+    }
+}
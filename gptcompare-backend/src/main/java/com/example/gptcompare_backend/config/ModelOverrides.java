@@ -0,0 +1,25 @@
+package com.example.gptcompare_backend.config;
+
+import java.util.Map;
+
+/**
+ * Résolution des surcharges "par modèle" des blocs de configuration :
+ * clé exacte, sinon plus long préfixe (ex: "gpt-5" s'applique à "gpt-5-mini").
+ */
+public final class ModelOverrides {
+
+    private ModelOverrides() {}
+
+    public static <T> T find(Map<String, T> overrides, String model) {
+        if (overrides == null || model == null) return null;
+        T best = null;
+        int bestLen = -1;
+        for (Map.Entry<String, T> e : overrides.entrySet()) {
+            if (model.startsWith(e.getKey()) && e.getKey().length() > bestLen) {
+                best = e.getValue();
+                bestLen = e.getKey().length();
+            }
+        }
+        return best;
+    }
+}
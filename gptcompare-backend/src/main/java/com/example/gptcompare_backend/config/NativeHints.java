@@ -0,0 +1,55 @@
+package com.example.gptcompare_backend.config;
+
+import com.example.gptcompare_backend.dto.BatchEvent;
+import com.example.gptcompare_backend.dto.ChatRequest;
+import com.example.gptcompare_backend.dto.ChatResponse;
+import com.example.gptcompare_backend.dto.CompareRequest;
+import com.example.gptcompare_backend.dto.CompareResponse;
+import com.example.gptcompare_backend.dto.JobResponse;
+import com.example.gptcompare_backend.dto.ModelSettings;
+import com.example.gptcompare_backend.service.AdmissionLimiter;
+import com.example.gptcompare_backend.service.BackgroundJobService;
+import com.example.gptcompare_backend.service.BatchService;
+import com.example.gptcompare_backend.service.HedgePolicy;
+import com.example.gptcompare_backend.service.LatencyPhases;
+import com.example.gptcompare_backend.service.ModelCircuitBreaker;
+import com.example.gptcompare_backend.service.ModelRateLimiter;
+import com.example.gptcompare_backend.service.ProviderRegistry;
+import com.example.gptcompare_backend.service.ResponseCache;
+import com.example.gptcompare_backend.service.ResultStore;
+import com.example.gptcompare_backend.service.SessionService;
+import com.example.gptcompare_backend.service.SingleFlight;
+import com.example.gptcompare_backend.service.Tokenizer;
+import com.example.gptcompare_backend.service.UpstreamMetrics;
+import org.springframework.aot.hint.BindingReflectionHintsRegistrar;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.RuntimeHintsRegistrar;
+
+/**
+ * Indices de réflexion pour l'image native (mvn -Pnative) : types lus ou écrits par Jackson.
+ * L'analyse AOT des controllers ne voit pas tout : données SSE typées Object (ChatResponse),
+ * parts multipart et NDJSON du batch, vues JSON enveloppées dans Map / List / ResponseEntity.
+ * Tout nouveau type exposé en JSON doit être ajouté ici (cf. NativeHintsTest).
+ */
+public class NativeHints implements RuntimeHintsRegistrar {
+
+    static final Class<?>[] JSON_TYPES = {
+            // DTO de l'API
+            ChatRequest.class, ChatResponse.class, CompareRequest.class, CompareResponse.class,
+            ModelSettings.class, BatchEvent.class, BatchEvent.Progress.class, BatchEvent.ModelSummary.class,
+            JobResponse.class,
+            // vues de supervision / historique
+            AdmissionLimiter.AdmissionStats.class, AdmissionLimiter.ClassStats.class,
+            HedgePolicy.HedgeStats.class, SessionService.SessionStats.class,
+            ProviderRegistry.ProviderInfo.class, UpstreamPoolMetrics.PoolStats.class, ResponseCache.CacheStats.class,
+            SingleFlight.Stats.class, ModelRateLimiter.ModelStats.class, ModelCircuitBreaker.BreakerStats.class,
+            BatchService.Progress.class, ResultStore.Page.class, ResultStore.Entry.class,
+            ResultStore.ModelAggregate.class, ResultStore.WriterStats.class, UpstreamMetrics.PromptCacheStats.class,
+            Tokenizer.Estimate.class, BackgroundJobService.JobStats.class, LatencyPhases.Breakdown.class
+    };
+
+    @Override
+    public void registerHints(RuntimeHints hints, ClassLoader classLoader) {
+        new BindingReflectionHintsRegistrar().registerReflectionHints(hints.reflection(), JSON_TYPES);
+    }
+}
@@ -0,0 +1,67 @@
+package com.example.gptcompare_backend.config;
+
+import com.example.gptcompare_backend.service.LatencyPhases;
+import io.netty.channel.ChannelOption;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+/**
+ * Client HTTP partagé vers OpenAI : pool de connexions dédié et borné,
+ * keep-alive, timeouts réseau et HTTP/2 quand l'amont est en https.
+ */
+@Configuration
+public class OpenAIHttpConfig {
+
+    /** Nom du pool (visible dans les logs Reactor Netty). */
+    static final String POOL_NAME = "openai";
+
+    @Bean
+    public UpstreamPoolMetrics upstreamPoolMetrics() {
+        return new UpstreamPoolMetrics();
+    }
+
+    @Bean(destroyMethod = "dispose")
+    public ConnectionProvider openAiConnectionProvider(OpenAIHttpProperties props, UpstreamPoolMetrics metrics) {
+        return connectionProvider(props, metrics);
+    }
+
+    @Bean
+    public HttpClient openAiHttpClient(ConnectionProvider openAiConnectionProvider, OpenAIHttpProperties props,
+                                       @Value("${openai.api.url}") String apiUrl) {
+        return httpClient(openAiConnectionProvider, props, apiUrl.startsWith("https"));
+    }
+
+    public static ConnectionProvider connectionProvider(OpenAIHttpProperties props, UpstreamPoolMetrics metrics) {
+        return ConnectionProvider.builder(POOL_NAME)
+                .maxConnections(props.maxConnections())
+                .pendingAcquireMaxCount(props.pendingAcquireMaxCount())
+                .pendingAcquireTimeout(props.pendingAcquireTimeout())
+                .maxIdleTime(props.maxIdleTime())
+                .maxLifeTime(props.maxLifeTime())
+                .evictInBackground(props.evictInBackground())
+                .metrics(true, () -> metrics)
+                .build();
+    }
+
+    /**
+     * HTTP/2 n'est activé qu'en https : la négociation passe par ALPN,
+     * et si l'amont ne le propose pas on retombe sur HTTP/1.1.
+     * Le client est instrumenté par LatencyPhases (phases connect, TLS, envoi, en-têtes de chaque essai).
+     */
+    public static HttpClient httpClient(ConnectionProvider provider, OpenAIHttpProperties props, boolean secure) {
+        HttpClient client = HttpClient.create(provider)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) props.connectTimeout().toMillis())
+                .option(ChannelOption.SO_KEEPALIVE, props.keepAlive())
+                .keepAlive(props.keepAlive())
+                .responseTimeout(props.responseTimeout());
+
+        if (secure && props.http2()) {
+            client = client.protocol(HttpProtocol.H2, HttpProtocol.HTTP11).secure();
+        }
+        return LatencyPhases.observe(client);
+    }
+}
@@ -0,0 +1,27 @@
+package com.example.gptcompare_backend.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Réglages du client HTTP vers l'API OpenAI (bloc openai.http.* de application.yml).
+ * - maxConnections / pendingAcquire* : taille du pool et de sa file d'attente
+ * - maxIdleTime / maxLifeTime / evictInBackground : recyclage des connexions
+ * - connectTimeout / responseTimeout : délais réseau (responseTimeout = inactivité entre deux lectures)
+ * - http2 : multiplexage HTTP/2 (négocié via ALPN, donc seulement en https)
+ */
+@ConfigurationProperties(prefix = "openai.http")
+public record OpenAIHttpProperties(
+        @DefaultValue("50") int maxConnections,
+        @DefaultValue("200") int pendingAcquireMaxCount,
+        @DefaultValue("5s") Duration pendingAcquireTimeout,
+        @DefaultValue("30s") Duration maxIdleTime,
+        @DefaultValue("5m") Duration maxLifeTime,
+        @DefaultValue("30s") Duration evictInBackground,
+        @DefaultValue("5s") Duration connectTimeout,
+        @DefaultValue("60s") Duration responseTimeout,
+        @DefaultValue("true") boolean keepAlive,
+        @DefaultValue("true") boolean http2
+) {}
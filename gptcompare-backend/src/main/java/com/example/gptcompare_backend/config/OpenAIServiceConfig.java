@@ -0,0 +1,83 @@
+package com.example.gptcompare_backend.config;
+
+import com.example.gptcompare_backend.service.HedgePolicy;
+import com.example.gptcompare_backend.service.ModelCircuitBreaker;
+import com.example.gptcompare_backend.service.ModelKeys;
+import com.example.gptcompare_backend.service.ModelRateLimiter;
+import com.example.gptcompare_backend.service.OpenAIService;
+import com.example.gptcompare_backend.service.ResponseCache;
+import com.example.gptcompare_backend.service.RetryPolicy;
+import com.example.gptcompare_backend.service.Tokenizer;
+import com.example.gptcompare_backend.service.UpstreamMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import reactor.netty.http.client.HttpClient;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Assemblage d'OpenAIService : chaque composant du contexte est branché dans OpenAIService.Dependencies
+ * (hors Spring, les tests ne renseignent que ceux qu'ils exercent).
+ */
+@Configuration
+public class OpenAIServiceConfig {
+
+    @Bean
+    public OpenAIService.Dependencies openAIServiceDependencies(
+            HttpClient openAiHttpClient,
+            ResponseCache responseCache,
+            @Value("${openai.single-flight.enabled:true}") boolean singleFlightEnabled,
+            RetryPolicy retryPolicy,
+            ModelRateLimiter rateLimiter,
+            ModelCircuitBreaker circuitBreaker,
+            UpstreamMetrics metrics,
+            HedgePolicy hedgePolicy,
+            PromptCacheProperties promptCache,
+            Tokenizer tokenizer
+    ) {
+        return OpenAIService.Dependencies.defaults()
+                .httpClient(openAiHttpClient)
+                .responseCache(responseCache)
+                .singleFlight(singleFlightEnabled)
+                .retryPolicy(retryPolicy)
+                .rateLimiter(rateLimiter)
+                .circuitBreaker(circuitBreaker)
+                .metrics(metrics)
+                .hedgePolicy(hedgePolicy)
+                .promptCache(promptCache)
+                .tokenizer(tokenizer);
+    }
+
+    /**
+     * Tag model des métriques : le modèle par défaut et ceux cités dans la configuration, plus au plus
+     * maxTrackedModels modèles ayant déjà répondu (limiteur, disjoncteur et hedging bornent leurs états eux-mêmes).
+     */
+    @Bean
+    public ModelKeys modelKeys(
+            @Value("${openai.api.model}") String defaultModel,
+            @Value("${openai.metrics.max-tracked-models:100}") int maxTrackedModels,
+            RetryProperties retry,
+            RateLimitProperties rateLimit,
+            CircuitBreakerProperties circuitBreaker,
+            TokenizerProperties tokenizer
+    ) {
+        Set<String> configured = new HashSet<>();
+        configured.add(defaultModel);
+        addKeys(configured, retry.models());
+        addKeys(configured, rateLimit.models());
+        addKeys(configured, circuitBreaker.fallbacks());
+        if (circuitBreaker.fallbacks() != null) configured.addAll(circuitBreaker.fallbacks().values());
+        addKeys(configured, tokenizer.encodings());
+        addKeys(configured, tokenizer.contextWindows());
+        configured.removeIf(Objects::isNull);
+        return new ModelKeys(configured, maxTrackedModels);
+    }
+
+    private static void addKeys(Set<String> configured, Map<String, ?> models) {
+        if (models != null) configured.addAll(models.keySet());
+    }
+}
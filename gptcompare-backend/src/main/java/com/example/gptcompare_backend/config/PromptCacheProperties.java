@@ -0,0 +1,54 @@
+package com.example.gptcompare_backend.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * Cache de préfixe côté OpenAI (bloc openai.prompt-cache.* de application.yml). Le fournisseur réutilise
+ * le début d'un prompt déjà vu (à partir de ~1024 tokens identiques) : latence et coût d'entrée réduits.
+ * - keyPrefix : début du prompt_cache_key envoyé ; la clé complète ajoute une empreinte des instructions,
+ *   elle reste donc stable tant que le préfixe partagé ne change pas (routage vers le même cache)
+ * - instructions : consignes communes à tous les appels, envoyées dans le champ instructions,
+ *   toujours placé avant l'historique et le message (partie statique en tête du prompt)
+ */
+@ConfigurationProperties(prefix = "openai.prompt-cache")
+public record PromptCacheProperties(
+        @DefaultValue("true") boolean enabled,
+        @DefaultValue("gptcompare") String keyPrefix,
+        @DefaultValue("") String instructions
+) {
+
+    /** Longueur max acceptée pour prompt_cache_key. */
+    private static final int MAX_KEY_LENGTH = 64;
+
+    public static PromptCacheProperties disabled() {
+        return new PromptCacheProperties(false, "", "");
+    }
+
+    /** Instructions communes, null si aucune. */
+    public String sharedInstructions() {
+        return instructions == null || instructions.isBlank() ? null : instructions;
+    }
+
+    /** prompt_cache_key : "keyPrefix-empreinte des instructions", null si désactivé. */
+    public String cacheKey() {
+        if (!enabled) return null;
+        String hash = sha256(instructions == null ? "" : instructions).substring(0, 16);
+        String prefix = keyPrefix == null || keyPrefix.isBlank() ? "gptcompare" : keyPrefix;
+        return prefix.substring(0, Math.min(prefix.length(), MAX_KEY_LENGTH - hash.length() - 1)) + '-' + hash;
+    }
+
+    private static String sha256(String s) {
+        try {
+            return HexFormat.of().formatHex(
+                    MessageDigest.getInstance("SHA-256").digest(s.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.example.gptcompare_backend.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+import java.util.Map;
+
+/**
+ * Fournisseurs de modèles en plus d'OpenAI (bloc providers.* de application.yml).
+ * Un modèle "nom:modèle" est routé vers le fournisseur "nom" ; sans préfixe connu → OpenAI (Responses).
+ * - chatCompletions : serveurs compatibles /v1/chat/completions (llama.cpp, vLLM...), clé = nom du fournisseur
+ * - stub : fournisseur intégré déterministe (aucun appel réseau), pour les tests de charge hors ligne
+ */
+@ConfigurationProperties(prefix = "providers")
+public record ProvidersProperties(
+        Map<String, ChatCompletionsEndpoint> chatCompletions,
+        @DefaultValue Stub stub
+) {
+
+    /**
+     * Endpoint compatible Chat Completions.
+     * - url : URL complète de /v1/chat/completions
+     * - apiKey : jeton Bearer (optionnel pour un serveur local)
+     * - timeout : délai max d'un appel
+     */
+    public record ChatCompletionsEndpoint(
+            String url,
+            String apiKey,
+            @DefaultValue("60s") Duration timeout
+    ) {}
+
+    /**
+     * Fournisseur "stub" : réponse synthétique reproductible (même requête → même réponse).
+     * - ttftMedian / ttftSigma : délai avant le premier token, loi log-normale (sigma 0 = constant)
+     * - outputTokensMean / outputTokensStdDev : longueur de réponse, loi normale bornée à maxOutputTokens
+     * - tokensPerSecond : débit de génération (0 = instantané)
+     * - seed : graine commune, pour changer de jeu de tirages
+     */
+    public record Stub(
+            @DefaultValue("true") boolean enabled,
+            @DefaultValue("150ms") Duration ttftMedian,
+            @DefaultValue("0.5") double ttftSigma,
+            @DefaultValue("200") int outputTokensMean,
+            @DefaultValue("60") int outputTokensStdDev,
+            @DefaultValue("100") double tokensPerSecond,
+            @DefaultValue("42") long seed
+    ) {}
+}
@@ -0,0 +1,36 @@
+package com.example.gptcompare_backend.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+import java.util.Map;
+
+/**
+ * Limiteur côté client, par modèle (bloc openai.rate-limit.* de application.yml).
+ * - requestsPerMinute / tokensPerMinute : seaux à jetons rechargés en continu
+ * - maxConcurrent : appels simultanés max vers l'API pour un modèle
+ * - maxWait : attente max d'un budget ; au-delà la requête est rejetée (HTTP 429)
+ * - bulkStarvationAge : une requête bulk en attente d'une place depuis ce délai passe avant l'interactif
+ * - models : surcharges par modèle ou préfixe de modèle
+ * - maxModels : budgets gardés en mémoire (le moins récemment utilisé est oublié au-delà)
+ */
+@ConfigurationProperties(prefix = "openai.rate-limit")
+public record RateLimitProperties(
+        @DefaultValue("true") boolean enabled,
+        @DefaultValue("500") int requestsPerMinute,
+        @DefaultValue("200000") long tokensPerMinute,
+        @DefaultValue("20") int maxConcurrent,
+        @DefaultValue("2s") Duration maxWait,
+        @DefaultValue("2s") Duration bulkStarvationAge,
+        Map<String, ModelLimits> models,
+        @DefaultValue("1000") int maxModels
+) {
+
+    /** Surcharge par modèle : un champ absent reprend la valeur globale. */
+    public record ModelLimits(Integer requestsPerMinute, Long tokensPerMinute, Integer maxConcurrent) {}
+
+    public static RateLimitProperties disabled() {
+        return new RateLimitProperties(false, 0, 0, 0, Duration.ZERO, Duration.ZERO, Map.of(), 1);
+    }
+}
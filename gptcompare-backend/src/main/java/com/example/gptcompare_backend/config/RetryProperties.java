@@ -0,0 +1,35 @@
+package com.example.gptcompare_backend.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Politique de relance des appels OpenAI (bloc openai.retry.* de application.yml).
+ * - maxRetries : relances max après le premier essai
+ * - initialBackoff / maxBackoff : backoff exponentiel borné (doublé à chaque relance)
+ * - jitter : part aléatoire retirée du backoff (0 = aucun, 1 = "full jitter")
+ * - retryableStatuses : codes HTTP considérés transitoires (les échecs de connexion le sont toujours)
+ * - models : surcharges par modèle ou préfixe de modèle (ex: "gpt-5")
+ */
+@ConfigurationProperties(prefix = "openai.retry")
+public record RetryProperties(
+        @DefaultValue("true") boolean enabled,
+        @DefaultValue("3") int maxRetries,
+        @DefaultValue("250ms") Duration initialBackoff,
+        @DefaultValue("8s") Duration maxBackoff,
+        @DefaultValue("0.5") double jitter,
+        @DefaultValue({"429", "500", "502", "503", "504"}) Set<Integer> retryableStatuses,
+        Map<String, ModelRetry> models
+) {
+
+    /** Surcharge par modèle : un champ absent reprend la valeur globale. */
+    public record ModelRetry(Integer maxRetries, Duration initialBackoff, Duration maxBackoff) {}
+
+    public static RetryProperties disabled() {
+        return new RetryProperties(false, 0, Duration.ZERO, Duration.ZERO, 0, Set.of(), Map.of());
+    }
+}
@@ -0,0 +1,40 @@
+package com.example.gptcompare_backend.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.util.Map;
+
+/**
+ * Comptage local des tokens avant envoi (bloc openai.tokenizer.* de application.yml).
+ * - vocabularyLocation : dossier des fichiers {encodage}.tiktoken (classpath: ou file:) ;
+ *   fichier absent → estimation approchée (même pré-découpage, ~4 octets par token)
+ * - defaultEncoding / encodings : encodage par modèle ou préfixe (o200k_base, cl100k_base)
+ * - defaultContextWindow / contextWindows : fenêtre de contexte (entrée + sortie) par modèle ou préfixe
+ * - minOutputTokens : place minimale laissée à la réponse, sinon le prompt est refusé sans appel
+ */
+@ConfigurationProperties(prefix = "openai.tokenizer")
+public record TokenizerProperties(
+        @DefaultValue("true") boolean enabled,
+        @DefaultValue("classpath:tokenizer/") String vocabularyLocation,
+        @DefaultValue("o200k_base") String defaultEncoding,
+        Map<String, String> encodings,
+        @DefaultValue("128000") int defaultContextWindow,
+        Map<String, Integer> contextWindows,
+        @DefaultValue("16") int minOutputTokens
+) {
+
+    public static TokenizerProperties disabled() {
+        return new TokenizerProperties(false, "", "o200k_base", Map.of(), 0, Map.of(), 0);
+    }
+
+    public String encodingFor(String model) {
+        String encoding = ModelOverrides.find(encodings, model);
+        return encoding != null ? encoding : defaultEncoding;
+    }
+
+    public int contextWindowFor(String model) {
+        Integer window = ModelOverrides.find(contextWindows, model);
+        return window != null ? window : defaultContextWindow;
+    }
+}
@@ -0,0 +1,53 @@
+package com.example.gptcompare_backend.config;
+
+import reactor.netty.resources.ConnectionPoolMetrics;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.net.SocketAddress;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Collecte les métriques du pool de connexions amont (un pool par adresse distante).
+ * Reactor Netty nous passe un ConnectionPoolMetrics "vivant" : snapshot() lit les valeurs courantes.
+ */
+public class UpstreamPoolMetrics implements ConnectionProvider.MeterRegistrar {
+
+    /**
+     * Vue agrégée (toutes adresses confondues).
+     * - active : connexions empruntées (requêtes en vol)
+     * - idle : connexions ouvertes disponibles
+     * - pendingAcquires : requêtes en attente d'une connexion
+     */
+    public record PoolStats(int active, int idle, int allocated, int pendingAcquires,
+                            int maxConnections, int maxPendingAcquires) {}
+
+    private final Map<String, ConnectionPoolMetrics> pools = new ConcurrentHashMap<>();
+
+    @Override
+    public void registerMetrics(String poolName, String id, SocketAddress remoteAddress, ConnectionPoolMetrics metrics) {
+        pools.put(key(poolName, id, remoteAddress), metrics);
+    }
+
+    @Override
+    public void deRegisterMetrics(String poolName, String id, SocketAddress remoteAddress) {
+        pools.remove(key(poolName, id, remoteAddress));
+    }
+
+    public PoolStats snapshot() {
+        int active = 0, idle = 0, allocated = 0, pending = 0, max = 0, maxPending = 0;
+        for (ConnectionPoolMetrics m : pools.values()) {
+            active += m.acquiredSize();
+            idle += m.idleSize();
+            allocated += m.allocatedSize();
+            pending += m.pendingAcquireSize();
+            max += m.maxAllocatedSize();
+            maxPending += m.maxPendingAcquireSize();
+        }
+        return new PoolStats(active, idle, allocated, pending, max, maxPending);
+    }
+
+    private static String key(String poolName, String id, SocketAddress remoteAddress) {
+        return poolName + "|" + id + "|" + remoteAddress;
+    }
+}
@@ -0,0 +1,83 @@
+package com.example.gptcompare_backend.controller;
+
+import com.example.gptcompare_backend.dto.BatchEvent;
+import com.example.gptcompare_backend.dto.ModelSettings;
+import com.example.gptcompare_backend.service.BatchService;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.multipart.Part;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+/**
+ * Évaluation par lots :
+ * - POST /api/batch (multipart) : part "prompts" = fichier JSONL, part "models" = [ModelSettings...]
+ *   → flux NDJSON d'évènements BatchEvent au fil des résultats, puis un "summary"
+ * - GET /api/batch/{id} : avancement ; DELETE /api/batch/{id} : annulation
+ */
+@RestController
+@RequestMapping("/api/batch")
+@CrossOrigin(origins = "http://localhost:4200")
+public class BatchController {
+
+    public static final String BATCH_ID_HEADER = "X-Batch-Id";
+
+    private final BatchService batchService;
+
+    public BatchController(BatchService batchService) {
+        this.batchService = batchService;
+    }
+
+    @PostMapping(consumes = MediaType.MULTIPART_FORM_DATA_VALUE, produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<Flux<BatchEvent>> run(@RequestPart("prompts") Part prompts,
+                                                @RequestPart("models") List<ModelSettings> models) {
+        String batchId = BatchService.newBatchId();
+        if (models == null || models.isEmpty() || models.size() > batchService.getMaxModels()) {
+            return ResponseEntity.badRequest().body(Flux.just(new BatchEvent("error", batchId,
+                    "Entre 1 et " + batchService.getMaxModels() + " modèles attendus.")));
+        }
+
+        Flux<BatchEvent> events = batchService.run(batchId, BatchService.lines(prompts.content()), models)
+                .map(BatchController::toEvent);
+        return ResponseEntity.ok().header(BATCH_ID_HEADER, batchId).body(events);
+    }
+
+    @GetMapping("/{id}")
+    public Mono<ResponseEntity<BatchService.Progress>> progress(@PathVariable String id) {
+        return Mono.fromSupplier(() -> batchService.progress(id))
+                .map(ResponseEntity::ok)
+                .defaultIfEmpty(ResponseEntity.notFound().build());
+    }
+
+    @DeleteMapping("/{id}")
+    public Mono<ResponseEntity<Void>> cancel(@PathVariable String id) {
+        return Mono.fromSupplier(() -> batchService.cancel(id)
+                ? ResponseEntity.accepted().<Void>build()
+                : ResponseEntity.notFound().<Void>build());
+    }
+
+    private static BatchEvent toEvent(BatchService.LegResult e) {
+        BatchEvent out = new BatchEvent(e.type(), e.batchId(), e.error());
+        out.setIndex(e.index());
+        out.setPromptId(e.promptId());
+        out.setModel(e.model());
+        out.setResult(e.result() == null ? null : ChatController.toResponse(e.result()));
+        out.setProgress(toProgress(e.progress()));
+        out.setSummary(e.summary() == null ? null : e.summary().stream().map(BatchController::toSummary).toList());
+        return out;
+    }
+
+    private static BatchEvent.Progress toProgress(BatchService.Progress p) {
+        return p == null ? null : new BatchEvent.Progress(p.batchId(), p.prompts(), p.completed(), p.failed(),
+                p.inFlight(), p.cancelled());
+    }
+
+    private static BatchEvent.ModelSummary toSummary(BatchService.ModelSummary s) {
+        return new BatchEvent.ModelSummary(s.model(), s.temperature(), s.maxOutputTokens(), s.calls(), s.failed(),
+                s.truncated(), s.meanLatencyMs(), s.p50LatencyMs(), s.p95LatencyMs(), s.maxLatencyMs(),
+                s.inputTokens(), s.outputTokens(), s.totalTokens());
+    }
+}
@@ -1,30 +1,117 @@
 package com.example.gptcompare_backend.controller;
 
+import com.example.gptcompare_backend.config.DeadlineProperties;
+import com.example.gptcompare_backend.config.UpstreamPoolMetrics;
 import com.example.gptcompare_backend.dto.ChatRequest;
 import com.example.gptcompare_backend.dto.ChatResponse;
-import com.example.gptcompare_backend.service.OpenAIService;
+import com.example.gptcompare_backend.dto.CompareRequest;
+import com.example.gptcompare_backend.dto.CompareResponse;
+import com.example.gptcompare_backend.dto.JobResponse;
+import com.example.gptcompare_backend.dto.ModelSettings;
+import com.example.gptcompare_backend.service.AdmissionLimiter;
+import com.example.gptcompare_backend.service.BackgroundJobService;
+import com.example.gptcompare_backend.service.ChatProvider;
+import com.example.gptcompare_backend.service.CompareService;
+import com.example.gptcompare_backend.service.HedgePolicy;
+import com.example.gptcompare_backend.service.ModelCircuitBreaker;
+import com.example.gptcompare_backend.service.ModelRateLimiter;
+import com.example.gptcompare_backend.service.OpenAIService.AiResult;
+import com.example.gptcompare_backend.service.ProviderRegistry;
+import com.example.gptcompare_backend.service.OverloadedException;
+import com.example.gptcompare_backend.service.RateLimitExceededException;
+import com.example.gptcompare_backend.service.RequestDeadline;
+import com.example.gptcompare_backend.service.RequestPriority;
+import com.example.gptcompare_backend.service.ResponseCache;
+import com.example.gptcompare_backend.service.ResultStore;
+import com.example.gptcompare_backend.service.SessionService;
+import com.example.gptcompare_backend.service.SingleFlight;
+import com.example.gptcompare_backend.service.Tokenizer;
+import com.example.gptcompare_backend.service.UpstreamMetrics;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.http.server.reactive.ServerHttpRequest;
 import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.List;
+import java.util.Map;
+
 @RestController
 @RequestMapping("/api/chat")
 @CrossOrigin(origins = "http://localhost:4200")
 public class ChatController {
 
-    private final OpenAIService openAIService;
+    private final ProviderRegistry providers;
+    private final CompareService compareService;
+    private final UpstreamPoolMetrics poolMetrics;
+    private final ResponseCache responseCache;
+    private final ModelRateLimiter rateLimiter;
+    private final ModelCircuitBreaker circuitBreaker;
+    private final ResultStore resultStore;
+    private final SessionService sessions;
+    private final AdmissionLimiter admission;
+    private final DeadlineProperties deadlines;
+    private final UpstreamMetrics upstreamMetrics;
+    private final BackgroundJobService jobs;
+
+    /** Délai max accepté par le client (ms), alternative au champ timeoutMs. */
+    public static final String TIMEOUT_HEADER = "X-Request-Timeout-Ms";
+
+    /** Classe de trafic ("interactive" ou "bulk"), alternative au champ priority. */
+    public static final String PRIORITY_HEADER = "X-Priority";
+
+    /** Identifiant du client pour le partage équitable de la file d'admission (sinon adresse IP). */
+    public static final String CLIENT_HEADER = "X-Client-Id";
+
+    /** Borne d'un sessionId fourni par le client. */
+    private static final int MAX_SESSION_ID_LENGTH = 128;
+
+    private static final String EMPTY_MESSAGE = "Message vide.";
+    private static final String INVALID_SESSION = "sessionId invalide.";
 
-    public ChatController(OpenAIService openAIService) {
-        this.openAIService = openAIService;
+    public ChatController(ProviderRegistry providers, CompareService compareService,
+                          UpstreamPoolMetrics poolMetrics, ResponseCache responseCache,
+                          ModelRateLimiter rateLimiter, ModelCircuitBreaker circuitBreaker,
+                          ResultStore resultStore, SessionService sessions, AdmissionLimiter admission,
+                          DeadlineProperties deadlines, UpstreamMetrics upstreamMetrics, BackgroundJobService jobs) {
+        this.providers = providers;
+        this.compareService = compareService;
+        this.poolMetrics = poolMetrics;
+        this.responseCache = responseCache;
+        this.rateLimiter = rateLimiter;
+        this.circuitBreaker = circuitBreaker;
+        this.resultStore = resultStore;
+        this.sessions = sessions;
+        this.admission = admission;
+        this.deadlines = deadlines;
+        this.upstreamMetrics = upstreamMetrics;
+        this.jobs = jobs;
     }
 
+    /**
+     * La deadline (timeoutMs, en-tête X-Request-Timeout-Ms, sinon défaut serveur) court dès la réception
+     * et borne file d'admission, limiteur, relances et appel amont. Un client qui se déconnecte annule
+     * toute la chaîne, jusqu'à l'échange HTTP amont.
+     * La classe de trafic (champ priority ou en-tête X-Priority) et le client (X-Client-Id) ordonnancent
+     * la file d'admission : l'interactif passe avant le bulk, les clients d'une classe se partagent la file.
+     */
     @PostMapping("/send")
-    public Mono<ResponseEntity<ChatResponse>> sendMessage(@RequestBody ChatRequest request) {
-        if (request == null || request.getMessage() == null || request.getMessage().isBlank()) {
+    public Mono<ResponseEntity<ChatResponse>> sendMessage(
+            @RequestBody ChatRequest request,
+            @RequestHeader(value = TIMEOUT_HEADER, required = false) Long timeoutHeader,
+            ServerHttpRequest httpRequest) {
+        String rejection = rejection(request);
+        if (rejection != null) {
             return Mono.just(
                     ResponseEntity.badRequest().body(
                             new ChatResponse(
-                                    "Message vide.",
+                                    rejection,
                                     0L,
                                     null,
                                     null,
@@ -36,26 +123,357 @@ public class ChatController {
             );
         }
 
-        return openAIService.generateReply(
+        return admission.admit("send", () -> provider(request.getSessionId()).generateReply(
                 request.getMessage(),
                 request.getModel(),
                 request.getTemperature(),
                 request.getMaxOutputTokens()
-        ).map(r -> ResponseEntity.ok(
-                new ChatResponse(
-                        r.reply(),
-                        r.latencyMs(),
-                        r.inputTokens(),
-                        r.outputTokens(),
-                        r.totalTokens(),
-                        r.truncated(),
-                        r.truncateReason()
-                )
-        ));
+        ), ChatController::outcome).doOnNext(r -> resultStore.record("send", request.getMessage(), request.getModel(),
+                        request.getTemperature(), request.getMaxOutputTokens(), r))
+                .map(r -> ResponseEntity.ok(toResponse(r)))
+                .contextWrite(priority(request.getPriority(), httpRequest).context())
+                .contextWrite(deadline(request.getTimeoutMs(), timeoutHeader).context());
+    }
+
+    /**
+     * Comparaison côté serveur : un seul appel client, les N modèles sont interrogés en parallèle.
+     */
+    @PostMapping("/compare")
+    public Mono<ResponseEntity<CompareResponse>> compare(
+            @RequestBody CompareRequest request,
+            @RequestHeader(value = TIMEOUT_HEADER, required = false) Long timeoutHeader,
+            ServerHttpRequest httpRequest) {
+        if (request == null || request.getMessage() == null || request.getMessage().isBlank()) {
+            return Mono.just(ResponseEntity.badRequest().body(CompareResponse.rejected(EMPTY_MESSAGE)));
+        }
+        if (!validModels(request.getModels())) {
+            return Mono.just(ResponseEntity.badRequest().body(CompareResponse.rejected(
+                    "Modèles invalides : de 1 à " + compareService.getMaxModels() + ", chacun nommé.")));
+        }
+        if (!validSessionId(request.getSessionId())) {
+            return Mono.just(ResponseEntity.badRequest().body(CompareResponse.rejected(INVALID_SESSION)));
+        }
+
+        return admission.admit("compare", () -> compareService.compare(request.getMessage(), request.getModels(),
+                        provider(request.getSessionId())),
+                        c -> outcome(c.results()))
+                .doOnNext(c -> {
+                    for (int i = 0; i < c.results().size(); i++) {
+                        ModelSettings s = request.getModels().get(i);
+                        resultStore.record("compare", request.getMessage(), s.getModel(), s.getTemperature(),
+                                s.getMaxOutputTokens(), c.results().get(i));
+                    }
+                })
+                .map(c -> ResponseEntity.ok(
+                        new CompareResponse(
+                                c.results().stream().map(ChatController::toResponse).toList(),
+                                c.totalLatencyMs()
+                        )
+                ))
+                .contextWrite(priority(request.getPriority(), httpRequest).context())
+                .contextWrite(deadline(request.getTimeoutMs(), timeoutHeader).context());
+    }
+
+    /**
+     * Variante streaming (Server-Sent Events) :
+     * - event "delta" : {"text": "..."} à chaque morceau reçu
+     * - event "done"  : ChatResponse final (usage, tronquage, ttftMs, tokensPerSecond)
+     */
+    @PostMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<Object>> streamMessage(
+            @RequestBody ChatRequest request,
+            @RequestHeader(value = TIMEOUT_HEADER, required = false) Long timeoutHeader,
+            ServerHttpRequest httpRequest) {
+        String rejection = rejection(request);
+        if (rejection != null) {
+            return Flux.just(ServerSentEvent.builder()
+                    .event("done")
+                    .data(new ChatResponse(rejection, 0L, null, null, null, false, null))
+                    .build());
+        }
+
+        return admission.admitMany(() -> provider(request.getSessionId()).streamReply(
+                request.getMessage(),
+                request.getModel(),
+                request.getTemperature(),
+                request.getMaxOutputTokens()
+        )).doOnNext(e -> {
+            if (e.isFinal()) resultStore.record("stream", request.getMessage(), request.getModel(),
+                    request.getTemperature(), request.getMaxOutputTokens(), e.result());
+        }).map(e -> e.isFinal()
+                ? ServerSentEvent.builder().event("done").data((Object) toResponse(e.result())).build()
+                : ServerSentEvent.builder().event("delta").data((Object) Map.of("text", e.delta())).build())
+                .contextWrite(priority(request.getPriority(), httpRequest).context())
+                .contextWrite(deadline(request.getTimeoutMs(), timeoutHeader).context());
+    }
+
+    /**
+     * Requête longue en mode job : 202 + Location dès que la réponse est lancée (mode background
+     * chez OpenAI), le résultat se lit ensuite sur GET /jobs/{id}. La deadline ne borne que l'envoi ;
+     * le job lui-même est borné par openai.background.max-duration. Pas de session.
+     */
+    @PostMapping("/jobs")
+    public Mono<ResponseEntity<JobResponse>> submitJob(
+            @RequestBody ChatRequest request,
+            @RequestHeader(value = TIMEOUT_HEADER, required = false) Long timeoutHeader) {
+        if (request == null || request.getMessage() == null || request.getMessage().isBlank()) {
+            return Mono.just(ResponseEntity.badRequest().body(JobResponse.rejected(EMPTY_MESSAGE)));
+        }
+        // un job n'a pas de session : tout sessionId est refusé
+        if (request.getSessionId() != null) {
+            return Mono.just(ResponseEntity.badRequest().body(JobResponse.rejected(INVALID_SESSION)));
+        }
+
+        return jobs.submit(request.getMessage(), request.getModel(), request.getTemperature(),
+                        request.getMaxOutputTokens())
+                .map(j -> ResponseEntity.accepted()
+                        .location(URI.create("/api/chat/jobs/" + j.jobId()))
+                        .body(toResponse(j)))
+                .contextWrite(deadline(request.getTimeoutMs(), timeoutHeader).context());
+    }
+
+    @GetMapping("/jobs/{id}")
+    public Mono<ResponseEntity<JobResponse>> job(@PathVariable String id) {
+        return Mono.fromSupplier(() -> jobs.status(id))
+                .map(j -> ResponseEntity.ok(toResponse(j)))
+                .defaultIfEmpty(ResponseEntity.notFound().build());
+    }
+
+    /** Annule un job en cours, y compris la réponse background chez OpenAI. */
+    @DeleteMapping("/jobs/{id}")
+    public Mono<ResponseEntity<Void>> cancelJob(@PathVariable String id) {
+        return Mono.fromSupplier(() -> jobs.cancel(id)
+                ? ResponseEntity.accepted().<Void>build()
+                : ResponseEntity.notFound().<Void>build());
+    }
+
+    /** Jobs en cours / conservés, issues et interrogations d'OpenAI. */
+    @GetMapping("/jobs")
+    public Mono<BackgroundJobService.JobStats> jobStats() {
+        return Mono.fromSupplier(jobs::stats);
+    }
+
+    /**
+     * Estimation locale, sans appel OpenAI : tokens du prompt (tel qu'envoyé), fenêtre du modèle,
+     * max_output_tokens effectif et refus éventuel (fits=false).
+     */
+    @PostMapping("/estimate")
+    public Mono<ResponseEntity<Tokenizer.Estimate>> estimate(@RequestBody ChatRequest request) {
+        if (request == null || request.getMessage() == null) {
+            return Mono.just(ResponseEntity.badRequest().build());
+        }
+        return Mono.fromSupplier(() -> ResponseEntity.ok(providers.openAI().estimate(
+                request.getMessage(), request.getModel(), request.getMaxOutputTokens())));
     }
 
     @GetMapping(value = "/ping", produces = "text/plain; charset=UTF-8")
     public Mono<String> ping() {
         return Mono.just("pong");
     }
+
+    /** Contrôle d'admission : limite courante, requêtes en cours / en attente, rejets. */
+    @GetMapping("/admission")
+    public Mono<AdmissionLimiter.AdmissionStats> admission() {
+        return Mono.fromSupplier(admission::stats);
+    }
+
+    /** Hedging par modèle : seconds essais envoyés, gagnants, refusés faute de budget, délai courant. */
+    @GetMapping("/hedges")
+    public Mono<Map<String, HedgePolicy.HedgeStats>> hedges() {
+        return Mono.fromSupplier(providers.openAI()::hedgeStats);
+    }
+
+    /** Sessions de conversation : nombre, évictions, tours chaînés / rejoués. */
+    @GetMapping("/sessions")
+    public Mono<SessionService.SessionStats> sessionStats() {
+        return Mono.fromSupplier(sessions::stats);
+    }
+
+    /** Tours mémorisés par modèle pour une session. */
+    @GetMapping("/sessions/{id}")
+    public Mono<ResponseEntity<Map<String, Integer>>> session(@PathVariable String id) {
+        Map<String, Integer> turns = sessions.turns(id);
+        return Mono.just(turns == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(turns));
+    }
+
+    @DeleteMapping("/sessions/{id}")
+    public Mono<ResponseEntity<Void>> deleteSession(@PathVariable String id) {
+        return Mono.just(sessions.delete(id) ? ResponseEntity.noContent().build() : ResponseEntity.notFound().build());
+    }
+
+    /** Fournisseurs disponibles : un modèle "nom:modèle" est routé vers le fournisseur "nom". */
+    @GetMapping("/providers")
+    public Mono<List<ProviderRegistry.ProviderInfo>> providers() {
+        return Mono.fromSupplier(providers::providers);
+    }
+
+    /** État du pool de connexions vers OpenAI (actives, inactives, acquisitions en attente). */
+    @GetMapping("/pool")
+    public Mono<UpstreamPoolMetrics.PoolStats> pool() {
+        return Mono.fromSupplier(poolMetrics::snapshot);
+    }
+
+    /** Compteurs du cache de réponses (hits, misses, requêtes non éligibles). */
+    @GetMapping("/cache")
+    public Mono<ResponseCache.CacheStats> cache() {
+        return Mono.fromSupplier(responseCache::stats);
+    }
+
+    /** Déduplication des appels identiques en vol (appels envoyés vs. appels mutualisés). */
+    @GetMapping("/inflight")
+    public Mono<ResponseEntity<SingleFlight.Stats>> inflight() {
+        SingleFlight.Stats stats = providers.openAI().singleFlightStats();
+        return Mono.just(stats == null ? ResponseEntity.noContent().build() : ResponseEntity.ok(stats));
+    }
+
+    /** Cache de préfixe du fournisseur par modèle : appels avec tokens en cache, part des tokens d'entrée servis. */
+    @GetMapping("/prompt-cache")
+    public Mono<Map<String, UpstreamMetrics.PromptCacheStats>> promptCache() {
+        return Mono.fromSupplier(upstreamMetrics::promptCacheStats);
+    }
+
+    /** Budgets du limiteur client par modèle (marge requêtes/tokens, appels en vol, rejets). */
+    @GetMapping("/limits")
+    public Mono<Map<String, ModelRateLimiter.ModelStats>> limits() {
+        return Mono.fromSupplier(rateLimiter::stats);
+    }
+
+    /** État des disjoncteurs par modèle (fermé, ouvert, half-open) et taux d'échec / lenteur. */
+    @GetMapping("/breakers")
+    public Mono<Map<String, ModelCircuitBreaker.BreakerStats>> breakers() {
+        return Mono.fromSupplier(circuitBreaker::stats);
+    }
+
+    /**
+     * Budget client épuisé pour un modèle : 429 explicite plutôt qu'un appel voué à l'échec.
+     */
+    @ExceptionHandler(RateLimitExceededException.class)
+    public ResponseEntity<ChatResponse> rateLimited(RateLimitExceededException e) {
+        long retryAfterSec = Math.max(1, (e.getRetryAfter().toMillis() + 999) / 1000);
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSec))
+                .body(new ChatResponse(e.getMessage(), 0L, null, null, null, false, null));
+    }
+
+    /**
+     * Serveur saturé (file d'admission pleine ou attente trop longue) : 503 immédiat plutôt
+     * qu'une requête qui s'accumule en mémoire.
+     */
+    @ExceptionHandler(OverloadedException.class)
+    public ResponseEntity<ChatResponse> overloaded(OverloadedException e) {
+        long retryAfterSec = Math.max(1, (e.getRetryAfter().toMillis() + 999) / 1000);
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSec))
+                .body(new ChatResponse(e.getMessage(), 0L, null, null, null, false, null));
+    }
+
+    /** Avec un sessionId : le tour passe par la session (contexte réutilisé), sinon appel sans état. */
+    private ChatProvider provider(String sessionId) {
+        return sessionId == null ? providers : sessions.forSession(sessionId);
+    }
+
+    /** Deadline de la requête : champ du corps, sinon en-tête, sinon défaut ; plafonnée par openai.deadline.max. */
+    private RequestDeadline deadline(Long bodyTimeoutMs, Long headerTimeoutMs) {
+        return RequestDeadline.in(deadlines.resolve(bodyTimeoutMs != null ? bodyTimeoutMs : headerTimeoutMs));
+    }
+
+    /** Classe de trafic : champ priority, sinon en-tête X-Priority ; client : X-Client-Id, sinon adresse IP. */
+    private static RequestPriority priority(String bodyPriority, ServerHttpRequest httpRequest) {
+        HttpHeaders headers = httpRequest.getHeaders();
+        String client = headers.getFirst(CLIENT_HEADER);
+        InetSocketAddress remote = httpRequest.getRemoteAddress();
+        if ((client == null || client.isBlank()) && remote != null) client = remote.getHostString();
+        return RequestPriority.of(client, bodyPriority, headers.getFirst(PRIORITY_HEADER));
+    }
+
+    /**
+     * Issue pour l'admission : les fournisseurs renvoient leurs erreurs en résultat sans usage, seules celles
+     * de l'amont (upstreamFailure) font reculer la limite ; cache et appels dédupliqués ne mesurent rien.
+     */
+    static AdmissionLimiter.Outcome outcome(AiResult r) {
+        if (r.upstreamFailure()) return AdmissionLimiter.Outcome.FAILURE;
+        if (r.cached() || r.coalesced() || r.totalTokens() == null) return AdmissionLimiter.Outcome.IGNORED;
+        return AdmissionLimiter.Outcome.SUCCESS;
+    }
+
+    /**
+     * Comparaison : échec si une majorité des jambes a échoué côté amont (une jambe isolée en échec
+     * n'accuse pas tout le serveur, mais sa durée fausserait la mesure : ignorée), sinon mesure si au moins
+     * une jambe a réellement appelé l'amont.
+     */
+    static AdmissionLimiter.Outcome outcome(List<AiResult> legs) {
+        int failures = 0;
+        boolean measured = false;
+        for (AiResult r : legs) {
+            AdmissionLimiter.Outcome o = outcome(r);
+            if (o == AdmissionLimiter.Outcome.FAILURE) failures++;
+            else if (o == AdmissionLimiter.Outcome.SUCCESS) measured = true;
+        }
+        if (failures * 2 > legs.size()) return AdmissionLimiter.Outcome.FAILURE;
+        if (failures > 0) return AdmissionLimiter.Outcome.IGNORED;
+        return measured ? AdmissionLimiter.Outcome.SUCCESS : AdmissionLimiter.Outcome.IGNORED;
+    }
+
+    /** 1 à maxModels jambes, chacune avec un modèle nommé (un élément null ou sans modèle ferait échouer la jambe). */
+    private boolean validModels(List<ModelSettings> models) {
+        if (models == null || models.isEmpty() || models.size() > compareService.getMaxModels()) return false;
+        for (ModelSettings s : models) {
+            if (s == null || s.getModel() == null || s.getModel().isBlank()) return false;
+        }
+        return true;
+    }
+
+    /** Motif du refus d'une requête /send ou /stream, null si elle est valide. */
+    private static String rejection(ChatRequest request) {
+        if (request == null || request.getMessage() == null || request.getMessage().isBlank()) return EMPTY_MESSAGE;
+        if (!validSessionId(request.getSessionId())) return INVALID_SESSION;
+        return null;
+    }
+
+    private static boolean validSessionId(String sessionId) {
+        return sessionId == null || (!sessionId.isBlank() && sessionId.length() <= MAX_SESSION_ID_LENGTH);
+    }
+
+    private static JobResponse toResponse(BackgroundJobService.JobStatus j) {
+        JobResponse resp = new JobResponse(j.jobId(), j.status());
+        resp.setModel(j.model());
+        resp.setResponseId(j.responseId());
+        resp.setCreatedAt(j.createdAt());
+        resp.setElapsedMs(j.elapsedMs());
+        resp.setPolls(j.polls());
+        resp.setResult(j.result() == null ? null : toResponse(j.result()));
+        return resp;
+    }
+
+    static ChatResponse toResponse(AiResult r) {
+        ChatResponse resp = new ChatResponse(
+                r.reply(),
+                r.latencyMs(),
+                r.inputTokens(),
+                r.outputTokens(),
+                r.totalTokens(),
+                r.truncated(),
+                r.truncateReason(),
+                r.ttftMs(),
+                r.tokensPerSecond()
+        );
+        resp.setCachedInputTokens(r.cachedInputTokens());
+        if (r.inputTokens() != null && r.cachedInputTokens() != null) {
+            resp.setUncachedInputTokens(r.inputTokens() - r.cachedInputTokens());
+        }
+        resp.setReasoningTokens(r.reasoningTokens());
+        resp.setCached(r.cached());
+        resp.setRetries(r.retries());
+        resp.setRetryTimeMs(r.retryTimeMs());
+        resp.setModel(r.model());
+        resp.setFallbackFrom(r.fallbackFrom());
+        if (r.context() != null) {
+            resp.setSessionId(r.context().sessionId());
+            resp.setContextMode(r.context().mode());
+            resp.setContextTurns(r.context().turns());
+            resp.setReplayedChars(r.context().replayedChars());
+        }
+        resp.setLatencyBreakdown(r.phases());
+        return resp;
+    }
 }
@@ -0,0 +1,45 @@
+package com.example.gptcompare_backend.controller;
+
+import com.example.gptcompare_backend.service.ResultStore;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Mono;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Historique des réponses enregistrées (send, compare, stream) :
+ * - GET /api/history?page=0&size=50&model=... : pages, plus récentes d'abord
+ * - GET /api/history/models?since=2025-01-01T00:00:00Z : agrégats par modèle
+ * - GET /api/history/writer : file d'écriture asynchrone (en attente, écrites, abandonnées)
+ */
+@RestController
+@RequestMapping("/api/history")
+@CrossOrigin(origins = "http://localhost:4200")
+public class HistoryController {
+
+    private final ResultStore resultStore;
+
+    public HistoryController(ResultStore resultStore) {
+        this.resultStore = resultStore;
+    }
+
+    @GetMapping
+    public Mono<ResultStore.Page> page(@RequestParam(defaultValue = "0") int page,
+                                       @RequestParam(defaultValue = "50") int size,
+                                       @RequestParam(required = false) String model) {
+        return resultStore.page(model, page, size);
+    }
+
+    @GetMapping("/models")
+    public Mono<List<ResultStore.ModelAggregate>> models(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant since) {
+        return resultStore.aggregates(since);
+    }
+
+    @GetMapping("/writer")
+    public Mono<ResultStore.WriterStats> writer() {
+        return Mono.fromSupplier(resultStore::stats);
+    }
+}
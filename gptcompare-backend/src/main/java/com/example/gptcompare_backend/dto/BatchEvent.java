@@ -0,0 +1,42 @@
+package com.example.gptcompare_backend.dto;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.List;
+
+@Setter
+@Getter
+public class BatchEvent {
+
+    // une ligne NDJSON du flux /api/batch
+    private String type;                // "result" | "invalid" | "summary" | "error"
+    private String batchId;
+    private Long index;                 // n° de ligne (0-based) dans le fichier de prompts
+    private String promptId;            // id / request_id de la ligne si présent
+    private String model;               // modèle demandé
+    private ChatResponse result;        // type=result
+    private String error;               // type=invalid ou error
+
+    private Progress progress;                // avancement au moment de l'évènement
+    private List<ModelSummary> summary;       // type=summary : agrégats par modèle et réglages
+
+    /** Avancement : prompts lus, appels terminés / en échec / en cours. */
+    public record Progress(String batchId, long prompts, long completed, long failed, int inFlight,
+                           boolean cancelled) {}
+
+    /** Agrégats d'une colonne (modèle + réglages) ; latences en ms, p50/p95 approchés. */
+    public record ModelSummary(String model, Double temperature, Integer maxOutputTokens, long calls, long failed,
+                               long truncated, double meanLatencyMs, long p50LatencyMs, long p95LatencyMs,
+                               long maxLatencyMs, long inputTokens, long outputTokens, long totalTokens) {}
+
+    @SuppressWarnings("unused")
+    public BatchEvent() {}
+
+    public BatchEvent(String type, String batchId, String error) {
+        this.type = type;
+        this.batchId = batchId;
+        this.error = error;
+    }
+
+}
@@ -15,6 +15,15 @@ public class ChatRequest {
     private Double temperature;        // ex: 0.7
     private Integer maxOutputTokens;   // ex: 800
 
+    // conversation côté serveur (optionnel) : seuls les nouveaux messages sont envoyés
+    private String sessionId;
+
+    // délai max accepté par le client, en ms (optionnel, plafonné par openai.deadline.max)
+    private Long timeoutMs;
+
+    // classe de trafic (optionnel) : "interactive" (défaut) ou "bulk", prioritaire sur l'en-tête X-Priority
+    private String priority;
+
     public ChatRequest() {}
 
 }
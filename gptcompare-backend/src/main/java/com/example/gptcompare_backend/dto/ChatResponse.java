@@ -1,5 +1,6 @@
 package com.example.gptcompare_backend.dto;
 
+import com.example.gptcompare_backend.service.LatencyPhases;
 import lombok.Getter;
 import lombok.Setter;
 
@@ -13,9 +14,31 @@ public class ChatResponse {
     private Integer outputTokens;
     private Integer totalTokens;
 
+    private Integer cachedInputTokens;   // part de inputTokens lue dans le cache de préfixe du fournisseur
+    private Integer uncachedInputTokens; // inputTokens - cachedInputTokens (plein tarif)
+    private Integer reasoningTokens;     // part de outputTokens consacrée au raisonnement
+
     private Boolean truncated; // true si coupé par max_output_tokens
     private String truncateReason; // ex: "max_output_tokens"
 
+    private Long ttftMs;            // time-to-first-token (streaming uniquement)
+    private Double tokensPerSecond; // débit de génération
+
+    private Boolean cached;         // true si servi par le cache backend (pas d'appel OpenAI)
+
+    private Integer retries;        // relances après erreurs transitoires (429/5xx, réseau)
+    private Long retryTimeMs;       // temps perdu avant le dernier essai
+
+    private String model;           // modèle qui a réellement répondu
+    private String fallbackFrom;    // modèle demandé si la réponse vient du modèle de repli
+
+    private String sessionId;       // session de conversation (si demandée)
+    private String contextMode;     // "previous_response_id" | "replay" | "none"
+    private Integer contextTurns;   // tours précédents pris en compte
+    private Integer replayedChars;  // historique renvoyé au modèle (0 si chaînage)
+
+    private LatencyPhases.Breakdown latencyBreakdown; // phases du dernier essai amont (null si cache ou autre fournisseur)
+
     @SuppressWarnings("unused")
     public ChatResponse() {}
 
@@ -30,4 +53,11 @@ public class ChatResponse {
         this.truncateReason = truncateReason;
     }
 
+    public ChatResponse(String reply, Long latencyMs, Integer inputTokens, Integer outputTokens, Integer totalTokens,
+                        Boolean truncated, String truncateReason, Long ttftMs, Double tokensPerSecond) {
+        this(reply, latencyMs, inputTokens, outputTokens, totalTokens, truncated, truncateReason);
+        this.ttftMs = ttftMs;
+        this.tokensPerSecond = tokensPerSecond;
+    }
+
 }
@@ -0,0 +1,29 @@
+package com.example.gptcompare_backend.dto;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.List;
+
+@Setter
+@Getter
+public class CompareRequest {
+
+    // prompt commun à tous les modèles
+    private String message;
+
+    // un réglage par modèle comparé (ordre conservé dans la réponse)
+    private List<ModelSettings> models;
+
+    // conversation côté serveur (optionnel) : chaque modèle garde son propre fil
+    private String sessionId;
+
+    // délai max accepté par le client, en ms (optionnel, plafonné par openai.deadline.max)
+    private Long timeoutMs;
+
+    // classe de trafic (optionnel) : "interactive" (défaut) ou "bulk", prioritaire sur l'en-tête X-Priority
+    private String priority;
+
+    public CompareRequest() {}
+
+}
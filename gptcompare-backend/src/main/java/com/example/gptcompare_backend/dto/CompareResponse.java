@@ -0,0 +1,30 @@
+package com.example.gptcompare_backend.dto;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.List;
+
+@Setter
+@Getter
+public class CompareResponse {
+
+    private List<ChatResponse> results; // même ordre que CompareRequest.models
+    private Long totalLatencyMs;        // durée "mur" de toute la comparaison
+    private String error;               // motif du refus (400), null sinon
+
+    @SuppressWarnings("unused")
+    public CompareResponse() {}
+
+    public CompareResponse(List<ChatResponse> results, Long totalLatencyMs) {
+        this.results = results;
+        this.totalLatencyMs = totalLatencyMs;
+    }
+
+    public static CompareResponse rejected(String error) {
+        CompareResponse resp = new CompareResponse(List.of(), 0L);
+        resp.setError(error);
+        return resp;
+    }
+
+}
@@ -0,0 +1,37 @@
+package com.example.gptcompare_backend.dto;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.time.Instant;
+
+@Setter
+@Getter
+public class JobResponse {
+
+    // job asynchrone (POST /api/chat/jobs, GET /api/chat/jobs/{id})
+    private String jobId;
+    private String status;              // queued | in_progress | completed | incomplete | failed | cancelled | expired
+    private String model;
+    private String responseId;          // id de la réponse background chez OpenAI (null hors OpenAI)
+    private Instant createdAt;
+    private Long elapsedMs;             // durée écoulée, ou durée totale une fois terminé
+    private Integer polls;              // interrogations d'OpenAI effectuées
+    private ChatResponse result;        // null tant que le job tourne
+    private String error;               // motif du refus (400, status "invalid"), null sinon
+
+    @SuppressWarnings("unused")
+    public JobResponse() {}
+
+    public JobResponse(String jobId, String status) {
+        this.jobId = jobId;
+        this.status = status;
+    }
+
+    public static JobResponse rejected(String error) {
+        JobResponse resp = new JobResponse(null, "invalid");
+        resp.setError(error);
+        return resp;
+    }
+
+}
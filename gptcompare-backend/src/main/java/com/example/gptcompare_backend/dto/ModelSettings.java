@@ -0,0 +1,23 @@
+package com.example.gptcompare_backend.dto;
+
+import lombok.Getter;
+import lombok.Setter;
+
+@Setter
+@Getter
+public class ModelSettings {
+
+    // paramètres d'une "colonne" de comparaison
+    private String model;              // ex: "gpt-5-mini"
+    private Double temperature;        // ex: 0.7
+    private Integer maxOutputTokens;   // ex: 800
+
+    public ModelSettings() {}
+
+    public ModelSettings(String model, Double temperature, Integer maxOutputTokens) {
+        this.model = model;
+        this.temperature = temperature;
+        this.maxOutputTokens = maxOutputTokens;
+    }
+
+}
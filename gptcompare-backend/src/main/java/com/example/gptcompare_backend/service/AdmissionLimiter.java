@@ -0,0 +1,405 @@
+package com.example.gptcompare_backend.service;
+
+import com.example.gptcompare_backend.config.AdmissionProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Contrôle d'admission des requêtes entrantes : au plus {@code limit} requêtes traitées, une file
+ * d'attente courte (sans thread bloqué), puis rejet immédiat (OverloadedException → HTTP 503).
+ * La limite suit un AIMD piloté par la latence observée :
+ * - appel dans la tolérance : +1 par "limite" appels (≈ +1 par aller-retour complet)
+ * - appel lent (> latencyTolerance × latence de référence) ou en échec amont : × backoffRatio,
+ *   au plus une fois par latence de référence (pas d'effondrement sur une rafale d'appels lents)
+ * La latence de référence est une moyenne mobile lente des appels admis (attente exclue), tenue par route
+ * (un /compare attend sa jambe la plus lente, il n'est pas "lent" face à un /send). Seuls les vrais appels
+ * amont la font bouger (Outcome) : réponses servies par le cache ou dédupliquées, refus locaux (4xx,
+ * limiteur par modèle) et streams n'ajustent rien.
+ * La file est ordonnancée par classe de trafic (RequestPriority, posée dans le Context) :
+ * - entre classes : partage pondéré des places libérées (interactiveWeight / bulkWeight), le bulk
+ *   n'occupe jamais plus de bulkMaxInflightRatio × limite, et un bulk en attente depuis starvationAge
+ *   passe en tête (pas de famine)
+ * - dans une classe : file équitable par client (start-time fair queueing, poids clientWeights),
+ *   un client qui envoie 1000 requêtes ne passe pas devant celui qui en envoie une
+ * Métriques : chat.admission.limit / inflight / queued (jauges), chat.admission.rejected{reason},
+ * chat.admission.wait{priority} (attente en file des requêtes admises, 0 si admission immédiate).
+ */
+@Component
+public class AdmissionLimiter {
+
+    /** État exposé via GET /api/chat/admission. */
+    public record AdmissionStats(boolean enabled, int limit, int inFlight, int queued, int queueSize,
+                                 long admitted, long rejectedQueueFull, long rejectedTimeout,
+                                 Map<String, Long> referenceLatencyMs, Map<String, ClassStats> classes) {}
+
+    /**
+     * Issue d'un appel admis, pour l'AIMD :
+     * - SUCCESS : appel amont réel, sa durée est un échantillon de latence
+     * - FAILURE : échec de santé de l'amont (429, 5xx, réseau, délai ; cf. ModelCircuitBreaker.isFailure), la limite recule
+     * - IGNORED : aucun signal sur l'amont (cache, appel dédupliqué, 4xx, limiteur local), pas d'ajustement
+     */
+    public enum Outcome { SUCCESS, FAILURE, IGNORED }
+
+    /** Par classe de trafic : requêtes en cours, en attente, clients distincts en attente, admissions. */
+    public record ClassStats(int inFlight, int queued, int queuedClients, long admitted) {}
+
+    static final String QUEUE_FULL = "queue_full";
+    static final String QUEUE_TIMEOUT = "queue_timeout";
+    /** Route des appels admis sans route explicite. */
+    static final String DEFAULT_ROUTE = "default";
+
+    /** Poids d'un nouvel échantillon dans la latence de référence. */
+    private static final double REFERENCE_ALPHA = 0.05;
+
+    private final AdmissionProperties props;
+    /** Horloge monotone (nanoTime), remplaçable en test. */
+    private final LongSupplier clock;
+    private final Counter queueFull;
+    private final Counter queueTimeout;
+
+    private double limit;
+    private int inFlight;
+    private long admitted;
+    /** Latence de référence par route (ns) ; les routes sont des constantes des appelants, pas des entrées client. */
+    private final Map<String, Double> referenceNanos = new HashMap<>();
+    private long lastDecreaseNanos;
+    /** Une file par classe, indexée par RequestPriority.Level.ordinal(). */
+    private final Lane[] lanes;
+    /** Passe de la dernière classe servie : point de départ d'une classe qui se remet à attendre. */
+    private double virtualPass;
+    private long flowSequence;
+
+    @Autowired
+    public AdmissionLimiter(AdmissionProperties props, MeterRegistry registry) {
+        this(props, registry, System::nanoTime);
+    }
+
+    AdmissionLimiter(AdmissionProperties props, MeterRegistry registry, LongSupplier clock) {
+        this.props = props;
+        this.clock = clock;
+        this.limit = Math.clamp(props.initialLimit(), minLimit(), maxLimit());
+        this.lanes = new Lane[]{
+                new Lane(RequestPriority.Level.INTERACTIVE, props.interactiveWeight(), props.queueSize(),
+                        props.maxQueueWait(), registry),
+                new Lane(RequestPriority.Level.BULK, props.bulkWeight(), props.bulkQueueSize(),
+                        props.bulkMaxQueueWait(), registry)
+        };
+
+        Gauge.builder("chat.admission.limit", this, l -> l.stats().limit()).register(registry);
+        Gauge.builder("chat.admission.inflight", this, l -> l.stats().inFlight()).register(registry);
+        Gauge.builder("chat.admission.queued", this, l -> l.stats().queued()).register(registry);
+        this.queueFull = Counter.builder("chat.admission.rejected").tag("reason", QUEUE_FULL).register(registry);
+        this.queueTimeout = Counter.builder("chat.admission.rejected").tag("reason", QUEUE_TIMEOUT).register(registry);
+    }
+
+    public static AdmissionLimiter disabled() {
+        return new AdmissionLimiter(AdmissionProperties.disabled(), new CompositeMeterRegistry());
+    }
+
+    /** Appel admis (éventuellement après attente), place rendue à la fin, sur erreur ou annulation. */
+    public <T> Mono<T> admit(Supplier<Mono<T>> call) {
+        return admit(DEFAULT_ROUTE, call, value -> Outcome.SUCCESS);
+    }
+
+    /**
+     * Variante pour les appels qui renvoient leurs échecs en valeur (ex. AiResult d'erreur, sans usage) :
+     * outcome classe chaque valeur ; route sépare les latences de référence. Une erreur propagée n'est
+     * un échec que si elle met en cause l'amont (un RateLimitExceededException local est ignoré).
+     */
+    public <T> Mono<T> admit(String route, Supplier<Mono<T>> call, Function<? super T, Outcome> outcome) {
+        if (!props.enabled()) return Mono.defer(call);
+        return Mono.usingWhen(
+                acquire().map(lane -> new Slot(lane, route, clock.getAsLong())),
+                slot -> call.get().doOnNext(value -> slot.outcome = outcome.apply(value)),
+                slot -> Mono.fromRunnable(() -> release(slot, slot.outcome)),
+                (slot, err) -> Mono.fromRunnable(() -> release(slot,
+                        ModelCircuitBreaker.isFailure(err) ? Outcome.FAILURE : Outcome.IGNORED)),
+                // annulation (client parti) : durée non significative, pas d'ajustement
+                slot -> Mono.fromRunnable(() -> release(slot, Outcome.IGNORED))
+        );
+    }
+
+    /**
+     * Variante streaming : la place est tenue jusqu'à la fin du flux. Sa durée dépend de la longueur
+     * de la réponse, elle n'alimente donc pas la latence de référence.
+     */
+    public <T> Flux<T> admitMany(Supplier<Flux<T>> call) {
+        if (!props.enabled()) return Flux.defer(call);
+        return Flux.usingWhen(
+                acquire(),
+                lane -> call.get(),
+                lane -> Mono.fromRunnable(() -> release(lane, null, false)),
+                (lane, err) -> Mono.fromRunnable(() -> release(lane, null, false)),
+                lane -> Mono.fromRunnable(() -> release(lane, null, false))
+        );
+    }
+
+    public synchronized AdmissionStats stats() {
+        Map<String, ClassStats> classes = new LinkedHashMap<>();
+        int queued = 0;
+        for (Lane lane : lanes) {
+            classes.put(lane.level.tag(), new ClassStats(lane.inFlight, lane.queued, lane.flows.size(), lane.admitted));
+            queued += lane.queued;
+        }
+        Map<String, Long> references = new TreeMap<>();
+        referenceNanos.forEach((route, nanos) -> references.put(route, Duration.ofNanos(nanos.longValue()).toMillis()));
+        return new AdmissionStats(props.enabled(), (int) limit, inFlight, queued, props.queueSize(),
+                admitted, (long) queueFull.count(), (long) queueTimeout.count(), references, classes);
+    }
+
+    private int minLimit() {
+        return Math.max(1, props.minLimit());
+    }
+
+    private int maxLimit() {
+        return Math.max(minLimit(), props.maxLimit());
+    }
+
+    /** Places que le bulk peut occuper : le reste de la limite est gardé pour l'interactif. */
+    private int bulkCap() {
+        if (props.bulkMaxInflightRatio() >= 1.0) return Integer.MAX_VALUE;
+        return Math.max(1, (int) (limit * props.bulkMaxInflightRatio()));
+    }
+
+    private boolean underShare(Lane lane) {
+        return lane.level != RequestPriority.Level.BULK || lane.inFlight < bulkCap();
+    }
+
+    /**
+     * Attente en file de la classe de la requête, bornée par son attente max et par le temps restant
+     * de la requête (RequestDeadline). Émet la file dont la place a été prise.
+     */
+    private Mono<Lane> acquire() {
+        return Mono.deferContextual(ctx -> {
+            RequestPriority priority = RequestPriority.from(ctx);
+            Lane lane = lanes[priority.level().ordinal()];
+            Waiter waiter;
+            synchronized (this) {
+                if (inFlight < (int) limit && lane.queued == 0 && underShare(lane)) {
+                    occupy(lane);
+                    lane.wait.record(0, TimeUnit.NANOSECONDS);
+                    return Mono.just(lane);
+                }
+                if (lane.queued >= lane.queueSize) {
+                    queueFull.increment();
+                    return Mono.error(new OverloadedException(QUEUE_FULL, props.retryAfter()));
+                }
+                waiter = enqueue(lane, priority.client());
+            }
+            return waiter.sink().asMono()
+                    // abonné parti (ou délai dépassé) : si la place lui avait déjà été transmise, on la rend
+                    .doOnCancel(() -> {
+                        if (!removeWaiter(waiter)) release(lane, null, false);
+                    })
+                    .timeout(RequestDeadline.remaining(ctx, lane.maxWait))
+                    .onErrorMap(TimeoutException.class, e -> {
+                        queueTimeout.increment();
+                        return new OverloadedException(QUEUE_TIMEOUT, props.retryAfter());
+                    })
+                    .thenReturn(lane);
+        });
+    }
+
+    private void release(Slot slot, Outcome outcome) {
+        release(slot.lane, outcome == Outcome.IGNORED ? null : slot, outcome == Outcome.SUCCESS);
+    }
+
+    /**
+     * Fin d'un appel : ajustement de la limite (si sample, l'appel à mesurer, est non null), puis places
+     * libres transmises aux suivants, réveillés hors verrou (leur appel démarre dans ce thread).
+     */
+    private void release(Lane lane, Slot sample, boolean success) {
+        List<Sinks.Empty<Void>> granted = new ArrayList<>(1);
+        synchronized (this) {
+            inFlight--;
+            lane.inFlight--;
+            if (sample != null) adjust(sample.route, clock.getAsLong() - sample.startNanos, success);
+            long now = clock.getAsLong();
+            Lane next;
+            while (inFlight < (int) limit && (next = nextLane(now)) != null) {
+                granted.add(grant(next, now));
+            }
+        }
+        // échec d'émission = abonné annulé entre-temps : son doOnCancel a déjà rendu la place
+        granted.forEach(Sinks.Empty::tryEmitEmpty);
+    }
+
+    /**
+     * Classe servie par la prochaine place libre : celle de plus petite passe (stride scheduling, la passe
+     * avance de 1 / poids à chaque admission), sauf bulk affamé ; null si personne n'est admissible.
+     */
+    private Lane nextLane(long now) {
+        Lane interactive = lanes[RequestPriority.Level.INTERACTIVE.ordinal()];
+        Lane bulk = lanes[RequestPriority.Level.BULK.ordinal()];
+        boolean bulkReady = bulk.queued > 0 && underShare(bulk);
+        if (interactive.queued == 0) return bulkReady ? bulk : null;
+        if (!bulkReady) return interactive;
+        long starvation = props.starvationAge().toNanos();
+        if (starvation > 0 && now - bulk.waitingSinceNanos >= starvation) return bulk;
+        return bulk.pass < interactive.pass ? bulk : interactive;
+    }
+
+    /** Admission du premier client éligible de la classe (plus petite passe), attente enregistrée. */
+    private Sinks.Empty<Void> grant(Lane lane, long now) {
+        Flow flow = lane.ready.poll();
+        Waiter waiter = flow.waiters.pollFirst();
+        lane.virtualTime = flow.pass;
+        flow.pass += flow.stride;
+        if (flow.waiters.isEmpty()) lane.flows.remove(flow.client);
+        else lane.ready.add(flow);
+        lane.queued--;
+        virtualPass = lane.pass;
+        lane.pass += lane.stride;
+        lane.waitingSinceNanos = now;
+        occupy(lane);
+        lane.wait.record(now - waiter.enqueuedNanos(), TimeUnit.NANOSECONDS);
+        return waiter.sink();
+    }
+
+    /**
+     * Mise en file : un client qui se remet à attendre repart de la passe courante de sa classe
+     * (pas de crédit accumulé pendant son absence) ; idem pour une classe qui se remet à attendre.
+     */
+    private Waiter enqueue(Lane lane, String client) {
+        long now = clock.getAsLong();
+        if (lane.queued == 0) {
+            lane.pass = Math.max(lane.pass, virtualPass);
+            lane.waitingSinceNanos = now;
+        }
+        Flow flow = lane.flows.get(client);
+        if (flow == null) {
+            flow = new Flow(lane, client, 1.0 / props.clientWeight(client), flowSequence++);
+            flow.pass = lane.virtualTime;
+            lane.flows.put(client, flow);
+            lane.ready.add(flow);
+        }
+        Waiter waiter = new Waiter(Sinks.empty(), flow, now);
+        flow.waiters.addLast(waiter);
+        lane.queued++;
+        return waiter;
+    }
+
+    private void occupy(Lane lane) {
+        inFlight++;
+        admitted++;
+        lane.inFlight++;
+        lane.admitted++;
+    }
+
+    private void adjust(String route, long latencyNanos, boolean success) {
+        Double ref = referenceNanos.get(route);
+        boolean slow = ref != null && ref > 0 && latencyNanos > props.latencyTolerance() * ref;
+        if (success && !slow) {
+            limit = Math.min(maxLimit(), limit + 1.0 / limit);
+        } else {
+            long now = clock.getAsLong();
+            if (ref == null || ref <= 0 || now - lastDecreaseNanos > ref) {
+                limit = Math.max(minLimit(), limit * props.backoffRatio());
+                lastDecreaseNanos = now;
+            }
+        }
+        if (success) {
+            referenceNanos.put(route, ref == null ? latencyNanos : ref + REFERENCE_ALPHA * (latencyNanos - ref));
+        }
+    }
+
+    private synchronized boolean removeWaiter(Waiter waiter) {
+        Flow flow = waiter.flow();
+        if (!flow.waiters.remove(waiter)) return false;
+        Lane lane = flow.lane;
+        lane.queued--;
+        if (flow.waiters.isEmpty()) {
+            lane.flows.remove(flow.client);
+            lane.ready.remove(flow);
+        }
+        return true;
+    }
+
+    /** Place prise : sa file (pour la rendre), sa route et le début de l'appel (latence de référence), son issue. */
+    private static final class Slot {
+        private final Lane lane;
+        private final String route;
+        private final long startNanos;
+        /** Issue de la valeur émise ; sans valeur (Mono vide), rien à mesurer. */
+        private volatile Outcome outcome = Outcome.IGNORED;
+
+        Slot(Lane lane, String route, long startNanos) {
+            this.lane = lane;
+            this.route = route;
+            this.startNanos = startNanos;
+        }
+    }
+
+    private record Waiter(Sinks.Empty<Void> sink, Flow flow, long enqueuedNanos) {}
+
+    /** File d'une classe de trafic. Tous les champs mutables sont gardés par le verrou du limiteur. */
+    private static final class Lane {
+        private final RequestPriority.Level level;
+        private final double stride;
+        private final int queueSize;
+        private final Duration maxWait;
+        private final Timer wait;
+        /** Clients en attente ; ready les trie par passe (un client n'y est que s'il a des requêtes en file). */
+        private final Map<String, Flow> flows = new HashMap<>();
+        private final PriorityQueue<Flow> ready = new PriorityQueue<>(
+                Comparator.comparingDouble((Flow f) -> f.pass).thenComparingLong(f -> f.sequence));
+        private double pass;
+        private double virtualTime;
+        private long waitingSinceNanos;
+        private int queued;
+        private int inFlight;
+        private long admitted;
+
+        Lane(RequestPriority.Level level, int weight, int queueSize, Duration maxWait, MeterRegistry registry) {
+            this.level = level;
+            this.stride = 1.0 / Math.max(1, weight);
+            this.queueSize = queueSize;
+            this.maxWait = maxWait;
+            this.wait = Timer.builder("chat.admission.wait")
+                    .tag("priority", level.tag())
+                    .publishPercentiles(0.5, 0.9, 0.99)
+                    .register(registry);
+        }
+    }
+
+    /** Requêtes en attente d'un client dans une classe ; la passe n'est modifiée que hors de ready. */
+    private static final class Flow {
+        private final Lane lane;
+        private final String client;
+        private final double stride;
+        private final long sequence;
+        private final ArrayDeque<Waiter> waiters = new ArrayDeque<>();
+        private double pass;
+
+        Flow(Lane lane, String client, double stride, long sequence) {
+            this.lane = lane;
+            this.client = client;
+            this.stride = stride;
+            this.sequence = sequence;
+        }
+    }
+}
@@ -0,0 +1,262 @@
+package com.example.gptcompare_backend.service;
+
+import com.example.gptcompare_backend.config.BackgroundProperties;
+import com.example.gptcompare_backend.service.OpenAIService.AiResult;
+import com.example.gptcompare_backend.service.OpenAIService.BackgroundResponse;
+import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Jobs asynchrones pour les requêtes longues (modèles de raisonnement) : le client reçoit un id
+ * tout de suite et consulte GET /api/chat/jobs/{id}, au lieu de garder une requête HTTP ouverte.
+ * - modèle OpenAI : réponse lancée en mode background, puis interrogée par un minuteur partagé,
+ *   à intervalle croissant ; aucune connexion n'est gardée entre deux interrogations, et les
+ *   interrogations simultanées sont bornées (maxConcurrentPolls)
+ * - autres fournisseurs (ou openai.background.enabled=false) : appel habituel, détaché du client
+ * Un job terminé reste consultable pendant retention ; son résultat part dans l'historique (source "job").
+ */
+@Service
+public class BackgroundJobService {
+
+    /**
+     * État d'un job (GET /api/chat/jobs/{id}) :
+     * - status : queued | in_progress | completed | incomplete | failed | cancelled | expired
+     * - responseId : id de la réponse background chez OpenAI (null pour les autres fournisseurs)
+     * - polls : interrogations d'OpenAI effectuées
+     * - result : résultat final, null tant que le job tourne
+     */
+    public record JobStatus(String jobId, String status, String model, String responseId, Instant createdAt,
+                            long elapsedMs, int polls, AiResult result) {
+        public boolean isDone() {
+            return result != null;
+        }
+    }
+
+    /** Compteurs (GET /api/chat/jobs) : jobs en cours, conservés, puis issues depuis le démarrage. */
+    public record JobStats(int active, int retained, long submitted, long completed, long failed,
+                           long cancelled, long expired, long polls) {}
+
+    /** Retry-After proposé quand maxJobs est atteint. */
+    private static final Duration RETRY_AFTER = Duration.ofSeconds(5);
+
+    private final ProviderRegistry providers;
+    private final OpenAIService openAI;
+    private final ResultStore resultStore;
+    private final BackgroundProperties props;
+    private final ConcurrencyGate pollGate;
+    private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong cancelled = new AtomicLong();
+    private final AtomicLong expired = new AtomicLong();
+    private final AtomicLong polls = new AtomicLong();
+
+    public BackgroundJobService(ProviderRegistry providers, ResultStore resultStore, BackgroundProperties props) {
+        this.providers = providers;
+        this.openAI = providers.openAI();
+        this.resultStore = resultStore;
+        this.props = props;
+        this.pollGate = new ConcurrencyGate(props.maxConcurrentPolls());
+    }
+
+    /**
+     * Crée un job. Le Mono se termine une fois la réponse acceptée par OpenAI (id connu), ou tout de suite
+     * hors OpenAI ; il porte la deadline de la requête du client pour cet envoi seulement.
+     * maxJobs atteint : OverloadedException (HTTP 503) ; budget du limiteur épuisé : RateLimitExceededException.
+     */
+    public Mono<JobStatus> submit(String message, String model, Double temperature, Integer maxOutputTokens) {
+        return Mono.defer(() -> {
+            if (active.incrementAndGet() > props.maxJobs()) {
+                active.decrementAndGet();
+                return Mono.error(new OverloadedException("jobs", RETRY_AFTER));
+            }
+            Job job = new Job(message, model, temperature, maxOutputTokens);
+            jobs.put(job.id, job);
+            submitted.incrementAndGet();
+
+            if (!props.enabled() || !providers.isOpenAI(model)) {
+                job.status = "in_progress";
+                job.task = providers.generateReply(message, model, temperature, maxOutputTokens)
+                        .timeout(props.maxDuration())
+                        .contextWrite(RequestDeadline.in(props.maxDuration()).context())
+                        .contextWrite(RequestPriority::bulk)
+                        .subscribe(r -> finish(job, statusOf(r), r),
+                                e -> finish(job, e instanceof TimeoutException ? "expired" : "failed",
+                                        AiResult.error("Erreur: " + e.getMessage(), job.elapsedMs())
+                                                .withModel(model, null)));
+                return Mono.just(job.snapshot());
+            }
+
+            return openAI.submitBackground(message, model, temperature, maxOutputTokens)
+                    .contextWrite(RequestPriority::bulk)
+                    .doOnNext(r -> {
+                        job.pending = r;
+                        // annulé pendant l'envoi (avant l'id) : la réponse acceptée entre-temps est annulée chez OpenAI
+                        if (job.done.get()) {
+                            if (r.responseId() != null && !r.isDone()) {
+                                openAI.cancelBackground(r.responseId()).subscribe();
+                            }
+                            return;
+                        }
+                        job.status = r.status();
+                        if (r.isDone()) {
+                            finish(job, r.status(), r.result());
+                        } else {
+                            schedulePoll(job, props.initialPollInterval());
+                        }
+                    })
+                    // envoi refusé (limiteur) ou client parti avant l'id : le job n'existe pas
+                    .doOnError(e -> forget(job))
+                    .doOnCancel(() -> {
+                        if (job.pending == null) forget(job);
+                    })
+                    .map(r -> job.snapshot());
+        });
+    }
+
+    /** État d'un job en cours ou conservé, null si inconnu. */
+    public JobStatus status(String jobId) {
+        Job job = jobs.get(jobId);
+        return job == null ? null : job.snapshot();
+    }
+
+    /**
+     * Annule un job en cours (y compris chez OpenAI) ; un job déjà terminé est laissé tel quel.
+     * Le job est terminé avant de lire pending : un envoi encore en vol voit done et annule lui-même sa réponse.
+     */
+    public boolean cancel(String jobId) {
+        Job job = jobs.get(jobId);
+        if (job == null) return false;
+        if (job.done.get()) return true;
+        Disposable task = job.task;
+        if (task != null) task.dispose();
+        finish(job, "cancelled", AiResult.error("Erreur: job annulé.", job.elapsedMs()).withModel(job.model, null));
+        BackgroundResponse pending = job.pending;
+        if (pending != null && pending.responseId() != null) {
+            openAI.cancelBackground(pending.responseId()).subscribe();
+        }
+        return true;
+    }
+
+    /** Ids des jobs en cours ou conservés (tests). */
+    Set<String> jobIds() {
+        return Set.copyOf(jobs.keySet());
+    }
+
+    public JobStats stats() {
+        return new JobStats(active.get(), jobs.size(), submitted.get(), completed.get(), failed.get(),
+                cancelled.get(), expired.get(), polls.get());
+    }
+
+    /** Prochaine interrogation après delay, sans thread ni connexion réservés pendant l'attente. */
+    private void schedulePoll(Job job, Duration delay) {
+        if (job.done.get()) return;
+        job.task = Mono.delay(delay)
+                .then(pollGate.run(() -> openAI.pollBackground(job.pending, job.startNanos)))
+                .subscribe(r -> onPoll(job, r, delay), e -> onPoll(job, null, delay));
+    }
+
+    /** r null : interrogation en échec (réseau, 5xx, 429), réessayée à l'intervalle suivant. */
+    private void onPoll(Job job, BackgroundResponse r, Duration delay) {
+        if (job.done.get()) return;
+        job.polls.incrementAndGet();
+        polls.incrementAndGet();
+        if (r != null) {
+            job.status = r.status();
+            if (r.isDone()) {
+                finish(job, r.status(), r.result());
+                return;
+            }
+        }
+        long elapsed = job.elapsedMs();
+        if (elapsed >= props.maxDuration().toMillis()) {
+            openAI.cancelBackground(job.pending.responseId()).subscribe();
+            finish(job, "expired", AiResult.error("Erreur: délai dépassé (" + elapsed + " ms).", elapsed)
+                    .withModel(job.pending.model(), null));
+            return;
+        }
+        schedulePoll(job, props.nextPollInterval(delay));
+    }
+
+    private void finish(Job job, String status, AiResult result) {
+        if (!job.done.compareAndSet(false, true)) return;
+        job.status = status;
+        job.result = result;
+        active.decrementAndGet();
+        switch (status) {
+            case "cancelled" -> cancelled.incrementAndGet();
+            case "expired" -> expired.incrementAndGet();
+            default -> (result.totalTokens() == null ? failed : completed).incrementAndGet();
+        }
+        if (!"cancelled".equals(status)) {
+            resultStore.record("job", job.message, result.model() != null ? result.model() : job.model,
+                    job.temperature, job.maxOutputTokens, result);
+        }
+        Schedulers.parallel().schedule(() -> jobs.remove(job.id, job), props.retention().toMillis(),
+                TimeUnit.MILLISECONDS);
+    }
+
+    private void forget(Job job) {
+        if (job.done.compareAndSet(false, true)) {
+            active.decrementAndGet();
+            jobs.remove(job.id, job);
+        }
+    }
+
+    private static String statusOf(AiResult r) {
+        if (r.totalTokens() == null) return "failed";
+        return r.truncated() ? "incomplete" : "completed";
+    }
+
+    /** Un job : requête, réponse background en attente, tâche courante (appel ou prochaine interrogation). */
+    private static final class Job {
+        private final String id = UUID.randomUUID().toString();
+        private final Instant createdAt = Instant.now();
+        private final long startNanos = System.nanoTime();
+        private final String message;
+        private final String model;
+        private final Double temperature;
+        private final Integer maxOutputTokens;
+        private final AtomicInteger polls = new AtomicInteger();
+        private final AtomicBoolean done = new AtomicBoolean();
+        private volatile String status = "queued";
+        private volatile BackgroundResponse pending;
+        private volatile AiResult result;
+        private volatile Disposable task;
+
+        Job(String message, String model, Double temperature, Integer maxOutputTokens) {
+            this.message = message;
+            this.model = model;
+            this.temperature = temperature;
+            this.maxOutputTokens = maxOutputTokens;
+        }
+
+        long elapsedMs() {
+            return (System.nanoTime() - startNanos) / 1_000_000;
+        }
+
+        JobStatus snapshot() {
+            AiResult r = result;
+            BackgroundResponse p = pending;
+            String usedModel = r != null && r.model() != null ? r.model() : p != null ? p.model() : model;
+            return new JobStatus(id, status, usedModel, p == null ? null : p.responseId(), createdAt,
+                    r != null ? r.latencyMs() : elapsedMs(), polls.get(), r);
+        }
+    }
+}
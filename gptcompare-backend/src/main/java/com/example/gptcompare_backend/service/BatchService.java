@@ -0,0 +1,321 @@
+package com.example.gptcompare_backend.service;
+
+import com.example.gptcompare_backend.dto.ModelSettings;
+import com.example.gptcompare_backend.service.OpenAIService.AiResult;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.codec.StringDecoder;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import tools.jackson.core.JacksonException;
+import tools.jackson.core.JsonParser;
+import tools.jackson.core.JsonToken;
+import tools.jackson.core.ObjectReadContext;
+import tools.jackson.core.json.JsonFactory;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Évaluation d'un jeu de prompts (JSONL) sur plusieurs modèles.
+ * - les prompts sont lus au fil de l'eau : seuls les appels en cours sont en mémoire (10k+ prompts OK)
+ * - concurrence bornée globalement (max-concurrency) et par modèle (per-model-concurrency)
+ * - les résultats sont émis dans l'ordre où ils se terminent, puis un résumé par modèle
+ * - annulation : DELETE du batch ou déconnexion du client (les appels en cours sont annulés)
+ * - chaque appel terminé est enregistré dans l'historique (source "batch")
+ */
+@Service
+public class BatchService {
+
+    /** Une ligne du fichier : id (optionnel) et texte du prompt. */
+    public record BatchPrompt(long index, String id, String prompt) {}
+
+    /** Avancement d'un batch en cours (GET /api/batch/{id}). */
+    public record Progress(String batchId, long prompts, long completed, long failed, int inFlight,
+                           boolean cancelled) {}
+
+    /**
+     * Statistiques agrégées d'une colonne du batch (fin de batch) : modèle et réglages demandés,
+     * deux colonnes d'un même modèle avec des réglages différents ont chacune leur résumé.
+     * - failed : appels sans usage (erreur HTTP, réseau, délai, circuit ouvert...)
+     * - latences en ms ; p50/p95 à ~10 % près (histogramme logarithmique, mémoire constante)
+     */
+    public record ModelSummary(String model, Double temperature, Integer maxOutputTokens, long calls, long failed, long truncated,
+                               double meanLatencyMs, long p50LatencyMs, long p95LatencyMs, long maxLatencyMs,
+                               long inputTokens, long outputTokens, long totalTokens) {}
+
+    /**
+     * Évènement interne du lot, converti en dto.BatchEvent par le controller pour le flux NDJSON :
+     * - "result" : prompt × modèle terminé (result + compteurs d'avancement)
+     * - "invalid" : ligne illisible (message dans error)
+     * - "summary" : dernier évènement, résumé par modèle
+     */
+    public record LegResult(String type, String batchId, Long index, String promptId, String model,
+                            AiResult result, String error, Progress progress, List<ModelSummary> summary) {
+
+        static LegResult result(String batchId, BatchPrompt p, String model, AiResult r, Progress progress) {
+            return new LegResult("result", batchId, p.index(), p.id(), model, r, null, progress, null);
+        }
+
+        static LegResult invalid(String batchId, long index, String error, Progress progress) {
+            return new LegResult("invalid", batchId, index, null, null, null, error, progress, null);
+        }
+
+        static LegResult summary(String batchId, Progress progress, List<ModelSummary> summary) {
+            return new LegResult("summary", batchId, null, null, null, null, null, progress, summary);
+        }
+    }
+
+    private static final JsonFactory JSON = new JsonFactory();
+    /** Taille max d'une ligne JSONL. */
+    private static final int MAX_LINE_BYTES = 1024 * 1024;
+
+    private final ChatProvider chatProvider;
+    private final ResultStore resultStore;
+    private final int maxConcurrency;
+    private final int perModelConcurrency;
+    private final int maxModels;
+    private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+
+    public BatchService(
+            ChatProvider chatProvider,
+            ResultStore resultStore,
+            @Value("${openai.batch.max-concurrency:8}") int maxConcurrency,
+            @Value("${openai.batch.per-model-concurrency:4}") int perModelConcurrency,
+            @Value("${openai.batch.max-models:6}") int maxModels
+    ) {
+        this.chatProvider = chatProvider;
+        this.resultStore = resultStore;
+        this.maxConcurrency = Math.max(1, maxConcurrency);
+        this.perModelConcurrency = Math.max(1, perModelConcurrency);
+        this.maxModels = maxModels;
+    }
+
+    public int getMaxModels() {
+        return maxModels;
+    }
+
+    public static String newBatchId() {
+        return UUID.randomUUID().toString();
+    }
+
+    /** Découpe un flux d'octets JSONL en lignes, sans le charger en entier. */
+    public static Flux<String> lines(Flux<DataBuffer> content) {
+        StringDecoder decoder = StringDecoder.textPlainOnly();
+        decoder.setMaxInMemorySize(MAX_LINE_BYTES);
+        return decoder.decode(content, ResolvableType.forClass(String.class), null, Map.of());
+    }
+
+    /**
+     * Exécute le batch. Le Flux se termine par un évènement "summary",
+     * y compris après annulation (progress.cancelled = true).
+     */
+    public Flux<LegResult> run(String batchId, Flux<String> lines, List<ModelSettings> models) {
+        return Flux.defer(() -> {
+            Job job = new Job(batchId, models);
+            if (jobs.putIfAbsent(batchId, job) != null) {
+                return Flux.error(new IllegalStateException("batch déjà en cours : " + batchId));
+            }
+
+            Flux<LegResult> events = lines
+                    .index()
+                    .filter(t -> !t.getT2().isBlank())
+                    .concatMap(t -> {
+                        long index = t.getT1();
+                        job.prompts.incrementAndGet();
+                        try {
+                            BatchPrompt p = parse(index, t.getT2());
+                            return Flux.fromIterable(models).map(m -> new Leg(p, m));
+                        } catch (JacksonException | IllegalArgumentException e) {
+                            return Flux.just(new Leg(new BatchPrompt(index, null, null), null, e.getMessage()));
+                        }
+                    }, 1)
+                    .flatMap(leg -> leg.error != null
+                            ? Mono.just(LegResult.invalid(batchId, leg.prompt.index(), leg.error, job.progress()))
+                            : job.gate(leg.settings.getModel()).run(() -> call(leg.prompt, leg.settings))
+                                    .map(r -> job.record(leg, r)), maxConcurrency)
+                    .takeUntilOther(job.cancelled.asMono());
+
+            return events
+                    .concatWith(Mono.fromSupplier(() -> LegResult.summary(batchId, job.progress(), job.summary())))
+                    .doFinally(s -> jobs.remove(batchId, job));
+        });
+    }
+
+    public Progress progress(String batchId) {
+        Job job = jobs.get(batchId);
+        return job == null ? null : job.progress();
+    }
+
+    /** Annule un batch en cours : le flux se clôt avec le résumé partiel. */
+    public boolean cancel(String batchId) {
+        Job job = jobs.get(batchId);
+        if (job == null) return false;
+        job.cancelledFlag = true;
+        job.cancelled.tryEmitEmpty();
+        return true;
+    }
+
+    private Mono<AiResult> call(BatchPrompt p, ModelSettings s) {
+        final long startNanos = System.nanoTime();
+        return chatProvider.generateReply(p.prompt(), s.getModel(), s.getTemperature(), s.getMaxOutputTokens())
+                // un lot peut attendre : il passe après les requêtes interactives dans le limiteur
+                .contextWrite(RequestPriority::bulk)
+                // un refus du limiteur ne fait pas échouer tout le batch
+                .onErrorResume(e -> Mono.just(AiResult.error("Erreur: " + e.getMessage(),
+                        OpenAIService.elapsedMs(startNanos))))
+                .doOnNext(r -> resultStore.record("batch", p.prompt(), s.getModel(), s.getTemperature(),
+                        s.getMaxOutputTokens(), r));
+    }
+
+    /**
+     * Formats acceptés par ligne :
+     * - objet JSON : id | request_id, et prompt | message | input | body (ex: requests.jsonl)
+     * - sinon la ligne entière est le prompt
+     */
+    static BatchPrompt parse(long index, String line) {
+        String trimmed = line.trim();
+        if (!trimmed.startsWith("{")) return new BatchPrompt(index, null, trimmed);
+
+        String id = null, prompt = null;
+        try (JsonParser p = JSON.createParser(ObjectReadContext.empty(), trimmed)) {
+            p.nextToken();
+            while (p.nextToken() == JsonToken.PROPERTY_NAME) {
+                String name = p.currentName();
+                JsonToken t = p.nextToken();
+                String value = t.isScalarValue() && t != JsonToken.VALUE_NULL ? p.getString() : null;
+                if (!t.isScalarValue()) p.skipChildren();
+                switch (name) {
+                    case "id", "request_id" -> id = id == null ? value : id;
+                    case "prompt", "message", "input", "body" -> prompt = prompt == null ? value : prompt;
+                    default -> { }
+                }
+            }
+        }
+        if (prompt == null || prompt.isBlank()) {
+            throw new IllegalArgumentException("ligne " + (index + 1) + " : aucun champ prompt/message/input/body.");
+        }
+        return new BatchPrompt(index, id, prompt);
+    }
+
+    private record Leg(BatchPrompt prompt, ModelSettings settings, String error) {
+        Leg(BatchPrompt prompt, ModelSettings settings) {
+            this(prompt, settings, null);
+        }
+    }
+
+    /** État d'un batch : portes de concurrence par modèle, compteurs et agrégats (taille fixe). */
+    private final class Job {
+        private final String batchId;
+        private final Map<String, ConcurrencyGate> gates = new ConcurrentHashMap<>();
+        private final Map<SettingsKey, ModelAggregate> aggregates = new LinkedHashMap<>();
+        private final AtomicLong prompts = new AtomicLong();
+        private final AtomicLong completed = new AtomicLong();
+        private final AtomicLong failed = new AtomicLong();
+        private final Sinks.Empty<Void> cancelled = Sinks.empty();
+        private volatile boolean cancelledFlag;
+
+        Job(String batchId, List<ModelSettings> models) {
+            this.batchId = batchId;
+            for (ModelSettings m : models) {
+                SettingsKey key = SettingsKey.of(m);
+                aggregates.putIfAbsent(key, new ModelAggregate(key));
+            }
+        }
+
+        ConcurrencyGate gate(String model) {
+            return gates.computeIfAbsent(String.valueOf(model), k -> new ConcurrencyGate(perModelConcurrency));
+        }
+
+        LegResult record(Leg leg, AiResult r) {
+            boolean isFailure = r.totalTokens() == null;
+            synchronized (aggregates) {
+                aggregates.get(SettingsKey.of(leg.settings)).add(r, isFailure);
+            }
+            completed.incrementAndGet();
+            if (isFailure) failed.incrementAndGet();
+            return LegResult.result(batchId, leg.prompt, leg.settings.getModel(), r, progress());
+        }
+
+        Progress progress() {
+            int inFlight = gates.values().stream().mapToInt(ConcurrencyGate::inFlight).sum();
+            return new Progress(batchId, prompts.get(), completed.get(), failed.get(), inFlight, cancelledFlag);
+        }
+
+        List<ModelSummary> summary() {
+            synchronized (aggregates) {
+                List<ModelSummary> out = new ArrayList<>(aggregates.size());
+                aggregates.values().forEach(a -> out.add(a.summary()));
+                return out;
+            }
+        }
+    }
+
+    /** Colonne du batch : le modèle seul ne suffit pas (même modèle à deux températures). */
+    private record SettingsKey(String model, Double temperature, Integer maxOutputTokens) {
+        static SettingsKey of(ModelSettings m) {
+            return new SettingsKey(String.valueOf(m.getModel()), m.getTemperature(), m.getMaxOutputTokens());
+        }
+    }
+
+    /** Agrégats d'une colonne : compteurs + histogramme logarithmique des latences (buckets de ~10 %). */
+    private static final class ModelAggregate {
+        private static final double GROWTH = 1.1;
+        private static final int BUCKETS = 160; // jusqu'à ~4 h
+
+        private final SettingsKey key;
+        private final long[] histogram = new long[BUCKETS];
+        private long calls, failed, truncated, latencySum, latencyMax;
+        private long inputTokens, outputTokens, totalTokens;
+
+        ModelAggregate(SettingsKey key) {
+            this.key = key;
+        }
+
+        void add(AiResult r, boolean isFailure) {
+            calls++;
+            if (isFailure) failed++;
+            if (r.truncated()) truncated++;
+            long latency = Math.max(0, r.latencyMs());
+            latencySum += latency;
+            latencyMax = Math.max(latencyMax, latency);
+            histogram[bucket(latency)]++;
+            if (r.inputTokens() != null) inputTokens += r.inputTokens();
+            if (r.outputTokens() != null) outputTokens += r.outputTokens();
+            if (r.totalTokens() != null) totalTokens += r.totalTokens();
+        }
+
+        ModelSummary summary() {
+            double mean = calls == 0 ? 0 : (double) latencySum / calls;
+            return new ModelSummary(key.model(), key.temperature(), key.maxOutputTokens(), calls, failed, truncated, mean, percentile(0.5), percentile(0.95),
+                    latencyMax, inputTokens, outputTokens, totalTokens);
+        }
+
+        private long percentile(double q) {
+            if (calls == 0) return 0;
+            long rank = (long) Math.ceil(q * calls), seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += histogram[i];
+                if (seen >= rank) return Math.min(upperBound(i), latencyMax);
+            }
+            return latencyMax;
+        }
+
+        private static int bucket(long latencyMs) {
+            if (latencyMs <= 1) return 0;
+            return (int) Math.min(BUCKETS - 1, Math.ceil(Math.log(latencyMs) / Math.log(GROWTH)));
+        }
+
+        private static long upperBound(int bucket) {
+            return (long) Math.ceil(Math.pow(GROWTH, bucket));
+        }
+    }
+}
@@ -0,0 +1,281 @@
+package com.example.gptcompare_backend.service;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Encodeur BPE au niveau octet, compatible tiktoken (o200k_base, cl100k_base) :
+ * pré-découpage par l'expression régulière de l'encodage, puis fusions par rang croissant
+ * sur les octets UTF-8 de chaque morceau.
+ * Vocabulaire au format .tiktoken ("jeton-base64 rang" par ligne), rangé dans une table à adressage
+ * ouvert sur un tableau d'octets unique : aucune clé allouée à la recherche. Un comptage alloue
+ * un Matcher et des tampons réutilisés d'un morceau à l'autre, rien par token.
+ * Instance immuable, utilisable depuis plusieurs threads.
+ */
+public final class BpeEncoder {
+
+    /** Pré-découpage o200k_base (GPT-4o, GPT-4.1, GPT-5, o-series). */
+    public static final Pattern O200K_PATTERN = Pattern.compile(String.join("|",
+            "[^\\r\\n\\p{L}\\p{N}]?[\\p{Lu}\\p{Lt}\\p{Lm}\\p{Lo}\\p{M}]*[\\p{Ll}\\p{Lm}\\p{Lo}\\p{M}]+(?i:'s|'t|'re|'ve|'m|'ll|'d)?",
+            "[^\\r\\n\\p{L}\\p{N}]?[\\p{Lu}\\p{Lt}\\p{Lm}\\p{Lo}\\p{M}]+[\\p{Ll}\\p{Lm}\\p{Lo}\\p{M}]*(?i:'s|'t|'re|'ve|'m|'ll|'d)?",
+            "\\p{N}{1,3}",
+            " ?[^\\s\\p{L}\\p{N}]+[\\r\\n/]*",
+            "\\s*[\\r\\n]+",
+            "\\s+(?!\\S)",
+            "\\s+"), Pattern.UNICODE_CHARACTER_CLASS);
+
+    /** Pré-découpage cl100k_base (GPT-4, GPT-3.5). */
+    public static final Pattern CL100K_PATTERN = Pattern.compile(String.join("|",
+            "(?i:'s|'t|'re|'ve|'m|'ll|'d)",
+            "[^\\r\\n\\p{L}\\p{N}]?\\p{L}+",
+            "\\p{N}{1,3}",
+            " ?[^\\s\\p{L}\\p{N}]+[\\r\\n]*",
+            "\\s*[\\r\\n]+",
+            "\\s+(?!\\S)",
+            "\\s+"), Pattern.UNICODE_CHARACTER_CLASS);
+
+    private static final int NO_RANK = Integer.MAX_VALUE;
+
+    private final String name;
+    private final Pattern pattern;
+    /** Octets de tous les jetons, bout à bout. */
+    private final byte[] arena;
+    private final int[] tokenStart;
+    private final int[] tokenLength;
+    private final int[] tokenRank;
+    private final int size;
+    /** Table à adressage ouvert : index de jeton + 1 (0 = vide). */
+    private final int[] slots;
+    private final int mask;
+
+    private BpeEncoder(String name, Pattern pattern, byte[] arena, int[] tokenStart, int[] tokenLength,
+                       int[] tokenRank, int size) {
+        this.name = name;
+        this.pattern = pattern;
+        this.arena = arena;
+        this.tokenStart = tokenStart;
+        this.tokenLength = tokenLength;
+        this.tokenRank = tokenRank;
+        this.size = size;
+        int capacity = Integer.highestOneBit(Math.max(4, size * 2) - 1) << 1;
+        this.slots = new int[capacity];
+        this.mask = capacity - 1;
+        for (int i = 0; i < size; i++) {
+            int slot = hash(arena, tokenStart[i], tokenLength[i]) & mask;
+            while (slots[slot] != 0) slot = (slot + 1) & mask;
+            slots[slot] = i + 1;
+        }
+    }
+
+    /** Expression de pré-découpage d'un encodage : o200k pour "o200k*", cl100k sinon. */
+    public static Pattern patternFor(String encoding) {
+        return encoding != null && encoding.startsWith("o200k") ? O200K_PATTERN : CL100K_PATTERN;
+    }
+
+    /** Lit un vocabulaire .tiktoken ; le flux n'est pas fermé. */
+    public static BpeEncoder load(String name, Pattern pattern, InputStream tiktoken) throws IOException {
+        ByteArrayOutputStream arena = new ByteArrayOutputStream(1 << 20);
+        int[] starts = new int[1 << 16];
+        int[] lengths = new int[1 << 16];
+        int[] ranks = new int[1 << 16];
+        int size = 0;
+
+        BufferedReader reader = new BufferedReader(new InputStreamReader(tiktoken, StandardCharsets.US_ASCII));
+        Base64.Decoder base64 = Base64.getDecoder();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            int sep = line.indexOf(' ');
+            if (sep <= 0) continue;
+            byte[] token = base64.decode(line.substring(0, sep));
+            if (size == starts.length) {
+                starts = Arrays.copyOf(starts, size * 2);
+                lengths = Arrays.copyOf(lengths, size * 2);
+                ranks = Arrays.copyOf(ranks, size * 2);
+            }
+            starts[size] = arena.size();
+            lengths[size] = token.length;
+            ranks[size] = Integer.parseInt(line.substring(sep + 1).trim());
+            arena.write(token);
+            size++;
+        }
+        if (size == 0) throw new IOException("vocabulaire " + name + " vide");
+        return new BpeEncoder(name, pattern, arena.toByteArray(), starts, lengths, ranks, size);
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /** Nombre de tokens du texte (sans construire la liste des jetons). */
+    public int count(CharSequence text) {
+        if (text == null || text.isEmpty()) return 0;
+        Scratch s = new Scratch();
+        Matcher m = pattern.matcher(text);
+        int total = 0;
+        while (m.find()) {
+            int len = utf8(text, m.start(), m.end(), s);
+            total += len == 1 || rank(s.bytes, 0, len) != NO_RANK ? 1 : merge(s, len);
+        }
+        return total;
+    }
+
+    /** Rangs des jetons du texte, dans l'ordre (identiques aux ids tiktoken). */
+    public int[] encode(CharSequence text) {
+        if (text == null || text.isEmpty()) return new int[0];
+        Scratch s = new Scratch();
+        Matcher m = pattern.matcher(text);
+        int[] out = new int[Math.max(16, text.length() / 3)];
+        int n = 0;
+        while (m.find()) {
+            int len = utf8(text, m.start(), m.end(), s);
+            int whole = rank(s.bytes, 0, len);
+            int parts = whole != NO_RANK ? 1 : merge(s, len);
+            if (n + parts > out.length) out = Arrays.copyOf(out, Math.max(out.length * 2, n + parts));
+            if (whole != NO_RANK) {
+                out[n++] = whole;
+                continue;
+            }
+            for (int i = 0; i < parts; i++) {
+                out[n++] = rank(s.bytes, s.starts[i], s.starts[i + 1] - s.starts[i]);
+            }
+        }
+        return Arrays.copyOf(out, n);
+    }
+
+    /**
+     * Estimation sans vocabulaire : même pré-découpage, ~4 octets UTF-8 par token
+     * (au moins un token par morceau). Sert de repli si le fichier .tiktoken est absent.
+     */
+    public static int approximate(Pattern pattern, CharSequence text) {
+        if (text == null || text.isEmpty()) return 0;
+        Matcher m = pattern.matcher(text);
+        int total = 0;
+        while (m.find()) {
+            int bytes = 0;
+            for (int i = m.start(); i < m.end(); i++) {
+                char c = text.charAt(i);
+                bytes += c < 0x80 ? 1 : c < 0x800 ? 2 : Character.isSurrogate(c) ? 2 : 3;
+            }
+            total += Math.max(1, (bytes + 3) / 4);
+        }
+        return total;
+    }
+
+    /**
+     * Fusions BPE d'un morceau (s.bytes[0, len)) : la paire de plus petit rang est fusionnée
+     * jusqu'à ce qu'aucune paire adjacente ne soit un jeton. Renvoie le nombre de jetons,
+     * dont les bornes sont dans s.starts[0..n].
+     */
+    private int merge(Scratch s, int len) {
+        s.ensureParts(len + 1);
+        int[] st = s.starts;
+        int[] rk = s.ranks;
+        byte[] b = s.bytes;
+        int n = len + 1;
+        for (int i = 0; i < n; i++) st[i] = i;
+        for (int i = 0; i < n - 2; i++) rk[i] = rank(b, i, 2);
+        rk[n - 2] = NO_RANK;
+        rk[n - 1] = NO_RANK;
+
+        while (n > 2) {
+            int best = NO_RANK;
+            int at = -1;
+            for (int i = 0; i < n - 1; i++) {
+                if (rk[i] < best) {
+                    best = rk[i];
+                    at = i;
+                }
+            }
+            if (at < 0) break;
+            // at absorbe at+1 : rangs recalculés pour at et at-1, avant de retirer la borne at+1
+            rk[at] = at + 3 < n ? rank(b, st[at], st[at + 3] - st[at]) : NO_RANK;
+            if (at > 0) rk[at - 1] = rank(b, st[at - 1], st[at + 2] - st[at - 1]);
+            System.arraycopy(st, at + 2, st, at + 1, n - at - 2);
+            System.arraycopy(rk, at + 2, rk, at + 1, n - at - 2);
+            n--;
+        }
+        return n - 1;
+    }
+
+    private int rank(byte[] b, int off, int len) {
+        int slot = hash(b, off, len) & mask;
+        int id;
+        while ((id = slots[slot]) != 0) {
+            int t = id - 1;
+            if (tokenLength[t] == len
+                    && Arrays.equals(arena, tokenStart[t], tokenStart[t] + len, b, off, off + len)) {
+                return tokenRank[t];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return NO_RANK;
+    }
+
+    /** FNV-1a 32 bits, brassé pour la table en puissance de deux. */
+    private static int hash(byte[] b, int off, int len) {
+        int h = 0x811C9DC5;
+        for (int i = off; i < off + len; i++) {
+            h = (h ^ (b[i] & 0xFF)) * 0x01000193;
+        }
+        return h ^ (h >>> 16);
+    }
+
+    /** Encode text[from, to) en UTF-8 dans s.bytes ; renvoie le nombre d'octets. */
+    private static int utf8(CharSequence text, int from, int to, Scratch s) {
+        s.ensureBytes((to - from) * 3);
+        byte[] out = s.bytes;
+        int n = 0;
+        for (int i = from; i < to; i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                out[n++] = (byte) c;
+            } else if (c < 0x800) {
+                out[n++] = (byte) (0xC0 | (c >> 6));
+                out[n++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < to && Character.isLowSurrogate(text.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, text.charAt(++i));
+                out[n++] = (byte) (0xF0 | (cp >> 18));
+                out[n++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                out[n++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                out[n++] = (byte) (0x80 | (cp & 0x3F));
+            } else {
+                // surrogate isolé : U+FFFD, comme String.getBytes
+                if (Character.isSurrogate(c)) c = '\uFFFD';
+                out[n++] = (byte) (0xE0 | (c >> 12));
+                out[n++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                out[n++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        return n;
+    }
+
+    /** Tampons d'un appel, agrandis au besoin et réutilisés pour chaque morceau. */
+    private static final class Scratch {
+        byte[] bytes = new byte[256];
+        int[] starts = new int[64];
+        int[] ranks = new int[64];
+
+        void ensureBytes(int n) {
+            if (bytes.length < n) bytes = new byte[Math.max(n, bytes.length * 2)];
+        }
+
+        void ensureParts(int n) {
+            if (starts.length < n) {
+                starts = new int[Math.max(n, starts.length * 2)];
+                ranks = new int[starts.length];
+            }
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package com.example.gptcompare_backend.service;
+
+import tools.jackson.core.JsonParser;
+import tools.jackson.core.JsonToken;
+import tools.jackson.core.ObjectReadContext;
+import tools.jackson.core.json.JsonFactory;
+
+/**
+ * Décodage en une passe (Jackson streaming) du format Chat Completions, réponse complète ou chunk SSE.
+ * Seul le premier choix est lu : message.content (ou delta.content), finish_reason et usage
+ * (dont prompt_tokens_details.cached_tokens et completion_tokens_details.reasoning_tokens, si fournis).
+ */
+public final class ChatCompletionsDecoder {
+
+    /**
+     * Réponse ou chunk décodé.
+     * - text : message.content (réponse) ou delta.content (chunk)
+     * - finishReason : "stop", "length" (tronqué par max_tokens)...
+     * - done : chunk terminal "[DONE]" du mode streaming
+     */
+    public record Decoded(String text, String finishReason, Integer promptTokens, Integer completionTokens,
+                          Integer totalTokens, Integer cachedTokens, Integer reasoningTokens, boolean done) {
+
+        public boolean truncated() {
+            return "length".equals(finishReason);
+        }
+    }
+
+    private static final JsonFactory JSON = new JsonFactory();
+    private static final Decoded DONE = new Decoded(null, null, null, null, null, null, null, true);
+
+    private ChatCompletionsDecoder() {}
+
+    public static Decoded decode(byte[] body) {
+        try (JsonParser p = JSON.createParser(ObjectReadContext.empty(), body)) {
+            return p.nextToken() == JsonToken.START_OBJECT ? read(p) : null;
+        }
+    }
+
+    public static Decoded decodeChunk(String data) {
+        if (data == null || data.isBlank()) return null;
+        if ("[DONE]".equals(data.trim())) return DONE;
+        try (JsonParser p = JSON.createParser(ObjectReadContext.empty(), data)) {
+            return p.nextToken() == JsonToken.START_OBJECT ? read(p) : null;
+        }
+    }
+
+    private static Decoded read(JsonParser p) {
+        State s = new State();
+        while (p.nextToken() == JsonToken.PROPERTY_NAME) {
+            String name = p.currentName();
+            JsonToken t = p.nextToken();
+            switch (name) {
+                case "choices" -> readChoices(p, t, s);
+                case "usage" -> readUsage(p, t, s);
+                default -> p.skipChildren();
+            }
+        }
+        return new Decoded(s.text, s.finishReason, s.promptTokens, s.completionTokens, s.totalTokens,
+                s.cachedTokens, s.reasoningTokens, false);
+    }
+
+    private static void readChoices(JsonParser p, JsonToken t, State s) {
+        if (t != JsonToken.START_ARRAY) {
+            p.skipChildren();
+            return;
+        }
+        boolean first = true;
+        JsonToken item;
+        while ((item = p.nextToken()) != JsonToken.END_ARRAY) {
+            if (item != JsonToken.START_OBJECT || !first) {
+                p.skipChildren();
+                continue;
+            }
+            first = false;
+            while (p.nextToken() == JsonToken.PROPERTY_NAME) {
+                String name = p.currentName();
+                JsonToken v = p.nextToken();
+                switch (name) {
+                    case "message", "delta" -> readContent(p, v, s);
+                    case "finish_reason" -> s.finishReason = v == JsonToken.VALUE_STRING ? p.getString() : null;
+                    default -> p.skipChildren();
+                }
+            }
+        }
+    }
+
+    private static void readContent(JsonParser p, JsonToken t, State s) {
+        if (t != JsonToken.START_OBJECT) {
+            p.skipChildren();
+            return;
+        }
+        while (p.nextToken() == JsonToken.PROPERTY_NAME) {
+            String name = p.currentName();
+            JsonToken v = p.nextToken();
+            if ("content".equals(name) && v == JsonToken.VALUE_STRING) s.text = p.getString();
+            else p.skipChildren();
+        }
+    }
+
+    private static void readUsage(JsonParser p, JsonToken t, State s) {
+        if (t != JsonToken.START_OBJECT) {
+            p.skipChildren();
+            return;
+        }
+        while (p.nextToken() == JsonToken.PROPERTY_NAME) {
+            String name = p.currentName();
+            JsonToken v = p.nextToken();
+            if (v == JsonToken.START_OBJECT) {
+                switch (name) {
+                    case "prompt_tokens_details" -> s.cachedTokens = detail(p, "cached_tokens");
+                    case "completion_tokens_details" -> s.reasoningTokens = detail(p, "reasoning_tokens");
+                    default -> p.skipChildren();
+                }
+                continue;
+            }
+            Integer value = v == JsonToken.VALUE_NUMBER_INT ? p.getValueAsInt() : null;
+            if (value == null) p.skipChildren();
+            switch (name) {
+                case "prompt_tokens" -> s.promptTokens = value;
+                case "completion_tokens" -> s.completionTokens = value;
+                case "total_tokens" -> s.totalTokens = value;
+                default -> { }
+            }
+        }
+    }
+
+    /** Entier d'un sous-objet de usage (parser positionné sur START_OBJECT), null si absent. */
+    private static Integer detail(JsonParser p, String field) {
+        Integer value = null;
+        while (p.nextToken() == JsonToken.PROPERTY_NAME) {
+            String name = p.currentName();
+            JsonToken v = p.nextToken();
+            if (field.equals(name) && v == JsonToken.VALUE_NUMBER_INT) value = p.getValueAsInt();
+            else p.skipChildren();
+        }
+        return value;
+    }
+
+    private static final class State {
+        String text;
+        String finishReason;
+        Integer promptTokens;
+        Integer completionTokens;
+        Integer totalTokens;
+        Integer cachedTokens;
+        Integer reasoningTokens;
+    }
+}
@@ -0,0 +1,204 @@
+package com.example.gptcompare_backend.service;
+
+import com.example.gptcompare_backend.config.ProvidersProperties.ChatCompletionsEndpoint;
+import com.example.gptcompare_backend.service.OpenAIService.AiResult;
+import com.example.gptcompare_backend.service.OpenAIService.StreamEvent;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Fournisseur compatible /v1/chat/completions (llama.cpp, vLLM, Ollama, OpenAI...).
+ * Un seul message "user", max_tokens et temperature ; en streaming, l'usage est demandé
+ * dans le dernier chunk (stream_options.include_usage).
+ * Pas de cache, relance ni disjoncteur ici : ce fournisseur sert surtout aux comparaisons locales.
+ * Durées sur horloge monotone (nanoTime) ; pas de découpage par phase (phases null, propre à OpenAIService).
+ */
+public class ChatCompletionsProvider implements ChatProvider {
+
+    private static final ParameterizedTypeReference<ServerSentEvent<String>> SSE_STRING =
+            new ParameterizedTypeReference<>() {};
+
+    private final String name;
+    private final WebClient webClient;
+    private final Duration timeout;
+    private final UpstreamMetrics metrics;
+
+    /**
+     * name : nom du fournisseur (préfixe des modèles, tag des métriques "nom:modèle").
+     * httpClient : client Reactor Netty (pool partagé avec OpenAI, cf. ProviderRegistry).
+     */
+    public ChatCompletionsProvider(String name, ChatCompletionsEndpoint endpoint, HttpClient httpClient,
+                                   UpstreamMetrics metrics) {
+        this.name = name;
+        this.timeout = endpoint.timeout();
+        this.metrics = metrics;
+        WebClient.Builder builder = WebClient.builder()
+                .clientConnector(new ReactorClientHttpConnector(httpClient))
+                .baseUrl(endpoint.url())
+                .defaultHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE);
+        if (endpoint.apiKey() != null && !endpoint.apiKey().isBlank()) {
+            builder.defaultHeader(HttpHeaders.AUTHORIZATION, "Bearer " + endpoint.apiKey());
+        }
+        this.webClient = builder.build();
+    }
+
+    @Override
+    public Mono<AiResult> generateReply(String userMessage, String model, Double temperature, Integer maxOutputTokens) {
+        return generateReply(userMessage, model, temperature, maxOutputTokens, Conversation.NONE);
+    }
+
+    @Override
+    public Flux<StreamEvent> streamReply(String userMessage, String model, Double temperature, Integer maxOutputTokens) {
+        return streamReply(userMessage, model, temperature, maxOutputTokens, Conversation.NONE);
+    }
+
+    /** Historique de session rejoué en messages user/assistant (pas de chaînage par id). */
+    @Override
+    public Mono<AiResult> generateReply(String userMessage, String model, Double temperature, Integer maxOutputTokens,
+                                        Conversation conversation) {
+        final String tag = name + ":" + model;
+        final int usedMax = OpenAIService.resolveMaxOutputTokens(maxOutputTokens);
+        return Mono.deferContextual(ctx -> {
+            final long startNanos = System.nanoTime();
+
+            return webClient.post()
+                    .bodyValue(buildPayload(userMessage, conversation, model, temperature, usedMax, false))
+                    .retrieve()
+                    .bodyToMono(byte[].class)
+                    .switchIfEmpty(Mono.error(() -> new IllegalStateException("réponse " + name + " vide.")))
+                    .timeout(RequestDeadline.remaining(ctx, timeout))
+                    .map(body -> toAiResult(ChatCompletionsDecoder.decode(body), startNanos, null))
+                    .doOnNext(r -> metrics.recordResult(tag, System.nanoTime() - startNanos, r))
+                    .doOnError(e -> metrics.recordError(tag, System.nanoTime() - startNanos, e))
+                    .onErrorResume(WebClientResponseException.class, e -> Mono.just(httpErrorResult(e, startNanos)))
+                    .onErrorResume(e -> Mono.just(OpenAIService.upstreamOutcome(AiResult.error(
+                            "Erreur: " + e.getMessage(), OpenAIService.elapsedMs(startNanos)), e)));
+        });
+    }
+
+    /**
+     * Streaming SSE : un delta par chunk "choices[0].delta.content", fin sur "[DONE]"
+     * (ou fin du flux). Le résultat final cumule le texte et reprend l'usage du dernier chunk.
+     */
+    @Override
+    public Flux<StreamEvent> streamReply(String userMessage, String model, Double temperature, Integer maxOutputTokens,
+                                         Conversation conversation) {
+        final String tag = name + ":" + model;
+        final int usedMax = OpenAIService.resolveMaxOutputTokens(maxOutputTokens);
+        return Flux.deferContextual(ctx -> {
+            final long startNanos = System.nanoTime();
+            final AtomicReference<Long> firstTokenNanos = new AtomicReference<>();
+            final StringBuilder text = new StringBuilder();
+            final AtomicReference<ChatCompletionsDecoder.Decoded> last = new AtomicReference<>();
+
+            Flux<StreamEvent> deltas = webClient.post()
+                    .accept(MediaType.TEXT_EVENT_STREAM)
+                    .bodyValue(buildPayload(userMessage, conversation, model, temperature, usedMax, true))
+                    .retrieve()
+                    .bodyToFlux(SSE_STRING)
+                    // délai d'inactivité entre deux chunks, sans dépasser la deadline de la requête
+                    .timeout(Mono.delay(RequestDeadline.remaining(ctx, timeout)),
+                            sse -> Mono.delay(RequestDeadline.remaining(ctx, timeout)))
+                    .map(sse -> {
+                        ChatCompletionsDecoder.Decoded chunk = ChatCompletionsDecoder.decodeChunk(sse.data());
+                        return chunk == null ? new ChatCompletionsDecoder.Decoded(null, null, null, null, null, null, null, false)
+                                : chunk;
+                    })
+                    .takeUntil(ChatCompletionsDecoder.Decoded::done)
+                    .concatMap(chunk -> {
+                        if (chunk.finishReason() != null || chunk.totalTokens() != null) {
+                            last.set(merge(last.get(), chunk));
+                        }
+                        if (chunk.text() == null || chunk.text().isEmpty()) return Mono.empty();
+                        firstTokenNanos.compareAndSet(null, System.nanoTime());
+                        text.append(chunk.text());
+                        return Mono.just(new StreamEvent(chunk.text(), null));
+                    });
+
+            Mono<StreamEvent> end = Mono.fromSupplier(() -> {
+                ChatCompletionsDecoder.Decoded l = last.get();
+                ChatCompletionsDecoder.Decoded res = new ChatCompletionsDecoder.Decoded(text.toString(),
+                        l == null ? null : l.finishReason(), l == null ? null : l.promptTokens(),
+                        l == null ? null : l.completionTokens(), l == null ? null : l.totalTokens(),
+                        l == null ? null : l.cachedTokens(), l == null ? null : l.reasoningTokens(), false);
+                AiResult r = toAiResult(res, startNanos, firstTokenNanos.get());
+                metrics.recordResult(tag, System.nanoTime() - startNanos, r);
+                return new StreamEvent(null, r);
+            });
+
+            return deltas.concatWith(end)
+                    .doOnError(e -> metrics.recordError(tag, System.nanoTime() - startNanos, e))
+                    .onErrorResume(WebClientResponseException.class,
+                            e -> Mono.just(new StreamEvent(null, httpErrorResult(e, startNanos))))
+                    .onErrorResume(e -> Mono.just(new StreamEvent(null, OpenAIService.upstreamOutcome(AiResult.error(
+                            "Erreur: " + e.getMessage(), OpenAIService.elapsedMs(startNanos)), e))));
+        });
+    }
+
+    /** finish_reason et usage peuvent arriver dans deux chunks distincts (usage : choices vide). */
+    private static ChatCompletionsDecoder.Decoded merge(ChatCompletionsDecoder.Decoded a,
+                                                        ChatCompletionsDecoder.Decoded b) {
+        if (a == null) return b;
+        return new ChatCompletionsDecoder.Decoded(null,
+                b.finishReason() != null ? b.finishReason() : a.finishReason(),
+                b.promptTokens() != null ? b.promptTokens() : a.promptTokens(),
+                b.completionTokens() != null ? b.completionTokens() : a.completionTokens(),
+                b.totalTokens() != null ? b.totalTokens() : a.totalTokens(),
+                b.cachedTokens() != null ? b.cachedTokens() : a.cachedTokens(),
+                b.reasoningTokens() != null ? b.reasoningTokens() : a.reasoningTokens(), false);
+    }
+
+    private static Map<String, Object> buildPayload(String userMessage, Conversation conversation, String model,
+                                                    Double temperature, int maxTokens, boolean stream) {
+        Map<String, Object> payload = new HashMap<>();
+        payload.put("model", model);
+        payload.put("messages", (conversation == null ? Conversation.NONE : conversation).messages(userMessage));
+        payload.put("max_tokens", maxTokens);
+        if (temperature != null) payload.put("temperature", temperature);
+        if (stream) {
+            payload.put("stream", true);
+            payload.put("stream_options", Map.of("include_usage", true));
+        }
+        return payload;
+    }
+
+    private AiResult toAiResult(ChatCompletionsDecoder.Decoded res, long startNanos, Long firstTokenNanos) {
+        long endNanos = System.nanoTime();
+        long latency = Duration.ofNanos(endNanos - startNanos).toMillis();
+        if (res == null) return AiResult.error("Erreur: réponse " + name + " illisible.", latency);
+
+        String reply = res.text();
+        if (reply == null || reply.isEmpty()) {
+            reply = res.truncated()
+                    ? "La réponse est trop longue et a dépassé la limite de tokens de sortie."
+                    : "Erreur: aucune réponse générée par " + name + ".";
+        }
+        Long ttft = firstTokenNanos == null ? null : Duration.ofNanos(firstTokenNanos - startNanos).toMillis();
+        long genMs = firstTokenNanos == null ? latency : Duration.ofNanos(endNanos - firstTokenNanos).toMillis();
+        Integer out = res.completionTokens();
+        Double tps = out == null || out <= 0 || genMs <= 0 ? null : out * 1000.0 / genMs;
+
+        return AiResult.ok(reply, latency, res.promptTokens(), out, res.totalTokens())
+                .withTokenDetails(res.cachedTokens(), res.reasoningTokens())
+                .withTruncation(res.truncated() ? "max_tokens" : null)
+                .withThroughput(ttft, tps);
+    }
+
+    private AiResult httpErrorResult(WebClientResponseException e, long startNanos) {
+        return OpenAIService.upstreamOutcome(AiResult.error("Erreur " + name + " HTTP " + e.getStatusCode().value()
+                + ": " + e.getResponseBodyAsString(), OpenAIService.elapsedMs(startNanos)), e);
+    }
+}
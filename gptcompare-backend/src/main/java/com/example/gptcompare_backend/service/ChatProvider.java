@@ -0,0 +1,79 @@
+package com.example.gptcompare_backend.service;
+
+import com.example.gptcompare_backend.service.OpenAIService.AiResult;
+import com.example.gptcompare_backend.service.OpenAIService.StreamEvent;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Fournisseur de réponses : OpenAI (Responses), serveur compatible Chat Completions, stub local...
+ * Contrat commun : les erreurs amont deviennent un AiResult d'erreur (jamais un Mono en erreur,
+ * sauf RateLimitExceededException), et streamReply se termine par un évènement final.
+ */
+public interface ChatProvider {
+
+    /** Tour précédent d'une session : message utilisateur et réponse du modèle. */
+    record Turn(String user, String assistant) {}
+
+    /**
+     * Contexte d'un tour de conversation (cf. SessionService).
+     * - previousResponseId : chaînage côté fournisseur, l'historique n'est pas renvoyé
+     * - history : tours à rejouer (déjà tronqués) quand le chaînage n'est pas possible
+     */
+    record Conversation(String previousResponseId, List<Turn> history) {
+
+        public static final Conversation NONE = new Conversation(null, List.of());
+
+        public boolean isEmpty() {
+            return previousResponseId == null && history.isEmpty();
+        }
+
+        /** Historique rejoué puis nouveau message, au format role/content (Responses et Chat Completions). */
+        public List<Map<String, String>> messages(String userMessage) {
+            List<Map<String, String>> messages = new ArrayList<>(history.size() * 2 + 1);
+            for (Turn t : history) {
+                messages.add(Map.of("role", "user", "content", t.user()));
+                messages.add(Map.of("role", "assistant", "content", t.assistant()));
+            }
+            messages.add(Map.of("role", "user", "content", userMessage));
+            return messages;
+        }
+
+        /** Historique rejoué en un seul prompt texte (fournisseurs sans notion de messages). */
+        public String flatten(String userMessage) {
+            if (history.isEmpty()) return userMessage;
+            StringBuilder sb = new StringBuilder();
+            for (Turn t : history) {
+                sb.append("Utilisateur : ").append(t.user()).append('\n')
+                        .append("Assistant : ").append(t.assistant()).append("\n\n");
+            }
+            return sb.append("Utilisateur : ").append(userMessage).toString();
+        }
+    }
+
+    Mono<AiResult> generateReply(String userMessage, String model, Double temperature, Integer maxOutputTokens);
+
+    Flux<StreamEvent> streamReply(String userMessage, String model, Double temperature, Integer maxOutputTokens);
+
+    /** true si le fournisseur sait reprendre une conversation à partir de l'id de sa dernière réponse. */
+    default boolean supportsPreviousResponseId(String model) {
+        return false;
+    }
+
+    /** Par défaut : historique aplati dans le prompt (previousResponseId ignoré). */
+    default Mono<AiResult> generateReply(String userMessage, String model, Double temperature, Integer maxOutputTokens,
+                                         Conversation conversation) {
+        String input = conversation == null ? userMessage : conversation.flatten(userMessage);
+        return generateReply(input, model, temperature, maxOutputTokens);
+    }
+
+    default Flux<StreamEvent> streamReply(String userMessage, String model, Double temperature, Integer maxOutputTokens,
+                                          Conversation conversation) {
+        String input = conversation == null ? userMessage : conversation.flatten(userMessage);
+        return streamReply(input, model, temperature, maxOutputTokens);
+    }
+}
@@ -0,0 +1,76 @@
+package com.example.gptcompare_backend.service;
+
+import com.example.gptcompare_backend.dto.ModelSettings;
+import com.example.gptcompare_backend.service.OpenAIService.AiResult;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeoutException;
+
+@Service
+public class CompareService {
+
+    /**
+     * Résultat d'une comparaison multi-modèles.
+     * - results : un AiResult par modèle, dans l'ordre de la requête
+     * - totalLatencyMs : durée de bout en bout (≈ la jambe la plus lente)
+     */
+    public record CompareResult(List<AiResult> results, long totalLatencyMs) {}
+
+    private final ChatProvider chatProvider;
+    private final Duration legTimeout;
+    private final int maxModels;
+
+    public CompareService(
+            ChatProvider chatProvider,
+            @Value("${openai.compare.leg-timeout:60s}") Duration legTimeout,
+            @Value("${openai.compare.max-models:6}") int maxModels
+    ) {
+        this.chatProvider = chatProvider;
+        this.legTimeout = legTimeout;
+        this.maxModels = maxModels;
+    }
+
+    public int getMaxModels() {
+        return maxModels;
+    }
+
+    /**
+     * Lance toutes les jambes en parallèle (une par modèle) et attend la dernière.
+     * Une jambe qui échoue ou dépasse legTimeout produit un AiResult d'erreur
+     * sans faire échouer les autres.
+     */
+    public Mono<CompareResult> compare(String userMessage, List<ModelSettings> models) {
+        return compare(userMessage, models, chatProvider);
+    }
+
+    /** Variante avec un fournisseur donné (ex: SessionService.forSession pour une comparaison multi-tours). */
+    public Mono<CompareResult> compare(String userMessage, List<ModelSettings> models, ChatProvider provider) {
+        final long startNanos = System.nanoTime();
+
+        return Flux.fromIterable(models)
+                .flatMapSequential(s -> leg(provider, userMessage, s), Math.max(1, models.size()))
+                .collectList()
+                .map(results -> new CompareResult(results, OpenAIService.elapsedMs(startNanos)));
+    }
+
+    private Mono<AiResult> leg(ChatProvider provider, String userMessage, ModelSettings s) {
+        final long startNanos = System.nanoTime();
+
+        return provider.generateReply(userMessage, s.getModel(), s.getTemperature(), s.getMaxOutputTokens())
+                .timeout(legTimeout)
+                .onErrorResume(e -> Mono.just(legErrorResult(e, startNanos)));
+    }
+
+    private AiResult legErrorResult(Throwable e, long startNanos) {
+        long latency = OpenAIService.elapsedMs(startNanos);
+        String reply = (e instanceof TimeoutException)
+                ? "Erreur: délai dépassé (" + legTimeout.toMillis() + " ms)."
+                : "Erreur: " + e.getMessage();
+        return OpenAIService.upstreamOutcome(AiResult.error(reply, latency), e);
+    }
+}
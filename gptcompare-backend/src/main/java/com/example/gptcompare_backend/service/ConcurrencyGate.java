@@ -0,0 +1,69 @@
+package com.example.gptcompare_backend.service;
+
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.util.ArrayDeque;
+import java.util.function.Supplier;
+
+/**
+ * Sémaphore non bloquant : au plus {@code limit} appels en cours, les suivants attendent
+ * dans une file FIFO (sans thread bloqué). La place est rendue en fin d'appel,
+ * y compris sur erreur ou annulation.
+ */
+final class ConcurrencyGate {
+
+    private final int limit;
+    private int inFlight;
+    private final ArrayDeque<Sinks.Empty<Void>> waiters = new ArrayDeque<>();
+
+    ConcurrencyGate(int limit) {
+        this.limit = Math.max(1, limit);
+    }
+
+    <T> Mono<T> run(Supplier<Mono<T>> call) {
+        return Mono.usingWhen(
+                acquire().thenReturn(this),
+                gate -> call.get(),
+                gate -> Mono.fromRunnable(this::release),
+                (gate, err) -> Mono.fromRunnable(this::release),
+                gate -> Mono.fromRunnable(this::release)
+        );
+    }
+
+    synchronized int inFlight() {
+        return inFlight;
+    }
+
+    private Mono<Void> acquire() {
+        return Mono.defer(() -> {
+            Sinks.Empty<Void> waiter;
+            synchronized (this) {
+                if (inFlight < limit) {
+                    inFlight++;
+                    return Mono.empty();
+                }
+                waiter = Sinks.empty();
+                waiters.addLast(waiter);
+            }
+            // abonné parti pendant l'attente : si la place lui avait déjà été transmise, on la rend
+            return waiter.asMono().doOnCancel(() -> {
+                if (!removeWaiter(waiter)) release();
+            });
+        });
+    }
+
+    /** Transmet la place au premier en attente, sinon la libère. */
+    private synchronized void release() {
+        Sinks.Empty<Void> next = waiters.pollFirst();
+        if (next != null) {
+            next.tryEmitEmpty();
+            return;
+        }
+        inFlight--;
+    }
+
+    private synchronized boolean removeWaiter(Sinks.Empty<Void> waiter) {
+        return waiters.remove(waiter);
+    }
+}
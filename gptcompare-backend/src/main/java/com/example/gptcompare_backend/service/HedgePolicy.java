@@ -0,0 +1,139 @@
+package com.example.gptcompare_backend.service;
+
+import com.example.gptcompare_backend.config.HedgeProperties;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Supplier;
+
+/**
+ * Hedging par modèle : délai = percentile des latences récentes (borné), budget à jetons
+ * pour plafonner la part d'appels doublés. Le premier essai qui répond (ou échoue) l'emporte ;
+ * l'échec d'un hedge est ignoré (le premier essai reste en course).
+ * Une fenêtre par nom de modèle, au plus maxModels (la moins récemment utilisée est oubliée au-delà).
+ */
+@Component
+public class HedgePolicy {
+
+    /**
+     * Compteurs d'un modèle (GET /api/chat/hedges).
+     * - hedged : seconds essais envoyés ; wins : réponses venues du second essai
+     * - denied : hedges non envoyés faute de budget
+     * - delayMs : délai de déclenchement courant (null tant que minSamples n'est pas atteint)
+     */
+    public record HedgeStats(long calls, long hedged, long wins, long denied, double hedgeRate, double winRate,
+                             Long delayMs, int samples) {}
+
+    private final HedgeProperties props;
+    private final UpstreamMetrics metrics;
+    private final ModelStates<ModelHedge> models;
+
+    public HedgePolicy(HedgeProperties props, UpstreamMetrics metrics) {
+        this.props = props;
+        this.metrics = metrics;
+        this.models = new ModelStates<>(props.maxModels(), m -> new ModelHedge(), m -> true);
+    }
+
+    public static HedgePolicy disabled() {
+        return new HedgePolicy(HedgeProperties.disabled(), UpstreamMetrics.noop());
+    }
+
+    /**
+     * Un essai, éventuellement doublé. attempt est appelé une fois (primaire) ou deux fois (hedge),
+     * chaque appel produisant un essai indépendant (permis du limiteur compris).
+     */
+    public <T> Mono<T> hedge(String model, Supplier<Mono<T>> attempt) {
+        if (!props.enabled()) return attempt.get();
+        return Mono.defer(() -> {
+            final ModelHedge m = models.get(model);
+            final long startNanos = System.nanoTime();
+            final Duration delay = m.onCall();
+
+            Mono<Tagged<T>> primary = attempt.get().map(v -> new Tagged<>(v, false));
+            if (delay == null) {
+                return primary.doOnNext(t -> m.record(System.nanoTime() - startNanos)).map(Tagged::value);
+            }
+            Mono<Tagged<T>> backup = Mono.delay(delay).flatMap(tick -> {
+                if (!m.tryHedge()) {
+                    metrics.recordHedge(model, "denied");
+                    return Mono.never();
+                }
+                metrics.recordHedge(model, "sent");
+                return attempt.get().map(v -> new Tagged<>(v, true))
+                        // l'échec du hedge ne doit pas l'emporter sur un premier essai encore en cours
+                        .onErrorResume(e -> Mono.never());
+            });
+
+            return Mono.firstWithSignal(primary, backup)
+                    .doOnNext(t -> {
+                        m.record(System.nanoTime() - startNanos);
+                        if (t.hedge()) {
+                            m.win();
+                            metrics.recordHedge(model, "won");
+                        }
+                    })
+                    .map(Tagged::value);
+        });
+    }
+
+    public Map<String, HedgeStats> stats() {
+        Map<String, HedgeStats> out = new TreeMap<>();
+        models.snapshot().forEach((model, m) -> out.put(model, m.stats()));
+        return out;
+    }
+
+    private record Tagged<T>(T value, boolean hedge) {}
+
+    /** Fenêtre circulaire des latences + seau à jetons, sous le verrou de l'instance. */
+    private final class ModelHedge {
+        private final long[] window = new long[Math.max(1, props.windowSize())];
+        private int count;
+        private int next;
+        private long delayNanos = -1;
+        private double budget = props.burst();
+        private long calls, hedged, wins, denied;
+
+        synchronized Duration onCall() {
+            calls++;
+            budget = Math.min(props.burst(), budget + props.maxHedgeRate());
+            return delayNanos < 0 ? null : Duration.ofNanos(delayNanos);
+        }
+
+        synchronized boolean tryHedge() {
+            if (budget < 1) {
+                denied++;
+                return false;
+            }
+            budget -= 1;
+            hedged++;
+            return true;
+        }
+
+        synchronized void win() {
+            wins++;
+        }
+
+        /** Latence observée de l'appel (premier résultat), puis recalcul du délai. */
+        synchronized void record(long nanos) {
+            window[next] = nanos;
+            next = (next + 1) % window.length;
+            count = Math.min(count + 1, window.length);
+            if (count < props.minSamples()) return;
+
+            long[] sorted = Arrays.copyOf(window, count);
+            Arrays.sort(sorted);
+            int idx = (int) Math.min(count - 1, Math.ceil(props.percentile() * count) - 1);
+            delayNanos = Math.clamp(sorted[Math.max(0, idx)], props.minDelay().toNanos(), props.maxDelay().toNanos());
+        }
+
+        synchronized HedgeStats stats() {
+            return new HedgeStats(calls, hedged, wins, denied,
+                    calls == 0 ? 0 : (double) hedged / calls, hedged == 0 ? 0 : (double) wins / hedged,
+                    delayNanos < 0 ? null : Duration.ofNanos(delayNanos).toMillis(), count);
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package com.example.gptcompare_backend.service;
+
+import io.micrometer.observation.Observation;
+import reactor.netty.http.client.ContextAwareHttpClientMetricsRecorder;
+import reactor.netty.http.client.HttpClient;
+import reactor.util.context.Context;
+import reactor.util.context.ContextView;
+
+import java.net.SocketAddress;
+import java.time.Duration;
+import java.util.function.Consumer;
+
+/**
+ * Découpage d'un essai amont par phase, sur horloge monotone (nanoTime). L'instance voyage dans
+ * le Context Reactor de l'essai : les hooks Reactor Netty branchés par observe() la retrouvent
+ * depuis la boucle d'évènements (connexion, TLS, envoi, en-têtes), le service marque le reste
+ * (permis du limiteur, corps reçu, décodage).
+ * Chaque essai est aussi une Observation Micrometer "openai.upstream.attempt" (span si un pont
+ * de tracing est présent), enfant de l'observation de la requête entrante, avec les phases en attributs.
+ */
+public final class LatencyPhases {
+
+    /**
+     * Phases d'un essai en ms (null si la phase n'a pas eu lieu) :
+     * - rateLimitMs : attente du permis du limiteur par modèle
+     * - poolMs : obtention d'une connexion du pool (attente d'une place, résolution DNS), hors connect/TLS
+     * - connectMs / tlsMs : ouverture de connexion et poignée de main TLS (null sur connexion réutilisée)
+     * - sendMs : écriture de la requête
+     * - ttfbMs : requête envoyée → en-têtes de la réponse (file d'attente et génération chez le fournisseur)
+     * - downloadMs : en-têtes → dernier octet (streaming : dernier évènement)
+     * - parseMs : décodage JSON de notre côté (null en streaming, décodé au fil de l'eau)
+     * - totalMs : durée de l'essai ; connectionReused : connexion déjà ouverte
+     */
+    public record Breakdown(Double rateLimitMs, Double poolMs, Double connectMs, Double tlsMs, Double sendMs,
+                            Double ttfbMs, Double downloadMs, Double parseMs, double totalMs,
+                            boolean connectionReused) {}
+
+    /** Clé Reactor de l'observation de la requête entrante (posée par l'instrumentation WebFlux). */
+    static final String PARENT_OBSERVATION_KEY = "micrometer.observation";
+
+    private static final ContextAwareHttpClientMetricsRecorder RECORDER = new Recorder();
+
+    private final Observation observation;
+    private final long startNanos = System.nanoTime();
+    private volatile long permitNanos;
+    private volatile long requestNanos;
+    private volatile long sentNanos;
+    private volatile long headersNanos;
+    private volatile long bodyNanos;
+    private volatile long parsedNanos;
+    private volatile long endNanos;
+    private volatile long connectNanos = -1;
+    private volatile long tlsNanos = -1;
+
+    LatencyPhases(Observation observation) {
+        this.observation = observation;
+    }
+
+    /**
+     * Client instrumenté : durées connect/TLS via un enregistreur de métriques sensible au Context,
+     * instants d'envoi et d'en-têtes via les hooks de requête. Sans LatencyPhases dans le Context, rien n'est fait.
+     */
+    public static HttpClient observe(HttpClient client) {
+        return client
+                .metrics(true, () -> RECORDER)
+                .doOnRequest((req, conn) -> at(req.currentContextView(), p -> p.requestNanos = System.nanoTime()))
+                .doAfterRequest((req, conn) -> at(req.currentContextView(), p -> p.sentNanos = System.nanoTime()))
+                .doOnResponse((res, conn) -> at(res.currentContextView(), LatencyPhases::headersReceived));
+    }
+
+    /** Context de l'essai, à passer à contextWrite. */
+    Context putInto(Context ctx) {
+        return ctx.put(LatencyPhases.class, this);
+    }
+
+    void permitted() {
+        permitNanos = System.nanoTime();
+    }
+
+    void bodyReceived() {
+        bodyNanos = System.nanoTime();
+    }
+
+    void parsed() {
+        parsedNanos = System.nanoTime();
+    }
+
+    /** Fin de l'essai : phases en attributs de l'observation, erreur éventuelle, arrêt. */
+    void stop(Throwable error) {
+        if (endNanos != 0) return;
+        endNanos = System.nanoTime();
+        Breakdown b = breakdown();
+        observation.highCardinalityKeyValue("connection.reused", String.valueOf(b.connectionReused()));
+        attribute("phase.rate_limit_ms", b.rateLimitMs());
+        attribute("phase.pool_ms", b.poolMs());
+        attribute("phase.connect_ms", b.connectMs());
+        attribute("phase.tls_ms", b.tlsMs());
+        attribute("phase.send_ms", b.sendMs());
+        attribute("phase.ttfb_ms", b.ttfbMs());
+        attribute("phase.download_ms", b.downloadMs());
+        attribute("phase.parse_ms", b.parseMs());
+        if (error != null) observation.error(error);
+        observation.stop();
+    }
+
+    Breakdown breakdown() {
+        long end = endNanos != 0 ? endNanos : System.nanoTime();
+        long permit = permitNanos != 0 ? permitNanos : startNanos;
+        Double pool = null;
+        if (requestNanos != 0) {
+            long setup = Math.max(0, connectNanos) + Math.max(0, tlsNanos);
+            pool = ms(Math.max(0, requestNanos - permit - setup));
+        }
+        return new Breakdown(
+                permitNanos != 0 ? ms(permitNanos - startNanos) : null,
+                pool,
+                connectNanos >= 0 ? ms(connectNanos) : null,
+                tlsNanos >= 0 ? ms(tlsNanos) : null,
+                between(requestNanos, sentNanos),
+                between(sentNanos, headersNanos),
+                between(headersNanos, bodyNanos),
+                between(bodyNanos, parsedNanos),
+                ms(end - startNanos),
+                requestNanos != 0 && connectNanos < 0);
+    }
+
+    private void headersReceived() {
+        headersNanos = System.nanoTime();
+        observation.event(Observation.Event.of("response.headers"));
+    }
+
+    private void attribute(String key, Double value) {
+        if (value != null) observation.highCardinalityKeyValue(key, String.valueOf(value));
+    }
+
+    private static Double between(long from, long to) {
+        return from != 0 && to != 0 ? ms(to - from) : null;
+    }
+
+    /** ms à 0,01 près. */
+    private static double ms(long nanos) {
+        return Math.round(nanos / 10_000.0) / 100.0;
+    }
+
+    private static void at(ContextView ctx, Consumer<LatencyPhases> mark) {
+        LatencyPhases p = ctx.getOrDefault(LatencyPhases.class, null);
+        if (p != null) mark.accept(p);
+    }
+
+    /** Seules les durées connect / TLS sont retenues ; le reste vient des hooks (instants, pas des durées). */
+    private static final class Recorder extends ContextAwareHttpClientMetricsRecorder {
+
+        @Override
+        public void recordConnectTime(ContextView ctx, SocketAddress remote, Duration time, String status) {
+            at(ctx, p -> p.connectNanos = time.toNanos());
+        }
+
+        @Override
+        public void recordTlsHandshakeTime(ContextView ctx, SocketAddress remote, Duration time, String status) {
+            at(ctx, p -> p.tlsNanos = time.toNanos());
+        }
+
+        @Override
+        public void recordResolveAddressTime(SocketAddress remote, Duration time, String status) {
+        }
+
+        @Override
+        public void recordDataReceivedTime(ContextView ctx, SocketAddress remote, String uri, String method,
+                                           String status, Duration time) {
+        }
+
+        @Override
+        public void recordDataSentTime(ContextView ctx, SocketAddress remote, String uri, String method,
+                                       Duration time) {
+        }
+
+        @Override
+        public void recordResponseTime(ContextView ctx, SocketAddress remote, String uri, String method,
+                                       String status, Duration time) {
+        }
+
+        @Override
+        public void incrementErrorsCount(ContextView ctx, SocketAddress remote, String uri) {
+        }
+
+        @Override
+        public void recordDataReceived(ContextView ctx, SocketAddress remote, String uri, long bytes) {
+        }
+
+        @Override
+        public void recordDataSent(ContextView ctx, SocketAddress remote, String uri, long bytes) {
+        }
+
+        @Override
+        public void incrementErrorsCount(ContextView ctx, SocketAddress remote) {
+        }
+
+        @Override
+        public void recordDataReceived(ContextView ctx, SocketAddress remote, long bytes) {
+        }
+
+        @Override
+        public void recordDataSent(ContextView ctx, SocketAddress remote, long bytes) {
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package com.example.gptcompare_backend.service;
+
+import com.example.gptcompare_backend.config.CircuitBreakerProperties;
+import com.example.gptcompare_backend.config.ModelOverrides;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Disjoncteur par modèle : quand un modèle est dégradé (trop d'échecs ou d'appels lents
+ * sur la fenêtre glissante), le circuit s'ouvre et les appels échouent immédiatement
+ * (ou passent sur le modèle de repli) au lieu d'attendre le timeout.
+ * Après waitInOpen, quelques appels de test (half-open) décident de la refermeture.
+ * Un disjoncteur par nom de modèle, au plus maxModels : au-delà, un circuit fermé est oublié en premier.
+ */
+@Component
+public class ModelCircuitBreaker {
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    /** Vue d'un modèle pour /api/chat/breakers. */
+    public record BreakerStats(State state, int calls, double failureRate, double slowRate, long rejected) {}
+
+    private final CircuitBreakerProperties props;
+    private final ModelStates<Breaker> breakers;
+
+    public ModelCircuitBreaker(CircuitBreakerProperties props) {
+        this.props = props;
+        this.breakers = new ModelStates<>(props.maxModels(), m -> new Breaker(), Breaker::idle);
+    }
+
+    public static ModelCircuitBreaker disabled() {
+        return new ModelCircuitBreaker(CircuitBreakerProperties.disabled());
+    }
+
+    /** true si un appel vers `model` est autorisé ; en half-open, réserve un appel de test. */
+    public boolean tryAcquire(String model) {
+        return !props.enabled() || breaker(model).tryAcquire();
+    }
+
+    /** Modèle de repli configuré pour `model` (null si aucun). */
+    public String fallbackFor(String model) {
+        String fb = ModelOverrides.find(props.fallbacks(), model);
+        return (fb == null || fb.equals(model)) ? null : fb;
+    }
+
+    public void onSuccess(String model, Duration duration) {
+        if (props.enabled()) breaker(model).record(false, duration.compareTo(props.slowCallDuration()) >= 0);
+    }
+
+    /** Réponse reçue mais en échec (status "failed" dans le corps, évènement "error" du stream). */
+    public void onFailure(String model, Duration duration) {
+        if (props.enabled()) breaker(model).record(true, duration.compareTo(props.slowCallDuration()) >= 0);
+    }
+
+    public void onError(String model, Throwable e, Duration duration) {
+        if (!props.enabled()) return;
+        if (isFailure(e)) {
+            breaker(model).record(true, duration.compareTo(props.slowCallDuration()) >= 0);
+        } else {
+            // erreur imputable à la requête (4xx...) : ne dit rien de la santé du modèle
+            breaker(model).release();
+        }
+    }
+
+    /** Appel abandonné (annulation) : libère un éventuel appel de test sans rien enregistrer. */
+    public void onIgnored(String model) {
+        if (props.enabled()) breaker(model).release();
+    }
+
+    public Map<String, BreakerStats> stats() {
+        Map<String, BreakerStats> out = new TreeMap<>();
+        breakers.snapshot().forEach((m, b) -> out.put(m, b.stats()));
+        return out;
+    }
+
+    static boolean isFailure(Throwable e) {
+        if (e instanceof WebClientResponseException r) {
+            int code = r.getStatusCode().value();
+            return code == 429 || code >= 500;
+        }
+        return e instanceof WebClientRequestException || e instanceof TimeoutException;
+    }
+
+    private Breaker breaker(String model) {
+        return breakers.get(model);
+    }
+
+    /** État d'un modèle ; opérations courtes, synchronisées sur l'instance. */
+    private final class Breaker {
+        private final boolean[] failures = new boolean[props.windowSize()];
+        private final boolean[] slow = new boolean[props.windowSize()];
+        private int next;
+        private int count;
+        private int failureCount;
+        private int slowCount;
+
+        private State state = State.CLOSED;
+        private long openedAtNanos;
+        private int probesInFlight;
+        private int probesSucceeded;
+        private long rejected;
+
+        synchronized boolean tryAcquire() {
+            if (state == State.OPEN && System.nanoTime() - openedAtNanos >= props.waitInOpen().toNanos()) {
+                state = State.HALF_OPEN;
+                probesInFlight = 0;
+                probesSucceeded = 0;
+            }
+            if (state == State.CLOSED) return true;
+            if (state == State.HALF_OPEN && probesInFlight + probesSucceeded < props.halfOpenCalls()) {
+                probesInFlight++;
+                return true;
+            }
+            rejected++;
+            return false;
+        }
+
+        synchronized void record(boolean failed, boolean wasSlow) {
+            if (state == State.HALF_OPEN) {
+                probesInFlight = Math.max(0, probesInFlight - 1);
+                if (failed || wasSlow) {
+                    open();
+                } else if (++probesSucceeded >= props.halfOpenCalls()) {
+                    close();
+                }
+                return;
+            }
+            if (state == State.OPEN) return;
+
+            if (count == failures.length) {
+                if (failures[next]) failureCount--;
+                if (slow[next]) slowCount--;
+            } else {
+                count++;
+            }
+            failures[next] = failed;
+            slow[next] = wasSlow;
+            if (failed) failureCount++;
+            if (wasSlow) slowCount++;
+            next = (next + 1) % failures.length;
+
+            if (count >= props.minimumCalls()
+                    && ((double) failureCount / count >= props.failureRateThreshold()
+                    || (double) slowCount / count >= props.slowCallRateThreshold())) {
+                open();
+            }
+        }
+
+        synchronized void release() {
+            if (state == State.HALF_OPEN) probesInFlight = Math.max(0, probesInFlight - 1);
+        }
+
+        synchronized boolean idle() {
+            return state == State.CLOSED;
+        }
+
+        synchronized BreakerStats stats() {
+            double fr = count == 0 ? 0 : (double) failureCount / count;
+            double sr = count == 0 ? 0 : (double) slowCount / count;
+            return new BreakerStats(state, count, fr, sr, rejected);
+        }
+
+        private void open() {
+            state = State.OPEN;
+            openedAtNanos = System.nanoTime();
+            resetWindow();
+        }
+
+        private void close() {
+            state = State.CLOSED;
+            resetWindow();
+        }
+
+        private void resetWindow() {
+            Arrays.fill(failures, false);
+            Arrays.fill(slow, false);
+            next = 0;
+            count = 0;
+            failureCount = 0;
+            slowCount = 0;
+            probesInFlight = 0;
+            probesSucceeded = 0;
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.example.gptcompare_backend.service;
+
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Valeur bornée du tag model des métriques (UpstreamMetrics uniquement) : le nom du modèle vient du client,
+ * et chaque valeur distincte créerait sinon des séries jamais libérées. Les états de résilience
+ * (limiteur, disjoncteur, hedging) gardent le vrai nom, bornés par ModelStates.
+ * Un modèle garde son nom s'il est configuré (modèle par défaut, surcharges, replis) ou s'il a déjà répondu
+ * (au plus maxLearned modèles appris) ; tous les autres partagent la clé "other".
+ */
+public class ModelKeys {
+
+    public static final String OTHER = "other";
+
+    private final boolean enabled;
+    private final Set<String> configured;
+    private final int maxLearned;
+    private final Set<String> learned = ConcurrentHashMap.newKeySet();
+
+    public ModelKeys(Collection<String> configured, int maxLearned) {
+        this(true, configured, maxLearned);
+    }
+
+    private ModelKeys(boolean enabled, Collection<String> configured, int maxLearned) {
+        this.enabled = enabled;
+        this.configured = Set.copyOf(configured);
+        this.maxLearned = maxLearned;
+    }
+
+    /** Chaque modèle est sa propre clé (tests, constructeurs minimaux). */
+    public static ModelKeys disabled() {
+        return new ModelKeys(false, Set.of(), 0);
+    }
+
+    public String key(String model) {
+        if (!enabled || model == null) return model;
+        return configured.contains(model) || learned.contains(model) ? model : OTHER;
+    }
+
+    /** Le modèle a répondu : il a désormais sa propre clé, tant que le plafond n'est pas atteint. */
+    public void learn(String model) {
+        if (!enabled || model == null || configured.contains(model) || learned.contains(model)) return;
+        synchronized (learned) {
+            if (learned.size() < maxLearned) learned.add(model);
+        }
+    }
+}
@@ -0,0 +1,321 @@
+package com.example.gptcompare_backend.service;
+
+import com.example.gptcompare_backend.config.ModelOverrides;
+import com.example.gptcompare_backend.config.RateLimitProperties;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Limiteur non bloquant par modèle, placé devant chaque appel OpenAI :
+ * - seau de requêtes/min et seau de tokens/min (rechargés en continu)
+ * - nombre max d'appels simultanés (file d'attente au-delà)
+ * Une requête attend au plus maxWait son budget (et jamais au-delà de sa RequestDeadline),
+ * sinon RateLimitExceededException.
+ * La classe de trafic (RequestPriority du Context) ordonne les attentes : le bulk ne prend pas le budget
+ * tant qu'une requête interactive l'attend, et une place libérée va d'abord à l'interactif
+ * (FIFO dans chaque classe), sauf bulk en attente depuis bulkStarvationAge.
+ * Les en-têtes x-ratelimit-remaining-* renvoyés par OpenAI ne font que réduire la marge locale
+ * (la clé est partagée : d'autres clients consomment aussi le quota).
+ * Un budget par nom de modèle, au plus maxModels (cf. ModelStates : un budget sans appel en cours part en premier).
+ */
+@Component
+public class ModelRateLimiter {
+
+    /** Autorisation d'appel : à libérer (une seule fois) à la fin de l'appel. */
+    public static final class Permit {
+        private final Budget budget;
+        private final int tokens;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Permit(Budget budget, int tokens) {
+            this.budget = budget;
+            this.tokens = tokens;
+        }
+
+        public void release() {
+            if (budget != null && released.compareAndSet(false, true)) budget.releaseSlot();
+        }
+
+        /**
+         * Appel annulé (client parti, deadline, hedge perdant) : place libérée et tokens estimés rendus,
+         * la réponse ne sera pas consommée. La requête elle-même reste décomptée (elle a pu partir).
+         */
+        public void cancel() {
+            if (budget != null && released.compareAndSet(false, true)) {
+                budget.refund(tokens);
+                budget.releaseSlot();
+            }
+        }
+    }
+
+    /** Vue d'un modèle pour /api/chat/limits. */
+    public record ModelStats(double requestsAvailable, double tokensAvailable, int inFlight, int queued,
+                             int maxConcurrent, long rejected) {}
+
+    private static final Permit NO_OP = new Permit(null, 0);
+    private static final long NANOS_PER_MINUTE = Duration.ofMinutes(1).toNanos();
+
+    private final RateLimitProperties props;
+    /** Horloge monotone (nanoTime), remplaçable en test. */
+    private final LongSupplier clock;
+    private final ModelStates<Budget> budgets;
+
+    @Autowired
+    public ModelRateLimiter(RateLimitProperties props) {
+        this(props, System::nanoTime);
+    }
+
+    ModelRateLimiter(RateLimitProperties props, LongSupplier clock) {
+        this.props = props;
+        this.clock = clock;
+        this.budgets = new ModelStates<>(props.maxModels(), this::newBudget, Budget::idle);
+    }
+
+    public static ModelRateLimiter disabled() {
+        return new ModelRateLimiter(RateLimitProperties.disabled());
+    }
+
+    /** Estimation grossière : ~4 caractères par token en entrée, plus la sortie maximale demandée. */
+    public static int estimateTokens(String input, int maxOutputTokens) {
+        int in = input == null ? 0 : (input.length() + 3) / 4;
+        return in + maxOutputTokens;
+    }
+
+    /**
+     * Réserve le budget (requête + tokens estimés) puis une place de concurrence.
+     * Le Mono échoue en RateLimitExceededException si l'attente dépasse maxWait
+     * ou le temps restant de la requête (RequestDeadline du Context).
+     */
+    public Mono<Permit> acquire(String model, int estimatedTokens) {
+        if (!props.enabled()) return Mono.just(NO_OP);
+        return Mono.deferContextual(ctx -> {
+            Budget b = budgets.get(model);
+            long deadlineNanos = clock.getAsLong() + RequestDeadline.remaining(ctx, props.maxWait()).toNanos();
+            boolean bulk = RequestPriority.from(ctx).level() == RequestPriority.Level.BULK;
+            return reserve(b, estimatedTokens, deadlineNanos, bulk)
+                    .then(Mono.defer(() -> b.acquireSlot(deadlineNanos, bulk, Math.min(estimatedTokens,
+                            (int) Math.min(Integer.MAX_VALUE, b.tokenCapacity)))));
+        });
+    }
+
+    /** Met à jour la marge locale à partir des en-têtes x-ratelimit-* d'une réponse OpenAI. */
+    public void observe(String model, HttpHeaders headers) {
+        if (!props.enabled() || headers == null) return;
+        Budget b = budgets.peek(model);
+        if (b == null) return;
+        b.clamp(toDouble(headers.getFirst("x-ratelimit-remaining-requests")),
+                toDouble(headers.getFirst("x-ratelimit-remaining-tokens")));
+    }
+
+    public Map<String, ModelStats> stats() {
+        Map<String, ModelStats> out = new TreeMap<>();
+        budgets.snapshot().forEach((m, b) -> out.put(m, b.stats()));
+        return out;
+    }
+
+    /** Une requête interactive qui attend le budget est signalée au Budget pendant toute son attente. */
+    private Mono<Void> reserve(Budget b, int tokens, long deadlineNanos, boolean bulk) {
+        if (bulk) return waitBudget(b, tokens, deadlineNanos, true, null);
+        AtomicBoolean waiting = new AtomicBoolean();
+        return waitBudget(b, tokens, deadlineNanos, false, waiting)
+                .doFinally(signal -> {
+                    if (waiting.compareAndSet(true, false)) b.interactiveWaiting.decrementAndGet();
+                });
+    }
+
+    private Mono<Void> waitBudget(Budget b, int tokens, long deadlineNanos, boolean bulk, AtomicBoolean waiting) {
+        return Mono.defer(() -> {
+            long waitNanos = b.tryReserve(tokens, bulk);
+            if (waitNanos == 0) return Mono.empty();
+            if (clock.getAsLong() + waitNanos > deadlineNanos) {
+                b.rejected.incrementAndGet();
+                return Mono.error(new RateLimitExceededException(b.model, "budget requêtes/tokens",
+                        Duration.ofNanos(waitNanos)));
+            }
+            if (waiting != null && waiting.compareAndSet(false, true)) b.interactiveWaiting.incrementAndGet();
+            return Mono.delay(Duration.ofNanos(waitNanos)).then(waitBudget(b, tokens, deadlineNanos, bulk, waiting));
+        });
+    }
+
+    private Budget newBudget(String model) {
+        RateLimitProperties.ModelLimits o = ModelOverrides.find(props.models(), model);
+        int rpm = o != null && o.requestsPerMinute() != null ? o.requestsPerMinute() : props.requestsPerMinute();
+        long tpm = o != null && o.tokensPerMinute() != null ? o.tokensPerMinute() : props.tokensPerMinute();
+        int conc = o != null && o.maxConcurrent() != null ? o.maxConcurrent() : props.maxConcurrent();
+        return new Budget(model, rpm, tpm, conc, props.bulkStarvationAge(), clock);
+    }
+
+    private static Double toDouble(String v) {
+        if (v == null) return null;
+        try {
+            return Double.parseDouble(v.trim());
+        } catch (NumberFormatException ignored) {
+            return null;
+        }
+    }
+
+    /**
+     * État d'un modèle. Toutes les opérations sont courtes et synchronisées sur l'instance :
+     * aucune attente n'a lieu sous le verrou (les attentes passent par Mono.delay / Sinks).
+     */
+    private static final class Budget {
+
+        /** Requête en attente d'une place, avec la date de mise en file (garde anti-famine du bulk). */
+        private record Waiter(Sinks.Empty<Void> sink, long sinceNanos) {}
+
+        private final String model;
+        private final double requestCapacity;
+        private final double tokenCapacity;
+        private final int maxConcurrent;
+        private final long starvationNanos;
+        private final LongSupplier clock;
+
+        private double requests;
+        private double tokens;
+        private long lastRefillNanos;
+
+        private int inFlight;
+        private final ArrayDeque<Waiter> interactiveWaiters = new ArrayDeque<>();
+        private final ArrayDeque<Waiter> bulkWaiters = new ArrayDeque<>();
+        private final AtomicInteger interactiveWaiting = new AtomicInteger();
+        private final AtomicLong rejected = new AtomicLong();
+
+        Budget(String model, int rpm, long tpm, int maxConcurrent, Duration starvationAge, LongSupplier clock) {
+            this.model = model;
+            this.requestCapacity = rpm;
+            this.tokenCapacity = tpm;
+            this.maxConcurrent = maxConcurrent;
+            this.starvationNanos = starvationAge.toNanos();
+            this.clock = clock;
+            this.lastRefillNanos = clock.getAsLong();
+            this.requests = rpm;
+            this.tokens = tpm;
+        }
+
+        /**
+         * Débite 1 requête + tokens si possible (retourne 0), sinon le délai avant recharge suffisante.
+         * Le bulk laisse passer les requêtes interactives qui attendent : il réessaie après la recharge d'une requête.
+         */
+        synchronized long tryReserve(int wanted, boolean bulk) {
+            refill();
+            if (bulk && interactiveWaiting.get() > 0) return Math.max(1, nanosToRefill(1, requestCapacity));
+            // une requête plus grosse que le seau entier passe quand celui-ci est plein
+            double needTokens = Math.min(wanted, tokenCapacity);
+            if (requests >= 1 && tokens >= needTokens) {
+                requests -= 1;
+                tokens -= needTokens;
+                return 0;
+            }
+            long waitReq = requests >= 1 ? 0 : nanosToRefill(1 - requests, requestCapacity);
+            long waitTok = tokens >= needTokens ? 0 : nanosToRefill(needTokens - tokens, tokenCapacity);
+            return Math.max(1, Math.max(waitReq, waitTok));
+        }
+
+        synchronized void refund(int wanted) {
+            refill();
+            tokens = Math.min(tokenCapacity, tokens + wanted);
+        }
+
+        /** Réservation jamais utilisée (place non obtenue) : la requête et les tokens reviennent au seau. */
+        synchronized void unreserve(int wanted) {
+            refund(wanted);
+            requests = Math.min(requestCapacity, requests + 1);
+        }
+
+        synchronized void clamp(Double remainingRequests, Double remainingTokens) {
+            refill();
+            if (remainingRequests != null) requests = Math.min(requests, remainingRequests);
+            if (remainingTokens != null) tokens = Math.min(tokens, remainingTokens);
+        }
+
+        /**
+         * tokens : montant débité par tryReserve, rendu si l'appel est annulé. Si la place n'est pas obtenue
+         * (délai dépassé, abonné parti), toute la réservation est rendue : rien n'est parti chez le fournisseur.
+         */
+        Mono<Permit> acquireSlot(long deadlineNanos, boolean bulk, int tokens) {
+            Waiter waiter = new Waiter(Sinks.empty(), clock.getAsLong());
+            synchronized (this) {
+                if (inFlight < maxConcurrent) {
+                    inFlight++;
+                    return Mono.just(new Permit(this, tokens));
+                }
+                (bulk ? bulkWaiters : interactiveWaiters).addLast(waiter);
+            }
+
+            Duration remaining = Duration.ofNanos(Math.max(0, deadlineNanos - clock.getAsLong()));
+            return waiter.sink().asMono()
+                    .timeout(remaining)
+                    .thenReturn(new Permit(this, tokens))
+                    .onErrorResume(TimeoutException.class, e -> {
+                        if (removeWaiter(waiter)) {
+                            unreserve(tokens);
+                            rejected.incrementAndGet();
+                            return Mono.error(new RateLimitExceededException(model, "concurrence max " + maxConcurrent,
+                                    Duration.ofSeconds(1)));
+                        }
+                        // place transmise au même moment : on la garde
+                        return Mono.just(new Permit(this, tokens));
+                    })
+                    .doOnCancel(() -> {
+                        // abonné parti pendant l'attente : si la place lui avait déjà été transmise, on la rend
+                        if (removeWaiter(waiter)) unreserve(tokens);
+                        else releaseSlot();
+                    });
+        }
+
+        /** Transmet la place au prochain en attente (interactif d'abord, bulk affamé avant tout), sinon la libère. */
+        synchronized void releaseSlot() {
+            Waiter bulkHead = bulkWaiters.peekFirst();
+            boolean starving = bulkHead != null && starvationNanos > 0
+                    && clock.getAsLong() - bulkHead.sinceNanos() >= starvationNanos;
+            Waiter next = starving || interactiveWaiters.isEmpty() ? bulkWaiters.pollFirst() : interactiveWaiters.pollFirst();
+            if (next != null) {
+                next.sink().tryEmitEmpty();
+                return;
+            }
+            inFlight--;
+        }
+
+        private synchronized boolean removeWaiter(Waiter waiter) {
+            return interactiveWaiters.remove(waiter) || bulkWaiters.remove(waiter);
+        }
+
+        /** Aucun appel en cours ni en attente : l'oublier ne lâche aucune place de concurrence. */
+        synchronized boolean idle() {
+            return inFlight == 0 && interactiveWaiters.isEmpty() && bulkWaiters.isEmpty();
+        }
+
+        synchronized ModelStats stats() {
+            refill();
+            return new ModelStats(requests, tokens, inFlight,
+                    interactiveWaiters.size() + bulkWaiters.size(), maxConcurrent, rejected.get());
+        }
+
+        private void refill() {
+            long now = clock.getAsLong();
+            long elapsed = now - lastRefillNanos;
+            if (elapsed <= 0) return;
+            requests = Math.min(requestCapacity, requests + requestCapacity * elapsed / NANOS_PER_MINUTE);
+            tokens = Math.min(tokenCapacity, tokens + tokenCapacity * elapsed / NANOS_PER_MINUTE);
+            lastRefillNanos = now;
+        }
+
+        private static long nanosToRefill(double missing, double perMinute) {
+            if (perMinute <= 0) return Long.MAX_VALUE / 4;
+            return (long) Math.ceil(missing * NANOS_PER_MINUTE / perMinute);
+        }
+    }
+}
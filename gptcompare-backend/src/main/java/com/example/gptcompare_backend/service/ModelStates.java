@@ -0,0 +1,62 @@
+package com.example.gptcompare_backend.service;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * États par modèle (limiteur, disjoncteur, hedging), indexés par le vrai nom du modèle mais en nombre borné :
+ * le nom vient du client. Au-delà de maxModels, l'état le moins récemment utilisé est oublié, de préférence
+ * un état au repos (idle) ; un modèle oublié repart d'un état neuf à son prochain appel.
+ */
+final class ModelStates<V> {
+
+    private final int maxModels;
+    private final Function<String, V> factory;
+    private final Predicate<V> idle;
+    /** Ordre d'accès : le premier élément est le moins récemment utilisé. */
+    private final LinkedHashMap<String, V> states = new LinkedHashMap<>(16, 0.75f, true);
+
+    ModelStates(int maxModels, Function<String, V> factory, Predicate<V> idle) {
+        this.maxModels = Math.max(1, maxModels);
+        this.factory = factory;
+        this.idle = idle;
+    }
+
+    /** État du modèle, créé au besoin (en oubliant un autre modèle si le plafond est atteint). */
+    synchronized V get(String model) {
+        V state = states.get(model);
+        if (state == null) {
+            if (states.size() >= maxModels) evictOne();
+            state = factory.apply(model);
+            states.put(model, state);
+        }
+        return state;
+    }
+
+    /** État existant, ou null (jamais de création). */
+    synchronized V peek(String model) {
+        return states.get(model);
+    }
+
+    /** Copie triée par modèle, pour les vues /api/chat/*. */
+    synchronized Map<String, V> snapshot() {
+        return new TreeMap<>(states);
+    }
+
+    private void evictOne() {
+        for (Iterator<V> it = states.values().iterator(); it.hasNext(); ) {
+            if (idle.test(it.next())) {
+                it.remove();
+                return;
+            }
+        }
+        // aucun état au repos : le plafond reste strict, le plus ancien est oublié quand même
+        Iterator<String> eldest = states.keySet().iterator();
+        eldest.next();
+        eldest.remove();
+    }
+}
@@ -1,27 +1,58 @@
 package com.example.gptcompare_backend.service;
 
+import com.example.gptcompare_backend.config.PromptCacheProperties;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
 import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
 
 import java.time.Duration;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 @Service
-public class OpenAIService {
+public class OpenAIService implements ChatProvider {
 
     /**
      * Résultat normalisé renvoyé par le service OpenAI, prêt à être exposé au controller.
      * - reply : texte final (ou message d'erreur user-friendly)
      * - latencyMs : durée mesurée côté backend
      * - tokens : usage si disponible
+     * - cachedInputTokens : part de inputTokens lue dans le cache de préfixe du fournisseur (null si non fourni)
+     * - reasoningTokens : part de outputTokens consacrée au raisonnement (null si non fourni)
      * - truncated : true si OpenAI a stoppé à cause de max_output_tokens
+     * - ttftMs : délai avant le premier token (uniquement en streaming)
+     * - tokensPerSecond : débit de génération (outputTokens / durée de génération)
+     * - cached : true si la réponse vient du cache local (aucun appel OpenAI)
+     * - retries / retryTimeMs : relances effectuées et temps perdu avant le dernier essai
+     * - model : modèle qui a réellement répondu
+     * - fallbackFrom : modèle demandé si la réponse vient du modèle de repli (circuit ouvert), sinon null
+     * - responseId : id de la réponse chez le fournisseur (chaînage des sessions), si connu
+     * - context : contexte de session réutilisé pour ce tour (null hors session)
+     * - phases : découpage par phase du dernier essai (pool, connect, TLS, TTFB, téléchargement, décodage),
+     *   null hors appel amont (cache, erreur avant envoi, autres fournisseurs)
+     * - coalesced : true si la réponse vient d'un appel identique déjà en vol (single-flight, aucun appel propre)
+     * - upstreamFailure : true si l'échec vient de la santé de l'amont (429, 5xx, réseau, délai, status "failed"),
+     *   false pour une réponse obtenue ou un refus local (prompt trop long, circuit ouvert, 4xx du client)
+     * Les durées sont mesurées sur horloge monotone (nanoTime).
      */
     public record AiResult(
             String reply,
@@ -29,25 +60,347 @@ public class OpenAIService {
             Integer inputTokens,
             Integer outputTokens,
             Integer totalTokens,
+            Integer cachedInputTokens,
+            Integer reasoningTokens,
             boolean truncated,
-            String truncateReason
-    ) {}
+            String truncateReason,
+            Long ttftMs,
+            Double tokensPerSecond,
+            boolean cached,
+            int retries,
+            long retryTimeMs,
+            String model,
+            String fallbackFrom,
+            String responseId,
+            SessionService.ContextReuse context,
+            LatencyPhases.Breakdown phases,
+            boolean coalesced,
+            boolean upstreamFailure
+    ) {
+        /** Résultat d'erreur : message user-friendly, sans usage. */
+        public static AiResult error(String reply, long latencyMs) {
+            return new Builder(reply, latencyMs).build();
+        }
+
+        /**
+         * Réponse obtenue, avec son usage ; les diagnostics optionnels s'ajoutent par les with*
+         * (un nouveau champ ne touche ainsi que ce record, pas ses appelants).
+         */
+        public static AiResult ok(String reply, long latencyMs, Integer inputTokens, Integer outputTokens,
+                                  Integer totalTokens) {
+            Builder b = new Builder(reply, latencyMs);
+            b.inputTokens = inputTokens;
+            b.outputTokens = outputTokens;
+            b.totalTokens = totalTokens;
+            return b.build();
+        }
+
+        /** Copie servie depuis le cache : latence propre (quasi nulle), pas de ttft, débit ni relance. */
+        public AiResult asCached(long latencyMs) {
+            Builder b = toBuilder();
+            b.latencyMs = latencyMs;
+            b.ttftMs = null;
+            b.tokensPerSecond = null;
+            b.cached = true;
+            b.retries = 0;
+            b.retryTimeMs = 0;
+            b.phases = null;
+            b.coalesced = false;
+            return b.build();
+        }
+
+        /** Copie reçue par un appelant dédupliqué : le résultat est celui de l'appel en vol, sans appel propre. */
+        public AiResult asCoalesced() {
+            Builder b = toBuilder();
+            b.coalesced = true;
+            return b.build();
+        }
+
+        /** Échec imputable à l'amont (cf. ModelCircuitBreaker.isFailure) : l'admission recule. */
+        public AiResult asUpstreamFailure() {
+            Builder b = toBuilder();
+            b.upstreamFailure = true;
+            return b.build();
+        }
+
+        /** Détail de l'usage : tokens d'entrée servis par le cache du fournisseur, tokens de raisonnement. */
+        public AiResult withTokenDetails(Integer cachedInputTokens, Integer reasoningTokens) {
+            Builder b = toBuilder();
+            b.cachedInputTokens = cachedInputTokens;
+            b.reasoningTokens = reasoningTokens;
+            return b.build();
+        }
+
+        /** Réponse tronquée pour la raison donnée (null : réponse complète). */
+        public AiResult withTruncation(String truncateReason) {
+            Builder b = toBuilder();
+            b.truncated = truncateReason != null;
+            b.truncateReason = truncateReason;
+            return b.build();
+        }
+
+        public AiResult withThroughput(Long ttftMs, Double tokensPerSecond) {
+            Builder b = toBuilder();
+            b.ttftMs = ttftMs;
+            b.tokensPerSecond = tokensPerSecond;
+            return b.build();
+        }
+
+        public AiResult withResponseId(String responseId) {
+            Builder b = toBuilder();
+            b.responseId = responseId;
+            return b.build();
+        }
+
+        public AiResult withRetries(RetryPolicy.Tracker tracker) {
+            Builder b = toBuilder();
+            b.retries = tracker.retries();
+            b.retryTimeMs = tracker.retryTimeMs();
+            return b.build();
+        }
+
+        public AiResult withModel(String model, String fallbackFrom) {
+            Builder b = toBuilder();
+            b.model = model;
+            b.fallbackFrom = fallbackFrom;
+            return b.build();
+        }
+
+        public AiResult withContext(SessionService.ContextReuse context) {
+            Builder b = toBuilder();
+            b.context = context;
+            return b.build();
+        }
+
+        public AiResult withPhases(LatencyPhases.Breakdown phases) {
+            Builder b = toBuilder();
+            b.phases = phases;
+            return b.build();
+        }
+
+        private Builder toBuilder() {
+            Builder b = new Builder(reply, latencyMs);
+            b.inputTokens = inputTokens;
+            b.outputTokens = outputTokens;
+            b.totalTokens = totalTokens;
+            b.cachedInputTokens = cachedInputTokens;
+            b.reasoningTokens = reasoningTokens;
+            b.truncated = truncated;
+            b.truncateReason = truncateReason;
+            b.ttftMs = ttftMs;
+            b.tokensPerSecond = tokensPerSecond;
+            b.cached = cached;
+            b.retries = retries;
+            b.retryTimeMs = retryTimeMs;
+            b.model = model;
+            b.fallbackFrom = fallbackFrom;
+            b.responseId = responseId;
+            b.context = context;
+            b.phases = phases;
+            b.coalesced = coalesced;
+            b.upstreamFailure = upstreamFailure;
+            return b;
+        }
+
+        /** Seul endroit qui connaît l'ordre des composants. */
+        private static final class Builder {
+            private final String reply;
+            private long latencyMs;
+            private Integer inputTokens, outputTokens, totalTokens, cachedInputTokens, reasoningTokens;
+            private boolean truncated;
+            private String truncateReason;
+            private Long ttftMs;
+            private Double tokensPerSecond;
+            private boolean cached;
+            private int retries;
+            private long retryTimeMs;
+            private String model, fallbackFrom, responseId;
+            private SessionService.ContextReuse context;
+            private LatencyPhases.Breakdown phases;
+            private boolean coalesced, upstreamFailure;
+
+            Builder(String reply, long latencyMs) {
+                this.reply = reply;
+                this.latencyMs = latencyMs;
+            }
+
+            AiResult build() {
+                return new AiResult(reply, latencyMs, inputTokens, outputTokens, totalTokens, cachedInputTokens,
+                        reasoningTokens, truncated, truncateReason, ttftMs, tokensPerSecond, cached, retries,
+                        retryTimeMs, model, fallbackFrom, responseId, context, phases, coalesced, upstreamFailure);
+            }
+        }
+    }
+
+    /**
+     * Évènement émis par streamReply :
+     * - delta : morceau de texte reçu (null sur l'évènement final)
+     * - result : résultat complet (usage, tronquage, ttft...) uniquement sur l'évènement final
+     */
+    public record StreamEvent(String delta, AiResult result) {
+        public boolean isFinal() {
+            return result != null;
+        }
+    }
+
+    /**
+     * Réponse en mode background (cf. submitBackground / pollBackground) :
+     * - responseId / status : id et statut côté OpenAI (queued, in_progress, puis completed, incomplete, failed, cancelled)
+     * - maxOutputTokens : sortie retenue à l'envoi
+     * - result : résultat final, uniquement une fois la réponse terminée (ou l'envoi échoué)
+     */
+    public record BackgroundResponse(String responseId, String status, String model, int maxOutputTokens,
+                                     AiResult result) {
+        public boolean isDone() {
+            return result != null;
+        }
+    }
+
+    /** Un essai abouti : réponse décodée et ses phases. */
+    private record Attempt(ResponsesDecoder.Decoded response, LatencyPhases phases) {}
 
     private final WebClient webClient;
     private final String defaultModel;
+    private final ResponseCache responseCache;
+    /** null si la déduplication des appels en vol est désactivée. */
+    private final SingleFlight<RequestKey, AiResult> singleFlight;
+    private final RetryPolicy retryPolicy;
+    private final ModelRateLimiter rateLimiter;
+    private final ModelCircuitBreaker circuitBreaker;
+    private final UpstreamMetrics metrics;
+    private final HedgePolicy hedgePolicy;
+    private final Tokenizer tokenizer;
+    /** Consignes communes envoyées en tête de chaque prompt (null si aucune). */
+    private final String instructions;
+    /** prompt_cache_key envoyé à chaque appel (null si désactivé). */
+    private final String promptCacheKey;
 
     /** Valeur par défaut si maxOutputTokens est absent ou invalide. */
     private static final int DEFAULT_MAX_OUTPUT_TOKENS = 800;
     /** Garde-fou pour éviter des sorties déraisonnables côté serveur. */
     private static final int HARD_MAX_OUTPUT_TOKENS = 8000;
+    /**
+     * Deadline d'une requête (relances comprises) quand le Context ne porte pas de RequestDeadline,
+     * et délai d'inactivité max entre deux évènements d'un stream.
+     */
+    private static final Duration REQUEST_DEADLINE = Duration.ofSeconds(60);
+
+    /** Attribut de requête WebClient portant le modèle appelé (tag des métriques TTFB). */
+    private static final String MODEL_ATTRIBUTE = OpenAIService.class.getName() + ".model";
+
+    private static final ParameterizedTypeReference<ServerSentEvent<String>> SSE_STRING =
+            new ParameterizedTypeReference<>() {};
+
+    /**
+     * Composants d'OpenAIService. Par défaut tout est désactivé (client Reactor Netty neuf, ni cache,
+     * ni relance, ni limiteur, ni disjoncteur, ni hedging, métriques ignorées) sauf la déduplication :
+     * on ne renseigne que ce que l'on veut activer.
+     * - httpClient : client Reactor Netty partagé (pool dédié, timeouts, HTTP/2), cf. OpenAIHttpConfig.
+     * - responseCache : cache optionnel des réponses identiques.
+     * - singleFlight : les appels identiques concurrents partagent un seul appel amont.
+     * - retryPolicy : relances des erreurs transitoires (429/5xx, échecs de connexion).
+     * - rateLimiter : budget requêtes/tokens/concurrence par modèle, avant chaque appel amont.
+     * - circuitBreaker : échec immédiat ou modèle de repli quand un modèle est dégradé.
+     * - metrics : latence, TTFB, tokens et issues de chaque appel (Micrometer).
+     * - hedgePolicy : second essai identique quand le premier tarde (queue de latence), sous budget.
+     * - promptCache : prompt_cache_key stable et consignes communes en tête (cache de préfixe OpenAI).
+     * - tokenizer : comptage local du prompt, contrôle de la fenêtre de contexte avant envoi.
+     */
+    public static final class Dependencies {
+        private HttpClient httpClient = HttpClient.create();
+        private ResponseCache responseCache = ResponseCache.disabled();
+        private boolean singleFlight = true;
+        private RetryPolicy retryPolicy = RetryPolicy.disabled();
+        private ModelRateLimiter rateLimiter = ModelRateLimiter.disabled();
+        private ModelCircuitBreaker circuitBreaker = ModelCircuitBreaker.disabled();
+        private UpstreamMetrics metrics = UpstreamMetrics.noop();
+        private HedgePolicy hedgePolicy = HedgePolicy.disabled();
+        private PromptCacheProperties promptCache = PromptCacheProperties.disabled();
+        private Tokenizer tokenizer = Tokenizer.disabled();
+
+        private Dependencies() {}
 
+        public static Dependencies defaults() {
+            return new Dependencies();
+        }
+
+        public Dependencies httpClient(HttpClient httpClient) {
+            this.httpClient = httpClient;
+            return this;
+        }
+
+        public Dependencies responseCache(ResponseCache responseCache) {
+            this.responseCache = responseCache;
+            return this;
+        }
+
+        public Dependencies singleFlight(boolean enabled) {
+            this.singleFlight = enabled;
+            return this;
+        }
+
+        public Dependencies retryPolicy(RetryPolicy retryPolicy) {
+            this.retryPolicy = retryPolicy;
+            return this;
+        }
+
+        public Dependencies rateLimiter(ModelRateLimiter rateLimiter) {
+            this.rateLimiter = rateLimiter;
+            return this;
+        }
+
+        public Dependencies circuitBreaker(ModelCircuitBreaker circuitBreaker) {
+            this.circuitBreaker = circuitBreaker;
+            return this;
+        }
+
+        public Dependencies metrics(UpstreamMetrics metrics) {
+            this.metrics = metrics;
+            return this;
+        }
+
+        public Dependencies hedgePolicy(HedgePolicy hedgePolicy) {
+            this.hedgePolicy = hedgePolicy;
+            return this;
+        }
+
+        public Dependencies promptCache(PromptCacheProperties promptCache) {
+            this.promptCache = promptCache;
+            return this;
+        }
+
+        public Dependencies tokenizer(Tokenizer tokenizer) {
+            this.tokenizer = tokenizer;
+            return this;
+        }
+    }
+
+    public OpenAIService(String apiKey, String apiUrl, String defaultModel) {
+        this(apiKey, apiUrl, defaultModel, Dependencies.defaults());
+    }
+
+    /** Composants fournis par le contexte Spring (cf. OpenAIServiceConfig). */
+    @Autowired
     public OpenAIService(
             @Value("${openai.api.key}") String apiKey,
             @Value("${openai.api.url}") String apiUrl,
-            @Value("${openai.api.model}") String defaultModel
+            @Value("${openai.api.model}") String defaultModel,
+            Dependencies deps
     ) {
         this.defaultModel = defaultModel;
+        this.responseCache = deps.responseCache;
+        this.singleFlight = deps.singleFlight ? new SingleFlight<>() : null;
+        this.retryPolicy = deps.retryPolicy;
+        this.rateLimiter = deps.rateLimiter;
+        this.circuitBreaker = deps.circuitBreaker;
+        this.metrics = deps.metrics;
+        this.hedgePolicy = deps.hedgePolicy;
+        this.tokenizer = deps.tokenizer;
+        this.instructions = deps.promptCache.sharedInstructions();
+        this.promptCacheKey = deps.promptCache.cacheKey();
         this.webClient = WebClient.builder()
+                .clientConnector(new ReactorClientHttpConnector(deps.httpClient))
+                .filter(this::timeToFirstByte)
                 // Ici apiUrl pointe directement sur /v1/responses
                 .baseUrl(apiUrl)
                 .defaultHeader(HttpHeaders.AUTHORIZATION, "Bearer " + apiKey)
@@ -55,158 +408,640 @@ public class OpenAIService {
                 .build();
     }
 
+    @Override
     public Mono<AiResult> generateReply(String userMessage, String model, Double temperature, Integer maxOutputTokens) {
-        final String usedModel = (model == null || model.isBlank()) ? defaultModel : model;
+        final String usedModel = resolveModel(model);
+        final int usedMax = resolveMaxOutputTokens(maxOutputTokens);
+
+        Map<String, Object> payload = buildPayload(userMessage, usedModel, temperature, usedMax);
+
+        // Clé de cache sur la température réellement envoyée (absente pour GPT-5)
+        final RequestKey cacheKey = new RequestKey(
+                usedModel, userMessage, (Double) payload.get("temperature"), usedMax);
+
+        final Function<String, Map<String, Object>> payloadFor =
+                m -> m.equals(usedModel) ? payload : buildPayload(userMessage, m, temperature, usedMax);
+
+        return Mono.defer(() -> {
+            if (!responseCache.isCacheable(cacheKey.temperature())) {
+                return coalesce(cacheKey, () -> route(usedModel, payloadFor, usedMax, null));
+            }
+            final long lookupStart = System.nanoTime();
+            AiResult hit = responseCache.get(cacheKey);
+            if (hit != null) {
+                return Mono.just(hit.asCached(Duration.ofNanos(System.nanoTime() - lookupStart).toMillis()));
+            }
+            return coalesce(cacheKey, () -> route(usedModel, payloadFor, usedMax, cacheKey));
+        });
+    }
+
+    @Override
+    public boolean supportsPreviousResponseId(String model) {
+        return true;
+    }
+
+    /**
+     * Tour de session : previous_response_id (l'historique reste côté OpenAI) ou historique rejoué
+     * en messages role/content. Ni cache ni déduplication : deux tours au même texte n'ont pas le même contexte.
+     */
+    @Override
+    public Mono<AiResult> generateReply(String userMessage, String model, Double temperature, Integer maxOutputTokens,
+                                        Conversation conversation) {
+        if (conversation == null || conversation.isEmpty()) {
+            return generateReply(userMessage, model, temperature, maxOutputTokens);
+        }
+        final String usedModel = resolveModel(model);
+        final int usedMax = resolveMaxOutputTokens(maxOutputTokens);
+        return route(usedModel, m -> buildPayload(userMessage, conversation, m, temperature, usedMax), usedMax, null);
+    }
+
+    /**
+     * Aiguillage selon le disjoncteur : modèle demandé si son circuit le permet,
+     * sinon modèle de repli configuré, sinon échec immédiat (pas d'attente du timeout).
+     * Une réponse du modèle de repli n'est jamais mise en cache sous la clé d'origine.
+     */
+    private Mono<AiResult> route(String usedModel, Function<String, Map<String, Object>> payloadFor,
+                                 int usedMax, RequestKey cacheKey) {
+        return Mono.defer(() -> {
+            String routed = routeModel(usedModel);
+            if (usedModel.equals(routed)) {
+                return callUpstream(usedModel, payloadFor.apply(usedModel), usedMax, cacheKey);
+            }
+            if (routed != null) {
+                return callUpstream(routed, payloadFor.apply(routed), usedMax, null)
+                        .map(r -> r.withModel(routed, usedModel));
+            }
+            return Mono.just(circuitOpenResult(usedModel));
+        });
+    }
+
+    /** Modèle à appeler : usedModel, son repli si le circuit est ouvert, ou null si aucun n'est disponible. */
+    private String routeModel(String usedModel) {
+        if (circuitBreaker.tryAcquire(usedModel)) return usedModel;
+        String fallback = circuitBreaker.fallbackFor(usedModel);
+        if (fallback != null && circuitBreaker.tryAcquire(fallback)) return fallback;
+        metrics.recordRejected(usedModel, "circuit_open");
+        return null;
+    }
+
+    /** Filtre WebClient : délai entre l'envoi d'un essai et la réception des en-têtes, par modèle. */
+    private Mono<ClientResponse> timeToFirstByte(ClientRequest request, ExchangeFunction next) {
+        return Mono.defer(() -> {
+            final long startNanos = System.nanoTime();
+            return next.exchange(request).doOnNext(resp -> request.attribute(MODEL_ATTRIBUTE).ifPresent(
+                    m -> metrics.recordTtfb((String) m, System.nanoTime() - startNanos)));
+        });
+    }
+
+    private static AiResult promptTooLongResult(Tokenizer.Estimate e) {
+        return AiResult.error("Erreur: prompt trop long pour " + e.model() + " (" + e.inputTokens()
+                + " tokens en entrée, fenêtre de " + e.contextWindow() + " tokens).", 0L)
+                .withModel(e.model(), null);
+    }
+
+    /** Copie du payload avec une sortie réduite (le payload d'origine peut être partagé). */
+    private static Map<String, Object> withMaxOutputTokens(Map<String, Object> payload, int maxOutputTokens) {
+        if (Integer.valueOf(maxOutputTokens).equals(payload.get("max_output_tokens"))) return payload;
+        Map<String, Object> copy = new HashMap<>(payload);
+        copy.put("max_output_tokens", maxOutputTokens);
+        return copy;
+    }
 
-        final int usedMax = Math.min(
+    private static AiResult circuitOpenResult(String model) {
+        return AiResult.error("Erreur: modèle " + model + " temporairement indisponible (circuit ouvert).", 0L)
+                .withModel(model, null);
+    }
+
+    /** Estimation locale d'un appel (prompt tel qu'envoyé, consignes comprises), sans appel amont. */
+    public Tokenizer.Estimate estimate(String userMessage, String model, Integer maxOutputTokens) {
+        String usedModel = resolveModel(model);
+        return tokenizer.estimate(usedModel, promptText(buildPayload(userMessage, usedModel, null, 0)),
+                resolveMaxOutputTokens(maxOutputTokens));
+    }
+
+    public Map<String, HedgePolicy.HedgeStats> hedgeStats() {
+        return hedgePolicy.stats();
+    }
+
+    /** Compteurs de déduplication (null si désactivée). */
+    public SingleFlight.Stats singleFlightStats() {
+        return singleFlight == null ? null : singleFlight.stats();
+    }
+
+    private Mono<AiResult> coalesce(RequestKey key, Supplier<Mono<AiResult>> call) {
+        return singleFlight == null ? call.get() : singleFlight.execute(key, call, AiResult::asCoalesced);
+    }
+
+    /**
+     * Appel non-streaming à l'API Responses.
+     * cacheKey non null : une réponse "completed" est mémorisée pour les appels suivants.
+     * Les erreurs transitoires sont relancées selon retryPolicy, dans la limite de la deadline de la requête
+     * (RequestDeadline du Context, sinon REQUEST_DEADLINE) ; une deadline déjà échue n'envoie rien.
+     * Chaque essai peut être doublé par hedgePolicy (le plus rapide gagne, l'autre est annulé).
+     * Un rejet du limiteur (RateLimitExceededException) est propagé tel quel au controller (HTTP 429).
+     * L'issue de l'appel (relances comprises) alimente le disjoncteur du modèle.
+     * Avant tout envoi, le prompt est compté localement : refusé s'il ne laisse pas de place à la réponse,
+     * sinon max_output_tokens est réduit à la place restante dans la fenêtre du modèle.
+     */
+    private Mono<AiResult> callUpstream(String usedModel, Map<String, Object> requested, int requestedMax,
+                                        RequestKey cacheKey) {
+        return Mono.deferContextual(ctx -> {
+            final Tokenizer.Estimate estimate = countPrompt(usedModel, requested, requestedMax);
+            if (!estimate.fits()) {
+                circuitBreaker.onIgnored(usedModel);
+                metrics.recordRejected(usedModel, "context_window");
+                return Mono.just(promptTooLongResult(estimate));
+            }
+            final int usedMax = estimate.maxOutputTokens();
+            final Map<String, Object> payload = withMaxOutputTokens(requested, usedMax);
+            final long startNanos = System.nanoTime();
+            final RetryPolicy.Tracker retries = new RetryPolicy.Tracker();
+            final Duration deadline = RequestDeadline.remaining(ctx, REQUEST_DEADLINE);
+
+            Mono<Attempt> call = deadline.isZero()
+                    ? Mono.error(new TimeoutException("deadline échue avant l'appel"))
+                    : hedgePolicy.hedge(usedModel, () -> exchange(usedModel, payload, estimate.inputTokens() + usedMax))
+                            // corps vide (ex: connexion réutilisée fermée par l'amont) : erreur explicite plutôt qu'un Mono vide
+                            .switchIfEmpty(Mono.error(() -> new IllegalStateException("réponse OpenAI vide.")))
+                            .retryWhen(retryPolicy.retrySpec(usedModel, retries, deadline))
+                            .timeout(deadline);
+            return call
+                    .doOnNext(a -> recordOutcome(usedModel, !"failed".equals(a.response().status()), startNanos))
+                    .doOnError(e -> recordFailure(usedModel, e, startNanos))
+                    .doOnCancel(() -> circuitBreaker.onIgnored(usedModel))
+                    .map(a -> {
+                        AiResult r = toAiResult(a.response(), usedMax, startNanos)
+                                .withModel(usedModel, null)
+                                .withPhases(a.phases().breakdown());
+                        if (cacheKey != null && "completed".equals(a.response().status())) {
+                            responseCache.put(cacheKey, r);
+                        }
+                        boolean failed = "failed".equals(a.response().status());
+                        metrics.recordResult(usedModel, System.nanoTime() - startNanos, r, failed);
+                        return failed ? r.asUpstreamFailure() : r;
+                    })
+                    .onErrorResume(WebClientResponseException.class,
+                            e -> Mono.just(httpErrorResult(e, startNanos).withModel(usedModel, null)))
+                    .onErrorResume(e -> !(e instanceof RateLimitExceededException),
+                            e -> Mono.just(genericErrorResult(e, startNanos).withModel(usedModel, null)))
+                    .map(r -> r.withRetries(retries));
+        });
+    }
+
+    /**
+     * Réponse reçue : le disjoncteur juge sur son contenu (un 200 avec status "failed", ou un stream
+     * terminé par "error" / "response.failed", est un échec du modèle), pas sur le seul code HTTP.
+     */
+    private void recordOutcome(String model, boolean succeeded, long startNanos) {
+        Duration duration = Duration.ofNanos(System.nanoTime() - startNanos);
+        if (succeeded) circuitBreaker.onSuccess(model, duration);
+        else circuitBreaker.onFailure(model, duration);
+    }
+
+    /** Un rejet du limiteur local ne dit rien de la santé du modèle : pas compté par le disjoncteur. */
+    private void recordFailure(String model, Throwable e, long startNanos) {
+        metrics.recordError(model, System.nanoTime() - startNanos, e);
+        if (e instanceof RateLimitExceededException) {
+            circuitBreaker.onIgnored(model);
+        } else {
+            circuitBreaker.onError(model, e, Duration.ofNanos(System.nanoTime() - startNanos));
+        }
+    }
+
+    /**
+     * Un essai : budget du limiteur (libéré en fin d'appel, même sur erreur ou annulation),
+     * POST, puis mise à jour de la marge à partir des en-têtes x-ratelimit-*.
+     * Le corps est lu en octets et décodé en une passe par ResponsesDecoder.
+     * Les phases de l'essai (LatencyPhases) voyagent dans son Context jusqu'aux hooks Reactor Netty.
+     */
+    private Mono<Attempt> exchange(String usedModel, Map<String, Object> payload, int estimated) {
+        return Mono.deferContextual(ctx -> {
+            final LatencyPhases phases = metrics.startAttempt(usedModel, ctx);
+            return Mono.usingWhen(
+                            rateLimiter.acquire(usedModel, estimated).doOnNext(permit -> phases.permitted()),
+                            permit -> webClient.post()
+                                    .attribute(MODEL_ATTRIBUTE, usedModel)
+                                    .bodyValue(payload)
+                                    .retrieve()
+                                    .toEntity(byte[].class)
+                                    .doOnError(WebClientResponseException.class,
+                                            e -> rateLimiter.observe(usedModel, e.getHeaders()))
+                                    .flatMap(entity -> {
+                                        phases.bodyReceived();
+                                        rateLimiter.observe(usedModel, entity.getHeaders());
+                                        byte[] body = entity.getBody();
+                                        if (body == null || body.length == 0) return Mono.empty();
+                                        ResponsesDecoder.Decoded res = ResponsesDecoder.decode(body);
+                                        phases.parsed();
+                                        return Mono.justOrEmpty(res).map(r -> new Attempt(r, phases));
+                                    }),
+                            permit -> Mono.fromRunnable(permit::release),
+                            (permit, err) -> Mono.fromRunnable(permit::release),
+                            permit -> Mono.fromRunnable(permit::cancel)
+                    )
+                    // observation close avant l'émission : l'essai est terminé quand l'appelant reçoit la réponse
+                    .doOnNext(a -> {
+                        phases.stop(null);
+                        metrics.recordPhases(usedModel, phases.breakdown());
+                    })
+                    .doOnError(phases::stop)
+                    .doFinally(signal -> phases.stop(null))
+                    .contextWrite(phases::putInto);
+        });
+    }
+
+    /**
+     * Lance une réponse en mode background (background=true, store=true) : OpenAI rend un id aussitôt
+     * et la génération continue sans connexion ouverte. Même contrôle de fenêtre, limiteur et deadline
+     * qu'un appel non-streaming, mais ni cache, ni hedging, ni disjoncteur (la durée d'un job ne dit rien
+     * de la santé du modèle) ; seuls les échecs de connexion et les 429/5xx sont relancés (cf.
+     * RetryPolicy.retrySpecUnlessAccepted). Un refus ou une erreur d'envoi rend une réponse déjà terminée.
+     */
+    public Mono<BackgroundResponse> submitBackground(String userMessage, String model, Double temperature,
+                                                     Integer maxOutputTokens) {
+        final String usedModel = resolveModel(model);
+        final int requestedMax = resolveMaxOutputTokens(maxOutputTokens);
+
+        return Mono.deferContextual(ctx -> {
+            Map<String, Object> payload = buildPayload(userMessage, usedModel, temperature, requestedMax);
+            final Tokenizer.Estimate estimate = countPrompt(usedModel, payload, requestedMax);
+            if (!estimate.fits()) {
+                metrics.recordRejected(usedModel, "context_window");
+                return Mono.just(failedBackground(null, usedModel, requestedMax, promptTooLongResult(estimate)));
+            }
+            final int usedMax = estimate.maxOutputTokens();
+            payload.put("max_output_tokens", usedMax);
+            payload.put("background", true);
+            payload.put("store", true);
+            final long startNanos = System.nanoTime();
+            final RetryPolicy.Tracker retries = new RetryPolicy.Tracker();
+            final Duration deadline = RequestDeadline.remaining(ctx, REQUEST_DEADLINE);
+
+            Mono<ResponsesDecoder.Decoded> call = deadline.isZero()
+                    ? Mono.error(new TimeoutException("deadline échue avant l'appel"))
+                    : exchange(usedModel, payload, estimate.inputTokens() + usedMax)
+                            .map(Attempt::response)
+                            .switchIfEmpty(Mono.error(() -> new IllegalStateException("réponse OpenAI vide.")))
+                            // chaque envoi reçu crée une réponse facturée : pas de relance une fois la requête partie
+                            .retryWhen(retryPolicy.retrySpecUnlessAccepted(usedModel, retries, deadline))
+                            .timeout(deadline);
+            return call
+                    .map(res -> res.id() == null
+                            ? failedBackground(null, usedModel, usedMax,
+                                    AiResult.error("Erreur: réponse OpenAI sans id.", elapsedMs(startNanos)))
+                            : toBackground(res, usedModel, usedMax, startNanos))
+                    .onErrorResume(WebClientResponseException.class,
+                            e -> Mono.just(failedBackground(null, usedModel, usedMax, httpErrorResult(e, startNanos))))
+                    .onErrorResume(e -> !(e instanceof RateLimitExceededException),
+                            e -> Mono.just(failedBackground(null, usedModel, usedMax, genericErrorResult(e, startNanos))));
+        });
+    }
+
+    /**
+     * État d'une réponse background (GET /v1/responses/{id}), hors limiteur : une lecture d'état
+     * ne consomme pas de tokens. startNanos : instant d'envoi (nanoTime), pour la latence du résultat final.
+     * Id inconnu ou refusé (4xx hors 429) : réponse terminée en échec ; autre erreur (réseau, 5xx, 429) :
+     * Mono en erreur, l'appelant réinterroge plus tard.
+     */
+    public Mono<BackgroundResponse> pollBackground(BackgroundResponse pending, long startNanos) {
+        return webClient.get()
+                .uri("/{id}", pending.responseId())
+                .retrieve()
+                .bodyToMono(byte[].class)
+                .mapNotNull(ResponsesDecoder::decode)
+                .switchIfEmpty(Mono.error(() -> new IllegalStateException("réponse OpenAI vide.")))
+                .map(res -> {
+                    BackgroundResponse r = toBackground(res, pending.model(), pending.maxOutputTokens(), startNanos);
+                    if (r.isDone()) metrics.recordResult(pending.model(), System.nanoTime() - startNanos, r.result(),
+                            "failed".equals(r.status()));
+                    return r;
+                })
+                .onErrorResume(e -> e instanceof WebClientResponseException w
+                                && w.getStatusCode().is4xxClientError() && w.getStatusCode().value() != 429,
+                        e -> Mono.just(failedBackground(pending.responseId(), pending.model(),
+                                pending.maxOutputTokens(), httpErrorResult((WebClientResponseException) e, startNanos))));
+    }
+
+    /** Annule une réponse background chez OpenAI (POST /v1/responses/{id}/cancel) ; erreurs ignorées. */
+    public Mono<Void> cancelBackground(String responseId) {
+        return webClient.post()
+                .uri("/{id}/cancel", responseId)
+                .retrieve()
+                .toBodilessEntity()
+                .timeout(REQUEST_DEADLINE)
+                .then()
+                .onErrorResume(e -> Mono.empty());
+    }
+
+    /** Statut OpenAI terminal : la réponse n'évoluera plus (queued / in_progress → non). */
+    static boolean isTerminal(String status) {
+        return !"queued".equals(status) && !"in_progress".equals(status);
+    }
+
+    private static BackgroundResponse toBackground(ResponsesDecoder.Decoded res, String model, int usedMax,
+                                                   long startNanos) {
+        if (!isTerminal(res.status())) {
+            return new BackgroundResponse(res.id(), res.status(), model, usedMax, null);
+        }
+        return new BackgroundResponse(res.id(), res.status(), model, usedMax,
+                toAiResult(res, usedMax, startNanos).withModel(model, null));
+    }
+
+    private static BackgroundResponse failedBackground(String responseId, String model, int usedMax, AiResult error) {
+        return new BackgroundResponse(responseId, "failed", model, usedMax, error.withModel(model, null));
+    }
+
+    /**
+     * Variante streaming : l'API Responses est appelée avec stream=true et chaque
+     * delta de texte est relayé dès réception. Le dernier évènement porte le résultat
+     * complet (usage, tronquage, time-to-first-token, tokens/s).
+     * Les erreurs ne font pas échouer le Flux : elles deviennent un évènement final d'erreur, y compris
+     * un flux fermé par l'amont sans évènement terminal (compté comme un échec par le disjoncteur).
+     */
+    @Override
+    public Flux<StreamEvent> streamReply(String userMessage, String model, Double temperature, Integer maxOutputTokens) {
+        return streamReply(userMessage, model, temperature, maxOutputTokens, Conversation.NONE);
+    }
+
+    /** Variante streaming d'un tour de session (même contexte que generateReply). */
+    @Override
+    public Flux<StreamEvent> streamReply(String userMessage, String model, Double temperature, Integer maxOutputTokens,
+                                         Conversation conversation) {
+        final String requestedModel = resolveModel(model);
+        final int requestedMax = resolveMaxOutputTokens(maxOutputTokens);
+
+        return Flux.deferContextual(ctx -> {
+            final long startNanos = System.nanoTime();
+            final AtomicLong firstTokenNanos = new AtomicLong(-1);
+            final AtomicBoolean failedEnding = new AtomicBoolean();
+            final AtomicBoolean ended = new AtomicBoolean();
+            final StringBuilder text = new StringBuilder();
+
+            // même aiguillage que generateReply : modèle demandé, repli, ou échec immédiat
+            final String usedModel = routeModel(requestedModel);
+            if (usedModel == null) {
+                return Flux.just(new StreamEvent(null, circuitOpenResult(requestedModel)));
+            }
+            final String fallbackFrom = usedModel.equals(requestedModel) ? null : requestedModel;
+
+            Map<String, Object> payload = buildPayload(userMessage, conversation, usedModel, temperature, requestedMax);
+            final Tokenizer.Estimate estimate = countPrompt(usedModel, payload, requestedMax);
+            if (!estimate.fits()) {
+                circuitBreaker.onIgnored(usedModel);
+                metrics.recordRejected(usedModel, "context_window");
+                return Flux.just(new StreamEvent(null, promptTooLongResult(estimate)));
+            }
+            final int usedMax = estimate.maxOutputTokens();
+            payload.put("max_output_tokens", usedMax);
+            payload.put("stream", true);
+            int estimated = estimate.inputTokens() + usedMax;
+            // téléchargement = en-têtes → évènement final ; pas de phase de décodage séparée
+            final LatencyPhases phases = metrics.startAttempt(usedModel, ctx);
+
+            return Flux.usingWhen(
+                            rateLimiter.acquire(usedModel, estimated).doOnNext(permit -> phases.permitted()),
+                            permit -> webClient.post()
+                                    .attribute(MODEL_ATTRIBUTE, usedModel)
+                                    .accept(MediaType.TEXT_EVENT_STREAM)
+                                    .bodyValue(payload)
+                                    .retrieve()
+                                    .bodyToFlux(SSE_STRING)
+                                    .contextWrite(phases::putInto),
+                            permit -> Mono.fromRunnable(permit::release),
+                            (permit, err) -> Mono.fromRunnable(permit::release),
+                            permit -> Mono.fromRunnable(permit::release)
+                    )
+                    // délai d'inactivité entre deux évènements amont, sans dépasser la deadline de la requête
+                    .timeout(Mono.delay(RequestDeadline.remaining(ctx, REQUEST_DEADLINE)),
+                            sse -> Mono.delay(RequestDeadline.remaining(ctx, REQUEST_DEADLINE)))
+                    .concatMap(sse -> {
+                        ResponsesDecoder.StreamChunk chunk = ResponsesDecoder.decodeEvent(sse.data());
+                        if (chunk == null) return Mono.empty();
+                        String type = String.valueOf(chunk.type());
+
+                        if ("response.output_text.delta".equals(type) && chunk.delta() != null) {
+                            firstTokenNanos.compareAndSet(-1, System.nanoTime());
+                            text.append(chunk.delta());
+                            return Mono.just(new StreamEvent(chunk.delta(), null));
+                        }
+                        if (("response.completed".equals(type) || "response.incomplete".equals(type)
+                                || "response.failed".equals(type))
+                                && chunk.response() != null) {
+                            failedEnding.set("response.failed".equals(type));
+                            ended.set(true);
+                            phases.bodyReceived();
+                            AiResult r = toStreamResult(chunk.response(), text, usedMax, startNanos, firstTokenNanos.get());
+                            return Mono.just(new StreamEvent(null, r.withPhases(phases.breakdown())));
+                        }
+                        if ("error".equals(type)) {
+                            failedEnding.set(true);
+                            ended.set(true);
+                            return Mono.just(new StreamEvent(null, AiResult.error(
+                                    "Erreur OpenAI: " + chunk.message(), elapsedMs(startNanos))));
+                        }
+                        return Mono.empty();
+                    })
+                    .takeUntil(StreamEvent::isFinal)
+                    // flux amont fermé sans évènement terminal (coupure, proxy) : échec explicite, pas une fin muette
+                    .concatWith(Mono.defer(() -> {
+                        if (ended.get()) return Mono.empty();
+                        failedEnding.set(true);
+                        return Mono.just(new StreamEvent(null, AiResult.error(
+                                "Erreur: flux OpenAI interrompu avant la fin de la réponse.", elapsedMs(startNanos))));
+                    }))
+                    .doOnNext(e -> {
+                        if (!e.isFinal()) return;
+                        phases.stop(null);
+                        metrics.recordResult(usedModel, System.nanoTime() - startNanos, e.result(), failedEnding.get());
+                        if (e.result().phases() != null) metrics.recordPhases(usedModel, e.result().phases());
+                    })
+                    .doOnComplete(() -> recordOutcome(usedModel, !failedEnding.get(), startNanos))
+                    .doOnError(e -> recordFailure(usedModel, e, startNanos))
+                    .doOnCancel(() -> circuitBreaker.onIgnored(usedModel))
+                    .doOnError(phases::stop)
+                    .doFinally(signal -> phases.stop(null))
+                    .onErrorResume(WebClientResponseException.class,
+                            e -> Mono.just(new StreamEvent(null, httpErrorResult(e, startNanos))))
+                    .onErrorResume(e -> Mono.just(new StreamEvent(null, genericErrorResult(e, startNanos))))
+                    .map(e -> e.isFinal() ? new StreamEvent(null, e.result().withModel(usedModel, fallbackFrom)) : e);
+        });
+    }
+
+    private String resolveModel(String model) {
+        return (model == null || model.isBlank()) ? defaultModel : model;
+    }
+
+    /** Borne commune à tous les fournisseurs (cf. ChatProvider). */
+    static int resolveMaxOutputTokens(Integer maxOutputTokens) {
+        return Math.min(
                 (maxOutputTokens == null || maxOutputTokens < 1)
                         ? DEFAULT_MAX_OUTPUT_TOKENS
                         : maxOutputTokens,
                 HARD_MAX_OUTPUT_TOKENS
         );
+    }
+
+    // Payload attendu par l’API Responses
+    private Map<String, Object> buildPayload(String userMessage, String usedModel, Double temperature, int usedMax) {
+        return buildPayload(userMessage, null, usedModel, temperature, usedMax);
+    }
 
-        // Payload attendu par l’API Responses
+    /**
+     * Avec une conversation : previous_response_id + nouveau message seul,
+     * ou, sans chaînage, historique rejoué sous forme de messages.
+     * Ordre du prompt pour le cache de préfixe : consignes communes, historique (du plus ancien au plus
+     * récent, jamais réordonné), puis le nouveau message ; rien de variable avant la partie statique.
+     */
+    private Map<String, Object> buildPayload(String userMessage, Conversation conversation, String usedModel,
+                                                    Double temperature, int usedMax) {
         Map<String, Object> payload = new HashMap<>();
         payload.put("model", usedModel);
-        payload.put("input", userMessage);
+        if (instructions != null) payload.put("instructions", instructions);
+        if (promptCacheKey != null) payload.put("prompt_cache_key", promptCacheKey);
+        if (conversation == null || conversation.isEmpty()) {
+            payload.put("input", userMessage);
+        } else if (conversation.previousResponseId() != null) {
+            payload.put("previous_response_id", conversation.previousResponseId());
+            payload.put("input", userMessage);
+        } else {
+            payload.put("input", conversation.messages(userMessage));
+        }
         payload.put("max_output_tokens", usedMax);
 
         // Température : certains modèles (ex: GPT-5) ne la supportent pas → on l'omet (plutôt que null)
         if (temperature != null && supportsTemperature(usedModel)) {
             payload.put("temperature", temperature);
         }
+        return payload;
+    }
 
-        final long startMs = System.currentTimeMillis();
+    /**
+     * Comptage du prompt avant envoi. Tour chaîné (previous_response_id) : l'historique est chez OpenAI
+     * et sa taille n'est pas connue ici ; seul le nouveau message est compté (limiteur), sans contrôle de fenêtre.
+     */
+    private Tokenizer.Estimate countPrompt(String usedModel, Map<String, Object> payload, int requestedMax) {
+        Tokenizer.Estimate estimate = tokenizer.estimate(usedModel, promptText(payload), requestedMax);
+        return payload.containsKey("previous_response_id") ? estimate.unbounded(requestedMax) : estimate;
+    }
 
-        return webClient.post()
-                .bodyValue(payload)
-                .retrieve()
-                .bodyToMono(Map.class)
-                .timeout(Duration.ofSeconds(60))
-                .map(res -> toAiResult(res, usedMax, startMs))
-                .onErrorResume(WebClientResponseException.class, e -> Mono.just(httpErrorResult(e, startMs)))
-                .onErrorResume(e -> Mono.just(genericErrorResult(e, startMs)));
+    /** Texte facturé en entrée : consignes puis contenu de chaque message (historique rejoué compris). */
+    private static String promptText(Map<String, Object> payload) {
+        StringBuilder sb = new StringBuilder();
+        if (payload.get("instructions") instanceof String instructions) sb.append(instructions);
+        Object input = payload.get("input");
+        if (input instanceof List<?> messages) {
+            for (Object m : messages) {
+                if (m instanceof Map<?, ?> message && message.get("content") instanceof String content) {
+                    appendLine(sb, content);
+                }
+            }
+        } else if (input != null) {
+            appendLine(sb, input.toString());
+        }
+        return sb.toString();
+    }
+
+    private static void appendLine(StringBuilder sb, String text) {
+        if (!sb.isEmpty()) sb.append('\n');
+        sb.append(text);
     }
 
     private static boolean supportsTemperature(String model) {
         return model != null && !model.toLowerCase().startsWith("gpt-5");
     }
 
-    private static AiResult httpErrorResult(WebClientResponseException e, long startMs) {
-        long latency = System.currentTimeMillis() - startMs;
-        return new AiResult(
+    private static AiResult httpErrorResult(WebClientResponseException e, long startNanos) {
+        long latency = elapsedMs(startNanos);
+        return upstreamOutcome(AiResult.error(
                 "Erreur OpenAI HTTP " + e.getStatusCode().value() + ": " + e.getResponseBodyAsString(),
-                latency, null, null, null,
-                false, null
-        );
+                latency
+        ), e);
     }
 
-    private static AiResult genericErrorResult(Throwable e, long startMs) {
-        long latency = System.currentTimeMillis() - startMs;
-        return new AiResult(
-                "Erreur: " + e.getMessage(),
-                latency, null, null, null,
-                false, null
-        );
+    private static AiResult genericErrorResult(Throwable e, long startNanos) {
+        long latency = elapsedMs(startNanos);
+        if (e instanceof TimeoutException) {
+            return upstreamOutcome(AiResult.error("Erreur: délai dépassé (" + latency + " ms).", latency), e);
+        }
+        return upstreamOutcome(AiResult.error("Erreur: " + e.getMessage(), latency), e);
     }
 
-    private static AiResult toAiResult(Map<?, ?> res, int usedMaxTokens, long startMs) {
-        long latency = System.currentTimeMillis() - startMs;
+    /** Même jugement que le disjoncteur : seuls 429, 5xx, réseau et délai mettent en cause l'amont. */
+    static AiResult upstreamOutcome(AiResult error, Throwable e) {
+        return ModelCircuitBreaker.isFailure(e) ? error.asUpstreamFailure() : error;
+    }
+
+    private static AiResult toAiResult(ResponsesDecoder.Decoded res, int usedMaxTokens, long startNanos) {
+        long latency = elapsedMs(startNanos);
 
-        boolean truncated = isTruncated(res);
+        boolean truncated = res.truncated();
         String reason = truncated ? "max_output_tokens" : null;
 
-        String reply = extractTextFromMap(res, usedMaxTokens);
+        String reply = replyText(res, usedMaxTokens);
+        Integer outTok = res.outputTokens();
 
-        Integer inTok = null, outTok = null, totalTok = null;
-        if (res != null) {
-            Object usageObj = res.get("usage");
-            if (usageObj instanceof Map<?, ?> usage) {
-                inTok = toInt(usage.get("input_tokens"));
-                outTok = toInt(usage.get("output_tokens"));
-                totalTok = toInt(usage.get("total_tokens"));
-            }
-        }
+        return AiResult.ok(reply, latency, res.inputTokens(), outTok, res.totalTokens())
+                .withTokenDetails(res.cachedTokens(), res.reasoningTokens())
+                .withTruncation(reason)
+                .withThroughput(null, tokensPerSecond(outTok, latency))
+                .withResponseId(res.id());
+    }
+
+    /**
+     * Résultat final d'un stream : le texte est celui accumulé à partir des deltas
+     * (repli sur l'extraction classique si aucun delta reçu), l'usage vient de l'évènement final.
+     * tokens/s est calculé sur la phase de génération (après le premier token).
+     */
+    private static AiResult toStreamResult(ResponsesDecoder.Decoded res, CharSequence text, int usedMaxTokens,
+                                           long startNanos, long firstTokenNanos) {
+        AiResult base = toAiResult(res, usedMaxTokens, startNanos);
+
+        Long ttft = firstTokenNanos < 0 ? null : (firstTokenNanos - startNanos) / 1_000_000;
+        Double tps = firstTokenNanos < 0 ? null : tokensPerSecond(base.outputTokens(), elapsedMs(firstTokenNanos));
+        String reply = text.isEmpty() ? base.reply() : text.toString();
 
-        return new AiResult(reply, latency, inTok, outTok, totalTok, truncated, reason);
+        return AiResult.ok(reply, base.latencyMs(), base.inputTokens(), base.outputTokens(), base.totalTokens())
+                .withTokenDetails(base.cachedInputTokens(), base.reasoningTokens())
+                .withTruncation(base.truncateReason())
+                .withThroughput(ttft, tps)
+                .withResponseId(base.responseId());
     }
 
-    private static boolean isTruncated(Map<?, ?> res) {
-        if (res == null) return false;
-        Object status = res.get("status");
-        Object incompleteDetails = res.get("incomplete_details");
-        return "incomplete".equals(String.valueOf(status))
-                && incompleteDetails instanceof Map<?, ?> details
-                && "max_output_tokens".equals(String.valueOf(details.get("reason")));
+    /** ms écoulées depuis un instant nanoTime (horloge monotone). */
+    /** Durée écoulée en ms sur l'horloge monotone (insensible aux ajustements de l'horloge murale). */
+    static long elapsedMs(long startNanos) {
+        return (System.nanoTime() - startNanos) / 1_000_000;
     }
 
-    private static Integer toInt(Object o) {
-        if (o instanceof Number n) return n.intValue();
-        if (o == null) return null;
-        try {
-            return Integer.parseInt(String.valueOf(o));
-        } catch (Exception ignored) {
-            return null;
-        }
+    private static Double tokensPerSecond(Integer outputTokens, long durationMs) {
+        if (outputTokens == null || outputTokens <= 0 || durationMs <= 0) return null;
+        return outputTokens * 1000.0 / durationMs;
     }
 
     /**
-     * Extraction du texte :
-     * 1) On cherche d’abord type=output_text (forme standard).
-     * 2) Sinon on prend le premier champ text non vide.
+     * Texte de la réponse (déjà sélectionné par ResponsesDecoder) :
+     * 1) type=output_text en priorité (forme standard).
+     * 2) Sinon le premier champ text non vide.
      * 3) Si truncated et aucun texte → message explicite.
      */
-    private static String extractTextFromMap(Map<?, ?> res, int usedMaxTokens) {
+    private static String replyText(ResponsesDecoder.Decoded res, int usedMaxTokens) {
         if (res == null) return "Erreur: réponse OpenAI nulle.";
+        if (!res.hasOutput()) return "Erreur: réponse OpenAI sans champ output.";
 
-        Object outputObj = res.get("output");
-        if (!(outputObj instanceof List<?> output)) {
-            return "Erreur: réponse OpenAI sans champ output.";
-        }
-
-        // 1) output_text prioritaire
-        for (Object itemObj : output) {
-            if (!(itemObj instanceof Map<?, ?> item)) continue;
-            Object contentObj = item.get("content");
-            if (!(contentObj instanceof List<?> content)) continue;
-
-            for (Object cObj : content) {
-                if (!(cObj instanceof Map<?, ?> c)) continue;
-                Object typeObj = c.get("type");
-                Object textObj = c.get("text");
-                if ("output_text".equals(typeObj) && textObj instanceof String s && !s.isBlank()) {
-                    return s;
-                }
-            }
-        }
-
-        // 2) fallback sur n'importe quel texte non vide
-        for (Object itemObj : output) {
-            if (!(itemObj instanceof Map<?, ?> item)) continue;
-            Object contentObj = item.get("content");
-            if (!(contentObj instanceof List<?> content)) continue;
-
-            for (Object cObj : content) {
-                if (!(cObj instanceof Map<?, ?> c)) continue;
-                Object textObj = c.get("text");
-                if (textObj instanceof String s && !s.isBlank()) {
-                    return s;
-                }
-            }
-        }
+        String text = res.text();
+        if (text != null) return text;
 
         // 3) si on sait que c'est tronqué mais pas de texte exploitable
-        if (isTruncated(res)) {
+        if (res.truncated()) {
             return "La réponse est trop longue et a dépassé la limite de tokens de sortie (" + usedMaxTokens + "). "
                     + "Augmente maxOutputTokens ou demande une réponse plus courte.";
         }
 
-        Object status = res.get("status");
-        if (status != null && !"completed".equals(String.valueOf(status))) {
+        String status = res.status();
+        if (status != null && !"completed".equals(status)) {
             return "Erreur: réponse OpenAI non complétée (status=" + status + ").";
         }
 
         return "Erreur: aucune réponse générée par OpenAI.";
     }
 }
-
@@ -0,0 +1,27 @@
+package com.example.gptcompare_backend.service;
+
+import java.time.Duration;
+
+/**
+ * Requête refusée par le contrôle d'admission (file pleine ou attente trop longue).
+ * Traduit en HTTP 503 + Retry-After par le controller.
+ */
+public class OverloadedException extends RuntimeException {
+
+    private final String reason;
+    private final Duration retryAfter;
+
+    public OverloadedException(String reason, Duration retryAfter) {
+        super("Serveur surchargé (" + reason + "), réessayez plus tard.");
+        this.reason = reason;
+        this.retryAfter = retryAfter;
+    }
+
+    public String getReason() {
+        return reason;
+    }
+
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+}
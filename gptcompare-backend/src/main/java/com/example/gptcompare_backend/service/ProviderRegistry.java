@@ -0,0 +1,133 @@
+package com.example.gptcompare_backend.service;
+
+import com.example.gptcompare_backend.config.OpenAIHttpConfig;
+import com.example.gptcompare_backend.config.OpenAIHttpProperties;
+import com.example.gptcompare_backend.config.ProvidersProperties;
+import com.example.gptcompare_backend.service.OpenAIService.AiResult;
+import com.example.gptcompare_backend.service.OpenAIService.StreamEvent;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Point d'entrée unique des fournisseurs (injecté partout où un ChatProvider est demandé).
+ * Un modèle "nom:modèle" est envoyé au fournisseur "nom" avec "modèle" ; un préfixe inconnu
+ * (ex. "ft:gpt-4o-mini:...") ou l'absence de préfixe → OpenAI, modèle inchangé.
+ * Les résultats des autres fournisseurs portent le nom complet "nom:modèle" (comparaison, historique, métriques).
+ */
+@Primary
+@Component
+public class ProviderRegistry implements ChatProvider {
+
+    /** Fournisseur exposé par GET /api/chat/providers. */
+    public record ProviderInfo(String name, String type, String url) {}
+
+    static final String OPENAI = "openai";
+    static final String STUB = "stub";
+
+    private final OpenAIService openAI;
+    private final Map<String, ChatProvider> providers = new LinkedHashMap<>();
+    private final List<ProviderInfo> infos = new ArrayList<>();
+
+    /**
+     * Les fournisseurs Chat Completions partagent le pool de connexions d'OpenAI (borné, métriques),
+     * avec leur propre client : https/HTTP2 selon leur URL.
+     */
+    @Autowired
+    public ProviderRegistry(OpenAIService openAI, ProvidersProperties props, ConnectionProvider openAiConnectionProvider,
+                            OpenAIHttpProperties httpProps, UpstreamMetrics metrics) {
+        this.openAI = openAI;
+        infos.add(new ProviderInfo(OPENAI, "responses", null));
+
+        if (props.chatCompletions() != null) {
+            props.chatCompletions().forEach((name, endpoint) -> {
+                boolean secure = endpoint.url() != null && endpoint.url().startsWith("https");
+                register(name, "chat-completions", endpoint.url(), new ChatCompletionsProvider(name, endpoint,
+                        OpenAIHttpConfig.httpClient(openAiConnectionProvider, httpProps, secure), metrics));
+            });
+        }
+        if (props.stub().enabled()) {
+            register(STUB, STUB, null, new StubProvider(STUB, props.stub(), metrics));
+        }
+    }
+
+    /** Registre minimal : OpenAI seul, plus les fournisseurs donnés (tests). */
+    public ProviderRegistry(OpenAIService openAI, Map<String, ChatProvider> others) {
+        this.openAI = openAI;
+        infos.add(new ProviderInfo(OPENAI, "responses", null));
+        others.forEach((name, p) -> register(name, p.getClass().getSimpleName(), null, p));
+    }
+
+    private void register(String name, String type, String url, ChatProvider provider) {
+        if (OPENAI.equals(name) || providers.putIfAbsent(name, provider) != null) {
+            throw new IllegalStateException("Fournisseur en double : " + name);
+        }
+        infos.add(new ProviderInfo(name, type, url));
+    }
+
+    public OpenAIService openAI() {
+        return openAI;
+    }
+
+    public List<ProviderInfo> providers() {
+        return List.copyOf(infos);
+    }
+
+    /** true si le modèle est servi par OpenAI (aucun préfixe de fournisseur connu). */
+    public boolean isOpenAI(String model) {
+        return resolve(model) == null;
+    }
+
+    @Override
+    public Mono<AiResult> generateReply(String userMessage, String model, Double temperature, Integer maxOutputTokens) {
+        return generateReply(userMessage, model, temperature, maxOutputTokens, Conversation.NONE);
+    }
+
+    @Override
+    public Flux<StreamEvent> streamReply(String userMessage, String model, Double temperature, Integer maxOutputTokens) {
+        return streamReply(userMessage, model, temperature, maxOutputTokens, Conversation.NONE);
+    }
+
+    @Override
+    public boolean supportsPreviousResponseId(String model) {
+        Target t = resolve(model);
+        return t == null ? openAI.supportsPreviousResponseId(model) : t.provider.supportsPreviousResponseId(t.model);
+    }
+
+    @Override
+    public Mono<AiResult> generateReply(String userMessage, String model, Double temperature, Integer maxOutputTokens,
+                                        Conversation conversation) {
+        Target t = resolve(model);
+        if (t == null) return openAI.generateReply(userMessage, model, temperature, maxOutputTokens, conversation);
+        return t.provider.generateReply(userMessage, t.model, temperature, maxOutputTokens, conversation)
+                .map(r -> r.withModel(model, null));
+    }
+
+    @Override
+    public Flux<StreamEvent> streamReply(String userMessage, String model, Double temperature, Integer maxOutputTokens,
+                                         Conversation conversation) {
+        Target t = resolve(model);
+        if (t == null) return openAI.streamReply(userMessage, model, temperature, maxOutputTokens, conversation);
+        return t.provider.streamReply(userMessage, t.model, temperature, maxOutputTokens, conversation)
+                .map(e -> e.isFinal() ? new StreamEvent(null, e.result().withModel(model, null)) : e);
+    }
+
+    private record Target(ChatProvider provider, String model) {}
+
+    /** null → OpenAI. */
+    private Target resolve(String model) {
+        if (model == null) return null;
+        int sep = model.indexOf(':');
+        if (sep <= 0 || sep == model.length() - 1) return null;
+        ChatProvider p = providers.get(model.substring(0, sep));
+        return p == null ? null : new Target(p, model.substring(sep + 1));
+    }
+}
@@ -0,0 +1,27 @@
+package com.example.gptcompare_backend.service;
+
+import java.time.Duration;
+
+/**
+ * Budget client (requêtes/min, tokens/min ou concurrence) épuisé pour un modèle
+ * au-delà de l'attente autorisée. Traduit en HTTP 429 par le controller.
+ */
+public class RateLimitExceededException extends RuntimeException {
+
+    private final String model;
+    private final Duration retryAfter;
+
+    public RateLimitExceededException(String model, String reason, Duration retryAfter) {
+        super("Limite de débit atteinte pour " + model + " (" + reason + ").");
+        this.model = model;
+        this.retryAfter = retryAfter;
+    }
+
+    public String getModel() {
+        return model;
+    }
+
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+}
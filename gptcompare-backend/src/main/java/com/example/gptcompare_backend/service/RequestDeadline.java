@@ -0,0 +1,36 @@
+package com.example.gptcompare_backend.service;
+
+import reactor.util.context.Context;
+import reactor.util.context.ContextView;
+
+import java.time.Duration;
+
+/**
+ * Échéance absolue d'une requête, portée par le Context Reactor (posée par le controller).
+ * Chaque étage (file d'admission, limiteur, relances, appel amont) borne son attente
+ * par le temps restant, sans changer les signatures des fournisseurs.
+ */
+public record RequestDeadline(long expiresAtNanos) {
+
+    private static final Class<RequestDeadline> KEY = RequestDeadline.class;
+
+    public static RequestDeadline in(Duration timeout) {
+        return new RequestDeadline(System.nanoTime() + timeout.toNanos());
+    }
+
+    /** Context à passer à contextWrite. */
+    public Context context() {
+        return Context.of(KEY, this);
+    }
+
+    public Duration remaining() {
+        return Duration.ofNanos(Math.max(0, expiresAtNanos - System.nanoTime()));
+    }
+
+    /** Temps restant de la requête en cours, borné par limit (limit seul si aucune deadline n'est posée). */
+    public static Duration remaining(ContextView ctx, Duration limit) {
+        if (!ctx.hasKey(KEY)) return limit;
+        Duration left = ctx.get(KEY).remaining();
+        return left.compareTo(limit) < 0 ? left : limit;
+    }
+}
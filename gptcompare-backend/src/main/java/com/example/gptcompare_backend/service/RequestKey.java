@@ -0,0 +1,7 @@
+package com.example.gptcompare_backend.service;
+
+/**
+ * Identité d'un appel OpenAI : deux requêtes avec la même clé produisent le même payload.
+ * temperature = température réellement envoyée (null si omise, ex: GPT-5).
+ */
+public record RequestKey(String model, String input, Double temperature, int maxOutputTokens) {}
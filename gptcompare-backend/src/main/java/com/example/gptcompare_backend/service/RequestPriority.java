@@ -0,0 +1,73 @@
+package com.example.gptcompare_backend.service;
+
+import reactor.util.context.Context;
+import reactor.util.context.ContextView;
+
+import java.util.Locale;
+
+/**
+ * Classe de trafic et client d'une requête, portés par le Context Reactor (posés par le controller).
+ * Le contrôle d'admission s'en sert pour ordonnancer la file : interactif avant bulk,
+ * et partage équitable entre clients à l'intérieur d'une classe ; le limiteur par modèle
+ * (ModelRateLimiter) sert aussi l'interactif avant le bulk.
+ */
+public record RequestPriority(Level level, String client) {
+
+    /** interactive : utilisateur devant l'écran ; bulk : scripts, lots, tout ce qui peut attendre. */
+    public enum Level {
+        INTERACTIVE, BULK;
+
+        public String tag() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+
+        /** "interactive" / "bulk" (casse indifférente) ; null si absent ou inconnu. */
+        public static Level parse(String value) {
+            if (value == null) return null;
+            return switch (value.trim().toLowerCase(Locale.ROOT)) {
+                case "interactive" -> INTERACTIVE;
+                case "bulk" -> BULK;
+                default -> null;
+            };
+        }
+    }
+
+    /** Client commun des requêtes non identifiées. */
+    public static final String ANONYMOUS = "anonymous";
+
+    /** Borne d'un identifiant client (une file par client tant qu'il a des requêtes en attente). */
+    static final int MAX_CLIENT_LENGTH = 128;
+
+    private static final Class<RequestPriority> KEY = RequestPriority.class;
+    private static final RequestPriority DEFAULT = new RequestPriority(Level.INTERACTIVE, ANONYMOUS);
+
+    public RequestPriority {
+        if (level == null) level = Level.INTERACTIVE;
+        if (client == null || client.isBlank()) client = ANONYMOUS;
+        else if (client.length() > MAX_CLIENT_LENGTH) client = client.substring(0, MAX_CLIENT_LENGTH);
+    }
+
+    /** Premier niveau reconnu parmi values (ex. champ du corps puis en-tête), sinon interactive. */
+    public static RequestPriority of(String client, String... values) {
+        for (String v : values) {
+            Level level = Level.parse(v);
+            if (level != null) return new RequestPriority(level, client);
+        }
+        return new RequestPriority(Level.INTERACTIVE, client);
+    }
+
+    /** Context à passer à contextWrite. */
+    public Context context() {
+        return Context.of(KEY, this);
+    }
+
+    /** Passe la requête en bulk en gardant son client (lots, jobs) : à utiliser via contextWrite(RequestPriority::bulk). */
+    public static Context bulk(Context ctx) {
+        return ctx.put(KEY, new RequestPriority(Level.BULK, from(ctx).client()));
+    }
+
+    /** Priorité de la requête en cours (interactive, client anonyme si aucune n'est posée). */
+    public static RequestPriority from(ContextView ctx) {
+        return ctx.getOrDefault(KEY, DEFAULT);
+    }
+}
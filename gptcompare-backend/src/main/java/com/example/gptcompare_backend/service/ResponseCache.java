@@ -0,0 +1,91 @@
+package com.example.gptcompare_backend.service;
+
+import com.example.gptcompare_backend.service.OpenAIService.AiResult;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache mémoire borné des réponses OpenAI (LRU + TTL), optionnel.
+ * Clé = RequestKey (modèle + input + température envoyée + max_output_tokens).
+ * Par défaut seules les requêtes déterministes (température envoyée = 0) sont mises en cache :
+ * sans température explicite le modèle utilise sa valeur par défaut (> 0).
+ */
+@Component
+public class ResponseCache {
+
+    /**
+     * Compteurs exposés via /api/chat/cache.
+     * - bypassed : requêtes non éligibles (température > 0 ou cache désactivé)
+     */
+    public record CacheStats(boolean enabled, long hits, long misses, long bypassed, int size, int maxEntries) {}
+
+    private record Entry(AiResult result, long expiresAtNanos) {}
+
+    private final boolean enabled;
+    private final int maxEntries;
+    private final long ttlNanos;
+    private final boolean allowNonDeterministic;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong bypassed = new AtomicLong();
+
+    // accessOrder=true : l'entrée la moins récemment lue est évincée en premier
+    private final LinkedHashMap<RequestKey, Entry> entries = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<RequestKey, Entry> eldest) {
+            return size() > maxEntries;
+        }
+    };
+
+    public ResponseCache(
+            @Value("${openai.cache.enabled:false}") boolean enabled,
+            @Value("${openai.cache.max-entries:1000}") int maxEntries,
+            @Value("${openai.cache.ttl:10m}") Duration ttl,
+            @Value("${openai.cache.allow-non-deterministic:false}") boolean allowNonDeterministic
+    ) {
+        this.enabled = enabled;
+        this.maxEntries = maxEntries;
+        this.ttlNanos = ttl.toNanos();
+        this.allowNonDeterministic = allowNonDeterministic;
+    }
+
+    public static ResponseCache disabled() {
+        return new ResponseCache(false, 0, Duration.ZERO, false);
+    }
+
+    /**
+     * Une requête est éligible si le cache est actif et que la température envoyée vaut 0
+     * (ou si allow-non-deterministic est activé).
+     */
+    public boolean isCacheable(Double sentTemperature) {
+        boolean ok = enabled && (allowNonDeterministic || (sentTemperature != null && sentTemperature == 0.0));
+        if (!ok) bypassed.incrementAndGet();
+        return ok;
+    }
+
+    /** Renvoie l'entrée si présente et non expirée, sinon null (compté comme miss). */
+    public synchronized AiResult get(RequestKey key) {
+        Entry e = entries.get(key);
+        if (e != null && e.expiresAtNanos - System.nanoTime() > 0) {
+            hits.incrementAndGet();
+            return e.result;
+        }
+        if (e != null) entries.remove(key);
+        misses.incrementAndGet();
+        return null;
+    }
+
+    public synchronized void put(RequestKey key, AiResult result) {
+        entries.put(key, new Entry(result, System.nanoTime() + ttlNanos));
+    }
+
+    public synchronized CacheStats stats() {
+        return new CacheStats(enabled, hits.get(), misses.get(), bypassed.get(), entries.size(), maxEntries);
+    }
+}
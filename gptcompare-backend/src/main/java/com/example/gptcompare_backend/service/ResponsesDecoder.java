@@ -0,0 +1,225 @@
+package com.example.gptcompare_backend.service;
+
+import tools.jackson.core.JsonParser;
+import tools.jackson.core.JsonToken;
+import tools.jackson.core.ObjectReadContext;
+import tools.jackson.core.json.JsonFactory;
+
+/**
+ * Décodage en une seule passe (Jackson streaming) des réponses de l'API Responses.
+ * Aucune Map intermédiaire : seuls status, incomplete_details.reason, usage (avec cached_tokens et
+ * reasoning_tokens) et le texte utile
+ * sont retenus ; les items de raisonnement et tout champ inconnu sont sautés sans être matérialisés.
+ */
+public final class ResponsesDecoder {
+
+    /**
+     * Vue typée d'une réponse.
+     * - outputText : premier texte non vide de type output_text (forme standard)
+     * - anyText : premier texte non vide quel que soit son type (repli)
+     * - hasOutput : false si le champ output est absent ou n'est pas un tableau
+     * - cachedTokens : part de inputTokens servie par le cache de préfixe du fournisseur
+     * - reasoningTokens : part de outputTokens consacrée au raisonnement (non visible)
+     * - id : identifiant de la réponse (previous_response_id du tour suivant)
+     */
+    public record Decoded(String status, String incompleteReason, boolean hasOutput,
+                          String outputText, String anyText,
+                          Integer inputTokens, Integer outputTokens, Integer totalTokens,
+                          Integer cachedTokens, Integer reasoningTokens, String id) {
+
+        public boolean truncated() {
+            return "incomplete".equals(status) && "max_output_tokens".equals(incompleteReason);
+        }
+
+        /** Texte retenu : output_text prioritaire, sinon n'importe quel texte non vide. */
+        public String text() {
+            return outputText != null ? outputText : anyText;
+        }
+    }
+
+    /** Évènement SSE du mode streaming : type, delta de texte, message d'erreur, réponse finale. */
+    public record StreamChunk(String type, String delta, String message, Decoded response) {}
+
+    private static final JsonFactory JSON = new JsonFactory();
+
+    private ResponsesDecoder() {}
+
+    public static Decoded decode(byte[] body) {
+        try (JsonParser p = JSON.createParser(ObjectReadContext.empty(), body)) {
+            return p.nextToken() == JsonToken.START_OBJECT ? readResponse(p) : null;
+        }
+    }
+
+    public static StreamChunk decodeEvent(String data) {
+        if (data == null || data.isBlank()) return null;
+        try (JsonParser p = JSON.createParser(ObjectReadContext.empty(), data)) {
+            if (p.nextToken() != JsonToken.START_OBJECT) return null;
+
+            String type = null, delta = null, message = null;
+            Decoded response = null;
+            while (p.nextToken() == JsonToken.PROPERTY_NAME) {
+                String name = p.currentName();
+                JsonToken t = p.nextToken();
+                switch (name) {
+                    case "type" -> type = scalar(p, t);
+                    case "delta" -> delta = t == JsonToken.VALUE_STRING ? p.getString() : skip(p);
+                    case "message" -> message = scalar(p, t);
+                    case "response" -> response = t == JsonToken.START_OBJECT ? readResponse(p) : skip(p);
+                    default -> p.skipChildren();
+                }
+            }
+            return new StreamChunk(type, delta, message, response);
+        }
+    }
+
+    /** Lit l'objet réponse courant (parser positionné sur START_OBJECT) jusqu'à son END_OBJECT. */
+    private static Decoded readResponse(JsonParser p) {
+        State s = new State();
+        while (p.nextToken() == JsonToken.PROPERTY_NAME) {
+            String name = p.currentName();
+            JsonToken t = p.nextToken();
+            switch (name) {
+                case "id" -> s.id = scalar(p, t);
+                case "status" -> s.status = scalar(p, t);
+                case "incomplete_details" -> readIncompleteDetails(p, t, s);
+                case "usage" -> readUsage(p, t, s);
+                case "output" -> readOutput(p, t, s);
+                default -> p.skipChildren();
+            }
+        }
+        return new Decoded(s.status, s.incompleteReason, s.hasOutput, s.outputText, s.anyText,
+                s.inputTokens, s.outputTokens, s.totalTokens, s.cachedTokens, s.reasoningTokens, s.id);
+    }
+
+    private static void readIncompleteDetails(JsonParser p, JsonToken t, State s) {
+        if (t != JsonToken.START_OBJECT) {
+            p.skipChildren();
+            return;
+        }
+        while (p.nextToken() == JsonToken.PROPERTY_NAME) {
+            String name = p.currentName();
+            JsonToken v = p.nextToken();
+            if ("reason".equals(name)) s.incompleteReason = scalar(p, v);
+            else p.skipChildren();
+        }
+    }
+
+    private static void readUsage(JsonParser p, JsonToken t, State s) {
+        if (t != JsonToken.START_OBJECT) {
+            p.skipChildren();
+            return;
+        }
+        while (p.nextToken() == JsonToken.PROPERTY_NAME) {
+            String name = p.currentName();
+            JsonToken v = p.nextToken();
+            switch (name) {
+                case "input_tokens" -> s.inputTokens = integer(p, v);
+                case "output_tokens" -> s.outputTokens = integer(p, v);
+                case "total_tokens" -> s.totalTokens = integer(p, v);
+                case "input_tokens_details" -> s.cachedTokens = detail(p, v, "cached_tokens");
+                case "output_tokens_details" -> s.reasoningTokens = detail(p, v, "reasoning_tokens");
+                default -> p.skipChildren();
+            }
+        }
+    }
+
+    /** Entier d'un sous-objet de usage (ex: input_tokens_details.cached_tokens), null si absent. */
+    private static Integer detail(JsonParser p, JsonToken t, String field) {
+        if (t != JsonToken.START_OBJECT) {
+            p.skipChildren();
+            return null;
+        }
+        Integer value = null;
+        while (p.nextToken() == JsonToken.PROPERTY_NAME) {
+            String name = p.currentName();
+            JsonToken v = p.nextToken();
+            if (field.equals(name)) value = integer(p, v);
+            else p.skipChildren();
+        }
+        return value;
+    }
+
+    private static void readOutput(JsonParser p, JsonToken t, State s) {
+        if (t != JsonToken.START_ARRAY) {
+            p.skipChildren();
+            return;
+        }
+        s.hasOutput = true;
+        JsonToken item;
+        while ((item = p.nextToken()) != JsonToken.END_ARRAY) {
+            // output_text déjà trouvé : le reste du tableau (raisonnement, outils...) est sauté
+            if (item != JsonToken.START_OBJECT || s.outputText != null) {
+                p.skipChildren();
+                continue;
+            }
+            while (p.nextToken() == JsonToken.PROPERTY_NAME) {
+                String name = p.currentName();
+                JsonToken v = p.nextToken();
+                if ("content".equals(name) && v == JsonToken.START_ARRAY) readContent(p, s);
+                else p.skipChildren();
+            }
+        }
+    }
+
+    private static void readContent(JsonParser p, State s) {
+        JsonToken part;
+        while ((part = p.nextToken()) != JsonToken.END_ARRAY) {
+            if (part != JsonToken.START_OBJECT || s.outputText != null) {
+                p.skipChildren();
+                continue;
+            }
+            String type = null, text = null;
+            while (p.nextToken() == JsonToken.PROPERTY_NAME) {
+                String name = p.currentName();
+                JsonToken v = p.nextToken();
+                switch (name) {
+                    case "type" -> type = scalar(p, v);
+                    case "text" -> text = v == JsonToken.VALUE_STRING ? p.getString() : skip(p);
+                    default -> p.skipChildren();
+                }
+            }
+            if (text == null || text.isBlank()) continue;
+            if ("output_text".equals(type)) s.outputText = text;
+            else if (s.anyText == null) s.anyText = text;
+        }
+    }
+
+    /** Valeur scalaire sous forme de texte (null pour null, objet ou tableau). */
+    private static String scalar(JsonParser p, JsonToken t) {
+        if (t == null || t == JsonToken.VALUE_NULL) return null;
+        if (t.isScalarValue()) return p.getString();
+        return skip(p);
+    }
+
+    private static Integer integer(JsonParser p, JsonToken t) {
+        if (t == JsonToken.VALUE_NUMBER_INT || t == JsonToken.VALUE_NUMBER_FLOAT) return p.getValueAsInt();
+        if (t == JsonToken.VALUE_STRING) {
+            try {
+                return Integer.parseInt(p.getString().trim());
+            } catch (NumberFormatException ignored) {
+                return null;
+            }
+        }
+        p.skipChildren();
+        return null;
+    }
+
+    private static <T> T skip(JsonParser p) {
+        p.skipChildren();
+        return null;
+    }
+
+    private static final class State {
+        String id;
+        String status;
+        String incompleteReason;
+        boolean hasOutput;
+        String outputText;
+        String anyText;
+        Integer inputTokens;
+        Integer outputTokens;
+        Integer totalTokens;
+        Integer cachedTokens;
+        Integer reasoningTokens;
+    }
+}
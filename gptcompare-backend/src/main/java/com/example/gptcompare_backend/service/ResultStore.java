@@ -0,0 +1,255 @@
+package com.example.gptcompare_backend.service;
+
+import com.example.gptcompare_backend.service.OpenAIService.AiResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Historique persistant des réponses (base H2 embarquée, aucun service externe).
+ * record() ne fait que déposer l'entrée dans une file bornée (jamais bloquant : si la file est pleine,
+ * l'entrée est abandonnée et comptée) ; un thread dédié écrit par lots (batchUpdate JDBC),
+ * hors de la boucle d'évènements. Les lectures passent par boundedElastic.
+ */
+@Component
+public class ResultStore implements DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(ResultStore.class);
+
+    /** Une ligne d'historique : la requête (source, prompt, réglages) et son résultat. */
+    public record Entry(Long id, Instant createdAt, String source, String prompt, String model,
+                        Double temperature, Integer maxOutputTokens, String reply, long latencyMs,
+                        Integer inputTokens, Integer outputTokens, Integer totalTokens,
+                        boolean truncated, boolean cached, int retries, String fallbackFrom) {}
+
+    public record Page(List<Entry> items, int page, int size, long total) {}
+
+    /**
+     * Agrégats d'un modèle sur l'historique.
+     * - failed : réponses sans usage (erreurs)
+     * - latences en ms (p50/p95 calculés par la base)
+     */
+    public record ModelAggregate(String model, long calls, long failed, long truncated,
+                                 double avgLatencyMs, long p50LatencyMs, long p95LatencyMs, long maxLatencyMs,
+                                 long inputTokens, long outputTokens, long totalTokens) {}
+
+    /** État de l'écrivain asynchrone (GET /api/history/writer). */
+    public record WriterStats(boolean enabled, int queued, int capacity, long written, long dropped,
+                              long batches, long failures) {}
+
+    /** Taille des colonnes model / fallback_from : un nom plus long est tronqué, jamais rejeté avec son lot. */
+    static final int MAX_MODEL_LENGTH = 128;
+
+    private static final String INSERT = """
+            INSERT INTO chat_result (created_at, source, prompt, model, temperature, max_output_tokens, reply,
+                latency_ms, input_tokens, output_tokens, total_tokens, truncated, cached, retries, fallback_from)
+            VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
+            """;
+
+    private static final RowMapper<Entry> ENTRY = (rs, i) -> new Entry(
+            rs.getLong("id"), rs.getTimestamp("created_at").toInstant(), rs.getString("source"),
+            rs.getString("prompt"), rs.getString("model"), rs.getObject("temperature", Double.class),
+            rs.getObject("max_output_tokens", Integer.class), rs.getString("reply"), rs.getLong("latency_ms"),
+            rs.getObject("input_tokens", Integer.class), rs.getObject("output_tokens", Integer.class),
+            rs.getObject("total_tokens", Integer.class), rs.getBoolean("truncated"), rs.getBoolean("cached"),
+            rs.getInt("retries"), rs.getString("fallback_from"));
+
+    private final JdbcTemplate jdbc;
+    private final boolean enabled;
+    private final int batchSize;
+    private final long flushIntervalMs;
+    private final int capacity;
+    private final BlockingQueue<Entry> queue;
+    private final Thread writer;
+    private volatile boolean running = true;
+
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+
+    public ResultStore(
+            JdbcTemplate jdbc,
+            @Value("${openai.store.enabled:true}") boolean enabled,
+            @Value("${openai.store.queue-capacity:10000}") int queueCapacity,
+            @Value("${openai.store.batch-size:200}") int batchSize,
+            @Value("${openai.store.flush-interval:200ms}") Duration flushInterval
+    ) {
+        this.jdbc = jdbc;
+        this.enabled = enabled;
+        this.capacity = Math.max(1, queueCapacity);
+        this.batchSize = Math.max(1, batchSize);
+        this.flushIntervalMs = Math.max(1, flushInterval.toMillis());
+        this.queue = new ArrayBlockingQueue<>(capacity);
+
+        if (enabled) {
+            createSchema();
+            writer = new Thread(this::drainLoop, "result-store-writer");
+            writer.setDaemon(true);
+            writer.start();
+        } else {
+            writer = null;
+        }
+    }
+
+    public static ResultStore disabled() {
+        return new ResultStore(null, false, 1, 1, Duration.ofMillis(1));
+    }
+
+    /** Dépose une entrée à écrire ; retourne immédiatement. */
+    public void record(String source, String prompt, String model, Double temperature, Integer maxOutputTokens,
+                       AiResult r) {
+        if (!enabled || r == null) return;
+        Entry e = new Entry(null, Instant.now(), source, prompt, fit(r.model() != null ? r.model() : model),
+                temperature, maxOutputTokens, r.reply(), r.latencyMs(), r.inputTokens(), r.outputTokens(),
+                r.totalTokens(), r.truncated(), r.cached(), r.retries(), fit(r.fallbackFrom()));
+        if (!queue.offer(e)) dropped.incrementAndGet();
+    }
+
+    /** Le nom du modèle vient du client : une valeur trop longue ferait échouer tout le batchUpdate. */
+    private static String fit(String model) {
+        return model == null || model.length() <= MAX_MODEL_LENGTH ? model : model.substring(0, MAX_MODEL_LENGTH);
+    }
+
+    /** Historique du plus récent au plus ancien, filtré par modèle si précisé. */
+    public Mono<Page> page(String model, int page, int size) {
+        return Mono.fromCallable(() -> {
+            int p = Math.max(0, page), s = Math.clamp(size, 1, 500);
+            boolean all = model == null || model.isBlank();
+            String where = all ? "" : " WHERE model = ?";
+            Object[] args = all ? new Object[0] : new Object[]{model};
+
+            Long total = jdbc.queryForObject("SELECT COUNT(*) FROM chat_result" + where, Long.class, args);
+            List<Entry> items = jdbc.query(
+                    "SELECT * FROM chat_result" + where + " ORDER BY id DESC LIMIT " + s + " OFFSET " + ((long) p * s),
+                    ENTRY, args);
+            return new Page(items, p, s, total == null ? 0 : total);
+        }).subscribeOn(Schedulers.boundedElastic());
+    }
+
+    /** Agrégats par modèle, éventuellement depuis une date. */
+    public Mono<List<ModelAggregate>> aggregates(Instant since) {
+        return Mono.fromCallable(() -> {
+            String where = since == null ? "" : " WHERE created_at >= ?";
+            Object[] args = since == null ? new Object[0] : new Object[]{Timestamp.from(since)};
+            return jdbc.query("""
+                    SELECT model, COUNT(*) AS calls,
+                        SUM(CASE WHEN total_tokens IS NULL THEN 1 ELSE 0 END) AS failed,
+                        SUM(CASE WHEN truncated THEN 1 ELSE 0 END) AS truncated,
+                        AVG(CAST(latency_ms AS DOUBLE)) AS avg_latency,
+                        PERCENTILE_DISC(0.5) WITHIN GROUP (ORDER BY latency_ms) AS p50,
+                        PERCENTILE_DISC(0.95) WITHIN GROUP (ORDER BY latency_ms) AS p95,
+                        MAX(latency_ms) AS max_latency,
+                        COALESCE(SUM(input_tokens), 0) AS input_tokens,
+                        COALESCE(SUM(output_tokens), 0) AS output_tokens,
+                        COALESCE(SUM(total_tokens), 0) AS total_tokens
+                    FROM chat_result""" + where + " GROUP BY model ORDER BY model",
+                    (rs, i) -> new ModelAggregate(rs.getString("model"), rs.getLong("calls"), rs.getLong("failed"),
+                            rs.getLong("truncated"), rs.getDouble("avg_latency"), rs.getLong("p50"),
+                            rs.getLong("p95"), rs.getLong("max_latency"), rs.getLong("input_tokens"),
+                            rs.getLong("output_tokens"), rs.getLong("total_tokens")),
+                    args);
+        }).subscribeOn(Schedulers.boundedElastic());
+    }
+
+    public WriterStats stats() {
+        return new WriterStats(enabled, queue.size(), capacity, written.get(), dropped.get(), batches.get(),
+                failures.get());
+    }
+
+    /** Arrêt : les entrées déjà en file sont écrites avant de rendre la main. */
+    @Override
+    public void destroy() throws InterruptedException {
+        running = false;
+        if (writer != null) writer.join(TimeUnit.SECONDS.toMillis(5));
+    }
+
+    private void createSchema() {
+        jdbc.execute("""
+                CREATE TABLE IF NOT EXISTS chat_result (
+                    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+                    created_at TIMESTAMP WITH TIME ZONE NOT NULL,
+                    source VARCHAR(16) NOT NULL,
+                    prompt CHARACTER LARGE OBJECT,
+                    model VARCHAR(%d),
+                    temperature DOUBLE PRECISION,
+                    max_output_tokens INT,
+                    reply CHARACTER LARGE OBJECT,
+                    latency_ms BIGINT NOT NULL,
+                    input_tokens INT,
+                    output_tokens INT,
+                    total_tokens INT,
+                    truncated BOOLEAN NOT NULL,
+                    cached BOOLEAN NOT NULL,
+                    retries INT NOT NULL,
+                    fallback_from VARCHAR(%d)
+                )""".formatted(MAX_MODEL_LENGTH, MAX_MODEL_LENGTH));
+        jdbc.execute("CREATE INDEX IF NOT EXISTS idx_chat_result_model ON chat_result (model, id)");
+        jdbc.execute("CREATE INDEX IF NOT EXISTS idx_chat_result_created ON chat_result (created_at)");
+    }
+
+    /** Attend la première entrée (au plus flush-interval), puis écrit tout ce qui est prêt par lots. */
+    private void drainLoop() {
+        List<Entry> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                Entry first = queue.poll(flushIntervalMs, TimeUnit.MILLISECONDS);
+                if (first == null) continue;
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                write(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void write(List<Entry> batch) {
+        try {
+            jdbc.batchUpdate(INSERT, batch, batch.size(), (ps, e) -> {
+                ps.setTimestamp(1, Timestamp.from(e.createdAt()));
+                ps.setString(2, e.source());
+                ps.setString(3, e.prompt());
+                ps.setString(4, e.model());
+                ps.setObject(5, e.temperature(), Types.DOUBLE);
+                ps.setObject(6, e.maxOutputTokens(), Types.INTEGER);
+                ps.setString(7, e.reply());
+                ps.setLong(8, e.latencyMs());
+                ps.setObject(9, e.inputTokens(), Types.INTEGER);
+                ps.setObject(10, e.outputTokens(), Types.INTEGER);
+                ps.setObject(11, e.totalTokens(), Types.INTEGER);
+                ps.setBoolean(12, e.truncated());
+                ps.setBoolean(13, e.cached());
+                ps.setInt(14, e.retries());
+                ps.setString(15, e.fallbackFrom());
+            });
+            written.addAndGet(batch.size());
+            batches.incrementAndGet();
+        } catch (RuntimeException ex) {
+            // l'historique ne doit jamais faire tomber l'appli : le lot est perdu, l'erreur comptée
+            failures.incrementAndGet();
+            dropped.addAndGet(batch.size());
+            log.warn("Écriture de {} entrées d'historique impossible : {}", batch.size(), ex.getMessage());
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package com.example.gptcompare_backend.service;
+
+import com.example.gptcompare_backend.config.ModelOverrides;
+import com.example.gptcompare_backend.config.RetryProperties;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import java.net.ConnectException;
+import java.net.UnknownHostException;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/**
+ * Relances des erreurs transitoires (429/5xx configurables, échecs de connexion) :
+ * backoff exponentiel avec jitter, Retry-After respecté, et jamais au-delà de la deadline de la requête.
+ * Une erreur réseau n'est relancée que si rien n'est parti (connexion refusée ou trop lente, pool saturé) :
+ * un délai de réponse dépassé ou une coupure après l'envoi peut avoir été traité, et facturé, par l'amont.
+ * Une erreur non relancée (ou relances épuisées) est propagée telle quelle.
+ */
+@Component
+public class RetryPolicy {
+
+    /**
+     * Suivi des relances d'un appel, reporté dans AiResult.
+     * - retries : nombre de relances effectuées
+     * - retryTimeMs : temps perdu avant le dernier essai (essais échoués + attentes)
+     */
+    public static final class Tracker {
+        private final long startNanos = System.nanoTime();
+        private final AtomicInteger retries = new AtomicInteger();
+        private final AtomicLong lastAttemptNanos = new AtomicLong(startNanos);
+
+        void record(Duration delay) {
+            retries.incrementAndGet();
+            lastAttemptNanos.set(System.nanoTime() + delay.toNanos());
+        }
+
+        public int retries() {
+            return retries.get();
+        }
+
+        public long retryTimeMs() {
+            return Duration.ofNanos(lastAttemptNanos.get() - startNanos).toMillis();
+        }
+    }
+
+    private record Settings(int maxRetries, Duration initialBackoff, Duration maxBackoff) {}
+
+    private final RetryProperties props;
+
+    public RetryPolicy(RetryProperties props) {
+        this.props = props;
+    }
+
+    public static RetryPolicy disabled() {
+        return new RetryPolicy(RetryProperties.disabled());
+    }
+
+    /**
+     * Spécification Reactor pour un appel sur `model`, bornée par `deadline` (à partir de maintenant).
+     */
+    public Retry retrySpec(String model, Tracker tracker, Duration deadline) {
+        return retrySpec(model, tracker, deadline, this::isRetryable);
+    }
+
+    /**
+     * Variante pour un envoi non idempotent (réponse background créée et facturée chez OpenAI dès réception) :
+     * seuls les échecs de connexion et les réponses 429/5xx, où rien n'a été accepté, sont relancés,
+     * même si d'autres codes sont configurés dans retryableStatuses.
+     */
+    public Retry retrySpecUnlessAccepted(String model, Tracker tracker, Duration deadline) {
+        return retrySpec(model, tracker, deadline, e -> isRetryable(e) && notAccepted(e));
+    }
+
+    private Retry retrySpec(String model, Tracker tracker, Duration deadline, Predicate<Throwable> retryable) {
+        final Settings st = settingsFor(model);
+        final long deadlineNanos = System.nanoTime() + deadline.toNanos();
+
+        return Retry.from(signals -> signals.concatMap(rs -> {
+            Throwable failure = rs.failure();
+            if (!props.enabled() || rs.totalRetries() >= st.maxRetries() || !retryable.test(failure)) {
+                return Mono.error(failure);
+            }
+
+            Duration delay = retryAfter(failure);
+            if (delay == null) delay = backoff(st, rs.totalRetries());
+
+            // pas de relance si l'attente seule dépasse le temps restant
+            if (System.nanoTime() + delay.toNanos() >= deadlineNanos) {
+                return Mono.error(failure);
+            }
+            tracker.record(delay);
+            return Mono.delay(delay);
+        }));
+    }
+
+    boolean isRetryable(Throwable e) {
+        if (e instanceof WebClientResponseException r) {
+            return props.retryableStatuses().contains(r.getStatusCode().value());
+        }
+        return e instanceof WebClientRequestException && notSent(e.getCause());
+    }
+
+    private static boolean notAccepted(Throwable e) {
+        if (!(e instanceof WebClientResponseException r)) return true;
+        return r.getStatusCode().value() == 429 || r.getStatusCode().is5xxServerError();
+    }
+
+    /**
+     * Échec avant l'envoi de la requête : connexion refusée ou délai de connexion (ConnectTimeoutException
+     * de Netty est une ConnectException), hôte inconnu, place du pool non obtenue. Pas un ReadTimeoutException
+     * (responseTimeout) ni une fermeture prématurée : la requête a pu être reçue.
+     */
+    static boolean notSent(Throwable cause) {
+        for (Throwable c = cause; c != null; c = c.getCause()) {
+            if (c instanceof ConnectException || c instanceof UnknownHostException) return true;
+            // PoolAcquireTimeoutException / PoolAcquirePendingLimitException, embarquées (shaded) par Reactor Netty
+            if (c.getClass().getSimpleName().startsWith("PoolAcquire")) return true;
+        }
+        return false;
+    }
+
+    private Duration backoff(Settings st, long retryIndex) {
+        long base = st.initialBackoff().toMillis() << Math.min(retryIndex, 20);
+        long capped = Math.min(base, st.maxBackoff().toMillis());
+        double jitter = Math.min(Math.max(props.jitter(), 0), 1);
+        long withJitter = (long) (capped * (1 - jitter * ThreadLocalRandom.current().nextDouble()));
+        return Duration.ofMillis(Math.max(withJitter, 0));
+    }
+
+    /**
+     * Délai imposé par le serveur : retry-after-ms (OpenAI) puis Retry-After (secondes ou date HTTP).
+     */
+    static Duration retryAfter(Throwable e) {
+        if (!(e instanceof WebClientResponseException r)) return null;
+        HttpHeaders h = r.getHeaders();
+
+        String ms = h.getFirst("retry-after-ms");
+        if (ms != null) {
+            try {
+                return Duration.ofMillis(Math.max(0, (long) Double.parseDouble(ms.trim())));
+            } catch (NumberFormatException ignored) {
+                // on tente Retry-After
+            }
+        }
+
+        String ra = h.getFirst(HttpHeaders.RETRY_AFTER);
+        if (ra == null) return null;
+        try {
+            return Duration.ofSeconds(Math.max(0, Long.parseLong(ra.trim())));
+        } catch (NumberFormatException ignored) {
+            try {
+                ZonedDateTime at = ZonedDateTime.parse(ra.trim(), DateTimeFormatter.RFC_1123_DATE_TIME);
+                Duration d = Duration.between(ZonedDateTime.now(at.getZone()), at);
+                return d.isNegative() ? Duration.ZERO : d;
+            } catch (Exception ignoredToo) {
+                return null;
+            }
+        }
+    }
+
+    /** Surcharge du modèle (cf. ModelOverrides), sinon valeurs globales. */
+    private Settings settingsFor(String model) {
+        RetryProperties.ModelRetry best = ModelOverrides.find(props.models(), model);
+        if (best == null) return new Settings(props.maxRetries(), props.initialBackoff(), props.maxBackoff());
+        return new Settings(
+                best.maxRetries() != null ? best.maxRetries() : props.maxRetries(),
+                best.initialBackoff() != null ? best.initialBackoff() : props.initialBackoff(),
+                best.maxBackoff() != null ? best.maxBackoff() : props.maxBackoff()
+        );
+    }
+}
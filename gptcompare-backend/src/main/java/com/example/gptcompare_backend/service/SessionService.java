@@ -0,0 +1,276 @@
+package com.example.gptcompare_backend.service;
+
+import com.example.gptcompare_backend.service.ChatProvider.Conversation;
+import com.example.gptcompare_backend.service.ChatProvider.Turn;
+import com.example.gptcompare_backend.service.OpenAIService.AiResult;
+import com.example.gptcompare_backend.service.OpenAIService.StreamEvent;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sessions de conversation côté serveur : le client n'envoie que le nouveau message et un sessionId.
+ * Chaque session garde, par modèle, ses derniers tours (max-turns) et l'id de la dernière réponse.
+ * - fournisseur qui sait chaîner (Responses API) : previous_response_id, rien n'est renvoyé
+ * - sinon, ou si le chaînage échoue (réponse expirée, store désactivé...) : les tours les plus récents
+ *   sont rejoués, dans la limite de max-replay-chars
+ * Sessions bornées en nombre (LRU) et expirées après ttl d'inactivité.
+ */
+@Service
+public class SessionService {
+
+    /**
+     * Contexte réutilisé pour un tour (reporté dans la réponse).
+     * - mode : "previous_response_id", "replay" ou "none" (premier tour)
+     * - turns : tours précédents pris en compte
+     * - replayedChars : taille de l'historique renvoyé (0 en chaînage)
+     */
+    public record ContextReuse(String sessionId, String mode, int turns, int replayedChars) {}
+
+    /** Compteurs exposés via /api/chat/sessions. */
+    public record SessionStats(int sessions, int maxSessions, long created, long evicted, long expired,
+                               long chained, long replayed, long chainFallbacks) {}
+
+    static final String CHAINED = "previous_response_id";
+    static final String REPLAY = "replay";
+    static final String NONE = "none";
+
+    private final ChatProvider chatProvider;
+    private final int maxSessions;
+    private final long ttlNanos;
+    private final int maxTurns;
+    private final int maxReplayChars;
+
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong evicted = new AtomicLong();
+    private final AtomicLong expired = new AtomicLong();
+    private final AtomicLong chained = new AtomicLong();
+    private final AtomicLong replayed = new AtomicLong();
+    private final AtomicLong chainFallbacks = new AtomicLong();
+
+    // accessOrder=true : la session la moins récemment utilisée est évincée en premier
+    private final LinkedHashMap<String, Session> sessions = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Session> eldest) {
+            boolean full = size() > maxSessions;
+            if (full) evicted.incrementAndGet();
+            return full;
+        }
+    };
+
+    public SessionService(
+            ChatProvider chatProvider,
+            @Value("${openai.session.max-sessions:10000}") int maxSessions,
+            @Value("${openai.session.ttl:30m}") Duration ttl,
+            @Value("${openai.session.max-turns:20}") int maxTurns,
+            @Value("${openai.session.max-replay-chars:24000}") int maxReplayChars
+    ) {
+        this.chatProvider = chatProvider;
+        this.maxSessions = Math.max(1, maxSessions);
+        this.ttlNanos = ttl.toNanos();
+        this.maxTurns = Math.max(1, maxTurns);
+        this.maxReplayChars = Math.max(0, maxReplayChars);
+    }
+
+    /** Vue ChatProvider liée à une session (utilisée par la comparaison multi-modèles). */
+    public ChatProvider forSession(String sessionId) {
+        return new ChatProvider() {
+            @Override
+            public Mono<AiResult> generateReply(String userMessage, String model, Double temperature,
+                                                Integer maxOutputTokens) {
+                return SessionService.this.generateReply(sessionId, userMessage, model, temperature, maxOutputTokens);
+            }
+
+            @Override
+            public Flux<StreamEvent> streamReply(String userMessage, String model, Double temperature,
+                                                 Integer maxOutputTokens) {
+                return SessionService.this.streamReply(sessionId, userMessage, model, temperature, maxOutputTokens);
+            }
+        };
+    }
+
+    /**
+     * Un tour : contexte de la session pour ce modèle, appel, puis mémorisation du tour s'il a réussi.
+     * Un chaînage refusé par le fournisseur est retenté une fois en rejouant l'historique.
+     */
+    public Mono<AiResult> generateReply(String sessionId, String userMessage, String model, Double temperature,
+                                        Integer maxOutputTokens) {
+        return Mono.defer(() -> {
+            ModelThread thread = thread(sessionId, model);
+            Plan plan = plan(sessionId, thread, model, false);
+            return chatProvider.generateReply(userMessage, model, temperature, maxOutputTokens, plan.conversation)
+                    .flatMap(r -> {
+                        if (!plan.chained() || !failed(r)) return Mono.just(new Attempt(plan, r));
+                        chainFallbacks.incrementAndGet();
+                        Plan replay = plan(sessionId, thread, model, true);
+                        return chatProvider.generateReply(userMessage, model, temperature, maxOutputTokens,
+                                replay.conversation).map(r2 -> new Attempt(replay, r2));
+                    })
+                    .map(a -> complete(thread, userMessage, a.plan, a.result));
+        });
+    }
+
+    /** Variante streaming : le repli par rejeu n'a lieu que si aucun delta n'a encore été émis. */
+    public Flux<StreamEvent> streamReply(String sessionId, String userMessage, String model, Double temperature,
+                                         Integer maxOutputTokens) {
+        return Flux.defer(() -> {
+            ModelThread thread = thread(sessionId, model);
+            Plan plan = plan(sessionId, thread, model, false);
+            AtomicBoolean sawDelta = new AtomicBoolean();
+            return chatProvider.streamReply(userMessage, model, temperature, maxOutputTokens, plan.conversation)
+                    .concatMap(e -> {
+                        if (!e.isFinal()) {
+                            sawDelta.set(true);
+                            return Flux.just(e);
+                        }
+                        if (plan.chained() && failed(e.result()) && !sawDelta.get()) {
+                            chainFallbacks.incrementAndGet();
+                            Plan replay = plan(sessionId, thread, model, true);
+                            return chatProvider.streamReply(userMessage, model, temperature, maxOutputTokens,
+                                            replay.conversation)
+                                    .map(e2 -> e2.isFinal() ? finish(thread, userMessage, replay, e2) : e2);
+                        }
+                        return Flux.just(finish(thread, userMessage, plan, e));
+                    });
+        });
+    }
+
+    public boolean delete(String sessionId) {
+        synchronized (sessions) {
+            return sessions.remove(sessionId) != null;
+        }
+    }
+
+    /** Nombre de tours mémorisés par modèle, ou null si la session n'existe pas (ou a expiré). */
+    public Map<String, Integer> turns(String sessionId) {
+        Session s;
+        synchronized (sessions) {
+            s = live(sessionId);
+        }
+        if (s == null) return null;
+        Map<String, Integer> turns = new LinkedHashMap<>();
+        synchronized (s) {
+            s.threads.forEach((model, t) -> turns.put(model, t.turns.size()));
+        }
+        return turns;
+    }
+
+    public SessionStats stats() {
+        int size;
+        synchronized (sessions) {
+            size = sessions.size();
+        }
+        return new SessionStats(size, maxSessions, created.get(), evicted.get(), expired.get(), chained.get(),
+                replayed.get(), chainFallbacks.get());
+    }
+
+    /** Les erreurs (HTTP, réseau, circuit ouvert...) reviennent sans usage. */
+    private static boolean failed(AiResult r) {
+        return r.totalTokens() == null;
+    }
+
+    private StreamEvent finish(ModelThread thread, String userMessage, Plan plan, StreamEvent e) {
+        return new StreamEvent(null, complete(thread, userMessage, plan, e.result()));
+    }
+
+    private AiResult complete(ModelThread thread, String userMessage, Plan plan, AiResult r) {
+        if (!failed(r)) {
+            synchronized (thread) {
+                thread.turns.addLast(new Turn(userMessage, r.reply()));
+                while (thread.turns.size() > maxTurns) thread.turns.removeFirst();
+                thread.lastResponseId = r.responseId();
+            }
+        }
+        return r.withContext(plan.reuse);
+    }
+
+    /**
+     * Contexte du prochain tour :
+     * - chaînage si le fournisseur le permet et qu'une réponse précédente est connue (sauf forceReplay)
+     * - sinon les tours les plus récents, tant qu'ils tiennent dans maxReplayChars
+     */
+    private Plan plan(String sessionId, ModelThread thread, String model, boolean forceReplay) {
+        synchronized (thread) {
+            if (thread.turns.isEmpty()) {
+                return new Plan(Conversation.NONE, new ContextReuse(sessionId, NONE, 0, 0));
+            }
+            if (!forceReplay && thread.lastResponseId != null && chatProvider.supportsPreviousResponseId(model)) {
+                chained.incrementAndGet();
+                return new Plan(new Conversation(thread.lastResponseId, List.of()),
+                        new ContextReuse(sessionId, CHAINED, thread.turns.size(), 0));
+            }
+            List<Turn> kept = new ArrayList<>();
+            int chars = 0;
+            var it = thread.turns.descendingIterator();
+            while (it.hasNext()) {
+                Turn t = it.next();
+                int size = t.user().length() + t.assistant().length();
+                if (chars + size > maxReplayChars) break;
+                kept.add(t);
+                chars += size;
+            }
+            Collections.reverse(kept);
+            replayed.incrementAndGet();
+            return new Plan(new Conversation(null, kept), new ContextReuse(sessionId, REPLAY, kept.size(), chars));
+        }
+    }
+
+    /** Fil du modèle dans la session (créée si absente ou expirée) ; rafraîchit le TTL. */
+    private ModelThread thread(String sessionId, String model) {
+        Session s;
+        synchronized (sessions) {
+            s = live(sessionId);
+            if (s == null) {
+                s = new Session();
+                sessions.put(sessionId, s);
+                created.incrementAndGet();
+            }
+            s.expiresAtNanos = System.nanoTime() + ttlNanos;
+        }
+        synchronized (s) {
+            return s.threads.computeIfAbsent(String.valueOf(model), m -> new ModelThread());
+        }
+    }
+
+    /** Session non expirée, sinon null (retirée si expirée). À appeler sous le verrou de sessions. */
+    private Session live(String sessionId) {
+        Session s = sessions.get(sessionId);
+        if (s != null && s.expiresAtNanos - System.nanoTime() <= 0) {
+            sessions.remove(sessionId);
+            expired.incrementAndGet();
+            return null;
+        }
+        return s;
+    }
+
+    private record Plan(Conversation conversation, ContextReuse reuse) {
+        boolean chained() {
+            return CHAINED.equals(reuse.mode());
+        }
+    }
+
+    private record Attempt(Plan plan, AiResult result) {}
+
+    private static final class Session {
+        volatile long expiresAtNanos;
+        final Map<String, ModelThread> threads = new HashMap<>();
+    }
+
+    /** Fil de conversation d'un modèle : derniers tours et id de la dernière réponse. */
+    private static final class ModelThread {
+        final ArrayDeque<Turn> turns = new ArrayDeque<>();
+        String lastResponseId;
+    }
+}
@@ -0,0 +1,66 @@
+package com.example.gptcompare_backend.service;
+
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+/**
+ * Déduplication des appels identiques en vol ("single-flight").
+ * Le premier appelant pour une clé déclenche l'appel amont ; les appelants concurrents
+ * s'abonnent au même Mono partagé et reçoivent le même résultat.
+ * L'appel amont n'est annulé que lorsque tous les abonnés ont annulé.
+ * Rien n'est conservé après la fin de l'appel : ce n'est pas un cache.
+ */
+public class SingleFlight<K, V> {
+
+    /**
+     * - leaders : appels réellement envoyés en amont
+     * - coalesced : appels servis par un appel déjà en vol
+     */
+    public record Stats(long leaders, long coalesced, int inFlight) {}
+
+    private final Map<K, Mono<V>> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong leaders = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+
+    public Mono<V> execute(K key, Supplier<Mono<V>> call) {
+        return execute(key, call, UnaryOperator.identity());
+    }
+
+    /** Variante où les appelants dédupliqués reçoivent forFollowers(résultat) (ex. marqué "coalesced"). */
+    public Mono<V> execute(K key, Supplier<Mono<V>> call, UnaryOperator<V> forFollowers) {
+        return Mono.defer(() -> {
+            Mono<V> existing = inFlight.get(key);
+            if (existing != null) {
+                coalesced.incrementAndGet();
+                return existing.map(forFollowers);
+            }
+
+            AtomicReference<Mono<V>> self = new AtomicReference<>();
+            // share() : multicast + annulation amont quand le dernier abonné annule.
+            // La clé est libérée avant la diffusion du résultat (doOnSuccess), ou sur erreur/annulation.
+            Mono<V> shared = Mono.defer(call)
+                    .doOnSuccess(v -> inFlight.remove(key, self.get()))
+                    .doFinally(signal -> inFlight.remove(key, self.get()))
+                    .share();
+            self.set(shared);
+
+            Mono<V> raced = inFlight.putIfAbsent(key, shared);
+            if (raced != null) {
+                coalesced.incrementAndGet();
+                return raced.map(forFollowers);
+            }
+            leaders.incrementAndGet();
+            return shared;
+        });
+    }
+
+    public Stats stats() {
+        return new Stats(leaders.get(), coalesced.get(), inFlight.size());
+    }
+}
@@ -0,0 +1,119 @@
+package com.example.gptcompare_backend.service;
+
+import com.example.gptcompare_backend.config.ProvidersProperties.Stub;
+import com.example.gptcompare_backend.service.OpenAIService.AiResult;
+import com.example.gptcompare_backend.service.OpenAIService.StreamEvent;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Objects;
+import java.util.Random;
+
+/**
+ * Fournisseur local sans réseau : réponse synthétique dont la forme suit un profil de latence réaliste.
+ * - TTFT log-normal autour de ttftMedian
+ * - nombre de tokens de sortie normal (moyenne / écart-type), borné par maxOutputTokens → tronqué au-delà
+ * - génération à tokensPerSecond
+ * Les tirages dépendent uniquement de (seed, modèle, prompt, réglages) : une même requête
+ * donne toujours la même réponse et la même latence, ce qui rend les tests de charge reproductibles.
+ */
+public class StubProvider implements ChatProvider {
+
+    /** Un "token" du stub = un mot de ce vocabulaire suivi d'une espace. */
+    private static final String[] WORDS = {
+            "lorem", "ipsum", "dolor", "sit", "amet", "consectetur", "adipiscing", "elit", "sed", "do",
+            "eiusmod", "tempor", "incididunt", "ut", "labore", "et", "dolore", "magna", "aliqua", "enim"
+    };
+
+    private final String name;
+    private final Stub profile;
+    private final UpstreamMetrics metrics;
+
+    public StubProvider(String name, Stub profile, UpstreamMetrics metrics) {
+        this.name = name;
+        this.profile = profile;
+        this.metrics = metrics;
+    }
+
+    /** Tirage d'une requête : tokens de réponse, délais, et texte. */
+    record Draw(String[] tokens, int inputTokens, boolean truncated, Duration ttft, Duration perToken) {
+
+        String text() {
+            return String.join(" ", tokens);
+        }
+
+        Duration total() {
+            return ttft.plus(perToken.multipliedBy(tokens.length));
+        }
+    }
+
+    Draw draw(String userMessage, String model, Double temperature, int maxOutputTokens) {
+        Random random = new Random(Objects.hash(profile.seed(), model, userMessage, temperature, maxOutputTokens));
+
+        long ttftNanos = (long) (profile.ttftMedian().toNanos() * Math.exp(profile.ttftSigma() * random.nextGaussian()));
+        long wanted = Math.max(1, Math.round(profile.outputTokensMean()
+                + profile.outputTokensStdDev() * random.nextGaussian()));
+        boolean truncated = wanted > maxOutputTokens;
+        int count = (int) Math.min(wanted, maxOutputTokens);
+
+        String[] tokens = new String[count];
+        for (int i = 0; i < count; i++) tokens[i] = WORDS[random.nextInt(WORDS.length)];
+
+        Duration perToken = profile.tokensPerSecond() > 0
+                ? Duration.ofNanos((long) (1_000_000_000L / profile.tokensPerSecond()))
+                : Duration.ZERO;
+        int inputTokens = Math.max(1, userMessage == null ? 0 : userMessage.length() / 4);
+        return new Draw(tokens, inputTokens, truncated, Duration.ofNanos(ttftNanos), perToken);
+    }
+
+    @Override
+    public Mono<AiResult> generateReply(String userMessage, String model, Double temperature, Integer maxOutputTokens) {
+        final String tag = name + ":" + model;
+        return Mono.defer(() -> {
+            final long startNanos = System.nanoTime();
+            Draw d = draw(userMessage, model, temperature, OpenAIService.resolveMaxOutputTokens(maxOutputTokens));
+            return Mono.delay(d.total())
+                    .map(t -> {
+                        long latency = Duration.ofNanos(System.nanoTime() - startNanos).toMillis();
+                        AiResult r = result(d, d.text(), latency, null);
+                        metrics.recordResult(tag, System.nanoTime() - startNanos, r);
+                        return r;
+                    });
+        });
+    }
+
+    /** Premier delta après le TTFT, puis un token toutes les 1/tokensPerSecond secondes. */
+    @Override
+    public Flux<StreamEvent> streamReply(String userMessage, String model, Double temperature, Integer maxOutputTokens) {
+        final String tag = name + ":" + model;
+        return Flux.defer(() -> {
+            final long startNanos = System.nanoTime();
+            Draw d = draw(userMessage, model, temperature, OpenAIService.resolveMaxOutputTokens(maxOutputTokens));
+
+            Flux<Long> ticks = d.perToken().isZero()
+                    ? Flux.range(0, d.tokens().length).map(Long::valueOf).delaySubscription(d.ttft())
+                    : Flux.interval(d.ttft(), d.perToken()).take(d.tokens().length);
+
+            Flux<StreamEvent> deltas = ticks.map(i -> new StreamEvent(
+                    i == 0 ? d.tokens()[0] : " " + d.tokens()[i.intValue()], null));
+
+            Mono<StreamEvent> end = Mono.fromSupplier(() -> {
+                long latency = Duration.ofNanos(System.nanoTime() - startNanos).toMillis();
+                AiResult r = result(d, d.text(), latency, d.ttft().toMillis());
+                metrics.recordResult(tag, System.nanoTime() - startNanos, r);
+                return new StreamEvent(null, r);
+            });
+            return deltas.concatWith(end);
+        });
+    }
+
+    private static AiResult result(Draw d, String reply, long latencyMs, Long ttftMs) {
+        int out = d.tokens().length;
+        long genMs = latencyMs - d.ttft().toMillis();
+        Double tps = genMs > 0 ? out * 1000.0 / genMs : null;
+        return AiResult.ok(reply, latencyMs, d.inputTokens(), out, d.inputTokens() + out)
+                .withTruncation(d.truncated() ? "max_output_tokens" : null)
+                .withThroughput(ttftMs, tps);
+    }
+}
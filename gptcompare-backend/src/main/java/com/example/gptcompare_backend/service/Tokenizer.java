@@ -0,0 +1,99 @@
+package com.example.gptcompare_backend.service;
+
+import com.example.gptcompare_backend.config.TokenizerProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Component;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Comptage des tokens d'un prompt avant envoi, hors ligne (BpeEncoder sur les vocabulaires tiktoken).
+ * Sert au contrôle de la fenêtre de contexte (prompt refusé, max_output_tokens réduit à la place
+ * restante), à l'estimation du limiteur et à POST /api/chat/estimate.
+ * Vocabulaires chargés une fois par encodage ; celui par défaut est préchargé en arrière-plan
+ * au démarrage. Sans fichier .tiktoken, le comptage est approché (exact=false) : il sert encore au limiteur,
+ * mais ne refuse ni ne réduit rien (une approximation ne doit pas bloquer un prompt valide).
+ */
+@Component
+public class Tokenizer {
+
+    /**
+     * Estimation d'un appel :
+     * - inputTokens : tokens du prompt (exact=false : approximation sans vocabulaire)
+     * - maxOutputTokens : sortie demandée, réduite à la place restante dans la fenêtre
+     * - fits : false si la place restante est inférieure au minimum (l'appel serait refusé)
+     */
+    public record Estimate(String model, String encoding, boolean exact, int inputTokens, int maxOutputTokens,
+                           int contextWindow, boolean fits) {
+
+        /** Même comptage, sans contrôle de la fenêtre : sortie demandée telle quelle, jamais refusé. */
+        public Estimate unbounded(int requestedMaxOutputTokens) {
+            return new Estimate(model, encoding, exact, inputTokens, requestedMaxOutputTokens, contextWindow, true);
+        }
+    }
+
+    private static final Logger log = LoggerFactory.getLogger(Tokenizer.class);
+
+    private final TokenizerProperties props;
+    private final DefaultResourceLoader resources = new DefaultResourceLoader();
+    private final Map<String, Optional<BpeEncoder>> encoders = new ConcurrentHashMap<>();
+
+    public Tokenizer(TokenizerProperties props) {
+        this.props = props;
+        if (props.enabled()) {
+            Schedulers.boundedElastic().schedule(() -> encoder(props.defaultEncoding()));
+        }
+    }
+
+    /** Aucun contrôle : estimation historique du limiteur (caractères / 4), fenêtre ignorée. */
+    public static Tokenizer disabled() {
+        return new Tokenizer(TokenizerProperties.disabled());
+    }
+
+    public Estimate estimate(String model, String text, int maxOutputTokens) {
+        if (!props.enabled()) {
+            return new Estimate(model, null, false, ModelRateLimiter.estimateTokens(text, 0), maxOutputTokens,
+                    0, true);
+        }
+        String encoding = props.encodingFor(model);
+        BpeEncoder encoder = encoder(encoding);
+        int input = encoder != null
+                ? encoder.count(text)
+                : BpeEncoder.approximate(BpeEncoder.patternFor(encoding), text);
+        int window = props.contextWindowFor(model);
+        int room = window - input;
+        Estimate estimate = new Estimate(model, encoding, encoder != null, input, Math.clamp(room, 0, maxOutputTokens),
+                window, room >= Math.min(props.minOutputTokens(), maxOutputTokens));
+        return estimate.exact() ? estimate : estimate.unbounded(maxOutputTokens);
+    }
+
+    private BpeEncoder encoder(String encoding) {
+        return encoders.computeIfAbsent(encoding, this::load).orElse(null);
+    }
+
+    private Optional<BpeEncoder> load(String encoding) {
+        Resource vocabulary = resources.getResource(props.vocabularyLocation() + encoding + ".tiktoken");
+        if (!vocabulary.exists()) {
+            log.warn("Vocabulaire {} introuvable ({}) : comptage des tokens approché", encoding, vocabulary);
+            return Optional.empty();
+        }
+        try (InputStream in = vocabulary.getInputStream()) {
+            long start = System.nanoTime();
+            BpeEncoder encoder = BpeEncoder.load(encoding, BpeEncoder.patternFor(encoding), in);
+            log.info("Vocabulaire {} chargé : {} jetons en {} ms", encoding, encoder.size(),
+                    (System.nanoTime() - start) / 1_000_000);
+            return Optional.of(encoder);
+        } catch (IOException | RuntimeException e) {
+            log.warn("Vocabulaire {} illisible : {} ; comptage des tokens approché", encoding, e.getMessage());
+            return Optional.empty();
+        }
+    }
+}
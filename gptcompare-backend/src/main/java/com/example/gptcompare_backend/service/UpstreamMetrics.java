@@ -0,0 +1,280 @@
+package com.example.gptcompare_backend.service;
+
+import com.example.gptcompare_backend.service.OpenAIService.AiResult;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.util.context.ContextView;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Métriques Micrometer de chaque appel OpenAI (exposées sur /actuator/prometheus), taguées par modèle :
+ * - openai.upstream.latency{model, outcome, status} : durée totale (relances comprises), histogramme + percentiles
+ *   outcome = success | truncated | failed | http_error | network | timeout | rate_limited | error ;
+ *   status = code HTTP ou "none" ; failed = réponse 200 en échec (status "failed", stream sans fin ou "error"),
+ *   comptée en échec comme par le disjoncteur
+ * - openai.upstream.ttfb{model} : délai avant les en-têtes de la réponse (par essai)
+ * - openai.upstream.ttft{model} : délai avant le premier token (streaming)
+ * - openai.tokens{model, type=input|output|total|cached_input|reasoning} : tokens consommés
+ *   (cached_input ⊂ input : lus dans le cache de préfixe du fournisseur ; reasoning ⊂ output)
+ * - openai.prompt_cache.requests{model, result=hit|miss} : appels dont l'usage détaille les tokens en cache
+ * - openai.prompt_cache.hit_ratio{model} : part des tokens d'entrée servis par le cache (appels détaillés)
+ * - openai.upstream.rejected{model, reason=circuit_open|context_window} : appels refusés sans requête amont
+ * - openai.upstream.hedges{model, outcome=sent|won|denied} : seconds essais envoyés, gagnants, refusés (budget)
+ * - openai.upstream.phase{model, phase} : durée de chaque phase d'un essai réussi (cf. LatencyPhases) :
+ *   rate_limit | pool | connect | tls | send | ttfb | download | parse
+ * Chaque essai est aussi une observation "openai.upstream.attempt" (span avec un pont de tracing).
+ * Le tag model passe par ModelKeys : un modèle ni configuré ni ayant déjà répondu est compté sous model="other".
+ * Le taux de troncature se lit en rapportant outcome="truncated" au total.
+ */
+@Component
+public class UpstreamMetrics {
+
+    /**
+     * Cache de préfixe d'un modèle (GET /api/chat/prompt-cache), sur les appels dont l'usage
+     * détaille les tokens en cache : hitRatio = cachedTokens / inputTokens (null avant le premier).
+     */
+    public record PromptCacheStats(long requests, long hits, long inputTokens, long cachedTokens,
+                                   Double hitRatio, long reasoningTokens) {}
+
+    private static final double[] PERCENTILES = {0.5, 0.9, 0.95, 0.99};
+
+    private final MeterRegistry registry;
+    private final ObservationRegistry observations;
+    private final ModelKeys keys;
+    private final Map<String, ModelMeters> meters = new ConcurrentHashMap<>();
+
+    public UpstreamMetrics(MeterRegistry registry) {
+        this(registry, ObservationRegistry.NOOP);
+    }
+
+    public UpstreamMetrics(MeterRegistry registry, ObservationRegistry observations) {
+        this(registry, observations, ModelKeys.disabled());
+    }
+
+    public UpstreamMetrics(MeterRegistry registry, ObservationRegistry observations, ModelKeys keys) {
+        this.registry = registry;
+        this.observations = observations;
+        this.keys = keys;
+    }
+
+    @Autowired
+    public UpstreamMetrics(MeterRegistry registry, ObjectProvider<ObservationRegistry> observations, ModelKeys keys) {
+        this(registry, observations.getIfAvailable(() -> ObservationRegistry.NOOP), keys);
+    }
+
+    /** Registre composite vide : toutes les mesures sont ignorées (tests, constructeur minimal). */
+    public static UpstreamMetrics noop() {
+        return new UpstreamMetrics(new CompositeMeterRegistry());
+    }
+
+    public void recordResult(String model, long durationNanos, AiResult r) {
+        recordResult(model, durationNanos, r, false);
+    }
+
+    /** failed : réponse reçue (HTTP 200) mais en échec d'après son contenu (cf. OpenAIService.recordOutcome). */
+    public void recordResult(String model, long durationNanos, AiResult r, boolean failed) {
+        if (!failed) keys.learn(model);
+        ModelMeters m = meters(model);
+        String outcome = failed ? "failed" : r.truncated() ? "truncated" : "success";
+        m.latency(outcome, "200").record(durationNanos, TimeUnit.NANOSECONDS);
+        if (r.inputTokens() != null) m.inputTokens.increment(r.inputTokens());
+        if (r.outputTokens() != null) m.outputTokens.increment(r.outputTokens());
+        if (r.totalTokens() != null) m.totalTokens.increment(r.totalTokens());
+        if (r.reasoningTokens() != null) m.reasoningTokens.increment(r.reasoningTokens());
+        if (r.cachedInputTokens() != null && r.inputTokens() != null) m.recordPromptCache(r);
+        if (r.ttftMs() != null) m.ttft.record(r.ttftMs(), TimeUnit.MILLISECONDS);
+    }
+
+    /** Taux de cache de préfixe par modèle (modèles sans usage détaillé absents). */
+    public Map<String, PromptCacheStats> promptCacheStats() {
+        Map<String, PromptCacheStats> out = new TreeMap<>();
+        meters.forEach((model, m) -> {
+            if (m.promptCacheRequests() > 0) out.put(model, m.promptCacheStats());
+        });
+        return out;
+    }
+
+    public void recordError(String model, long durationNanos, Throwable e) {
+        String outcome = "error";
+        String status = "none";
+        if (e instanceof WebClientResponseException w) {
+            outcome = "http_error";
+            status = String.valueOf(w.getStatusCode().value());
+        } else if (e instanceof WebClientRequestException) {
+            outcome = "network";
+        } else if (e instanceof TimeoutException) {
+            outcome = "timeout";
+        } else if (e instanceof RateLimitExceededException) {
+            outcome = "rate_limited";
+        }
+        meters(model).latency(outcome, status).record(durationNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Début d'un essai amont : observation enfant de celle de la requête entrante (si présente dans ctx),
+     * phases à marquer puis LatencyPhases.stop() en fin d'essai.
+     */
+    public LatencyPhases startAttempt(String model, ContextView ctx) {
+        String key = keys.key(model);
+        Observation observation = Observation.createNotStarted("openai.upstream.attempt", observations)
+                .contextualName("openai " + key)
+                .lowCardinalityKeyValue("model", key)
+                .parentObservation(ctx.getOrDefault(LatencyPhases.PARENT_OBSERVATION_KEY, null))
+                .start();
+        return new LatencyPhases(observation);
+    }
+
+    /** Phases d'un essai réussi (les phases absentes, ex. connect sur connexion réutilisée, sont ignorées). */
+    public void recordPhases(String model, LatencyPhases.Breakdown b) {
+        ModelMeters m = meters(model);
+        m.phase("rate_limit", b.rateLimitMs());
+        m.phase("pool", b.poolMs());
+        m.phase("connect", b.connectMs());
+        m.phase("tls", b.tlsMs());
+        m.phase("send", b.sendMs());
+        m.phase("ttfb", b.ttfbMs());
+        m.phase("download", b.downloadMs());
+        m.phase("parse", b.parseMs());
+    }
+
+    public void recordTtfb(String model, long durationNanos) {
+        meters(model).ttfb.record(durationNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordRejected(String model, String reason) {
+        meters(model).rejected(reason).increment();
+    }
+
+    public void recordHedge(String model, String outcome) {
+        meters(model).hedge(outcome).increment();
+    }
+
+    private ModelMeters meters(String model) {
+        return meters.computeIfAbsent(keys.key(model), ModelMeters::new);
+    }
+
+    /** Compteurs d'un modèle, résolus une fois (évite la recherche dans le registre à chaque appel). */
+    private final class ModelMeters {
+        private final String model;
+        private final Map<String, Timer> latencies = new ConcurrentHashMap<>();
+        private final Map<String, Timer> phases = new ConcurrentHashMap<>();
+        private final Map<String, Counter> rejections = new ConcurrentHashMap<>();
+        private final Map<String, Counter> hedges = new ConcurrentHashMap<>();
+        private final Timer ttfb;
+        private final Timer ttft;
+        private final Counter inputTokens;
+        private final Counter outputTokens;
+        private final Counter totalTokens;
+        private final Counter cachedInputTokens;
+        private final Counter reasoningTokens;
+        private final Counter promptCacheHits;
+        private final Counter promptCacheMisses;
+        /** Tokens d'entrée des appels détaillés (dénominateur du taux de cache). */
+        private final LongAdder detailedInputTokens = new LongAdder();
+
+        ModelMeters(String model) {
+            this.model = model;
+            this.ttfb = timer("openai.upstream.ttfb").tag("model", model).register(registry);
+            this.ttft = timer("openai.upstream.ttft").tag("model", model).register(registry);
+            this.inputTokens = tokens("input");
+            this.outputTokens = tokens("output");
+            this.totalTokens = tokens("total");
+            this.cachedInputTokens = tokens("cached_input");
+            this.reasoningTokens = tokens("reasoning");
+            this.promptCacheHits = promptCache("hit");
+            this.promptCacheMisses = promptCache("miss");
+            Gauge.builder("openai.prompt_cache.hit_ratio", this, m -> {
+                        Double ratio = m.promptCacheStats().hitRatio();
+                        return ratio == null ? Double.NaN : ratio;
+                    })
+                    .tag("model", model)
+                    .register(registry);
+        }
+
+        void recordPromptCache(AiResult r) {
+            cachedInputTokens.increment(r.cachedInputTokens());
+            detailedInputTokens.add(r.inputTokens());
+            (r.cachedInputTokens() > 0 ? promptCacheHits : promptCacheMisses).increment();
+        }
+
+        long promptCacheRequests() {
+            return (long) (promptCacheHits.count() + promptCacheMisses.count());
+        }
+
+        PromptCacheStats promptCacheStats() {
+            long input = detailedInputTokens.sum();
+            long cached = (long) cachedInputTokens.count();
+            return new PromptCacheStats(promptCacheRequests(), (long) promptCacheHits.count(), input, cached,
+                    input > 0 ? (double) cached / input : null, (long) reasoningTokens.count());
+        }
+
+        Timer latency(String outcome, String status) {
+            return latencies.computeIfAbsent(outcome + ':' + status, k -> timer("openai.upstream.latency")
+                    .tag("model", model)
+                    .tag("outcome", outcome)
+                    .tag("status", status)
+                    .register(registry));
+        }
+
+        void phase(String phase, Double ms) {
+            if (ms == null) return;
+            phases.computeIfAbsent(phase, k -> Timer.builder("openai.upstream.phase")
+                            .tag("model", model)
+                            .tag("phase", phase)
+                            .publishPercentiles(PERCENTILES)
+                            .register(registry))
+                    .record((long) (ms * 1_000_000), TimeUnit.NANOSECONDS);
+        }
+
+        Counter rejected(String reason) {
+            return rejections.computeIfAbsent(reason, k -> Counter.builder("openai.upstream.rejected")
+                    .tag("model", model)
+                    .tag("reason", reason)
+                    .register(registry));
+        }
+
+        Counter hedge(String outcome) {
+            return hedges.computeIfAbsent(outcome, k -> Counter.builder("openai.upstream.hedges")
+                    .tag("model", model)
+                    .tag("outcome", outcome)
+                    .register(registry));
+        }
+
+        private Counter tokens(String type) {
+            return Counter.builder("openai.tokens")
+                    .baseUnit("tokens")
+                    .tag("model", model)
+                    .tag("type", type)
+                    .register(registry);
+        }
+
+        private Counter promptCache(String result) {
+            return Counter.builder("openai.prompt_cache.requests")
+                    .tag("model", model)
+                    .tag("result", result)
+                    .register(registry);
+        }
+
+        private static Timer.Builder timer(String name) {
+            return Timer.builder(name)
+                    .publishPercentileHistogram()
+                    .publishPercentiles(PERCENTILES);
+        }
+    }
+}
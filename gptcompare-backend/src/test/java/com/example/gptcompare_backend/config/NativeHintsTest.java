@@ -0,0 +1,69 @@
+package com.example.gptcompare_backend.config;
+
+import com.example.gptcompare_backend.controller.BatchController;
+import com.example.gptcompare_backend.controller.ChatController;
+import com.example.gptcompare_backend.controller.HistoryController;
+import com.example.gptcompare_backend.dto.ChatRequest;
+import com.example.gptcompare_backend.dto.ChatResponse;
+import com.example.gptcompare_backend.service.HedgePolicy;
+import org.junit.jupiter.api.*;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.predicate.RuntimeHintsPredicates;
+import org.springframework.core.ResolvableType;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NativeHintsTest {
+
+    private final RuntimeHints hints = new RuntimeHints();
+
+    @BeforeEach
+    void setUp() {
+        new NativeHints().registerHints(hints, getClass().getClassLoader());
+    }
+
+    @Test
+    void should_register_jackson_accessors_for_dtos_and_records() {
+        assertTrue(RuntimeHintsPredicates.reflection().onMethodInvocation(ChatResponse.class, "getReply").test(hints));
+        assertTrue(RuntimeHintsPredicates.reflection().onMethodInvocation(ChatRequest.class, "setMessage").test(hints));
+        assertTrue(RuntimeHintsPredicates.reflection().onMethodInvocation(HedgePolicy.HedgeStats.class, "calls")
+                .test(hints));
+    }
+
+    /** Garde-fou : tout type du projet lu ou renvoyé par un controller doit avoir ses indices. */
+    @Test
+    void should_cover_every_project_type_exposed_by_controllers() {
+        Set<Class<?>> exposed = new LinkedHashSet<>();
+        for (Class<?> controller : new Class<?>[]{ChatController.class, BatchController.class, HistoryController.class}) {
+            for (Method m : controller.getDeclaredMethods()) {
+                if (!Modifier.isPublic(m.getModifiers())) continue;
+                collect(ResolvableType.forMethodReturnType(m), exposed);
+                for (int i = 0; i < m.getParameterCount(); i++) {
+                    collect(ResolvableType.forMethodParameter(m, i), exposed);
+                }
+            }
+        }
+
+        assertFalse(exposed.isEmpty());
+        for (Class<?> type : exposed) {
+            assertTrue(RuntimeHintsPredicates.reflection().onType(type).test(hints),
+                    "indice manquant pour " + type.getName() + " (NativeHints.JSON_TYPES)");
+        }
+    }
+
+    private static void collect(ResolvableType type, Set<Class<?>> out) {
+        Class<?> raw = type.resolve();
+        if (raw == null) return;
+        // les exceptions (handlers) ne sont pas sérialisées
+        if (raw.getName().startsWith("com.example.gptcompare_backend.") && !raw.isEnum()
+                && !Throwable.class.isAssignableFrom(raw) && out.add(raw) && raw.isRecord()) {
+            for (var c : raw.getRecordComponents()) collect(ResolvableType.forType(c.getGenericType()), out);
+        }
+        for (ResolvableType g : type.getGenerics()) collect(g, out);
+    }
+}
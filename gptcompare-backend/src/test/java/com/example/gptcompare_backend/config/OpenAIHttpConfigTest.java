@@ -0,0 +1,94 @@
+package com.example.gptcompare_backend.config;
+
+import com.example.gptcompare_backend.service.OpenAIService;
+import com.example.gptcompare_backend.service.OpenAIService.AiResult;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.jupiter.api.*;
+import reactor.core.publisher.Flux;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.*;
+
+class OpenAIHttpConfigTest {
+
+    private MockWebServer server;
+    private ConnectionProvider provider;
+    private UpstreamPoolMetrics metrics;
+    private OpenAIService service;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = new MockWebServer();
+        server.start();
+
+        // 1 connexion max, 1 seule requête en file : la 3e requête concurrente doit être rejetée
+        OpenAIHttpProperties props = new OpenAIHttpProperties(
+                1, 1, Duration.ofSeconds(5),
+                Duration.ofSeconds(30), Duration.ofMinutes(5), Duration.ZERO,
+                Duration.ofSeconds(2), Duration.ofSeconds(10),
+                true, true
+        );
+        metrics = new UpstreamPoolMetrics();
+        provider = OpenAIHttpConfig.connectionProvider(props, metrics);
+
+        service = new OpenAIService("test-api-key", server.url("/v1/responses").toString(), "gpt-4.1-mini",
+                OpenAIService.Dependencies.defaults()
+                        .httpClient(OpenAIHttpConfig.httpClient(provider, props, false))
+                        .singleFlight(false));
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        provider.dispose();
+        server.shutdown();
+    }
+
+    private static MockResponse okResponse() {
+        return new MockResponse().setResponseCode(200)
+                .addHeader("Content-Type", "application/json")
+                .setHeadersDelay(800, TimeUnit.MILLISECONDS)
+                .setBody("""
+                    {"status":"completed","output":[{"content":[{"type":"output_text","text":"OK"}]}]}
+                """);
+    }
+
+    @Test
+    void should_honor_max_connections_and_pending_acquire_limit() {
+        server.enqueue(okResponse());
+        server.enqueue(okResponse());
+
+        CompletableFuture<List<AiResult>> all = Flux.merge(
+                service.generateReply("A", null, null, 10),
+                service.generateReply("B", null, null, 10),
+                service.generateReply("C", null, null, 10)
+        ).collectList().toFuture();
+
+        // pendant l'appel : 1 connexion empruntée, 1 requête en attente, jamais plus
+        await().atMost(Duration.ofSeconds(2)).untilAsserted(() -> {
+            UpstreamPoolMetrics.PoolStats s = metrics.snapshot();
+            assertEquals(1, s.active());
+            assertEquals(1, s.maxConnections());
+            assertEquals(1, s.maxPendingAcquires());
+        });
+
+        List<AiResult> results = all.join();
+        assertEquals(2, results.stream().filter(r -> "OK".equals(r.reply())).count());
+        assertTrue(results.stream().anyMatch(r -> r.reply().startsWith("Erreur:")
+                        && r.reply().contains("Pending acquire queue")),
+                results.toString());
+
+        // une seule connexion TCP a servi les deux requêtes acceptées (keep-alive)
+        assertEquals(2, server.getRequestCount());
+        UpstreamPoolMetrics.PoolStats after = metrics.snapshot();
+        assertEquals(0, after.active());
+        assertEquals(0, after.pendingAcquires());
+        assertEquals(1, after.allocated());
+    }
+}
@@ -0,0 +1,190 @@
+package com.example.gptcompare_backend.controller;
+
+import com.example.gptcompare_backend.config.AdmissionProperties;
+import com.example.gptcompare_backend.config.BackgroundProperties;
+import com.example.gptcompare_backend.config.DeadlineProperties;
+import com.example.gptcompare_backend.config.UpstreamPoolMetrics;
+import com.example.gptcompare_backend.service.AdmissionLimiter;
+import com.example.gptcompare_backend.service.BackgroundJobService;
+import com.example.gptcompare_backend.service.ChatProvider;
+import com.example.gptcompare_backend.service.CompareService;
+import com.example.gptcompare_backend.service.ModelCircuitBreaker;
+import com.example.gptcompare_backend.service.ModelRateLimiter;
+import com.example.gptcompare_backend.service.OpenAIService.AiResult;
+import com.example.gptcompare_backend.service.OpenAIService.StreamEvent;
+import com.example.gptcompare_backend.service.ProviderRegistry;
+import com.example.gptcompare_backend.service.RateLimitExceededException;
+import com.example.gptcompare_backend.service.ResponseCache;
+import com.example.gptcompare_backend.service.ResultStore;
+import com.example.gptcompare_backend.service.SessionService;
+import com.example.gptcompare_backend.service.UpstreamMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChatControllerTest {
+
+    private Disposable holder;
+
+    @AfterEach
+    void tearDown() {
+        if (holder != null) holder.dispose();
+    }
+
+    /** Fournisseur "fake:*" dont chaque appel renvoie reply. */
+    private static ChatProvider provider(Mono<AiResult> reply) {
+        return new ChatProvider() {
+            @Override
+            public Mono<AiResult> generateReply(String userMessage, String model, Double temperature,
+                                                Integer maxOutputTokens) {
+                return reply;
+            }
+
+            @Override
+            public Flux<StreamEvent> streamReply(String userMessage, String model, Double temperature,
+                                                 Integer maxOutputTokens) {
+                return reply.map(r -> new StreamEvent(null, r)).flux();
+            }
+        };
+    }
+
+    private static WebTestClient client(ChatProvider fake, AdmissionLimiter admission) {
+        ProviderRegistry providers = new ProviderRegistry(null, Map.of("fake", fake));
+        ChatController controller = new ChatController(providers,
+                new CompareService(providers, Duration.ofSeconds(5), 6),
+                new UpstreamPoolMetrics(), ResponseCache.disabled(), ModelRateLimiter.disabled(),
+                ModelCircuitBreaker.disabled(), ResultStore.disabled(),
+                new SessionService(providers, 10, Duration.ofMinutes(1), 5, 1000), admission,
+                new DeadlineProperties(Duration.ofSeconds(5), Duration.ofSeconds(5)), UpstreamMetrics.noop(),
+                new BackgroundJobService(providers, ResultStore.disabled(), BackgroundProperties.disabled()));
+        return WebTestClient.bindToController(controller).build();
+    }
+
+    private static WebTestClient.ResponseSpec send(WebTestClient client) {
+        return client.post().uri("/api/chat/send")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(Map.of("message", "Salut", "model", "fake:m"))
+                .exchange();
+    }
+
+    @Test
+    void should_answer_503_with_retry_after_when_the_admission_queue_is_full() {
+        // une place, pas de file : la place est tenue, la requête suivante est refusée tout de suite
+        AdmissionLimiter admission = new AdmissionLimiter(new AdmissionProperties(true, 1, 1, 1, 0,
+                Duration.ofSeconds(1), 2.0, 0.5, Duration.ofMillis(1500), 8, 1, 0.5, 0, Duration.ofSeconds(1),
+                Duration.ofMinutes(1), Map.of()), new SimpleMeterRegistry());
+        holder = admission.admit(() -> Sinks.<String>empty().asMono()).subscribe();
+        assertEquals(1, admission.stats().inFlight());
+
+        send(client(provider(Mono.just(AiResult.ok("ok", 1, 1, 1, 2))), admission))
+                .expectStatus().isEqualTo(HttpStatus.SERVICE_UNAVAILABLE)
+                .expectHeader().valueEquals(HttpHeaders.RETRY_AFTER, "2")
+                .expectBody().jsonPath("$.reply").value(String.class, reply -> assertTrue(reply.contains("queue_full")));
+    }
+
+    @Test
+    void should_answer_429_with_retry_after_when_the_model_budget_is_exhausted() {
+        ChatProvider limited = provider(Mono.error(
+                new RateLimitExceededException("fake:m", "requests", Duration.ofMillis(200))));
+
+        send(client(limited, AdmissionLimiter.disabled()))
+                .expectStatus().isEqualTo(HttpStatus.TOO_MANY_REQUESTS)
+                .expectHeader().valueEquals(HttpHeaders.RETRY_AFTER, "1");
+    }
+
+    @Test
+    void should_not_back_off_admission_on_local_refusals_or_cached_answers() {
+        AdmissionLimiter admission = new AdmissionLimiter(new AdmissionProperties(true, 10, 1, 100, 10,
+                Duration.ofSeconds(1), 2.0, 0.5, Duration.ofSeconds(1), 8, 1, 0.5, 10, Duration.ofSeconds(1),
+                Duration.ofMinutes(1), Map.of()), new SimpleMeterRegistry());
+
+        send(client(provider(Mono.just(AiResult.error("Erreur OpenAI HTTP 400: bad", 3))), admission))
+                .expectStatus().isOk();
+        send(client(provider(Mono.just(AiResult.ok("ok", 1, 1, 1, 2).asCached(0))), admission))
+                .expectStatus().isOk();
+        assertEquals(10, admission.stats().limit());
+        assertTrue(admission.stats().referenceLatencyMs().isEmpty());
+
+        send(client(provider(Mono.just(AiResult.error("Erreur OpenAI HTTP 503: down", 3).asUpstreamFailure())),
+                admission))
+                .expectStatus().isOk();
+        assertEquals(5, admission.stats().limit());
+    }
+
+    @Test
+    void should_reject_a_compare_with_a_null_leg_or_a_blank_model() {
+        WebTestClient client = client(provider(Mono.just(AiResult.ok("ok", 1, 1, 1, 2))), AdmissionLimiter.disabled());
+
+        for (Object models : List.of(Arrays.asList(Map.of("model", "fake:a"), null),
+                List.of(Map.of("model", "fake:a"), Map.of("model", " ")),
+                List.of(Map.of("temperature", 0.2)))) {
+            client.post().uri("/api/chat/compare")
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .bodyValue(Map.of("message", "Salut", "models", models))
+                    .exchange()
+                    .expectStatus().isBadRequest();
+        }
+
+        client.post().uri("/api/chat/compare")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(Map.of("message", "Salut",
+                        "models", List.of(Map.of("model", "fake:a"), Map.of("model", "fake:b"))))
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody().jsonPath("$.results.length()").isEqualTo(2);
+    }
+
+    @Test
+    void should_say_when_the_session_id_is_the_invalid_part() {
+        WebTestClient client = client(provider(Mono.just(AiResult.ok("ok", 1, 1, 1, 2))), AdmissionLimiter.disabled());
+        String tooLong = "s".repeat(129);
+
+        client.post().uri("/api/chat/send").contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(Map.of("message", "Salut", "sessionId", tooLong))
+                .exchange()
+                .expectStatus().isBadRequest()
+                .expectBody().jsonPath("$.reply").isEqualTo("sessionId invalide.");
+        client.post().uri("/api/chat/send").contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(Map.of("message", " ", "sessionId", "s1"))
+                .exchange()
+                .expectStatus().isBadRequest()
+                .expectBody().jsonPath("$.reply").isEqualTo("Message vide.");
+        client.post().uri("/api/chat/compare").contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(Map.of("message", "Salut", "sessionId", " ", "models", List.of(Map.of("model", "fake:a"))))
+                .exchange()
+                .expectStatus().isBadRequest()
+                .expectBody().jsonPath("$.error").isEqualTo("sessionId invalide.");
+        // un job n'a jamais de session
+        client.post().uri("/api/chat/jobs").contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(Map.of("message", "Salut", "sessionId", "s1"))
+                .exchange()
+                .expectStatus().isBadRequest()
+                .expectBody().jsonPath("$.error").isEqualTo("sessionId invalide.");
+    }
+
+    @Test
+    void should_only_count_a_compare_as_failed_when_most_legs_failed_upstream() {
+        AiResult ok = AiResult.ok("ok", 10, 1, 1, 2);
+        AiResult down = AiResult.error("Erreur OpenAI HTTP 503: down", 10).asUpstreamFailure();
+
+        assertEquals(AdmissionLimiter.Outcome.SUCCESS, ChatController.outcome(List.of(ok, ok)));
+        assertEquals(AdmissionLimiter.Outcome.IGNORED, ChatController.outcome(List.of(ok, ok, down)));
+        assertEquals(AdmissionLimiter.Outcome.FAILURE, ChatController.outcome(List.of(ok, down, down)));
+        assertEquals(AdmissionLimiter.Outcome.IGNORED, ChatController.outcome(List.of(ok.asCached(0), ok.asCoalesced())));
+    }
+}
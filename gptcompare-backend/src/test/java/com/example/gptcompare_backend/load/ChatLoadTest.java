@@ -0,0 +1,299 @@
+package com.example.gptcompare_backend.load;
+
+import io.netty.channel.EventLoopGroup;
+import io.netty.util.concurrent.EventExecutor;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.http.client.ReactorResourceFactory;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.ByteBufFlux;
+import reactor.netty.http.HttpResources;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+import reactor.netty.resources.LoopResources;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test de charge de /api/chat/send : l'application complète tourne sur un port aléatoire,
+ * l'amont OpenAI est un MockWebServer à latence log-normale. Exclu du build par défaut :
+ * mvn -Pload test   (réglages et budgets : propriétés load.* du profil, surchargeables par -D)
+ *
+ * Charge en boucle ouverte : une requête toutes les 1/rate secondes, quel que soit le temps de réponse ;
+ * au-delà de load.concurrency requêtes en cours, les suivantes attendent. La latence est mesurée
+ * depuis l'instant d'envoi prévu (pas réel), pour ne pas masquer les files d'attente (coordinated omission).
+ * Saturation des boucles d'évènements : une sonde est replanifiée toutes les 10ms sur chaque boucle
+ * (serveur et client amont), son retard mesure le temps où la boucle était occupée.
+ * Rapport dans la console et dans target/load-report.json ; un budget dépassé fait échouer le build.
+ */
+@Tag("load")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+class ChatLoadTest {
+
+    private static final Settings SETTINGS = Settings.fromSystemProperties();
+    private static final MockWebServer UPSTREAM = startUpstream(SETTINGS);
+    private static final Duration PROBE_PERIOD = Duration.ofMillis(10);
+    private static final long MAX_TRACKABLE_NANOS = TimeUnit.MINUTES.toNanos(2);
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private ReactorResourceFactory resourceFactory;
+
+    /**
+     * Réglages du run (propriétés système, valeurs par défaut dans le profil Maven "load").
+     * - rate : requêtes/s offertes ; duration / warmup : durée mesurée et préchauffage (non mesuré)
+     * - concurrency : requêtes simultanées max côté générateur
+     * - upstreamMedian / upstreamSigma : latence amont log-normale ; upstreamConnections : pool vers l'amont
+     * - budgets : p50 / p99 / p999 (ms), taux d'erreur max, retard p99 max des boucles d'évènements (ms)
+     */
+    record Settings(double rate, Duration duration, Duration warmup, int concurrency,
+                    Duration upstreamMedian, double upstreamSigma, int upstreamConnections,
+                    long budgetP50Ms, long budgetP99Ms, long budgetP999Ms, double budgetErrorRate,
+                    long budgetLoopLagP99Ms) {
+
+        static Settings fromSystemProperties() {
+            return new Settings(
+                    Double.parseDouble(System.getProperty("load.rate", "200")),
+                    Duration.parse("PT" + System.getProperty("load.duration", "20s")),
+                    Duration.parse("PT" + System.getProperty("load.warmup", "5s")),
+                    Integer.getInteger("load.concurrency", 256),
+                    Duration.ofMillis(Long.getLong("load.upstream.median-ms", 100)),
+                    Double.parseDouble(System.getProperty("load.upstream.sigma", "0.3")),
+                    Integer.getInteger("load.upstream.connections", 200),
+                    Long.getLong("load.budget.p50-ms", 150),
+                    Long.getLong("load.budget.p99-ms", 400),
+                    Long.getLong("load.budget.p999-ms", 800),
+                    Double.parseDouble(System.getProperty("load.budget.error-rate", "0.001")),
+                    Long.getLong("load.budget.loop-lag-p99-ms", 50)
+            );
+        }
+    }
+
+    /** Résultat d'une phase (préchauffage ou mesure). */
+    record Report(double offeredRate, double throughput, long requests, long errors, double errorRate,
+                  double p50Ms, double p99Ms, double p999Ms, double maxMs,
+                  double loopLagP99Ms, double loopLagMaxMs, Settings settings) {}
+
+    @DynamicPropertySource
+    static void properties(DynamicPropertyRegistry registry) {
+        registry.add("openai.api.url", () -> UPSTREAM.url("/v1/responses").toString());
+        registry.add("openai.http.max-connections", SETTINGS::upstreamConnections);
+        registry.add("openai.http.pending-acquire-max-count", () -> SETTINGS.concurrency() * 2);
+        // capacité brute du backend : pas de limiteur client ni de relance
+        registry.add("openai.rate-limit.enabled", () -> false);
+        registry.add("openai.retry.enabled", () -> false);
+    }
+
+    @AfterAll
+    static void stopUpstream() throws IOException {
+        UPSTREAM.shutdown();
+    }
+
+    @Test
+    void send_should_stay_within_latency_budgets() throws IOException {
+        LoopResources clientLoops = LoopResources.create("load-client", 2, true);
+        ConnectionProvider pool = ConnectionProvider.builder("load-client")
+                .maxConnections(SETTINGS.concurrency())
+                .pendingAcquireMaxCount(-1)
+                .build();
+        HttpClient client = HttpClient.create(pool).runOn(clientLoops).baseUrl("http://localhost:" + port);
+        LoopLagProbe probe = new LoopLagProbe(eventLoops());
+
+        try {
+            run(client, probe, SETTINGS.warmup());
+            Report r = run(client, probe, SETTINGS.duration());
+            print(r);
+            Path out = Path.of("target", "load-report.json");
+            Files.createDirectories(out.getParent());
+            JsonMapper.builder().build().writerWithDefaultPrettyPrinter().writeValue(out.toFile(), r);
+
+            assertAll(
+                    () -> assertTrue(r.p50Ms() <= SETTINGS.budgetP50Ms(), "p50 " + r.p50Ms() + "ms > budget"),
+                    () -> assertTrue(r.p99Ms() <= SETTINGS.budgetP99Ms(), "p99 " + r.p99Ms() + "ms > budget"),
+                    () -> assertTrue(r.p999Ms() <= SETTINGS.budgetP999Ms(), "p999 " + r.p999Ms() + "ms > budget"),
+                    () -> assertTrue(r.errorRate() <= SETTINGS.budgetErrorRate(),
+                            "taux d'erreur " + r.errorRate() + " > budget"),
+                    () -> assertTrue(r.loopLagP99Ms() <= SETTINGS.budgetLoopLagP99Ms(),
+                            "retard p99 des boucles " + r.loopLagP99Ms() + "ms > budget"),
+                    // débit tenu : sinon les requêtes s'accumulent et les percentiles ne veulent plus rien dire
+                    () -> assertTrue(r.throughput() >= r.offeredRate() * 0.95,
+                            "débit " + r.throughput() + "/s < charge offerte " + r.offeredRate() + "/s")
+            );
+        } finally {
+            probe.stop();
+            pool.dispose();
+            clientLoops.dispose();
+        }
+    }
+
+    /** Une phase de charge ; bloque jusqu'à la dernière réponse. */
+    private Report run(HttpClient client, LoopLagProbe probe, Duration duration) {
+        final long periodNanos = (long) (1_000_000_000L / SETTINGS.rate());
+        final long total = duration.toNanos() / periodNanos;
+        final Recorder latencies = new Recorder(MAX_TRACKABLE_NANOS, 3);
+        final AtomicLong errors = new AtomicLong();
+        final AtomicLong sequence = new AtomicLong();
+
+        probe.reset();
+        final long start = System.nanoTime();
+        Flux.interval(Duration.ofNanos(periodNanos))
+                .take(total)
+                .onBackpressureBuffer()
+                .flatMap(tick -> {
+                    long intended = start + (tick + 1) * periodNanos;
+                    return send(client, sequence.incrementAndGet())
+                            .doOnNext(ok -> {
+                                latencies.recordValue(Math.min(System.nanoTime() - intended, MAX_TRACKABLE_NANOS));
+                                if (!ok) errors.incrementAndGet();
+                            });
+                }, SETTINGS.concurrency())
+                .blockLast(duration.plusMinutes(2));
+        long elapsed = System.nanoTime() - start;
+
+        Histogram h = latencies.getIntervalHistogram();
+        Histogram lag = probe.snapshot();
+        long n = h.getTotalCount();
+        return new Report(SETTINGS.rate(), n * 1e9 / elapsed, n, errors.get(),
+                n == 0 ? 1.0 : (double) errors.get() / n,
+                ms(h.getValueAtPercentile(50)), ms(h.getValueAtPercentile(99)), ms(h.getValueAtPercentile(99.9)),
+                ms(h.getMaxValue()), ms(lag.getValueAtPercentile(99)), ms(lag.getMaxValue()), SETTINGS);
+    }
+
+    /** true si la réponse est un 200 sans message d'erreur (les erreurs amont reviennent en 200 "Erreur..."). */
+    private static Mono<Boolean> send(HttpClient client, long n) {
+        String body = """
+                {"message":"requête de charge %d","model":"gpt-4.1-mini","maxOutputTokens":200}""".formatted(n);
+        return client.headers(h -> h.set("Content-Type", "application/json"))
+                .post()
+                .uri("/api/chat/send")
+                .send(ByteBufFlux.fromString(Mono.just(body)))
+                .responseSingle((res, content) -> content.asString()
+                        .defaultIfEmpty("")
+                        .map(s -> res.status().code() == 200 && !s.contains("\"reply\":\"Erreur")))
+                .onErrorReturn(false);
+    }
+
+    /** Boucles d'évènements observées : serveur WebFlux et client amont (sans doublon). */
+    private List<EventLoopGroup> eventLoops() {
+        Set<EventLoopGroup> groups = Collections.newSetFromMap(new IdentityHashMap<>());
+        groups.add(resourceFactory.getLoopResources().onServer(true));
+        groups.add(HttpResources.get().onClient(true));
+        return new ArrayList<>(groups);
+    }
+
+    private static void print(Report r) {
+        Map<String, Object> lines = new LinkedHashMap<>();
+        lines.put("charge offerte (req/s)", r.offeredRate());
+        lines.put("débit (req/s)", "%.1f".formatted(r.throughput()));
+        lines.put("requêtes / erreurs", r.requests() + " / " + r.errors());
+        lines.put("latence p50 / p99 / p999 / max (ms)",
+                "%.1f / %.1f / %.1f / %.1f".formatted(r.p50Ms(), r.p99Ms(), r.p999Ms(), r.maxMs()));
+        lines.put("retard boucles p99 / max (ms)", "%.1f / %.1f".formatted(r.loopLagP99Ms(), r.loopLagMaxMs()));
+        System.out.println("==== Test de charge /api/chat/send ====");
+        lines.forEach((k, v) -> System.out.printf("%-38s %s%n", k, v));
+    }
+
+    private static double ms(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+
+    /**
+     * Faux OpenAI : répond après un délai log-normal (médiane upstreamMedian, dispersion upstreamSigma).
+     * Démarré avant le contexte Spring (son URL est injectée par @DynamicPropertySource).
+     */
+    private static MockWebServer startUpstream(Settings settings) {
+        MockWebServer server = new MockWebServer();
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                Random random = ThreadLocalRandom.current();
+                long delayMs = Math.round(settings.upstreamMedian().toMillis()
+                        * Math.exp(settings.upstreamSigma() * random.nextGaussian()));
+                return new MockResponse()
+                        .setResponseCode(200)
+                        .addHeader("Content-Type", "application/json")
+                        .setHeadersDelay(delayMs, TimeUnit.MILLISECONDS)
+                        .setBody("""
+                                {"status":"completed","output":[{"type":"message","content":[{"type":"output_text","text":"ok"}]}],
+                                 "usage":{"input_tokens":12,"output_tokens":150,"total_tokens":162}}""");
+            }
+        });
+        try {
+            server.start();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return server;
+    }
+
+    /**
+     * Sonde de saturation : sur chaque boucle, une tâche replanifiée toutes les PROBE_PERIOD
+     * mesure son retard sur l'heure prévue (tâches longues ou file chargée → retard).
+     */
+    private static final class LoopLagProbe {
+
+        private final Recorder lag = new Recorder(MAX_TRACKABLE_NANOS, 3);
+        private final AtomicBoolean running = new AtomicBoolean(true);
+
+        LoopLagProbe(List<EventLoopGroup> groups) {
+            for (EventLoopGroup group : groups) {
+                for (EventExecutor loop : group) schedule(loop);
+            }
+        }
+
+        private void schedule(EventExecutor loop) {
+            if (!running.get()) return;
+            final long expected = System.nanoTime() + PROBE_PERIOD.toNanos();
+            loop.schedule(() -> {
+                lag.recordValue(Math.clamp(System.nanoTime() - expected, 0, MAX_TRACKABLE_NANOS));
+                schedule(loop);
+            }, PROBE_PERIOD.toNanos(), TimeUnit.NANOSECONDS);
+        }
+
+        void reset() {
+            lag.reset();
+        }
+
+        Histogram snapshot() {
+            return lag.getIntervalHistogram();
+        }
+
+        void stop() {
+            running.set(false);
+        }
+    }
+}
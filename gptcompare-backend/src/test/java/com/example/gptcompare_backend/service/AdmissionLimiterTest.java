@@ -0,0 +1,297 @@
+package com.example.gptcompare_backend.service;
+
+import com.example.gptcompare_backend.config.AdmissionProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.*;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdmissionLimiterTest {
+
+    private SimpleMeterRegistry registry;
+
+    @BeforeEach
+    void setUp() {
+        registry = new SimpleMeterRegistry();
+    }
+
+    private AdmissionLimiter limiter(int initialLimit, int minLimit, int queueSize, Duration maxQueueWait) {
+        return new AdmissionLimiter(props(initialLimit, minLimit, queueSize, maxQueueWait), registry);
+    }
+
+    private static AdmissionProperties props(int initialLimit, int minLimit, int queueSize, Duration maxQueueWait) {
+        return new AdmissionProperties(true, initialLimit, minLimit, 100, queueSize,
+                maxQueueWait, 2.0, 0.5, Duration.ofSeconds(2), 8, 1, 0.5, queueSize, maxQueueWait,
+                Duration.ofMinutes(1), Map.of());
+    }
+
+    private double rejected(String reason) {
+        return registry.get("chat.admission.rejected").tag("reason", reason).counter().count();
+    }
+
+    @Test
+    void should_queue_then_shed_load_beyond_the_queue() {
+        AdmissionLimiter limiter = limiter(2, 1, 1, Duration.ofSeconds(5));
+        Sinks.One<String> first = Sinks.one();
+        Sinks.One<String> second = Sinks.one();
+
+        var r1 = limiter.admit(first::asMono).toFuture();
+        var r2 = limiter.admit(second::asMono).toFuture();
+        var r3 = limiter.admit(() -> Mono.just("en file")).toFuture();
+
+        assertEquals(2, limiter.stats().inFlight());
+        assertEquals(1, limiter.stats().queued());
+        assertEquals(1, registry.get("chat.admission.queued").gauge().value());
+        assertFalse(r3.isDone());
+
+        StepVerifier.create(limiter.admit(() -> Mono.just("refusé")))
+                .expectErrorSatisfies(e -> {
+                    OverloadedException o = assertInstanceOf(OverloadedException.class, e);
+                    assertEquals(AdmissionLimiter.QUEUE_FULL, o.getReason());
+                    assertEquals(Duration.ofSeconds(2), o.getRetryAfter());
+                })
+                .verify();
+        assertEquals(1, rejected(AdmissionLimiter.QUEUE_FULL));
+
+        // une place libérée passe au premier en attente
+        first.tryEmitValue("ok");
+        assertEquals("ok", r1.join());
+        assertEquals("en file", r3.join());
+
+        second.tryEmitValue("ok");
+        r2.join();
+        assertEquals(0, limiter.stats().inFlight());
+        assertEquals(0, limiter.stats().queued());
+        assertEquals(3, limiter.stats().admitted());
+    }
+
+    @Test
+    void should_reject_after_max_queue_wait_and_release_the_slot_on_cancel() {
+        AdmissionLimiter limiter = limiter(1, 1, 10, Duration.ofMillis(50));
+        Sinks.One<String> busy = Sinks.one();
+        var holder = limiter.admit(busy::asMono).subscribe();
+
+        StepVerifier.create(limiter.admit(() -> Mono.just("trop tard")))
+                .expectErrorSatisfies(e -> assertEquals(AdmissionLimiter.QUEUE_TIMEOUT,
+                        assertInstanceOf(OverloadedException.class, e).getReason()))
+                .verify(Duration.ofSeconds(5));
+        assertEquals(1, rejected(AdmissionLimiter.QUEUE_TIMEOUT));
+        assertEquals(0, limiter.stats().queued());
+
+        holder.dispose();
+        assertEquals(0, limiter.stats().inFlight());
+        StepVerifier.create(limiter.admit(() -> Mono.just("ok"))).expectNext("ok").verifyComplete();
+    }
+
+    private static Mono<String> call(AtomicLong clock, Duration duration, String value) {
+        return Mono.fromSupplier(() -> {
+            clock.addAndGet(duration.toNanos());
+            return value;
+        });
+    }
+
+    @Test
+    void should_grow_on_fast_calls_and_back_off_on_slow_ones() {
+        // horloge simulée : chaque appel avance le temps de sa durée, sans dépendre de la charge de la machine
+        AtomicLong clock = new AtomicLong();
+        AdmissionLimiter limiter = new AdmissionLimiter(props(10, 1, 10, Duration.ofSeconds(1)), registry, clock::get);
+
+        for (int i = 0; i < 20; i++) {
+            limiter.admit(() -> call(clock, Duration.ofMillis(5), "rapide")).block();
+        }
+        int grown = limiter.stats().limit();
+        assertTrue(grown >= 11, "limite après appels rapides : " + grown);
+        assertNotNull(limiter.stats().referenceLatencyMs().get(AdmissionLimiter.DEFAULT_ROUTE));
+
+        limiter.admit(() -> call(clock, Duration.ofMillis(300), "lent")).block();
+        int backedOff = limiter.stats().limit();
+        assertTrue(backedOff < grown, "limite après appel lent : " + backedOff);
+
+        // erreur locale (ni 429, ni 5xx, ni réseau, ni délai) : rien ne met l'amont en cause
+        StepVerifier.create(limiter.admit(() -> Mono.error(new IllegalStateException("amont"))))
+                .expectError(IllegalStateException.class)
+                .verify();
+        assertEquals(backedOff, limiter.stats().limit());
+        assertEquals(0, limiter.stats().inFlight());
+    }
+
+    @Test
+    void should_back_off_when_the_call_returns_an_error_value() {
+        AdmissionLimiter limiter = limiter(10, 1, 10, Duration.ofSeconds(1));
+
+        // erreur amont convertie en valeur (AiResult sans usage) : le Mono réussit, mais l'appel a échoué
+        StepVerifier.create(limiter.admit("send", () -> Mono.just("Erreur OpenAI HTTP 503"),
+                        r -> r.startsWith("Erreur") ? AdmissionLimiter.Outcome.FAILURE : AdmissionLimiter.Outcome.SUCCESS))
+                .expectNext("Erreur OpenAI HTTP 503")
+                .verifyComplete();
+
+        assertEquals(5, limiter.stats().limit());
+        assertTrue(limiter.stats().referenceLatencyMs().isEmpty());
+        assertEquals(0, limiter.stats().inFlight());
+    }
+
+    @Test
+    void should_only_back_off_on_upstream_health_failures() {
+        AdmissionLimiter limiter = limiter(10, 1, 10, Duration.ofSeconds(1));
+
+        // refus du limiteur local et 4xx du client : la santé de l'amont n'est pas en cause
+        StepVerifier.create(limiter.admit("send",
+                        () -> Mono.<String>error(new RateLimitExceededException("gpt-5", "rpm", Duration.ofSeconds(1))),
+                        r -> AdmissionLimiter.Outcome.SUCCESS))
+                .expectError(RateLimitExceededException.class)
+                .verify();
+        StepVerifier.create(limiter.admit("send", () -> Mono.<String>error(WebClientResponseException.create(
+                        400, "Bad Request", new HttpHeaders(), new byte[0], null)),
+                        r -> AdmissionLimiter.Outcome.SUCCESS))
+                .expectError(WebClientResponseException.class)
+                .verify();
+        assertEquals(10, limiter.stats().limit());
+
+        StepVerifier.create(limiter.admit("send", () -> Mono.<String>error(WebClientResponseException.create(
+                        503, "Service Unavailable", new HttpHeaders(), new byte[0], null)),
+                        r -> AdmissionLimiter.Outcome.SUCCESS))
+                .expectError(WebClientResponseException.class)
+                .verify();
+        assertEquals(5, limiter.stats().limit());
+        assertEquals(0, limiter.stats().inFlight());
+    }
+
+    @Test
+    void should_ignore_cached_values_and_keep_one_reference_per_route() {
+        AtomicLong clock = new AtomicLong();
+        AdmissionLimiter limiter = new AdmissionLimiter(props(10, 1, 10, Duration.ofSeconds(1)), registry, clock::get);
+
+        for (int i = 0; i < 20; i++) {
+            limiter.admit("send", () -> call(clock, Duration.ofMillis(5), "rapide"),
+                    r -> AdmissionLimiter.Outcome.SUCCESS).block();
+        }
+        int grown = limiter.stats().limit();
+
+        // réponse servie sans appel amont (cache, déduplication) : ni croissance, ni latence de référence
+        limiter.admit("send", () -> Mono.just("cache"), r -> AdmissionLimiter.Outcome.IGNORED).block();
+        assertEquals(grown, limiter.stats().limit());
+
+        // une comparaison attend sa jambe la plus lente : elle a sa propre référence, pas celle de /send
+        for (int i = 0; i < 5; i++) {
+            limiter.admit("compare", () -> call(clock, Duration.ofMillis(300), "comparaison"),
+                    r -> AdmissionLimiter.Outcome.SUCCESS).block();
+        }
+        assertTrue(limiter.stats().limit() >= grown, "limite après comparaisons : " + limiter.stats().limit());
+        assertEquals(Set.of("send", "compare"), limiter.stats().referenceLatencyMs().keySet());
+        assertEquals(5L, limiter.stats().referenceLatencyMs().get("send"));
+        assertEquals(300L, limiter.stats().referenceLatencyMs().get("compare"));
+    }
+
+    /** Appel qui note son ordre d'admission et rend sa place aussitôt. */
+    private static Mono<String> call(AdmissionLimiter limiter, List<String> order, String name,
+                                     RequestPriority.Level level, String client) {
+        return limiter.admit(() -> Mono.fromSupplier(() -> {
+            order.add(name);
+            return name;
+        })).contextWrite(new RequestPriority(level, client).context());
+    }
+
+    @Test
+    void should_serve_interactive_first_and_share_each_class_fairly_between_clients() {
+        AdmissionLimiter limiter = new AdmissionLimiter(new AdmissionProperties(true, 1, 1, 1, 10,
+                Duration.ofSeconds(5), 100.0, 0.5, Duration.ofSeconds(2), 8, 1, 0.5, 10, Duration.ofSeconds(5),
+                Duration.ofMinutes(1), Map.of()), registry);
+        List<String> order = new CopyOnWriteArrayList<>();
+        Sinks.One<String> busy = Sinks.one();
+        var holder = limiter.admit(busy::asMono).toFuture();
+
+        // le script "a" remplit la file bulk avant que "b" et l'utilisateur interactif n'arrivent
+        List<CompletableFuture<String>> pending = new ArrayList<>();
+        for (String name : List.of("a1", "a2", "a3")) {
+            pending.add(call(limiter, order, name, RequestPriority.Level.BULK, "a").toFuture());
+        }
+        pending.add(call(limiter, order, "b1", RequestPriority.Level.BULK, "b").toFuture());
+        pending.add(call(limiter, order, "ui", RequestPriority.Level.INTERACTIVE, "c").toFuture());
+
+        AdmissionLimiter.AdmissionStats stats = limiter.stats();
+        assertEquals(5, stats.queued());
+        assertEquals(4, stats.classes().get("bulk").queued());
+        assertEquals(2, stats.classes().get("bulk").queuedClients());
+        assertEquals(1, stats.classes().get("interactive").queued());
+
+        busy.tryEmitValue("ok");
+        holder.join();
+        pending.forEach(CompletableFuture::join);
+
+        assertEquals(List.of("ui", "a1", "b1", "a2", "a3"), order);
+        assertEquals(4, registry.get("chat.admission.wait").tag("priority", "bulk").timer().count());
+        assertEquals(2, registry.get("chat.admission.wait").tag("priority", "interactive").timer().count());
+        assertEquals(0, limiter.stats().inFlight());
+    }
+
+    @Test
+    void should_keep_headroom_for_interactive_while_bulk_waits() {
+        // limite 4, bulk plafonné à la moitié
+        AdmissionLimiter limiter = new AdmissionLimiter(new AdmissionProperties(true, 4, 4, 4, 10,
+                Duration.ofSeconds(5), 100.0, 0.5, Duration.ofSeconds(2), 8, 1, 0.5, 10, Duration.ofSeconds(5),
+                Duration.ofMinutes(1), Map.of()), registry);
+        List<Sinks.One<String>> sinks = new ArrayList<>();
+        List<CompletableFuture<String>> running = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            Sinks.One<String> s = Sinks.one();
+            sinks.add(s);
+            running.add(limiter.admit(s::asMono)
+                    .contextWrite(new RequestPriority(RequestPriority.Level.BULK, "script").context()).toFuture());
+        }
+        assertEquals(2, limiter.stats().classes().get("bulk").inFlight());
+        assertEquals(1, limiter.stats().classes().get("bulk").queued());
+
+        // les deux places restantes vont à l'interactif, sans attendre le bulk en file
+        for (int i = 0; i < 2; i++) {
+            Sinks.One<String> s = Sinks.one();
+            sinks.add(s);
+            running.add(limiter.admit(s::asMono).toFuture());
+        }
+        assertEquals(4, limiter.stats().inFlight());
+        assertEquals(2, limiter.stats().classes().get("interactive").inFlight());
+        assertEquals(1, limiter.stats().queued());
+
+        sinks.forEach(s -> s.tryEmitValue("ok"));
+        running.forEach(CompletableFuture::join);
+        assertEquals(0, limiter.stats().inFlight());
+        assertEquals(5, limiter.stats().admitted());
+    }
+
+    @Test
+    void should_not_starve_bulk_behind_a_steady_interactive_queue() throws Exception {
+        // poids interactif écrasant, pas de plafond bulk ; vieillissement à 50 ms
+        AdmissionLimiter limiter = new AdmissionLimiter(new AdmissionProperties(true, 1, 1, 1, 10,
+                Duration.ofSeconds(5), 100.0, 0.5, Duration.ofSeconds(2), 1000, 1, 1.0, 10, Duration.ofSeconds(5),
+                Duration.ofMillis(50), Map.of()), registry);
+        List<String> order = new CopyOnWriteArrayList<>();
+        Sinks.One<String> busy = Sinks.one();
+        var holder = limiter.admit(busy::asMono).toFuture();
+
+        List<CompletableFuture<String>> pending = new ArrayList<>();
+        pending.add(call(limiter, order, "bulk", RequestPriority.Level.BULK, "script").toFuture());
+        pending.add(call(limiter, order, "i1", RequestPriority.Level.INTERACTIVE, "user").toFuture());
+        pending.add(call(limiter, order, "i2", RequestPriority.Level.INTERACTIVE, "user").toFuture());
+        Thread.sleep(80);
+
+        busy.tryEmitValue("ok");
+        holder.join();
+        pending.forEach(CompletableFuture::join);
+
+        // le bulk attend depuis plus de starvation-age : il passe devant l'interactif
+        assertEquals(List.of("bulk", "i1", "i2"), order);
+    }
+}
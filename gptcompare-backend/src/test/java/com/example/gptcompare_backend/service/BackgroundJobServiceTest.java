@@ -0,0 +1,243 @@
+package com.example.gptcompare_backend.service;
+
+import com.example.gptcompare_backend.config.BackgroundProperties;
+import com.example.gptcompare_backend.config.RetryProperties;
+import com.example.gptcompare_backend.service.BackgroundJobService.JobStatus;
+import com.example.gptcompare_backend.service.OpenAIService.AiResult;
+import com.example.gptcompare_backend.service.OpenAIService.StreamEvent;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okhttp3.mockwebserver.SocketPolicy;
+import org.junit.jupiter.api.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BackgroundJobServiceTest {
+
+    private MockWebServer server;
+    private OpenAIService service;
+    /** "METHODE chemin" des requêtes reçues, dans l'ordre. */
+    private final List<String> calls = new CopyOnWriteArrayList<>();
+    private final List<String> submitted = new CopyOnWriteArrayList<>();
+    /** Interrogations encore "in_progress" avant "completed". */
+    private final AtomicInteger pendingPolls = new AtomicInteger(2);
+    /** Délai de réponse de l'envoi (POST /v1/responses). */
+    private volatile long submitDelayMs;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = new MockWebServer();
+        // POST /v1/responses → queued ; GET /v1/responses/resp_1 → in_progress puis completed ; POST .../cancel → cancelled
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                calls.add(request.getMethod() + " " + request.getPath());
+                if ("POST".equals(request.getMethod()) && request.getPath().endsWith("/cancel")) {
+                    return json("{\"id\":\"resp_1\",\"status\":\"cancelled\",\"output\":[]}");
+                }
+                if ("POST".equals(request.getMethod())) {
+                    submitted.add(request.getBody().readString(StandardCharsets.UTF_8));
+                    return json("{\"id\":\"resp_1\",\"status\":\"queued\",\"output\":[]}")
+                            .setHeadersDelay(submitDelayMs, TimeUnit.MILLISECONDS);
+                }
+                if (pendingPolls.getAndDecrement() > 0) {
+                    return json("{\"id\":\"resp_1\",\"status\":\"in_progress\",\"output\":[]}");
+                }
+                return json("""
+                    {"id":"resp_1","status":"completed","output":[{"content":[{"type":"output_text","text":"OK"}]}],
+                     "usage":{"input_tokens":3,"output_tokens":40,"total_tokens":43,
+                              "output_tokens_details":{"reasoning_tokens":30}}}
+                """);
+            }
+        });
+        server.start();
+        service = new OpenAIService("test-api-key", server.url("/v1/responses").toString(),
+                "o4-mini", OpenAIService.Dependencies.defaults());
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        server.shutdown();
+    }
+
+    private static MockResponse json(String body) {
+        return new MockResponse().setResponseCode(200).addHeader("Content-Type", "application/json").setBody(body);
+    }
+
+    private static BackgroundProperties props(int maxJobs) {
+        return new BackgroundProperties(true, Duration.ofMillis(20), Duration.ofMillis(40), 2.0, 4,
+                Duration.ofSeconds(10), maxJobs, Duration.ofMinutes(1));
+    }
+
+    private static JobStatus awaitDone(BackgroundJobService jobs, String jobId) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        JobStatus s = jobs.status(jobId);
+        while (!s.isDone() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+            s = jobs.status(jobId);
+        }
+        return s;
+    }
+
+    @Test
+    void should_submit_in_background_mode_and_poll_until_completed() throws Exception {
+        BackgroundJobService jobs = new BackgroundJobService(new ProviderRegistry(service, Map.of()),
+                ResultStore.disabled(), props(10));
+
+        JobStatus accepted = jobs.submit("Démontre le théorème", null, null, 2000).block();
+        assertNotNull(accepted);
+        assertEquals("queued", accepted.status());
+        assertEquals("resp_1", accepted.responseId());
+        assertFalse(accepted.isDone());
+        assertTrue(submitted.get(0).contains("\"background\":true"), submitted.get(0));
+        assertTrue(submitted.get(0).contains("\"store\":true"), submitted.get(0));
+
+        JobStatus done = awaitDone(jobs, accepted.jobId());
+        assertEquals("completed", done.status());
+        assertEquals("OK", done.result().reply());
+        assertEquals(30, done.result().reasoningTokens());
+        assertEquals("o4-mini", done.model());
+        assertEquals(3, done.polls());
+        assertEquals(List.of("POST /v1/responses", "GET /v1/responses/resp_1", "GET /v1/responses/resp_1",
+                "GET /v1/responses/resp_1"), calls);
+
+        BackgroundJobService.JobStats stats = jobs.stats();
+        assertEquals(0, stats.active());
+        assertEquals(1, stats.completed());
+        assertEquals(3, stats.polls());
+    }
+
+    @Test
+    void should_not_resend_a_background_submit_once_the_request_was_sent() throws Exception {
+        MockWebServer upstream = new MockWebServer();
+        upstream.start();
+        try {
+            // 409 configuré comme transitoire : relancé en appel classique, jamais pour une réponse background
+            RetryPolicy retries = new RetryPolicy(new RetryProperties(true, 3, Duration.ofMillis(10),
+                    Duration.ofMillis(20), 0, Set.of(409, 503), Map.of()));
+            OpenAIService retrying = new OpenAIService("test-api-key", upstream.url("/v1/responses").toString(),
+                    "o4-mini", OpenAIService.Dependencies.defaults().retryPolicy(retries));
+            upstream.enqueue(new MockResponse().setResponseCode(503).setBody("{}"));
+            upstream.enqueue(new MockResponse().setResponseCode(409).setBody("{}"));
+            upstream.enqueue(new MockResponse().setSocketPolicy(SocketPolicy.DISCONNECT_AFTER_REQUEST));
+            upstream.enqueue(json("{\"id\":\"resp_2\",\"status\":\"queued\",\"output\":[]}"));
+
+            OpenAIService.BackgroundResponse conflict = retrying.submitBackground("a", null, null, 100).block();
+            assertNotNull(conflict);
+            assertTrue(conflict.isDone());
+            assertTrue(conflict.result().reply().startsWith("Erreur OpenAI HTTP 409:"), conflict.result().reply());
+            assertEquals(2, upstream.getRequestCount());
+
+            // coupure après l'envoi : OpenAI a pu créer la réponse, on ne la double pas
+            OpenAIService.BackgroundResponse cut = retrying.submitBackground("b", null, null, 100).block();
+            assertNotNull(cut);
+            assertTrue(cut.isDone());
+            assertNull(cut.responseId());
+            assertEquals(3, upstream.getRequestCount());
+        } finally {
+            upstream.shutdown();
+        }
+    }
+
+    @Test
+    void should_cancel_the_background_response_upstream() throws Exception {
+        pendingPolls.set(Integer.MAX_VALUE);
+        BackgroundJobService jobs = new BackgroundJobService(new ProviderRegistry(service, Map.of()),
+                ResultStore.disabled(), props(10));
+
+        JobStatus accepted = jobs.submit("Longue question", null, null, null).block();
+        assertNotNull(accepted);
+        assertTrue(jobs.cancel(accepted.jobId()));
+
+        JobStatus cancelled = jobs.status(accepted.jobId());
+        assertEquals("cancelled", cancelled.status());
+        assertTrue(cancelled.isDone());
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!calls.contains("POST /v1/responses/resp_1/cancel") && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(calls.contains("POST /v1/responses/resp_1/cancel"), calls.toString());
+        assertFalse(jobs.cancel("inconnu"));
+        assertNull(jobs.status("inconnu"));
+    }
+
+    @Test
+    void should_cancel_upstream_a_response_accepted_after_the_job_was_cancelled() throws Exception {
+        pendingPolls.set(Integer.MAX_VALUE);
+        submitDelayMs = 300;
+        BackgroundJobService jobs = new BackgroundJobService(new ProviderRegistry(service, Map.of()),
+                ResultStore.disabled(), props(10));
+
+        var accepted = jobs.submit("Longue question", null, null, null).toFuture();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!calls.contains("POST /v1/responses") && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        // annulé avant que l'id soit connu : rien à annuler chez OpenAI pour l'instant
+        String jobId = jobs.jobIds().iterator().next();
+        assertTrue(jobs.cancel(jobId));
+
+        assertEquals("cancelled", accepted.get(5, TimeUnit.SECONDS).status());
+        while (!calls.contains("POST /v1/responses/resp_1/cancel") && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(calls.contains("POST /v1/responses/resp_1/cancel"), calls.toString());
+        Thread.sleep(100);
+        assertFalse(calls.contains("GET /v1/responses/resp_1"), calls.toString());
+        assertEquals("cancelled", jobs.status(jobId).status());
+    }
+
+    @Test
+    void should_run_other_providers_detached_and_bound_running_jobs() throws Exception {
+        ChatProvider slow = new ChatProvider() {
+            @Override
+            public Mono<AiResult> generateReply(String userMessage, String model, Double temperature,
+                                                Integer maxOutputTokens) {
+                return "never".equals(model)
+                        ? Mono.never()
+                        : Mono.just(AiResult.ok("local:" + userMessage, 5, 1, 2, 3).withModel(model, null));
+            }
+
+            @Override
+            public Flux<StreamEvent> streamReply(String userMessage, String model, Double temperature,
+                                                 Integer maxOutputTokens) {
+                return Flux.empty();
+            }
+        };
+        BackgroundJobService jobs = new BackgroundJobService(new ProviderRegistry(service, Map.of("local", slow)),
+                ResultStore.disabled(), props(1));
+
+        JobStatus hanging = jobs.submit("a", "local:never", null, null).block();
+        assertNotNull(hanging);
+        assertEquals("in_progress", hanging.status());
+        assertNull(hanging.responseId());
+
+        // un seul job en cours autorisé : le suivant est refusé (HTTP 503)
+        StepVerifier.create(jobs.submit("b", "local:fast", null, null))
+                .expectError(OverloadedException.class)
+                .verify();
+
+        assertTrue(jobs.cancel(hanging.jobId()));
+        JobStatus fast = jobs.submit("b", "local:fast", null, null).block();
+        assertNotNull(fast);
+        JobStatus done = awaitDone(jobs, fast.jobId());
+        assertEquals("completed", done.status());
+        assertEquals("local:b", done.result().reply());
+        assertEquals("local:fast", done.model());
+        assertTrue(calls.isEmpty());
+    }
+}
@@ -0,0 +1,197 @@
+package com.example.gptcompare_backend.service;
+
+import com.example.gptcompare_backend.dto.ModelSettings;
+import com.example.gptcompare_backend.service.BatchService.LegResult;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.jupiter.api.*;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.*;
+
+class BatchServiceTest {
+
+    private MockWebServer server;
+    private OpenAIService openAI;
+    private BatchService batchService;
+    private final Map<String, AtomicInteger> inFlight = new ConcurrentHashMap<>();
+    private final Map<String, AtomicInteger> maxInFlight = new ConcurrentHashMap<>();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = new MockWebServer();
+        // Écho "<model>:<input>" après 50ms ; "slow" ne répond pas avant 5s ; "err" renvoie 500
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                String body = request.getBody().readString(StandardCharsets.UTF_8);
+                String model = body.replaceAll(".*\"model\"\\s*:\\s*\"([^\"]+)\".*", "$1");
+                String input = body.replaceAll(".*\"input\"\\s*:\\s*\"([^\"]+)\".*", "$1");
+                if (model.equals("slow")) return new MockResponse().setHeadersDelay(5, TimeUnit.SECONDS);
+                if (model.equals("err")) return new MockResponse().setResponseCode(500).setBody("{}");
+
+                int now = inFlight.computeIfAbsent(model, k -> new AtomicInteger()).incrementAndGet();
+                maxInFlight.computeIfAbsent(model, k -> new AtomicInteger()).accumulateAndGet(now, Math::max);
+                Thread.sleep(50);
+                inFlight.get(model).decrementAndGet();
+                return new MockResponse()
+                        .setResponseCode(200)
+                        .addHeader("Content-Type", "application/json")
+                        .setBody("""
+                            {"status":"completed","output":[{"content":[{"type":"output_text","text":"%s:%s"}]}],
+                             "usage":{"input_tokens":3,"output_tokens":2,"total_tokens":5}}
+                        """.formatted(model, input));
+            }
+        });
+        server.start();
+
+        OpenAIService openAIService = new OpenAIService(
+                "test-api-key",
+                server.url("/v1/responses").toString(),
+                "gpt-4.1-mini"
+        );
+        openAI = openAIService;
+        batchService = new BatchService(openAIService, ResultStore.disabled(), 6, 2, 6);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        server.shutdown();
+    }
+
+    private static Flux<DataBuffer> upload(String content) {
+        // découpage arbitraire en petits morceaux : les lignes chevauchent les buffers
+        byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        return Flux.range(0, (bytes.length + 6) / 7).map(i -> DefaultDataBufferFactory.sharedInstance
+                .wrap(java.util.Arrays.copyOfRange(bytes, i * 7, Math.min(bytes.length, i * 7 + 7))));
+    }
+
+    @Test
+    void should_run_every_prompt_on_every_model_with_bounded_concurrency_and_summary() {
+        String jsonl = IntStream.range(0, 10)
+                .mapToObj(i -> "{\"request_id\":\"p-" + i + "\",\"title\":\"t\",\"body\":\"q" + i + "\"}")
+                .reduce("", (a, b) -> a + b + "\n");
+        List<ModelSettings> models = List.of(new ModelSettings("m-a", null, 100), new ModelSettings("m-b", null, 100));
+
+        List<LegResult> events = batchService.run("b1", BatchService.lines(upload(jsonl)), models)
+                .collectList().block(Duration.ofSeconds(10));
+
+        assertNotNull(events);
+        List<LegResult> results = events.stream().filter(e -> e.type().equals("result")).toList();
+        assertEquals(20, results.size());
+        assertTrue(results.stream().anyMatch(e -> "p-3".equals(e.promptId()) && "m-b:q3".equals(e.result().reply())));
+
+        // per-model-concurrency = 2 respecté, les deux modèles en parallèle
+        assertEquals(2, maxInFlight.get("m-a").get());
+        assertEquals(2, maxInFlight.get("m-b").get());
+
+        LegResult summary = events.get(events.size() - 1);
+        assertEquals("summary", summary.type());
+        assertEquals(10, summary.progress().prompts());
+        assertEquals(20, summary.progress().completed());
+        BatchService.ModelSummary a = summary.summary().get(0);
+        assertEquals("m-a", a.model());
+        assertEquals(10, a.calls());
+        assertEquals(0, a.failed());
+        assertEquals(50, a.totalTokens());
+        assertTrue(a.p50LatencyMs() >= 50 && a.p95LatencyMs() >= a.p50LatencyMs(), a.toString());
+    }
+
+    @Test
+    void should_report_invalid_lines_and_failed_calls_without_stopping() {
+        String jsonl = "{\"id\":\"x\",\"prompt\":\"ok\"}\n\n{\"title\":\"sans prompt\"}\ntexte brut\n";
+        List<ModelSettings> models = List.of(new ModelSettings("m-a", null, 100), new ModelSettings("err", null, 100));
+
+        List<LegResult> events = batchService.run("b2", BatchService.lines(upload(jsonl)), models)
+                .collectList().block(Duration.ofSeconds(10));
+
+        assertNotNull(events);
+        assertEquals(1, events.stream().filter(e -> e.type().equals("invalid")).count());
+        assertEquals(4, events.stream().filter(e -> e.type().equals("result")).count());
+        assertTrue(events.stream().anyMatch(e -> "m-a:texte brut".equals(e.result() == null ? null : e.result().reply())));
+
+        LegResult summary = events.get(events.size() - 1);
+        assertEquals(2, summary.progress().failed());
+        assertEquals(2, summary.summary().get(1).failed());
+    }
+
+    @Test
+    void should_summarize_each_settings_column_separately() {
+        List<ModelSettings> models = List.of(new ModelSettings("m-a", 0.0, 100), new ModelSettings("m-a", 1.0, 100),
+                new ModelSettings("m-a", 0.0, 50));
+
+        List<LegResult> events = batchService.run("b5", BatchService.lines(upload("q1\nq2\nq3\n")), models)
+                .collectList().block(Duration.ofSeconds(10));
+
+        assertNotNull(events);
+        List<BatchService.ModelSummary> summary = events.get(events.size() - 1).summary();
+        // trois colonnes du même modèle : trois résumés, chacun avec ses propres appels
+        assertEquals(3, summary.size());
+        assertEquals(List.of(0.0, 1.0, 0.0), summary.stream().map(BatchService.ModelSummary::temperature).toList());
+        assertEquals(List.of(100, 100, 50), summary.stream().map(BatchService.ModelSummary::maxOutputTokens).toList());
+        assertTrue(summary.stream().allMatch(m -> "m-a".equals(m.model()) && m.calls() == 3), summary.toString());
+    }
+
+    @Test
+    void should_record_every_leg_in_history_as_batch() throws Exception {
+        ResultStore store = new ResultStore(new JdbcTemplate(new DriverManagerDataSource(
+                "jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1")), true, 100, 10, Duration.ofMillis(20));
+        BatchService recorded = new BatchService(openAI, store, 6, 2, 6);
+        List<ModelSettings> models = List.of(new ModelSettings("m-a", 0.2, 100), new ModelSettings("err", null, 100));
+
+        recorded.run("b4", BatchService.lines(upload("q1\nq2\n")), models)
+                .collectList().block(Duration.ofSeconds(10));
+
+        await().atMost(Duration.ofSeconds(5)).until(() -> store.stats().written() == 4);
+        StepVerifier.create(store.page(null, 0, 10))
+                .assertNext(p -> {
+                    assertEquals(4, p.total());
+                    assertTrue(p.items().stream().allMatch(e -> "batch".equals(e.source())), p.toString());
+                    assertEquals(2, p.items().stream().filter(e -> "err".equals(e.model())).count());
+                    assertTrue(p.items().stream().anyMatch(e -> "m-a".equals(e.model()) && "q2".equals(e.prompt())
+                            && Double.valueOf(0.2).equals(e.temperature()) && Integer.valueOf(5).equals(e.totalTokens())));
+                })
+                .verifyComplete();
+        store.destroy();
+    }
+
+    @Test
+    void should_cancel_in_flight_batch_and_emit_partial_summary() {
+        String jsonl = "a\nb\nc\n";
+        List<ModelSettings> models = List.of(new ModelSettings("slow", null, 100));
+
+        StepVerifier.create(batchService.run("b3", BatchService.lines(upload(jsonl)), models))
+                .then(() -> {
+                    assertNotNull(batchService.progress("b3"));
+                    assertTrue(batchService.cancel("b3"));
+                })
+                .assertNext(e -> {
+                    assertEquals("summary", e.type());
+                    assertTrue(e.progress().cancelled());
+                    assertEquals(0, e.progress().completed());
+                })
+                .expectComplete()
+                .verify(Duration.ofSeconds(3));
+
+        assertNull(batchService.progress("b3"));
+        assertFalse(batchService.cancel("b3"));
+    }
+}
@@ -0,0 +1,106 @@
+package com.example.gptcompare_backend.service;
+
+import com.example.gptcompare_backend.config.ProvidersProperties.ChatCompletionsEndpoint;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.netty.http.client.HttpClient;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChatCompletionsProviderTest {
+
+    private MockWebServer server;
+    private ChatCompletionsProvider provider;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = new MockWebServer();
+        server.start();
+        provider = new ChatCompletionsProvider("local",
+                new ChatCompletionsEndpoint(server.url("/v1/chat/completions").toString(), "k", Duration.ofSeconds(5)),
+                HttpClient.create(), UpstreamMetrics.noop());
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        server.shutdown();
+    }
+
+    @Test
+    void should_map_chat_completion_and_flag_length_as_truncated() throws Exception {
+        server.enqueue(new MockResponse()
+                .setResponseCode(200)
+                .addHeader("Content-Type", "application/json")
+                .setBody("""
+                        {"id":"x","choices":[{"index":0,"message":{"role":"assistant","content":"Bonjour"},
+                          "finish_reason":"length"}],
+                         "usage":{"prompt_tokens":3,"completion_tokens":5,"total_tokens":8}}
+                        """));
+
+        StepVerifier.create(provider.generateReply("Salut", "llama3", 0.3, 5))
+                .assertNext(r -> {
+                    assertEquals("Bonjour", r.reply());
+                    assertTrue(r.truncated());
+                    assertEquals(3, r.inputTokens());
+                    assertEquals(5, r.outputTokens());
+                    assertEquals(8, r.totalTokens());
+                })
+                .verifyComplete();
+
+        RecordedRequest req = server.takeRequest();
+        String body = req.getBody().readUtf8();
+        assertEquals("Bearer k", req.getHeader("Authorization"));
+        assertTrue(body.contains("\"max_tokens\":5"), body);
+        assertTrue(body.contains("\"messages\":[{"), body);
+    }
+
+    @Test
+    void should_stream_deltas_and_read_usage_from_last_chunk() {
+        server.enqueue(new MockResponse()
+                .setResponseCode(200)
+                .addHeader("Content-Type", "text/event-stream")
+                .setBody("""
+                        data: {"choices":[{"delta":{"role":"assistant"}}]}
+
+                        data: {"choices":[{"delta":{"content":"Bon"}}]}
+
+                        data: {"choices":[{"delta":{"content":"jour"},"finish_reason":"stop"}]}
+
+                        data: {"choices":[],"usage":{"prompt_tokens":2,"completion_tokens":2,"total_tokens":4}}
+
+                        data: [DONE]
+
+                        """));
+
+        StepVerifier.create(provider.streamReply("Salut", "llama3", null, 50))
+                .assertNext(e -> assertEquals("Bon", e.delta()))
+                .assertNext(e -> assertEquals("jour", e.delta()))
+                .assertNext(e -> {
+                    assertTrue(e.isFinal());
+                    assertEquals("Bonjour", e.result().reply());
+                    assertFalse(e.result().truncated());
+                    assertEquals(4, e.result().totalTokens());
+                    assertNotNull(e.result().ttftMs());
+                })
+                .verifyComplete();
+    }
+
+    @Test
+    void should_turn_http_error_into_error_result() {
+        server.enqueue(new MockResponse().setResponseCode(500).setBody("boom"));
+
+        StepVerifier.create(provider.generateReply("Salut", "llama3", null, null))
+                .assertNext(r -> {
+                    assertTrue(r.reply().startsWith("Erreur local HTTP 500"), r.reply());
+                    assertNull(r.totalTokens());
+                })
+                .verifyComplete();
+    }
+}
@@ -0,0 +1,102 @@
+package com.example.gptcompare_backend.service;
+
+import com.example.gptcompare_backend.dto.ModelSettings;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.jupiter.api.*;
+import reactor.test.StepVerifier;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompareServiceTest {
+
+    private MockWebServer server;
+    private CompareService compareService;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = new MockWebServer();
+        // Répond "<model>" en écho ; "slow-*" met 5s à répondre, les autres 300ms
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                String body = request.getBody().readString(StandardCharsets.UTF_8);
+                String model = body.replaceAll(".*\"model\"\\s*:\\s*\"([^\"]+)\".*", "$1");
+                if (model.startsWith("slow")) {
+                    return new MockResponse().setHeadersDelay(5, TimeUnit.SECONDS);
+                }
+                maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                Thread.sleep(300);
+                inFlight.decrementAndGet();
+                return new MockResponse()
+                        .setResponseCode(200)
+                        .addHeader("Content-Type", "application/json")
+                        .setBody("""
+                            {"status":"completed","output":[{"content":[{"type":"output_text","text":"%s"}]}]}
+                        """.formatted(model));
+            }
+        });
+        server.start();
+
+        OpenAIService openAIService = new OpenAIService(
+                "test-api-key",
+                server.url("/v1/responses").toString(),
+                "gpt-4.1-mini"
+        );
+        compareService = new CompareService(openAIService, Duration.ofSeconds(2), 6);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        server.shutdown();
+    }
+
+    @Test
+    void should_fan_out_in_parallel_and_keep_request_order() {
+        List<ModelSettings> models = List.of(
+                new ModelSettings("m-a", 0.2, 100),
+                new ModelSettings("m-b", null, 100),
+                new ModelSettings("m-c", null, 100),
+                new ModelSettings("m-d", null, 100)
+        );
+
+        StepVerifier.create(compareService.compare("Salut", models))
+                .assertNext(c -> {
+                    assertEquals(List.of("m-a", "m-b", "m-c", "m-d"),
+                            c.results().stream().map(OpenAIService.AiResult::reply).toList());
+                    assertTrue(c.totalLatencyMs() >= 300, "totalLatencyMs=" + c.totalLatencyMs());
+                })
+                .verifyComplete();
+
+        assertEquals(4, server.getRequestCount());
+        // les 4 appels amont ont été en vol en même temps (pas de séquentiel)
+        assertEquals(4, maxInFlight.get());
+    }
+
+    @Test
+    void should_time_out_slow_leg_without_failing_the_others() {
+        List<ModelSettings> models = List.of(
+                new ModelSettings("m-fast", null, 100),
+                new ModelSettings("slow-model", null, 100)
+        );
+
+        StepVerifier.create(compareService.compare("Salut", models))
+                .assertNext(c -> {
+                    assertEquals("m-fast", c.results().get(0).reply());
+                    assertTrue(c.results().get(1).reply().startsWith("Erreur: délai dépassé"),
+                            c.results().get(1).reply());
+                    assertTrue(c.totalLatencyMs() < 4000, "totalLatencyMs=" + c.totalLatencyMs());
+                })
+                .verifyComplete();
+    }
+}
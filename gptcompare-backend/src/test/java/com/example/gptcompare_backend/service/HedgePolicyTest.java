@@ -0,0 +1,121 @@
+package com.example.gptcompare_backend.service;
+
+import com.example.gptcompare_backend.config.HedgeProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.jupiter.api.*;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HedgePolicyTest {
+
+    private MockWebServer server;
+    private SimpleMeterRegistry registry;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = new MockWebServer();
+        server.start();
+        registry = new SimpleMeterRegistry();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        server.shutdown();
+    }
+
+    private OpenAIService service(HedgePolicy hedgePolicy) {
+        return new OpenAIService("test-api-key", server.url("/v1/responses").toString(), "gpt-4.1-mini",
+                OpenAIService.Dependencies.defaults()
+                        .metrics(new UpstreamMetrics(registry))
+                        .hedgePolicy(hedgePolicy));
+    }
+
+    /** Délai = latence observée bornée à [50ms, 100ms], dès le premier échantillon. */
+    private HedgePolicy policy(int minSamples, double maxHedgeRate, int burst) {
+        return new HedgePolicy(new HedgeProperties(true, 0.5, Duration.ofMillis(50), Duration.ofMillis(100),
+                10, minSamples, maxHedgeRate, burst, 1000), new UpstreamMetrics(registry));
+    }
+
+    private static MockResponse ok(String text) {
+        return new MockResponse().setResponseCode(200)
+                .addHeader("Content-Type", "application/json")
+                .setBody("""
+                    {"status":"completed","output":[{"content":[{"type":"output_text","text":"%s"}]}],
+                     "usage":{"input_tokens":1,"output_tokens":1,"total_tokens":2}}
+                """.formatted(text));
+    }
+
+    private double hedges(String outcome) {
+        var c = registry.find("openai.upstream.hedges").tags("model", "gpt-4.1-mini", "outcome", outcome).counter();
+        return c == null ? 0 : c.count();
+    }
+
+    @Test
+    void should_answer_with_the_hedge_when_the_first_attempt_is_slow() {
+        HedgePolicy policy = policy(1, 1, 5);
+        OpenAIService service = service(policy);
+
+        server.enqueue(ok("amorce"));
+        StepVerifier.create(service.generateReply("Test", null, null, 100))
+                .assertNext(r -> assertEquals("amorce", r.reply()))
+                .verifyComplete();
+
+        server.enqueue(ok("lent").setHeadersDelay(3, TimeUnit.SECONDS));
+        server.enqueue(ok("rapide"));
+        StepVerifier.create(service.generateReply("Test", null, null, 100))
+                .assertNext(r -> {
+                    assertEquals("rapide", r.reply());
+                    assertTrue(r.latencyMs() < 2000);
+                })
+                .verifyComplete();
+
+        HedgePolicy.HedgeStats stats = policy.stats().get("gpt-4.1-mini");
+        assertEquals(2, stats.calls());
+        assertEquals(1, stats.hedged());
+        assertEquals(1, stats.wins());
+        assertEquals(1, hedges("sent"));
+        assertEquals(1, hedges("won"));
+    }
+
+    @Test
+    void should_not_hedge_without_budget() {
+        HedgePolicy policy = policy(1, 0, 0);
+        OpenAIService service = service(policy);
+
+        server.enqueue(ok("amorce"));
+        server.enqueue(ok("lent").setHeadersDelay(300, TimeUnit.MILLISECONDS));
+        StepVerifier.create(service.generateReply("Test", null, null, 100)).expectNextCount(1).verifyComplete();
+        StepVerifier.create(service.generateReply("Test", null, null, 100))
+                .assertNext(r -> assertEquals("lent", r.reply()))
+                .verifyComplete();
+
+        HedgePolicy.HedgeStats stats = policy.stats().get("gpt-4.1-mini");
+        assertEquals(0, stats.hedged());
+        assertEquals(1, stats.denied());
+        assertEquals(1, hedges("denied"));
+        assertEquals(2, server.getRequestCount());
+    }
+
+    @Test
+    void should_wait_for_min_samples_before_hedging() {
+        HedgePolicy policy = policy(5, 1, 5);
+        OpenAIService service = service(policy);
+
+        server.enqueue(ok("lent").setHeadersDelay(300, TimeUnit.MILLISECONDS));
+        StepVerifier.create(service.generateReply("Test", null, null, 100))
+                .assertNext(r -> assertEquals("lent", r.reply()))
+                .verifyComplete();
+
+        HedgePolicy.HedgeStats stats = policy.stats().get("gpt-4.1-mini");
+        assertNull(stats.delayMs());
+        assertEquals(1, stats.samples());
+        assertEquals(0, stats.hedged());
+        assertEquals(1, server.getRequestCount());
+    }
+}
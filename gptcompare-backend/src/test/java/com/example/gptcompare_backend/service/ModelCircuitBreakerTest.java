@@ -0,0 +1,212 @@
+package com.example.gptcompare_backend.service;
+
+import com.example.gptcompare_backend.config.CircuitBreakerProperties;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.jupiter.api.*;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ModelCircuitBreakerTest {
+
+    private MockWebServer server;
+    private ModelCircuitBreaker breaker;
+    private OpenAIService service;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = new MockWebServer();
+        server.start();
+
+        // fenêtre de 4 appels, évaluée dès 2, ouverte à 50 % d'échecs pendant 200ms, 1 appel de test
+        breaker = new ModelCircuitBreaker(new CircuitBreakerProperties(
+                true, 4, 2, 0.5, Duration.ofSeconds(10), 1.0, Duration.ofMillis(200), 1,
+                Map.of("gpt-5", "gpt-5-mini"), 1000
+        ));
+        service = new OpenAIService("test-api-key", server.url("/v1/responses").toString(), "gpt-4.1-mini",
+                OpenAIService.Dependencies.defaults().circuitBreaker(breaker));
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        server.shutdown();
+    }
+
+    private static MockResponse ok(String text) {
+        return new MockResponse().setResponseCode(200)
+                .addHeader("Content-Type", "application/json")
+                .setBody("""
+                    {"status":"completed","output":[{"content":[{"type":"output_text","text":"%s"}]}]}
+                """.formatted(text));
+    }
+
+    private static MockResponse error(int code) {
+        return new MockResponse().setResponseCode(code)
+                .addHeader("Content-Type", "application/json")
+                .setBody("{\"error\":\"boom\"}");
+    }
+
+    @Test
+    void should_open_after_failures_and_fail_fast_without_upstream_call() {
+        server.enqueue(error(503));
+        server.enqueue(error(500));
+
+        StepVerifier.create(service.generateReply("Test", null, null, 100))
+                .assertNext(r -> assertTrue(r.reply().startsWith("Erreur OpenAI HTTP 503"), r.reply()))
+                .verifyComplete();
+        StepVerifier.create(service.generateReply("Test", null, null, 100))
+                .assertNext(r -> assertTrue(r.reply().startsWith("Erreur OpenAI HTTP 500"), r.reply()))
+                .verifyComplete();
+
+        assertEquals(ModelCircuitBreaker.State.OPEN, breaker.stats().get("gpt-4.1-mini").state());
+
+        StepVerifier.create(service.generateReply("Test", null, null, 100))
+                .assertNext(r -> {
+                    assertTrue(r.reply().startsWith("Erreur:"), r.reply());
+                    assertEquals("gpt-4.1-mini", r.model());
+                })
+                .verifyComplete();
+
+        // le 3e appel n'a pas atteint l'amont
+        assertEquals(2, server.getRequestCount());
+        assertEquals(1, breaker.stats().get("gpt-4.1-mini").rejected());
+    }
+
+    @Test
+    void should_keep_one_breaker_per_model_and_forget_closed_ones_beyond_the_cap() {
+        ModelCircuitBreaker bounded = new ModelCircuitBreaker(new CircuitBreakerProperties(
+                true, 4, 2, 0.5, Duration.ofSeconds(10), 1.0, Duration.ofSeconds(30), 1, Map.of(), 2));
+        for (int i = 0; i < 2; i++) {
+            assertTrue(bounded.tryAcquire("inconnu-a"));
+            bounded.onFailure("inconnu-a", Duration.ofMillis(5));
+        }
+        assertTrue(bounded.tryAcquire("inconnu-b"));
+        bounded.onSuccess("inconnu-b", Duration.ofMillis(5));
+
+        // un modèle inconnu en panne n'ouvre pas le circuit des autres
+        assertFalse(bounded.tryAcquire("inconnu-a"));
+        assertTrue(bounded.tryAcquire("inconnu-c"));
+        bounded.onSuccess("inconnu-c", Duration.ofMillis(5));
+
+        // plafond de 2 : le circuit fermé de "inconnu-b" est oublié, pas le circuit ouvert
+        assertEquals(Set.of("inconnu-a", "inconnu-c"), bounded.stats().keySet());
+        assertEquals(ModelCircuitBreaker.State.OPEN, bounded.stats().get("inconnu-a").state());
+    }
+
+    @Test
+    void should_route_to_fallback_model_while_open() throws Exception {
+        server.enqueue(error(502));
+        server.enqueue(error(502));
+        server.enqueue(ok("repli"));
+
+        for (int i = 0; i < 2; i++) {
+            StepVerifier.create(service.generateReply("Test", "gpt-5", null, 100))
+                    .expectNextCount(1)
+                    .verifyComplete();
+        }
+        server.takeRequest();
+        server.takeRequest();
+
+        StepVerifier.create(service.generateReply("Test", "gpt-5", null, 100))
+                .assertNext(r -> {
+                    assertEquals("repli", r.reply());
+                    assertEquals("gpt-5-mini", r.model());
+                    assertEquals("gpt-5", r.fallbackFrom());
+                })
+                .verifyComplete();
+
+        assertTrue(server.takeRequest().getBody().readUtf8().contains("\"model\":\"gpt-5-mini\""));
+    }
+
+    @Test
+    void should_close_after_successful_half_open_probe() throws Exception {
+        server.enqueue(error(503));
+        server.enqueue(error(503));
+        server.enqueue(ok("OK"));
+
+        for (int i = 0; i < 2; i++) {
+            StepVerifier.create(service.generateReply("Test", null, null, 100))
+                    .expectNextCount(1)
+                    .verifyComplete();
+        }
+        assertEquals(ModelCircuitBreaker.State.OPEN, breaker.stats().get("gpt-4.1-mini").state());
+
+        Thread.sleep(250);
+
+        StepVerifier.create(service.generateReply("Test", null, null, 100))
+                .assertNext(r -> assertEquals("OK", r.reply()))
+                .verifyComplete();
+
+        assertEquals(ModelCircuitBreaker.State.CLOSED, breaker.stats().get("gpt-4.1-mini").state());
+        assertEquals(3, server.getRequestCount());
+    }
+
+    @Test
+    void should_not_count_client_errors() {
+        for (int i = 0; i < 3; i++) {
+            server.enqueue(error(400));
+            StepVerifier.create(service.generateReply("Test", null, null, 100))
+                    .assertNext(r -> assertTrue(r.reply().startsWith("Erreur OpenAI HTTP 400"), r.reply()))
+                    .verifyComplete();
+        }
+
+        assertTrue(breaker.tryAcquire("gpt-4.1-mini"));
+        assertEquals(3, server.getRequestCount());
+    }
+
+    @Test
+    void should_count_failed_bodies_and_stream_error_endings_as_failures() {
+        server.enqueue(new MockResponse().setResponseCode(200)
+                .addHeader("Content-Type", "application/json")
+                .setBody("{\"status\":\"failed\",\"error\":{\"message\":\"server_error\"}}"));
+        server.enqueue(new MockResponse().setResponseCode(200)
+                .addHeader("Content-Type", "text/event-stream")
+                .setBody("""
+                    event: error
+                    data: {"type":"error","message":"overloaded"}
+
+                    """));
+
+        StepVerifier.create(service.generateReply("Test", null, null, 100))
+                .expectNextCount(1)
+                .verifyComplete();
+        StepVerifier.create(service.streamReply("Test", null, null, 100))
+                .assertNext(e -> assertTrue(e.isFinal()))
+                .verifyComplete();
+
+        // HTTP 200 dans les deux cas, mais le modèle a échoué : le disjoncteur s'ouvre
+        assertEquals(ModelCircuitBreaker.State.OPEN, breaker.stats().get("gpt-4.1-mini").state());
+    }
+
+    @Test
+    void should_end_a_truncated_stream_with_an_error_event_counted_as_failure() {
+        // flux fermé après un delta, sans response.completed / incomplete / failed / error
+        for (int i = 0; i < 2; i++) {
+            server.enqueue(new MockResponse().setResponseCode(200)
+                    .addHeader("Content-Type", "text/event-stream")
+                    .setBody("""
+                        event: response.output_text.delta
+                        data: {"type":"response.output_text.delta","delta":"Bon"}
+
+                        """));
+        }
+
+        for (int i = 0; i < 2; i++) {
+            StepVerifier.create(service.streamReply("Test", null, null, 100))
+                    .assertNext(e -> assertEquals("Bon", e.delta()))
+                    .assertNext(e -> {
+                        assertTrue(e.isFinal());
+                        assertTrue(e.result().reply().startsWith("Erreur: flux OpenAI interrompu"), e.result().reply());
+                        assertEquals("gpt-4.1-mini", e.result().model());
+                    })
+                    .verifyComplete();
+        }
+
+        assertEquals(ModelCircuitBreaker.State.OPEN, breaker.stats().get("gpt-4.1-mini").state());
+    }
+}
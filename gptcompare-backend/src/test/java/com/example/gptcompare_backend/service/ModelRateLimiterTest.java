@@ -0,0 +1,236 @@
+package com.example.gptcompare_backend.service;
+
+import com.example.gptcompare_backend.config.RateLimitProperties;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.jupiter.api.*;
+import org.springframework.http.HttpHeaders;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ModelRateLimiterTest {
+
+    private static RateLimitProperties props(int rpm, long tpm, int maxConcurrent, Duration maxWait) {
+        return props(rpm, tpm, maxConcurrent, maxWait, 1000);
+    }
+
+    private static RateLimitProperties props(int rpm, long tpm, int maxConcurrent, Duration maxWait, int maxModels) {
+        return new RateLimitProperties(true, rpm, tpm, maxConcurrent, maxWait, Duration.ofSeconds(2),
+                Map.of("special", new RateLimitProperties.ModelLimits(1, null, null)), maxModels);
+    }
+
+    private static ModelRateLimiter limiter(int rpm, long tpm, int maxConcurrent, Duration maxWait) {
+        return new ModelRateLimiter(props(rpm, tpm, maxConcurrent, maxWait));
+    }
+
+    /** Limiteur sur horloge simulée : aucune recharge hors des avances explicites de clock. */
+    private static ModelRateLimiter limiter(int rpm, long tpm, int maxConcurrent, Duration maxWait, AtomicLong clock) {
+        return new ModelRateLimiter(props(rpm, tpm, maxConcurrent, maxWait), clock::get);
+    }
+
+    @Test
+    void should_reject_fast_when_request_budget_is_exhausted() {
+        ModelRateLimiter rl = limiter(2, 100_000, 10, Duration.ZERO);
+
+        assertNotNull(rl.acquire("m", 10).block());
+        assertNotNull(rl.acquire("m", 10).block());
+        StepVerifier.create(rl.acquire("m", 10))
+                .expectErrorSatisfies(e -> {
+                    assertInstanceOf(RateLimitExceededException.class, e);
+                    assertEquals("m", ((RateLimitExceededException) e).getModel());
+                    assertTrue(((RateLimitExceededException) e).getRetryAfter().toMillis() > 0);
+                })
+                .verify();
+
+        // budgets indépendants par modèle
+        assertNotNull(rl.acquire("autre", 10).block());
+        assertEquals(1, rl.stats().get("m").rejected());
+    }
+
+    @Test
+    void should_reject_when_token_budget_is_exhausted_and_apply_model_override() {
+        ModelRateLimiter rl = limiter(100, 1_000, 10, Duration.ZERO);
+
+        assertNotNull(rl.acquire("m", 800).block());
+        StepVerifier.create(rl.acquire("m", 800))
+                .expectError(RateLimitExceededException.class)
+                .verify();
+
+        // surcharge : 1 requête/min pour "special-*"
+        assertNotNull(rl.acquire("special-model", 1).block());
+        StepVerifier.create(rl.acquire("special-model", 1))
+                .expectError(RateLimitExceededException.class)
+                .verify();
+    }
+
+    @Test
+    void should_keep_budgets_per_model_and_forget_idle_ones_beyond_the_cap() {
+        ModelRateLimiter rl = new ModelRateLimiter(props(100, 100_000, 10, Duration.ZERO, 2));
+
+        ModelRateLimiter.Permit busy = rl.acquire("a", 10).block();
+        assertNotNull(busy);
+        rl.acquire("b", 10).block().release();
+        // surcharge par préfixe appliquée dès le premier appel d'un modèle jamais vu
+        assertNotNull(rl.acquire("special-x", 1).block());
+        StepVerifier.create(rl.acquire("special-x", 1))
+                .expectError(RateLimitExceededException.class)
+                .verify();
+
+        // plafond de 2 : "b", au repos, est oublié ; "a" garde son appel en cours
+        assertEquals(Set.of("a", "special-x"), rl.stats().keySet());
+        assertEquals(1, rl.stats().get("a").inFlight());
+        busy.release();
+    }
+
+    @Test
+    void should_queue_when_budget_refills_within_max_wait() throws Exception {
+        // 600 req/min = 1 requête toutes les 100ms
+        AtomicLong clock = new AtomicLong();
+        ModelRateLimiter rl = limiter(600, 1_000_000, 1000, Duration.ofSeconds(1), clock);
+        for (int i = 0; i < 600; i++) rl.acquire("m", 1).block().release();
+
+        long start = System.nanoTime();
+        CompletableFuture<ModelRateLimiter.Permit> next = rl.acquire("m", 1).toFuture();
+        clock.addAndGet(Duration.ofMillis(100).toNanos());
+        assertNotNull(next.get(2, TimeUnit.SECONDS));
+        long waitedMs = Duration.ofNanos(System.nanoTime() - start).toMillis();
+        assertTrue(waitedMs >= 50, "waitedMs=" + waitedMs);
+    }
+
+    @Test
+    void should_hand_over_concurrency_slot_to_waiter_on_release() {
+        ModelRateLimiter rl = limiter(1000, 1_000_000, 1, Duration.ofSeconds(2));
+
+        ModelRateLimiter.Permit first = rl.acquire("m", 1).block();
+        CompletableFuture<ModelRateLimiter.Permit> second = rl.acquire("m", 1).toFuture();
+
+        assertFalse(second.isDone());
+        assertEquals(1, rl.stats().get("m").queued());
+
+        first.release();
+        first.release(); // idempotent
+        ModelRateLimiter.Permit p2 = second.join();
+        assertEquals(1, rl.stats().get("m").inFlight());
+
+        p2.release();
+        assertEquals(0, rl.stats().get("m").inFlight());
+    }
+
+    @Test
+    void should_hand_over_released_slot_to_interactive_before_bulk() {
+        ModelRateLimiter rl = limiter(1000, 1_000_000, 1, Duration.ofSeconds(2));
+        ModelRateLimiter.Permit holder = rl.acquire("m", 1).block();
+
+        // le bulk attend depuis plus longtemps, l'interactif passe quand même devant
+        CompletableFuture<ModelRateLimiter.Permit> bulk = rl.acquire("m", 1)
+                .contextWrite(RequestPriority::bulk).toFuture();
+        CompletableFuture<ModelRateLimiter.Permit> interactive = rl.acquire("m", 1).toFuture();
+        assertEquals(2, rl.stats().get("m").queued());
+
+        holder.release();
+        ModelRateLimiter.Permit p = interactive.join();
+        assertFalse(bulk.isDone());
+
+        p.release();
+        bulk.join().release();
+        assertEquals(0, rl.stats().get("m").inFlight());
+    }
+
+    @Test
+    void should_reject_waiter_after_max_wait_on_concurrency() {
+        ModelRateLimiter rl = limiter(1000, 1_000_000, 1, Duration.ofMillis(100));
+        assertNotNull(rl.acquire("m", 1).block());
+
+        StepVerifier.create(rl.acquire("m", 1))
+                .expectError(RateLimitExceededException.class)
+                .verify(Duration.ofSeconds(2));
+        assertEquals(0, rl.stats().get("m").queued());
+    }
+
+    @Test
+    void should_refund_the_reservation_when_the_slot_is_not_obtained() {
+        ModelRateLimiter rl = limiter(60, 6_000, 1, Duration.ofMillis(100), new AtomicLong());
+        ModelRateLimiter.Permit holder = rl.acquire("m", 1000).block();
+        assertNotNull(holder);
+
+        // délai dépassé en attente de place : rien n'est parti, le budget revient
+        StepVerifier.create(rl.acquire("m", 4000))
+                .expectError(RateLimitExceededException.class)
+                .verify(Duration.ofSeconds(2));
+        ModelRateLimiter.ModelStats afterTimeout = rl.stats().get("m");
+        assertEquals(5000, afterTimeout.tokensAvailable());
+        assertEquals(59, afterTimeout.requestsAvailable());
+
+        // abonné parti pendant l'attente : idem
+        var waiting = rl.acquire("m", 4000).subscribe();
+        assertEquals(1, rl.stats().get("m").queued());
+        waiting.dispose();
+        ModelRateLimiter.ModelStats afterCancel = rl.stats().get("m");
+        assertEquals(0, afterCancel.queued());
+        assertEquals(5000, afterCancel.tokensAvailable());
+        assertEquals(59, afterCancel.requestsAvailable());
+
+        holder.release();
+        assertEquals(0, rl.stats().get("m").inFlight());
+    }
+
+    @Test
+    void should_shrink_headroom_from_provider_headers() {
+        ModelRateLimiter rl = limiter(1000, 1_000_000, 10, Duration.ZERO, new AtomicLong());
+        assertNotNull(rl.acquire("m", 1).block());
+
+        HttpHeaders h = new HttpHeaders();
+        h.add("x-ratelimit-remaining-requests", "0");
+        h.add("x-ratelimit-remaining-tokens", "5000");
+        rl.observe("m", h);
+
+        assertTrue(rl.stats().get("m").tokensAvailable() <= 5001);
+        StepVerifier.create(rl.acquire("m", 1))
+                .expectError(RateLimitExceededException.class)
+                .verify();
+    }
+
+    @Test
+    void should_propagate_rejection_from_generate_reply_and_release_slots() throws Exception {
+        MockWebServer server = new MockWebServer();
+        server.start();
+        try {
+            server.enqueue(new MockResponse().setResponseCode(200)
+                    .addHeader("Content-Type", "application/json")
+                    .setBody("""
+                        {"status":"completed","output":[{"content":[{"type":"output_text","text":"OK"}]}]}
+                    """));
+            ModelRateLimiter rl = limiter(1, 1_000_000, 5, Duration.ZERO);
+            OpenAIService service = new OpenAIService("test-api-key", server.url("/v1/responses").toString(),
+                    "gpt-4.1-mini", OpenAIService.Dependencies.defaults()
+                            .singleFlight(false)
+                            .rateLimiter(rl));
+
+            StepVerifier.create(service.generateReply("A", null, null, 10))
+                    .assertNext(r -> assertEquals("OK", r.reply()))
+                    .verifyComplete();
+            StepVerifier.create(service.generateReply("B", null, null, 10))
+                    .expectError(RateLimitExceededException.class)
+                    .verify();
+
+            assertEquals(1, server.getRequestCount());
+            assertEquals(0, rl.stats().get("gpt-4.1-mini").inFlight());
+        } finally {
+            server.shutdown();
+        }
+    }
+
+    @Test
+    void should_estimate_tokens_from_input_and_max_output() {
+        assertEquals(100, ModelRateLimiter.estimateTokens(null, 100));
+        assertEquals(103, ModelRateLimiter.estimateTokens("0123456789", 100));
+    }
+}
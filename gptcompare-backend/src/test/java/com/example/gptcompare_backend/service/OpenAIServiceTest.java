@@ -295,4 +295,81 @@ class OpenAIServiceTest {
                 })
                 .verifyComplete();
     }
+
+    @Test
+    void should_stream_deltas_then_final_result_with_ttft_and_usage() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(200)
+                .addHeader("Content-Type", "text/event-stream")
+                .setBody("""
+                    event: response.created
+                    data: {"type":"response.created","response":{"status":"in_progress"}}
+
+                    event: response.output_text.delta
+                    data: {"type":"response.output_text.delta","delta":"Bon"}
+
+                    event: response.output_text.delta
+                    data: {"type":"response.output_text.delta","delta":"jour !"}
+
+                    event: response.completed
+                    data: {"type":"response.completed","response":{"status":"completed","output":[{"content":[{"type":"output_text","text":"Bonjour !"}]}],"usage":{"input_tokens":5,"output_tokens":3,"total_tokens":8}}}
+
+                    """));
+
+        StepVerifier.create(service.streamReply("Salut", null, null, 50))
+                .assertNext(e -> assertEquals("Bon", e.delta()))
+                .assertNext(e -> assertEquals("jour !", e.delta()))
+                .assertNext(e -> {
+                    assertTrue(e.isFinal());
+                    assertEquals("Bonjour !", e.result().reply());
+                    assertEquals(5, e.result().inputTokens());
+                    assertEquals(3, e.result().outputTokens());
+                    assertEquals(8, e.result().totalTokens());
+                    assertFalse(e.result().truncated());
+                    assertNotNull(e.result().ttftMs());
+                    assertTrue(e.result().ttftMs() <= e.result().latencyMs());
+                })
+                .verifyComplete();
+
+        var req = server.takeRequest(1, TimeUnit.SECONDS);
+        JsonNode json = om.readTree(req.getBody().readString(StandardCharsets.UTF_8));
+        assertTrue(json.get("stream").asBoolean());
+        assertEquals(50, json.get("max_output_tokens").asInt());
+    }
+
+    @Test
+    void should_stream_truncation_on_incomplete_event() {
+        server.enqueue(new MockResponse().setResponseCode(200)
+                .addHeader("Content-Type", "text/event-stream")
+                .setBody("""
+                    data: {"type":"response.output_text.delta","delta":"Début"}
+
+                    data: {"type":"response.incomplete","response":{"status":"incomplete","incomplete_details":{"reason":"max_output_tokens"},"output":[],"usage":{"output_tokens":10}}}
+
+                    """));
+
+        StepVerifier.create(service.streamReply("Long", null, null, 10))
+                .assertNext(e -> assertEquals("Début", e.delta()))
+                .assertNext(e -> {
+                    assertEquals("Début", e.result().reply());
+                    assertTrue(e.result().truncated());
+                    assertEquals("max_output_tokens", e.result().truncateReason());
+                })
+                .verifyComplete();
+    }
+
+    @Test
+    void should_stream_single_error_event_on_http_error() {
+        server.enqueue(new MockResponse()
+                .setResponseCode(401)
+                .addHeader("Content-Type", "application/json")
+                .setBody("{\"error\":\"unauthorized\"}"));
+
+        StepVerifier.create(service.streamReply("Test", null, null, 100))
+                .assertNext(e -> {
+                    assertTrue(e.isFinal());
+                    assertTrue(e.result().reply().startsWith("Erreur OpenAI HTTP 401:"), e.result().reply());
+                    assertNull(e.result().ttftMs());
+                })
+                .verifyComplete();
+    }
 }
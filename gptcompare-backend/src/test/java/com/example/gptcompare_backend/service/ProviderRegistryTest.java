@@ -0,0 +1,103 @@
+package com.example.gptcompare_backend.service;
+
+import com.example.gptcompare_backend.config.ProvidersProperties;
+import com.example.gptcompare_backend.service.OpenAIService.AiResult;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProviderRegistryTest {
+
+    private MockWebServer server;
+    private ProviderRegistry registry;
+
+    /** Stub rapide : TTFT 20ms constant, 10 tokens exactement, 1000 tokens/s. */
+    private static final ProvidersProperties.Stub FAST_STUB =
+            new ProvidersProperties.Stub(true, Duration.ofMillis(20), 0, 10, 0, 1000, 7);
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = new MockWebServer();
+        server.start();
+        OpenAIService openAI = new OpenAIService("test-api-key", server.url("/v1/responses").toString(), "gpt-4.1-mini");
+        registry = new ProviderRegistry(openAI,
+                Map.of("stub", new StubProvider("stub", FAST_STUB, UpstreamMetrics.noop())));
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        server.shutdown();
+    }
+
+    @Test
+    void should_route_prefixed_model_to_registered_provider_without_calling_openai() {
+        StepVerifier.create(registry.generateReply("Salut", "stub:fake-7b", null, 100))
+                .assertNext(r -> {
+                    assertEquals("stub:fake-7b", r.model());
+                    assertEquals(10, r.outputTokens());
+                    assertFalse(r.truncated());
+                    assertTrue(r.latencyMs() >= 20, "latency=" + r.latencyMs());
+                })
+                .verifyComplete();
+        assertEquals(0, server.getRequestCount());
+    }
+
+    @Test
+    void should_keep_unknown_prefix_on_openai() throws Exception {
+        server.enqueue(new MockResponse()
+                .setResponseCode(200)
+                .addHeader("Content-Type", "application/json")
+                .setBody("""
+                        {"status":"completed","output":[{"content":[{"type":"output_text","text":"ok"}]}]}
+                        """));
+
+        StepVerifier.create(registry.generateReply("Salut", "ft:gpt-4o-mini:org::abc", null, 100))
+                .assertNext(r -> assertEquals("ok", r.reply()))
+                .verifyComplete();
+
+        RecordedRequest req = server.takeRequest();
+        assertTrue(req.getBody().readUtf8().contains("\"model\":\"ft:gpt-4o-mini:org::abc\""));
+    }
+
+    @Test
+    void stub_should_be_deterministic_and_truncate_at_max_output_tokens() {
+        StubProvider stub = new StubProvider("stub", new ProvidersProperties.Stub(
+                true, Duration.ZERO, 0.5, 200, 60, 0, 42), UpstreamMetrics.noop());
+
+        AiResult a = stub.generateReply("Même prompt", "m", 0.2, 800).block();
+        AiResult b = stub.generateReply("Même prompt", "m", 0.2, 800).block();
+        assertNotNull(a);
+        assertNotNull(b);
+        assertEquals(a.reply(), b.reply());
+        assertEquals(a.outputTokens(), b.outputTokens());
+
+        AiResult cut = stub.generateReply("Même prompt", "m", 0.2, 5).block();
+        assertNotNull(cut);
+        assertTrue(cut.truncated());
+        assertEquals(5, cut.outputTokens());
+    }
+
+    @Test
+    void stub_stream_should_pace_deltas_and_end_with_result() {
+        StepVerifier.create(registry.streamReply("Salut", "stub:fake-7b", null, 100).collectList())
+                .assertNext(events -> {
+                    assertEquals(11, events.size());
+                    AiResult r = events.getLast().result();
+                    assertNotNull(r);
+                    assertEquals("stub:fake-7b", r.model());
+                    assertEquals(String.join("", events.subList(0, 10).stream()
+                            .map(OpenAIService.StreamEvent::delta).toList()), r.reply());
+                    assertNotNull(r.ttftMs());
+                })
+                .verifyComplete();
+    }
+}
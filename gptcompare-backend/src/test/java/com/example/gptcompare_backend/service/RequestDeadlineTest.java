@@ -0,0 +1,120 @@
+package com.example.gptcompare_backend.service;
+
+import com.example.gptcompare_backend.config.DeadlineProperties;
+import com.example.gptcompare_backend.config.RateLimitProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.jupiter.api.*;
+import reactor.core.Disposable;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RequestDeadlineTest {
+
+    private MockWebServer server;
+    private ConnectionProvider provider;
+    private SimpleMeterRegistry registry;
+    private ModelRateLimiter rateLimiter;
+    private OpenAIService service;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = new MockWebServer();
+        server.start();
+
+        // une seule connexion : une connexion non rendue bloquerait l'appel suivant
+        provider = ConnectionProvider.builder("deadline-test")
+                .maxConnections(1)
+                .pendingAcquireTimeout(Duration.ofSeconds(2))
+                .build();
+        registry = new SimpleMeterRegistry();
+        rateLimiter = new ModelRateLimiter(new RateLimitProperties(true, 100, 10_000, 1, Duration.ofSeconds(1), Duration.ofSeconds(2),
+                Map.of(), 1000));
+        service = new OpenAIService("test-api-key", server.url("/v1/responses").toString(), "gpt-4.1-mini",
+                OpenAIService.Dependencies.defaults()
+                        .httpClient(HttpClient.create(provider))
+                        .singleFlight(false)
+                        .rateLimiter(rateLimiter)
+                        .metrics(new UpstreamMetrics(registry)));
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        provider.disposeLater().block();
+        server.shutdown();
+    }
+
+    private static MockResponse ok() {
+        return new MockResponse().setResponseCode(200)
+                .addHeader("Content-Type", "application/json")
+                .setBody("""
+                    {"status":"completed","output":[{"content":[{"type":"output_text","text":"OK"}]}],
+                     "usage":{"input_tokens":1,"output_tokens":1,"total_tokens":2}}
+                """);
+    }
+
+    @Test
+    void should_cap_client_deadline_by_server_policy() {
+        DeadlineProperties props = new DeadlineProperties(Duration.ofSeconds(60), Duration.ofSeconds(90));
+
+        assertEquals(Duration.ofSeconds(60), props.resolve(null));
+        assertEquals(Duration.ofSeconds(60), props.resolve(0L));
+        assertEquals(Duration.ofMillis(1500), props.resolve(1500L));
+        assertEquals(Duration.ofSeconds(90), props.resolve(600_000L));
+    }
+
+    @Test
+    void should_end_the_call_at_the_client_deadline() {
+        server.enqueue(ok().setHeadersDelay(3, TimeUnit.SECONDS));
+
+        StepVerifier.create(service.generateReply("Test", null, null, 100)
+                        .contextWrite(RequestDeadline.in(Duration.ofMillis(200)).context()))
+                .assertNext(r -> {
+                    assertNull(r.totalTokens());
+                    assertTrue(r.reply().contains("délai dépassé"), r.reply());
+                    assertTrue(r.latencyMs() < 2000, "latence " + r.latencyMs());
+                })
+                .verifyComplete();
+    }
+
+    @Test
+    void should_not_call_upstream_once_the_deadline_has_passed() {
+        StepVerifier.create(service.generateReply("Test", null, null, 100)
+                        .contextWrite(RequestDeadline.in(Duration.ZERO).context()))
+                .assertNext(r -> assertTrue(r.reply().contains("délai dépassé"), r.reply()))
+                .verifyComplete();
+        assertEquals(0, server.getRequestCount());
+    }
+
+    @Test
+    void should_release_connection_and_refund_tokens_when_the_client_goes_away() throws Exception {
+        server.enqueue(ok().setHeadersDelay(5, TimeUnit.SECONDS));
+        server.enqueue(ok());
+
+        Disposable pending = service.generateReply("Test", null, null, 8000).subscribe();
+        assertNotNull(server.takeRequest(2, TimeUnit.SECONDS));
+        assertEquals(1, rateLimiter.stats().get("gpt-4.1-mini").inFlight());
+
+        pending.dispose();
+
+        ModelRateLimiter.ModelStats stats = rateLimiter.stats().get("gpt-4.1-mini");
+        assertEquals(0, stats.inFlight());
+        // estimation rendue (8001 tokens sur 10 000) : rien n'est décompté pour une réponse jamais lue
+        assertTrue(stats.tokensAvailable() > 9_900, "tokens " + stats.tokensAvailable());
+        assertNull(registry.find("openai.tokens").counter());
+        assertNull(registry.find("openai.upstream.latency").timer());
+
+        // la seule connexion du pool a été rendue : l'appel suivant passe
+        StepVerifier.create(service.generateReply("Test", null, null, 100))
+                .assertNext(r -> assertEquals("OK", r.reply()))
+                .verifyComplete();
+    }
+}
@@ -0,0 +1,142 @@
+package com.example.gptcompare_backend.service;
+
+import com.example.gptcompare_backend.service.OpenAIService.AiResult;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.jupiter.api.*;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ResponseCacheTest {
+
+    private static final String OK_BODY = """
+            {"status":"completed","output":[{"content":[{"type":"output_text","text":"OK"}]}],
+             "usage":{"input_tokens":3,"output_tokens":1,"total_tokens":4}}
+            """;
+
+    private MockWebServer server;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = new MockWebServer();
+        server.start();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        server.shutdown();
+    }
+
+    private OpenAIService serviceWith(ResponseCache cache) {
+        return new OpenAIService("test-api-key", server.url("/v1/responses").toString(), "gpt-4.1-mini",
+                OpenAIService.Dependencies.defaults().responseCache(cache));
+    }
+
+    private static AiResult result(String reply) {
+        return AiResult.ok(reply, 10, 1, 1, 2).withModel("m", null);
+    }
+
+    @Test
+    void should_serve_second_identical_call_from_cache() {
+        ResponseCache cache = new ResponseCache(true, 10, Duration.ofMinutes(1), false);
+        OpenAIService service = serviceWith(cache);
+        server.enqueue(new MockResponse().setResponseCode(200)
+                .setHeadersDelay(200, TimeUnit.MILLISECONDS)
+                .addHeader("Content-Type", "application/json").setBody(OK_BODY));
+
+        StepVerifier.create(service.generateReply("Salut", null, 0.0, 100))
+                .assertNext(r -> {
+                    assertFalse(r.cached());
+                    assertTrue(r.latencyMs() >= 200, "latencyMs=" + r.latencyMs());
+                })
+                .verifyComplete();
+
+        StepVerifier.create(service.generateReply("Salut", null, 0.0, 100))
+                .assertNext(r -> {
+                    assertTrue(r.cached());
+                    assertEquals("OK", r.reply());
+                    assertEquals(4, r.totalTokens());
+                    // latence propre au cache, pas celle de l'appel d'origine
+                    assertTrue(r.latencyMs() < 100, "latencyMs=" + r.latencyMs());
+                })
+                .verifyComplete();
+
+        assertEquals(1, server.getRequestCount());
+        ResponseCache.CacheStats stats = cache.stats();
+        assertEquals(1, stats.hits());
+        assertEquals(1, stats.misses());
+    }
+
+    @Test
+    void should_bypass_cache_when_temperature_is_positive_or_absent() {
+        ResponseCache cache = new ResponseCache(true, 10, Duration.ofMinutes(1), false);
+        OpenAIService service = serviceWith(cache);
+        for (int i = 0; i < 3; i++) {
+            server.enqueue(new MockResponse().setResponseCode(200)
+                    .addHeader("Content-Type", "application/json").setBody(OK_BODY));
+        }
+
+        StepVerifier.create(service.generateReply("Salut", null, 0.7, 100))
+                .assertNext(r -> assertFalse(r.cached())).verifyComplete();
+        StepVerifier.create(service.generateReply("Salut", null, 0.7, 100))
+                .assertNext(r -> assertFalse(r.cached())).verifyComplete();
+        // GPT-5 : température non envoyée → valeur par défaut du modèle, non déterministe
+        StepVerifier.create(service.generateReply("Salut", "gpt-5-mini", 0.0, 100))
+                .assertNext(r -> assertFalse(r.cached())).verifyComplete();
+
+        assertEquals(3, server.getRequestCount());
+        assertEquals(3, cache.stats().bypassed());
+        assertEquals(0, cache.stats().size());
+    }
+
+    @Test
+    void should_not_cache_http_errors() {
+        ResponseCache cache = new ResponseCache(true, 10, Duration.ofMinutes(1), false);
+        OpenAIService service = serviceWith(cache);
+        server.enqueue(new MockResponse().setResponseCode(400).setBody("{}"));
+        server.enqueue(new MockResponse().setResponseCode(200)
+                .addHeader("Content-Type", "application/json").setBody(OK_BODY));
+
+        StepVerifier.create(service.generateReply("Salut", null, 0.0, 100))
+                .assertNext(r -> assertTrue(r.reply().startsWith("Erreur OpenAI HTTP 400"))).verifyComplete();
+        StepVerifier.create(service.generateReply("Salut", null, 0.0, 100))
+                .assertNext(r -> assertEquals("OK", r.reply())).verifyComplete();
+
+        assertEquals(2, server.getRequestCount());
+    }
+
+    @Test
+    void should_evict_least_recently_used_entry_when_full() {
+        ResponseCache cache = new ResponseCache(true, 2, Duration.ofMinutes(1), false);
+        RequestKey a = new RequestKey("m", "a", 0.0, 100);
+        RequestKey b = new RequestKey("m", "b", 0.0, 100);
+        RequestKey c = new RequestKey("m", "c", 0.0, 100);
+
+        cache.put(a, result("A"));
+        cache.put(b, result("B"));
+        assertNotNull(cache.get(a)); // a devient la plus récente
+        cache.put(c, result("C"));   // b est évincée
+
+        assertNull(cache.get(b));
+        assertEquals("A", cache.get(a).reply());
+        assertEquals("C", cache.get(c).reply());
+        assertEquals(2, cache.stats().size());
+    }
+
+    @Test
+    void should_expire_entries_after_ttl() throws Exception {
+        ResponseCache cache = new ResponseCache(true, 10, Duration.ofMillis(50), false);
+        RequestKey k = new RequestKey("m", "x", 0.0, 100);
+        cache.put(k, result("X"));
+        assertNotNull(cache.get(k));
+
+        Thread.sleep(80);
+
+        assertNull(cache.get(k));
+        assertEquals(0, cache.stats().size());
+    }
+}
@@ -0,0 +1,87 @@
+package com.example.gptcompare_backend.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ResponsesDecoderTest {
+
+    private static ResponsesDecoder.Decoded decode(String json) {
+        return ResponsesDecoder.decode(json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void should_skip_reasoning_items_and_read_text_usage_and_status() {
+        ResponsesDecoder.Decoded d = decode("""
+            {"id":"resp_1","status":"completed","output":[
+               {"type":"reasoning","summary":[{"type":"summary_text","text":"je réfléchis"}],
+                "encrypted_content":"abc","content":[{"type":"reasoning_text","text":"brouillon"}]},
+               {"type":"message","content":[{"annotations":[],"text":"Réponse","type":"output_text"}]}],
+             "usage":{"input_tokens":10,"input_tokens_details":{"cached_tokens":0},
+                      "output_tokens":"20","total_tokens":30}}
+        """);
+
+        assertEquals("completed", d.status());
+        assertTrue(d.hasOutput());
+        // output_text prioritaire même si un autre texte le précède, type lu après text
+        assertEquals("Réponse", d.text());
+        assertEquals(10, d.inputTokens());
+        assertEquals(20, d.outputTokens());
+        assertEquals(30, d.totalTokens());
+        assertEquals(0, d.cachedTokens());
+        assertNull(d.reasoningTokens());
+        assertFalse(d.truncated());
+    }
+
+    @Test
+    void should_read_cached_and_reasoning_token_details() {
+        ResponsesDecoder.Decoded d = decode("""
+            {"status":"completed","output":[{"content":[{"type":"output_text","text":"OK"}]}],
+             "usage":{"input_tokens":2048,"input_tokens_details":{"cached_tokens":1920,"audio_tokens":0},
+                      "output_tokens":300,"output_tokens_details":{"reasoning_tokens":256},"total_tokens":2348}}
+        """);
+
+        assertEquals(1920, d.cachedTokens());
+        assertEquals(256, d.reasoningTokens());
+        assertEquals(2348, d.totalTokens());
+    }
+
+    @Test
+    void should_fall_back_to_any_text_and_detect_truncation() {
+        ResponsesDecoder.Decoded d = decode("""
+            {"status":"incomplete","incomplete_details":{"reason":"max_output_tokens"},
+             "output":[{"content":[{"type":"output_text","text":"  "},{"type":"text","text":"Partiel"}]}]}
+        """);
+
+        assertEquals("Partiel", d.text());
+        assertTrue(d.truncated());
+        assertNull(d.outputTokens());
+    }
+
+    @Test
+    void should_report_missing_output() {
+        ResponsesDecoder.Decoded d = decode("{\"status\":\"completed\",\"output\":{}}");
+
+        assertFalse(d.hasOutput());
+        assertNull(d.text());
+    }
+
+    @Test
+    void should_decode_stream_events() {
+        ResponsesDecoder.StreamChunk delta = ResponsesDecoder.decodeEvent(
+                "{\"type\":\"response.output_text.delta\",\"item_id\":\"msg_1\",\"delta\":\"Bon\"}");
+        assertEquals("response.output_text.delta", delta.type());
+        assertEquals("Bon", delta.delta());
+
+        ResponsesDecoder.StreamChunk done = ResponsesDecoder.decodeEvent("""
+            {"type":"response.completed","sequence_number":9,"response":{"status":"completed",
+             "output":[{"content":[{"type":"output_text","text":"Bonjour"}]}],"usage":{"output_tokens":2}}}
+        """);
+        assertEquals("Bonjour", done.response().text());
+        assertEquals(2, done.response().outputTokens());
+
+        assertNull(ResponsesDecoder.decodeEvent("  "));
+    }
+}
@@ -0,0 +1,128 @@
+package com.example.gptcompare_backend.service;
+
+import com.example.gptcompare_backend.service.OpenAIService.AiResult;
+import org.junit.jupiter.api.*;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.UUID;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.*;
+
+class ResultStoreTest {
+
+    private ResultStore store;
+
+    @BeforeEach
+    void setUp() {
+        JdbcTemplate jdbc = new JdbcTemplate(new DriverManagerDataSource(
+                "jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1"));
+        store = new ResultStore(jdbc, true, 100, 10, Duration.ofMillis(20));
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        store.destroy();
+    }
+
+    private static AiResult ok(String model, long latency, int tokens) {
+        return AiResult.ok("OK", latency, 1, tokens - 1, tokens).withModel(model, null);
+    }
+
+    @Test
+    void should_write_in_batches_off_the_caller_and_page_newest_first() {
+        for (int i = 0; i < 25; i++) {
+            store.record("send", "prompt " + i, "m-a", 0.0, 100, ok("m-a", 100 + i, 10));
+        }
+
+        await().atMost(Duration.ofSeconds(5)).until(() -> store.stats().written() == 25);
+        ResultStore.WriterStats stats = store.stats();
+        assertTrue(stats.batches() >= 3 && stats.batches() < 25, stats.toString());
+        assertEquals(0, stats.dropped());
+
+        StepVerifier.create(store.page("m-a", 1, 10))
+                .assertNext(p -> {
+                    assertEquals(25, p.total());
+                    assertEquals(10, p.items().size());
+                    assertEquals("prompt 14", p.items().get(0).prompt());
+                    assertEquals(0.0, p.items().get(0).temperature());
+                    assertEquals("send", p.items().get(0).source());
+                })
+                .verifyComplete();
+    }
+
+    @Test
+    void should_aggregate_per_model() {
+        store.record("compare", "q", "m-a", null, null, ok("m-a", 100, 10));
+        store.record("compare", "q", "m-a", null, null, ok("m-a", 300, 20));
+        store.record("compare", "q", "m-b", null, null, AiResult.error("Erreur: boom", 50));
+        AiResult truncated = AiResult.ok("...", 200, 1, 5, 6).withTruncation("max_output_tokens").withModel("m-b", null);
+        store.record("compare", "q", "m-b", null, null, truncated);
+
+        await().atMost(Duration.ofSeconds(5)).until(() -> store.stats().written() == 4);
+
+        StepVerifier.create(store.aggregates(null))
+                .assertNext(list -> {
+                    assertEquals(2, list.size());
+                    ResultStore.ModelAggregate a = list.get(0);
+                    assertEquals("m-a", a.model());
+                    assertEquals(2, a.calls());
+                    assertEquals(200.0, a.avgLatencyMs());
+                    assertEquals(300, a.maxLatencyMs());
+                    assertEquals(30, a.totalTokens());
+
+                    ResultStore.ModelAggregate b = list.get(1);
+                    // le résultat d'erreur n'a pas de modèle : celui de la requête est retenu
+                    assertEquals("m-b", b.model());
+                    assertEquals(1, b.failed());
+                    assertEquals(1, b.truncated());
+                })
+                .verifyComplete();
+
+        StepVerifier.create(store.aggregates(Instant.now().plusSeconds(60)))
+                .assertNext(list -> assertTrue(list.isEmpty()))
+                .verifyComplete();
+    }
+
+    @Test
+    void should_not_lose_a_batch_to_one_over_long_model_name() {
+        String longModel = "m-".repeat(200);
+        store.record("send", "avant", "m-a", null, null, ok("m-a", 10, 10));
+        store.record("send", "long", longModel, null, null, AiResult.error("Erreur: modèle inconnu", 5));
+        store.record("send", "après", "m-a", null, null, ok("m-a", 10, 10));
+
+        await().atMost(Duration.ofSeconds(5)).until(() -> store.stats().written() == 3);
+        assertEquals(0, store.stats().failures());
+        assertEquals(0, store.stats().dropped());
+
+        StepVerifier.create(store.page(null, 0, 10))
+                .assertNext(p -> {
+                    assertEquals(3, p.total());
+                    assertEquals("après", p.items().get(0).prompt());
+                    assertEquals(longModel.substring(0, ResultStore.MAX_MODEL_LENGTH), p.items().get(1).model());
+                    assertEquals("avant", p.items().get(2).prompt());
+                })
+                .verifyComplete();
+    }
+
+    @Test
+    void should_drop_instead_of_blocking_when_queue_is_full() throws Exception {
+        store.destroy();
+        ResultStore disabledWriter = ResultStore.disabled();
+        disabledWriter.record("send", "q", "m", null, null, ok("m", 1, 1));
+        assertEquals(0, disabledWriter.stats().queued());
+
+        JdbcTemplate jdbc = new JdbcTemplate(new DriverManagerDataSource(
+                "jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1"));
+        ResultStore tiny = new ResultStore(jdbc, true, 1, 1, Duration.ofSeconds(10));
+        long start = System.nanoTime();
+        for (int i = 0; i < 1000; i++) tiny.record("send", "q", "m", null, null, ok("m", 1, 1));
+        assertTrue(System.nanoTime() - start < Duration.ofSeconds(1).toNanos());
+        assertTrue(tiny.stats().dropped() > 0);
+        tiny.destroy();
+    }
+}
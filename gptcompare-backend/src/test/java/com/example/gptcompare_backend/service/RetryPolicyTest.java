@@ -0,0 +1,208 @@
+package com.example.gptcompare_backend.service;
+
+import com.example.gptcompare_backend.config.RetryProperties;
+import io.netty.channel.ConnectTimeoutException;
+import io.netty.handler.timeout.ReadTimeoutException;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.SocketPolicy;
+import org.junit.jupiter.api.*;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import reactor.netty.http.client.HttpClient;
+import reactor.test.StepVerifier;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.URI;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RetryPolicyTest {
+
+    private MockWebServer server;
+    private OpenAIService service;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = new MockWebServer();
+        server.start();
+
+        RetryProperties props = new RetryProperties(
+                true, 3, Duration.ofMillis(20), Duration.ofMillis(100), 0.5,
+                Set.of(429, 500, 502, 503, 504),
+                Map.of("gpt-5", new RetryProperties.ModelRetry(0, null, null))
+        );
+        service = new OpenAIService("test-api-key", server.url("/v1/responses").toString(), "gpt-4.1-mini",
+                OpenAIService.Dependencies.defaults().retryPolicy(new RetryPolicy(props)));
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        server.shutdown();
+    }
+
+    private static MockResponse ok() {
+        return new MockResponse().setResponseCode(200)
+                .addHeader("Content-Type", "application/json")
+                .setBody("""
+                    {"status":"completed","output":[{"content":[{"type":"output_text","text":"OK"}]}]}
+                """);
+    }
+
+    private static MockResponse tooManyRequests(String retryAfterMs) {
+        return new MockResponse().setResponseCode(429)
+                .addHeader("Content-Type", "application/json")
+                .addHeader("retry-after-ms", retryAfterMs)
+                .setBody("{\"error\":\"rate limited\"}");
+    }
+
+    @Test
+    void should_retry_429_honouring_retry_after_then_succeed() {
+        server.enqueue(tooManyRequests("150"));
+        server.enqueue(tooManyRequests("150"));
+        server.enqueue(ok());
+
+        StepVerifier.create(service.generateReply("Test", null, null, 100))
+                .assertNext(r -> {
+                    assertEquals("OK", r.reply());
+                    assertEquals(2, r.retries());
+                    // les deux attentes imposées par le serveur sont comptées
+                    assertTrue(r.retryTimeMs() >= 300, "retryTimeMs=" + r.retryTimeMs());
+                    assertTrue(r.latencyMs() >= r.retryTimeMs());
+                })
+                .verifyComplete();
+
+        assertEquals(3, server.getRequestCount());
+    }
+
+    @Test
+    void should_retry_503() {
+        server.enqueue(new MockResponse().setResponseCode(503).setBody("{}"));
+        server.enqueue(new MockResponse().setResponseCode(503).setBody("{}"));
+        server.enqueue(ok());
+
+        StepVerifier.create(service.generateReply("Test", null, null, 100))
+                .assertNext(r -> {
+                    assertEquals("OK", r.reply());
+                    assertEquals(2, r.retries());
+                })
+                .verifyComplete();
+    }
+
+    @Test
+    void should_not_retry_connection_closed_after_send() {
+        // la requête est partie : l'amont a pu la traiter, la renvoyer la ferait payer deux fois
+        server.enqueue(new MockResponse().setSocketPolicy(SocketPolicy.DISCONNECT_AFTER_REQUEST));
+        server.enqueue(ok());
+
+        StepVerifier.create(service.generateReply("Test", null, null, 100))
+                .assertNext(r -> {
+                    assertTrue(r.reply().startsWith("Erreur"), r.reply());
+                    assertEquals(0, r.retries());
+                })
+                .verifyComplete();
+
+        assertEquals(1, server.getRequestCount());
+    }
+
+    @Test
+    void should_not_retry_read_timeout() {
+        RetryProperties props = new RetryProperties(
+                true, 3, Duration.ofMillis(20), Duration.ofMillis(100), 0.5, Set.of(429, 500, 502, 503, 504), Map.of());
+        OpenAIService slowService = new OpenAIService("test-api-key", server.url("/v1/responses").toString(),
+                "gpt-4.1-mini", OpenAIService.Dependencies.defaults()
+                        .httpClient(HttpClient.create().responseTimeout(Duration.ofMillis(200)))
+                        .retryPolicy(new RetryPolicy(props)));
+        server.enqueue(ok().setHeadersDelay(2, TimeUnit.SECONDS));
+        server.enqueue(ok());
+
+        StepVerifier.create(slowService.generateReply("Test", null, null, 100))
+                .assertNext(r -> {
+                    assertTrue(r.reply().startsWith("Erreur"), r.reply());
+                    assertEquals(0, r.retries());
+                })
+                .verifyComplete();
+
+        assertEquals(1, server.getRequestCount());
+    }
+
+    @Test
+    void should_retry_only_failures_before_send() {
+        RetryPolicy policy = new RetryPolicy(new RetryProperties(
+                true, 3, Duration.ofMillis(20), Duration.ofMillis(100), 0.5, Set.of(429), Map.of()));
+
+        assertTrue(policy.isRetryable(requestError(new ConnectException("Connection refused"))));
+        assertTrue(policy.isRetryable(requestError(new ConnectTimeoutException("connection timed out"))));
+        assertFalse(policy.isRetryable(requestError(ReadTimeoutException.INSTANCE)));
+        assertFalse(policy.isRetryable(requestError(new IOException("Connection reset by peer"))));
+    }
+
+    private static WebClientRequestException requestError(Throwable cause) {
+        return new WebClientRequestException(cause, HttpMethod.POST, URI.create("http://localhost/v1/responses"),
+                new HttpHeaders());
+    }
+
+    @Test
+    void should_return_last_error_when_retries_are_exhausted() {
+        for (int i = 0; i < 4; i++) server.enqueue(tooManyRequests("0"));
+
+        StepVerifier.create(service.generateReply("Test", null, null, 100))
+                .assertNext(r -> {
+                    assertTrue(r.reply().startsWith("Erreur OpenAI HTTP 429:"), r.reply());
+                    assertEquals(3, r.retries());
+                })
+                .verifyComplete();
+
+        assertEquals(4, server.getRequestCount());
+    }
+
+    @Test
+    void should_not_retry_non_retryable_status() {
+        server.enqueue(new MockResponse().setResponseCode(400).setBody("{\"error\":\"bad\"}"));
+
+        StepVerifier.create(service.generateReply("Test", null, null, 100))
+                .assertNext(r -> {
+                    assertTrue(r.reply().startsWith("Erreur OpenAI HTTP 400:"), r.reply());
+                    assertEquals(0, r.retries());
+                })
+                .verifyComplete();
+
+        assertEquals(1, server.getRequestCount());
+    }
+
+    @Test
+    void should_not_wait_beyond_request_deadline() {
+        // Retry-After de 2 minutes > deadline de 60s : échec immédiat plutôt qu'une attente inutile
+        server.enqueue(new MockResponse().setResponseCode(429)
+                .addHeader("Retry-After", "120")
+                .setBody("{}"));
+
+        StepVerifier.create(service.generateReply("Test", null, null, 100))
+                .assertNext(r -> {
+                    assertTrue(r.reply().startsWith("Erreur OpenAI HTTP 429:"), r.reply());
+                    assertEquals(0, r.retries());
+                    assertTrue(r.latencyMs() < 5000, "latencyMs=" + r.latencyMs());
+                })
+                .verifyComplete();
+    }
+
+    @Test
+    void should_apply_per_model_override() {
+        server.enqueue(tooManyRequests("0"));
+
+        StepVerifier.create(service.generateReply("Test", "gpt-5-mini", null, 100))
+                .assertNext(r -> {
+                    assertTrue(r.reply().startsWith("Erreur OpenAI HTTP 429:"), r.reply());
+                    assertEquals(0, r.retries());
+                })
+                .verifyComplete();
+
+        assertEquals(1, server.getRequestCount());
+    }
+}
@@ -0,0 +1,131 @@
+package com.example.gptcompare_backend.service;
+
+import com.example.gptcompare_backend.config.ProvidersProperties;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SessionServiceTest {
+
+    private MockWebServer server;
+    private SessionService sessions;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = new MockWebServer();
+        server.start();
+        OpenAIService openAI = new OpenAIService("test-api-key", server.url("/v1/responses").toString(), "gpt-4.1-mini");
+        sessions = new SessionService(openAI, 100, Duration.ofMinutes(30), 20, 24000);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        server.shutdown();
+    }
+
+    private static MockResponse completed(String id, String text) {
+        return new MockResponse()
+                .setResponseCode(200)
+                .addHeader("Content-Type", "application/json")
+                .setBody("""
+                        {"id":"%s","status":"completed","output":[{"content":[{"type":"output_text","text":"%s"}]}],
+                         "usage":{"input_tokens":10,"output_tokens":2,"total_tokens":12}}
+                        """.formatted(id, text));
+    }
+
+    @Test
+    void second_turn_should_chain_with_previous_response_id_and_send_only_new_message() throws Exception {
+        server.enqueue(completed("resp_1", "Bonjour"));
+        server.enqueue(completed("resp_2", "Ça va"));
+
+        StepVerifier.create(sessions.generateReply("s1", "Salut", "gpt-4.1-mini", null, 100))
+                .assertNext(r -> {
+                    assertEquals("none", r.context().mode());
+                    assertEquals(0, r.context().turns());
+                })
+                .verifyComplete();
+        StepVerifier.create(sessions.generateReply("s1", "Comment vas-tu ?", "gpt-4.1-mini", null, 100))
+                .assertNext(r -> {
+                    assertEquals("previous_response_id", r.context().mode());
+                    assertEquals(1, r.context().turns());
+                    assertEquals(0, r.context().replayedChars());
+                })
+                .verifyComplete();
+
+        server.takeRequest();
+        String second = server.takeRequest().getBody().readUtf8();
+        assertTrue(second.contains("\"previous_response_id\":\"resp_1\""), second);
+        assertTrue(second.contains("\"input\":\"Comment vas-tu ?\""), second);
+        assertFalse(second.contains("Salut"), second);
+    }
+
+    @Test
+    void rejected_chain_should_fall_back_to_history_replay() throws Exception {
+        server.enqueue(completed("resp_1", "Bonjour"));
+        server.enqueue(new MockResponse().setResponseCode(400)
+                .setBody("{\"error\":{\"message\":\"Previous response with id 'resp_1' not found.\"}}"));
+        server.enqueue(completed("resp_3", "Ça va"));
+
+        sessions.generateReply("s1", "Salut", "gpt-4.1-mini", null, 100).block();
+        StepVerifier.create(sessions.generateReply("s1", "Comment vas-tu ?", "gpt-4.1-mini", null, 100))
+                .assertNext(r -> {
+                    assertEquals("Ça va", r.reply());
+                    assertEquals("replay", r.context().mode());
+                    assertEquals(1, r.context().turns());
+                })
+                .verifyComplete();
+
+        server.takeRequest();
+        server.takeRequest();
+        RecordedRequest replay = server.takeRequest();
+        String body = replay.getBody().readUtf8();
+        assertFalse(body.contains("previous_response_id"), body);
+        assertTrue(body.contains("\"role\":\"assistant\""), body);
+        assertTrue(body.contains("Bonjour"), body);
+        assertEquals(1, sessions.stats().chainFallbacks());
+    }
+
+    @Test
+    void provider_without_chaining_should_replay_most_recent_turns_within_budget() {
+        StubProvider stub = new StubProvider("stub", new ProvidersProperties.Stub(
+                true, Duration.ZERO, 0, 5, 0, 0, 1), UpstreamMetrics.noop());
+        // chaque tour du stub pèse ~ 10 + 5 mots : le budget ne laisse passer que les 2 derniers
+        SessionService replaying = new SessionService(stub, 10, Duration.ofMinutes(30), 20, 90);
+
+        for (int i = 0; i < 4; i++) {
+            replaying.generateReply("s", "question " + i, "m", null, 50).block();
+        }
+        StepVerifier.create(replaying.generateReply("s", "dernière", "m", null, 50))
+                .assertNext(r -> {
+                    assertEquals("replay", r.context().mode());
+                    assertTrue(r.context().turns() >= 1 && r.context().turns() < 4, "turns=" + r.context().turns());
+                    assertTrue(r.context().replayedChars() <= 90);
+                })
+                .verifyComplete();
+    }
+
+    @Test
+    void sessions_should_be_bounded_lru_and_expire() throws Exception {
+        StubProvider stub = new StubProvider("stub", new ProvidersProperties.Stub(
+                true, Duration.ZERO, 0, 5, 0, 0, 1), UpstreamMetrics.noop());
+        SessionService bounded = new SessionService(stub, 1, Duration.ofMillis(200), 20, 24000);
+
+        bounded.generateReply("a", "x", "m", null, 50).block();
+        bounded.generateReply("b", "x", "m", null, 50).block();
+        assertNull(bounded.turns("a"));
+        assertEquals(1, bounded.turns("b").get("m"));
+        assertEquals(1, bounded.stats().evicted());
+
+        Thread.sleep(300);
+        assertNull(bounded.turns("b"));
+        assertEquals(1, bounded.stats().expired());
+    }
+}
@@ -0,0 +1,101 @@
+package com.example.gptcompare_backend.service;
+
+import com.example.gptcompare_backend.service.OpenAIService.AiResult;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.jupiter.api.*;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SingleFlightTest {
+
+    @Test
+    void should_send_one_upstream_call_for_concurrent_identical_requests() throws Exception {
+        MockWebServer server = new MockWebServer();
+        server.start();
+        try {
+            server.enqueue(new MockResponse().setResponseCode(200)
+                    .addHeader("Content-Type", "application/json")
+                    .setHeadersDelay(300, TimeUnit.MILLISECONDS)
+                    .setBody("""
+                        {"status":"completed","output":[{"content":[{"type":"output_text","text":"Partagé"}]}]}
+                    """));
+            OpenAIService service = new OpenAIService("test-api-key", server.url("/v1/responses").toString(),
+                    "gpt-4.1-mini");
+
+            List<AiResult> results = Flux.range(0, 5)
+                    .flatMap(i -> service.generateReply("Prompt démo", null, 0.7, 100))
+                    .collectList()
+                    .block(Duration.ofSeconds(5));
+
+            assertNotNull(results);
+            assertEquals(5, results.size());
+            assertTrue(results.stream().allMatch(r -> "Partagé".equals(r.reply())));
+            // seuls les appelants dédupliqués sont marqués : l'admission ne mesure que l'appel réel
+            assertEquals(4, results.stream().filter(AiResult::coalesced).count());
+            assertEquals(1, server.getRequestCount());
+
+            SingleFlight.Stats stats = service.singleFlightStats();
+            assertEquals(1, stats.leaders());
+            assertEquals(4, stats.coalesced());
+            assertEquals(0, stats.inFlight());
+        } finally {
+            server.shutdown();
+        }
+    }
+
+    @Test
+    void should_keep_upstream_alive_while_one_subscriber_remains() {
+        SingleFlight<String, String> sf = new SingleFlight<>();
+        Sinks.One<String> upstream = Sinks.one();
+        AtomicBoolean cancelled = new AtomicBoolean();
+        Mono<String> call = upstream.asMono().doOnCancel(() -> cancelled.set(true));
+
+        Disposable first = sf.execute("k", () -> call).subscribe();
+        CompletableFuture<String> second = sf.execute("k", () -> call).toFuture();
+
+        first.dispose();
+        assertFalse(cancelled.get());
+
+        upstream.tryEmitValue("v");
+        assertEquals("v", second.join());
+        assertFalse(cancelled.get());
+    }
+
+    @Test
+    void should_cancel_upstream_when_every_subscriber_is_gone_and_start_fresh_afterwards() {
+        SingleFlight<String, String> sf = new SingleFlight<>();
+        AtomicBoolean cancelled = new AtomicBoolean();
+        AtomicInteger calls = new AtomicInteger();
+
+        Disposable a = sf.execute("k", () -> {
+            calls.incrementAndGet();
+            return Mono.<String>never().doOnCancel(() -> cancelled.set(true));
+        }).subscribe();
+        Disposable b = sf.execute("k", () -> Mono.just("unused")).subscribe();
+
+        a.dispose();
+        assertFalse(cancelled.get());
+        b.dispose();
+        assertTrue(cancelled.get());
+        assertEquals(0, sf.stats().inFlight());
+
+        // l'appel annulé n'est pas réutilisé : un nouvel appel part en amont
+        StepVerifier.create(sf.execute("k", () -> Mono.just("frais")))
+                .expectNext("frais")
+                .verifyComplete();
+        assertEquals(1, calls.get());
+    }
+}
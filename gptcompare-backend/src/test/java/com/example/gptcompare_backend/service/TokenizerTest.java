@@ -0,0 +1,187 @@
+package com.example.gptcompare_backend.service;
+
+import com.example.gptcompare_backend.config.TokenizerProperties;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+import reactor.test.StepVerifier;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.MatchResult;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TokenizerTest {
+
+    /** Vocabulaire minimal au format .tiktoken : 256 octets, puis "ab", "cd", "abcd", "bc". */
+    private static String vocabulary() {
+        StringBuilder sb = new StringBuilder();
+        Base64.Encoder b64 = Base64.getEncoder();
+        for (int i = 0; i < 256; i++) {
+            sb.append(b64.encodeToString(new byte[]{(byte) i})).append(' ').append(i).append('\n');
+        }
+        String[] merges = {"ab", "cd", "abcd", "bc"};
+        for (int i = 0; i < merges.length; i++) {
+            sb.append(b64.encodeToString(merges[i].getBytes(StandardCharsets.UTF_8))).append(' ')
+                    .append(256 + i).append('\n');
+        }
+        return sb.toString();
+    }
+
+    private static BpeEncoder encoder() throws Exception {
+        return BpeEncoder.load("test", BpeEncoder.CL100K_PATTERN,
+                new ByteArrayInputStream(vocabulary().getBytes(StandardCharsets.US_ASCII)));
+    }
+
+    @Test
+    void should_merge_lowest_rank_pairs_first_within_each_pretoken() throws Exception {
+        BpeEncoder bpe = encoder();
+
+        assertEquals(260, bpe.size());
+        // ab et cd fusionnent d'abord, puis abcd ; "bc" (rang plus élevé) n'est jamais retenu
+        assertArrayEquals(new int[]{258, 256}, bpe.encode("abcdab"));
+        // le pré-découpage isole " ab" : l'espace reste seul
+        assertArrayEquals(new int[]{256, 32, 256}, bpe.encode("ab ab"));
+        // octets UTF-8 sans fusion connue
+        assertArrayEquals(new int[]{0xC3, 0xA9}, bpe.encode("é"));
+        assertEquals(bpe.encode("abcdab ab é").length, bpe.count("abcdab ab é"));
+        assertEquals(0, bpe.count(""));
+    }
+
+    /** Vocabulaire réel téléchargé au build (classpath:tokenizer/) ; absent (-Dtokenizer.skip) : test ignoré. */
+    private static BpeEncoder tiktoken(String encoding) throws Exception {
+        InputStream in = TokenizerTest.class.getResourceAsStream("/tokenizer/" + encoding + ".tiktoken");
+        Assumptions.assumeTrue(in != null, "vocabulaire " + encoding + " absent du classpath");
+        try (in) {
+            return BpeEncoder.load(encoding, BpeEncoder.patternFor(encoding), in);
+        }
+    }
+
+    @Test
+    void should_count_like_tiktoken_with_the_shipped_vocabularies() throws Exception {
+        // références : tiktoken.get_encoding(...).encode(texte)
+        BpeEncoder cl100k = tiktoken("cl100k_base");
+        assertArrayEquals(new int[]{15339, 1917}, cl100k.encode("hello world"));
+        assertArrayEquals(new int[]{83, 1609, 5963, 374, 2294, 0}, cl100k.encode("tiktoken is great!"));
+        assertEquals(6, cl100k.count("antidisestablishmentarianism"));
+        assertEquals(7, cl100k.count("2 + 2 = 4"));
+
+        BpeEncoder o200k = tiktoken("o200k_base");
+        assertArrayEquals(new int[]{24912, 2375}, o200k.encode("hello world"));
+        assertEquals(6, o200k.count("tiktoken is great!"));
+        assertEquals(7, o200k.count("2 + 2 = 4"));
+    }
+
+    @Test
+    void should_split_like_o200k() {
+        List<String> pieces = BpeEncoder.O200K_PATTERN.matcher("HelloWorld 123456 don't\n\n")
+                .results().map(MatchResult::group).toList();
+
+        assertEquals(List.of("Hello", "World", " ", "123", "456", " don't", "\n\n"), pieces);
+    }
+
+    @Test
+    void should_size_output_to_the_context_window_and_reject_oversized_prompts(@TempDir Path dir) throws Exception {
+        Files.writeString(dir.resolve("test_base.tiktoken"), vocabulary());
+        Tokenizer tokenizer = new Tokenizer(new TokenizerProperties(true, dir.toUri().toString(), "test_base",
+                Map.of(), 100, Map.of("tiny", 40), 16));
+
+        Tokenizer.Estimate fits = tokenizer.estimate("tiny-1", "abcd abcd", 500);
+        assertTrue(fits.exact());
+        assertEquals(3, fits.inputTokens()); // "abcd" | " " + "abcd"
+        assertEquals(37, fits.maxOutputTokens());
+        assertTrue(fits.fits());
+
+        Tokenizer.Estimate tooLong = tokenizer.estimate("tiny-1", "ab ".repeat(20), 500);
+        assertFalse(tooLong.fits());
+        assertEquals(100, tokenizer.estimate("other", "ab", 500).contextWindow());
+
+        Tokenizer approximate = new Tokenizer(new TokenizerProperties(true, dir.toUri() + "absent/", "o200k_base",
+                Map.of(), 100, Map.of(), 16));
+        Tokenizer.Estimate approx = approximate.estimate("m", "Bonjour tout le monde ".repeat(50), 10);
+        assertFalse(approx.exact());
+        // sans vocabulaire, rien n'est refusé ni réduit : le compte ne sert qu'au limiteur
+        assertTrue(approx.fits());
+        assertEquals(10, approx.maxOutputTokens());
+    }
+
+    @Test
+    void should_not_call_upstream_when_the_prompt_exceeds_the_window(@TempDir Path dir) throws Exception {
+        Files.writeString(dir.resolve("test_base.tiktoken"), vocabulary());
+        Tokenizer tokenizer = new Tokenizer(new TokenizerProperties(true, dir.toUri().toString(), "test_base",
+                Map.of(), 100, Map.of(), 16));
+        MockWebServer server = new MockWebServer();
+        server.start();
+        try {
+            OpenAIService service = new OpenAIService("test-api-key", server.url("/v1/responses").toString(),
+                    "gpt-4.1-mini", OpenAIService.Dependencies.defaults().tokenizer(tokenizer));
+
+            StepVerifier.create(service.generateReply("ab ".repeat(60), null, null, 800))
+                    .assertNext(r -> {
+                        assertNull(r.totalTokens());
+                        assertTrue(r.reply().contains("prompt trop long"), r.reply());
+                    })
+                    .verifyComplete();
+            assertEquals(0, server.getRequestCount());
+
+            // place restante : 100 - 3 tokens ("ab", " ", "ab")
+            server.enqueue(new MockResponse().setResponseCode(200)
+                    .addHeader("Content-Type", "application/json")
+                    .setBody("""
+                        {"status":"completed","output":[{"content":[{"type":"output_text","text":"OK"}]}],
+                         "usage":{"input_tokens":3,"output_tokens":1,"total_tokens":4}}
+                    """));
+            StepVerifier.create(service.generateReply("ab ab", null, null, 800))
+                    .assertNext(r -> assertEquals("OK", r.reply()))
+                    .verifyComplete();
+            RecordedRequest sent = server.takeRequest();
+            assertTrue(sent.getBody().readUtf8().contains("\"max_output_tokens\":97"));
+        } finally {
+            server.shutdown();
+        }
+    }
+
+    @Test
+    void should_count_replayed_message_contents_and_skip_the_window_for_chained_turns(@TempDir Path dir) throws Exception {
+        Files.writeString(dir.resolve("test_base.tiktoken"), vocabulary());
+        Tokenizer tokenizer = new Tokenizer(new TokenizerProperties(true, dir.toUri().toString(), "test_base",
+                Map.of(), 100, Map.of(), 16));
+        MockWebServer server = new MockWebServer();
+        server.start();
+        try {
+            OpenAIService service = new OpenAIService("test-api-key", server.url("/v1/responses").toString(),
+                    "gpt-4.1-mini", OpenAIService.Dependencies.defaults().tokenizer(tokenizer));
+            String ok = """
+                {"status":"completed","output":[{"content":[{"type":"output_text","text":"OK"}]}]}
+            """;
+
+            // historique rejoué : seuls les contenus des messages sont comptés, pas leur toString()
+            server.enqueue(new MockResponse().setResponseCode(200).addHeader("Content-Type", "application/json").setBody(ok));
+            var replay = new ChatProvider.Conversation(null, List.of(new ChatProvider.Turn("ab", "ab ab")));
+            StepVerifier.create(service.generateReply("ab", null, null, 800, replay))
+                    .assertNext(r -> assertEquals("OK", r.reply()))
+                    .verifyComplete();
+            int counted = tokenizer.estimate("gpt-4.1-mini", "ab\nab ab\nab", 0).inputTokens();
+            assertTrue(server.takeRequest().getBody().readUtf8().contains("\"max_output_tokens\":" + (100 - counted)));
+
+            // tour chaîné : l'historique est chez OpenAI, la fenêtre n'est pas contrôlée localement
+            server.enqueue(new MockResponse().setResponseCode(200).addHeader("Content-Type", "application/json").setBody(ok));
+            var chained = new ChatProvider.Conversation("resp_1", List.of());
+            StepVerifier.create(service.generateReply("ab ".repeat(60), null, null, 800, chained))
+                    .assertNext(r -> assertEquals("OK", r.reply()))
+                    .verifyComplete();
+            assertTrue(server.takeRequest().getBody().readUtf8().contains("\"max_output_tokens\":800"));
+        } finally {
+            server.shutdown();
+        }
+    }
+}
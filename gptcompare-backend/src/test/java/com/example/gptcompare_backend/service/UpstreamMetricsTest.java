@@ -0,0 +1,266 @@
+package com.example.gptcompare_backend.service;
+
+import com.example.gptcompare_backend.config.PromptCacheProperties;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationHandler;
+import io.micrometer.observation.ObservationRegistry;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.jupiter.api.*;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UpstreamMetricsTest {
+
+    private MockWebServer server;
+    private SimpleMeterRegistry registry;
+    private OpenAIService service;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = new MockWebServer();
+        server.start();
+
+        registry = new SimpleMeterRegistry();
+        service = new OpenAIService("test-api-key", server.url("/v1/responses").toString(), "gpt-4.1-mini",
+                OpenAIService.Dependencies.defaults().metrics(new UpstreamMetrics(registry)));
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        server.shutdown();
+    }
+
+    private Timer latency(String outcome, String status) {
+        return registry.find("openai.upstream.latency")
+                .tags("model", "gpt-4.1-mini", "outcome", outcome, "status", status)
+                .timer();
+    }
+
+    private double tokens(String type) {
+        return registry.get("openai.tokens").tags("model", "gpt-4.1-mini", "type", type).counter().count();
+    }
+
+    @Test
+    void should_record_latency_ttfb_and_tokens_per_model() {
+        for (int i = 0; i < 2; i++) {
+            server.enqueue(new MockResponse().setResponseCode(200)
+                    .addHeader("Content-Type", "application/json")
+                    .setBody("""
+                        {"status":"completed","output":[{"content":[{"type":"output_text","text":"OK"}]}],
+                         "usage":{"input_tokens":10,"output_tokens":5,"total_tokens":15}}
+                    """));
+            StepVerifier.create(service.generateReply("Test", null, null, 100))
+                    .expectNextCount(1)
+                    .verifyComplete();
+        }
+
+        assertEquals(2, latency("success", "200").count());
+        assertEquals(2, registry.get("openai.upstream.ttfb").tag("model", "gpt-4.1-mini").timer().count());
+        assertEquals(20, tokens("input"));
+        assertEquals(10, tokens("output"));
+        assertEquals(30, tokens("total"));
+    }
+
+    @Test
+    void should_tag_truncation_and_http_errors() {
+        server.enqueue(new MockResponse().setResponseCode(200)
+                .addHeader("Content-Type", "application/json")
+                .setBody("""
+                    {"status":"incomplete","incomplete_details":{"reason":"max_output_tokens"},
+                     "output":[{"content":[{"type":"output_text","text":"Début"}]}]}
+                """));
+        server.enqueue(new MockResponse().setResponseCode(503).setBody("{}"));
+
+        StepVerifier.create(service.generateReply("Test", null, null, 100)).expectNextCount(1).verifyComplete();
+        StepVerifier.create(service.generateReply("Test", null, null, 100)).expectNextCount(1).verifyComplete();
+
+        assertEquals(1, latency("truncated", "200").count());
+        assertEquals(1, latency("http_error", "503").count());
+        assertNull(latency("success", "200"));
+    }
+
+    @Test
+    void should_tag_failed_bodies_and_stream_error_endings_as_failed() {
+        server.enqueue(new MockResponse().setResponseCode(200)
+                .addHeader("Content-Type", "application/json")
+                .setBody("{\"status\":\"failed\",\"error\":{\"message\":\"server_error\"}}"));
+        server.enqueue(new MockResponse().setResponseCode(200)
+                .addHeader("Content-Type", "text/event-stream")
+                .setBody("""
+                    event: error
+                    data: {"type":"error","message":"overloaded"}
+
+                    """));
+
+        StepVerifier.create(service.generateReply("Test", null, null, 100)).expectNextCount(1).verifyComplete();
+        StepVerifier.create(service.streamReply("Test", null, null, 100)).expectNextCount(1).verifyComplete();
+
+        // HTTP 200, mais en échec pour le disjoncteur : même verdict dans les métriques
+        assertEquals(2, latency("failed", "200").count());
+        assertNull(latency("success", "200"));
+    }
+
+    @Test
+    void should_collapse_unknown_models_into_other_until_they_succeed() {
+        UpstreamMetrics metrics = new UpstreamMetrics(registry, ObservationRegistry.NOOP,
+                new ModelKeys(List.of("gpt-4.1-mini"), 1));
+        OpenAIService boundedService = new OpenAIService("test-api-key", server.url("/v1/responses").toString(),
+                "gpt-4.1-mini", OpenAIService.Dependencies.defaults().metrics(metrics));
+        // noms choisis par le client, tous en échec : une seule série "other"
+        for (int i = 0; i < 5; i++) {
+            server.enqueue(new MockResponse().setResponseCode(503).setBody("{}"));
+            StepVerifier.create(boundedService.generateReply("Test", "inconnu-" + i, null, 100))
+                    .expectNextCount(1)
+                    .verifyComplete();
+        }
+        assertEquals(5, registry.get("openai.upstream.latency")
+                .tags("model", "other", "outcome", "http_error").timer().count());
+        assertTrue(registry.find("openai.upstream.latency").tag("model", "inconnu-0").timers().isEmpty());
+
+        // un modèle qui répond garde son nom, dans la limite du plafond (1 ici)
+        for (String model : new String[]{"gpt-5", "gpt-5", "o3"}) {
+            server.enqueue(new MockResponse().setResponseCode(200)
+                    .addHeader("Content-Type", "application/json")
+                    .setBody("{\"status\":\"completed\",\"output\":[]}"));
+            StepVerifier.create(boundedService.generateReply("Test", model, null, 100))
+                    .expectNextCount(1)
+                    .verifyComplete();
+        }
+        assertTrue(registry.find("openai.upstream.latency").tag("model", "o3").timers().isEmpty());
+        assertEquals(2, registry.get("openai.upstream.latency")
+                .tags("model", "gpt-5", "outcome", "success").timer().count());
+        assertEquals(1, registry.get("openai.upstream.latency")
+                .tags("model", "other", "outcome", "success").timer().count());
+    }
+
+    @Test
+    void should_send_stable_prompt_cache_key_and_track_cached_tokens() throws Exception {
+        PromptCacheProperties promptCache = new PromptCacheProperties(true, "compare", "Réponds en français.");
+        UpstreamMetrics metrics = new UpstreamMetrics(registry);
+        OpenAIService cachedService = new OpenAIService("test-api-key", server.url("/v1/responses").toString(),
+                "gpt-4.1-mini", OpenAIService.Dependencies.defaults()
+                        .metrics(metrics)
+                        .promptCache(promptCache));
+        for (int cached : new int[]{0, 1536}) {
+            server.enqueue(new MockResponse().setResponseCode(200)
+                    .addHeader("Content-Type", "application/json")
+                    .setBody("""
+                        {"status":"completed","output":[{"content":[{"type":"output_text","text":"OK"}]}],
+                         "usage":{"input_tokens":2048,"input_tokens_details":{"cached_tokens":%d},
+                                  "output_tokens":100,"output_tokens_details":{"reasoning_tokens":40},
+                                  "total_tokens":2148}}
+                    """.formatted(cached)));
+        }
+
+        StepVerifier.create(cachedService.generateReply("Premier", null, null, 100))
+                .assertNext(r -> assertEquals(0, r.cachedInputTokens()))
+                .verifyComplete();
+        StepVerifier.create(cachedService.generateReply("Second", null, null, 100))
+                .assertNext(r -> {
+                    assertEquals(1536, r.cachedInputTokens());
+                    assertEquals(40, r.reasoningTokens());
+                })
+                .verifyComplete();
+
+        // même clé pour deux prompts différents : elle ne dépend que du préfixe statique
+        String first = server.takeRequest().getBody().readUtf8();
+        String second = server.takeRequest().getBody().readUtf8();
+        String key = "\"prompt_cache_key\":\"" + promptCache.cacheKey() + "\"";
+        assertTrue(first.contains(key), first);
+        assertTrue(second.contains(key), second);
+        assertTrue(first.contains("\"instructions\":\"Réponds en français.\""), first);
+
+        assertEquals(1536, tokens("cached_input"));
+        assertEquals(80, tokens("reasoning"));
+        UpstreamMetrics.PromptCacheStats stats = metrics.promptCacheStats().get("gpt-4.1-mini");
+        assertEquals(2, stats.requests());
+        assertEquals(1, stats.hits());
+        assertEquals(4096, stats.inputTokens());
+        assertEquals(0.375, stats.hitRatio(), 1e-9);
+        assertEquals(0.375, registry.get("openai.prompt_cache.hit_ratio").tag("model", "gpt-4.1-mini")
+                .gauge().value(), 1e-9);
+        assertEquals(1, registry.get("openai.prompt_cache.requests").tags("model", "gpt-4.1-mini", "result", "hit")
+                .counter().count());
+    }
+
+    @Test
+    void should_break_latency_down_by_phase_and_observe_each_attempt() {
+        List<Observation.Context> stopped = new CopyOnWriteArrayList<>();
+        ObservationRegistry observations = ObservationRegistry.create();
+        observations.observationConfig().observationHandler(new ObservationHandler<>() {
+            @Override
+            public void onStop(Observation.Context context) {
+                stopped.add(context);
+            }
+
+            @Override
+            public boolean supportsContext(Observation.Context context) {
+                return true;
+            }
+        });
+        // une seule connexion : le second appel réutilise forcément celle du premier
+        ConnectionProvider provider = ConnectionProvider.builder("phases-test")
+                .maxConnections(1)
+                .pendingAcquireTimeout(Duration.ofSeconds(2))
+                .build();
+        OpenAIService phasedService = new OpenAIService("test-api-key", server.url("/v1/responses").toString(),
+                "gpt-4.1-mini", OpenAIService.Dependencies.defaults()
+                        .httpClient(LatencyPhases.observe(HttpClient.create(provider)))
+                        .metrics(new UpstreamMetrics(registry, observations)));
+        for (int i = 0; i < 2; i++) {
+            server.enqueue(new MockResponse().setResponseCode(200)
+                    .addHeader("Content-Type", "application/json")
+                    .setHeadersDelay(80, TimeUnit.MILLISECONDS)
+                    .setBody("""
+                        {"status":"completed","output":[{"content":[{"type":"output_text","text":"OK"}]}],
+                         "usage":{"input_tokens":10,"output_tokens":5,"total_tokens":15}}
+                    """));
+        }
+
+        // premier essai : connexion ouverte ; second : connexion du pool réutilisée
+        StepVerifier.create(phasedService.generateReply("Premier", null, null, 100))
+                .assertNext(r -> {
+                    LatencyPhases.Breakdown b = r.phases();
+                    assertNotNull(b);
+                    assertFalse(b.connectionReused());
+                    assertNotNull(b.connectMs());
+                    assertNull(b.tlsMs());
+                    assertTrue(b.ttfbMs() >= 70, b.toString());
+                    assertNotNull(b.sendMs());
+                    assertNotNull(b.downloadMs());
+                    assertNotNull(b.parseMs());
+                    assertTrue(b.totalMs() >= b.ttfbMs(), b.toString());
+                })
+                .verifyComplete();
+        StepVerifier.create(phasedService.generateReply("Second", null, null, 100))
+                .assertNext(r -> {
+                    assertTrue(r.phases().connectionReused(), r.phases().toString());
+                    assertNull(r.phases().connectMs());
+                })
+                .verifyComplete();
+
+        assertEquals(2, registry.get("openai.upstream.phase").tags("model", "gpt-4.1-mini", "phase", "ttfb")
+                .timer().count());
+        assertEquals(1, registry.get("openai.upstream.phase").tags("model", "gpt-4.1-mini", "phase", "connect")
+                .timer().count());
+
+        assertEquals(2, stopped.size());
+        Observation.Context first = stopped.get(0);
+        assertEquals("openai.upstream.attempt", first.getName());
+        assertEquals("gpt-4.1-mini", first.getLowCardinalityKeyValue("model").getValue());
+        assertEquals("false", first.getHighCardinalityKeyValue("connection.reused").getValue());
+        assertNotNull(first.getHighCardinalityKeyValue("phase.ttfb_ms"));
+        provider.dispose();
+    }
+}